@@ -0,0 +1,163 @@
+package com.thanos.portfolio.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thanos.portfolio.dto.PortfolioResponse;
+import com.thanos.portfolio.entities.Side;
+import com.thanos.portfolio.entities.TriggerMode;
+import com.thanos.portfolio.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Holdings of any size grown from the shipped samples: requestJsons/portfolioCreate.json gives the
+// instruments, 6monthsOldCreatePortfolio.json the later prices and the whole-share trades. Position i
+// is copy i / 13 of instrument i % 13, ticker suffixed with the copy number (IVV, QQQ, ..., IVV1, ...).
+public final class Fixtures {
+
+    private record Instrument(Category category, String ticker, String name, int quantity, BigDecimal avgPrice) {}
+
+    private record SampleTrade(String ticker, Side side, int qty) {}
+
+    private static final Instant AS_OF = Instant.parse("2026-02-19T19:23:24Z");
+    private static final List<Instrument> INSTRUMENTS = new ArrayList<>();
+    private static final Map<String, BigDecimal> LATER_PRICES = new HashMap<>();
+    private static final List<SampleTrade> TRADES = new ArrayList<>();
+    private static final Map<Category, BigDecimal> TARGET = new EnumMap<>(Category.class);
+    private static final JsonNode CREATE;
+
+    static {
+        ObjectMapper om = new ObjectMapper();
+        CREATE = read(om, "/requestJsons/portfolioCreate.json");
+        CREATE.get("portfolio").properties().forEach(e -> {
+            Category c = Category.fromWire(e.getKey());
+            for (JsonNode p : e.getValue()) {
+                INSTRUMENTS.add(new Instrument(c, p.get("ticker").asText(), p.get("name").asText(),
+                        p.get("quantity").asInt(), p.get("avgPrice").decimalValue()));
+            }
+        });
+        CREATE.get("targetState").properties()
+                .forEach(e -> TARGET.put(Category.fromWire(e.getKey()), e.getValue().decimalValue()));
+
+        JsonNode later = read(om, "/requestJsons/6monthsOldCreatePortfolio.json");
+        for (JsonNode t : later.at("/tradePlan/idealTrades")) {
+            LATER_PRICES.put(t.get("ticker").asText(), t.get("price").decimalValue());
+        }
+        for (JsonNode t : later.at("/tradePlan/executableTradesRounded/trades")) {
+            TRADES.add(new SampleTrade(t.get("ticker").asText(), Side.valueOf(t.get("action").asText()), t.get("qty").asInt()));
+        }
+    }
+
+    private Fixtures() {}
+
+    public static Map<Category, List<StockPosition>> holdings(int positions) {
+        Map<Category, List<StockPosition>> out = new LinkedHashMap<>();
+        for (Category c : Category.values()) out.put(c, new ArrayList<>());
+
+        List<BigDecimal> amounts = new ArrayList<>(positions);
+        List<Instrument> picked = new ArrayList<>(positions);
+        for (int i = 0; i < positions; i++) {
+            Instrument in = INSTRUMENTS.get(i % INSTRUMENTS.size());
+            picked.add(in);
+            amounts.add(PortfolioMath.multiply(in.avgPrice(), in.quantity(), 2));
+        }
+        BigDecimal total = PortfolioMath.sum(amounts);
+        for (int i = 0; i < positions; i++) {
+            Instrument in = picked.get(i);
+            out.get(in.category()).add(new StockPosition(ticker(in, i / INSTRUMENTS.size()), in.name(), in.quantity(),
+                    in.avgPrice(), PortfolioMath.percentOf(amounts.get(i), total), amounts.get(i), AS_OF));
+        }
+        return out;
+    }
+
+    // Every held ticker plus every ticker the sample trades touch, at the later price where the sample has one
+    public static List<PriceRow> priceFrame(int positions) {
+        List<PriceRow> rows = new ArrayList<>();
+        int copies = copies(positions);
+        for (int k = 0; k < copies; k++) {
+            for (Instrument in : INSTRUMENTS) {
+                BigDecimal px = LATER_PRICES.getOrDefault(in.ticker(), in.avgPrice().multiply(new BigDecimal("1.01")))
+                        .setScale(2, RoundingMode.HALF_UP);
+                rows.add(new PriceRow(in.category().toWire(), ticker(in, k), in.name(), px));
+            }
+        }
+        return rows;
+    }
+
+    // The sample's whole-share trades, repeated on every copy; a SELL only where the position is held
+    public static List<ExecutedTrade> trades(int positions) {
+        List<ExecutedTrade> out = new ArrayList<>();
+        int copies = copies(positions);
+        for (int k = 0; k < copies; k++) {
+            for (SampleTrade t : TRADES) {
+                int index = k * INSTRUMENTS.size() + indexOf(t.ticker());
+                if (t.side() == Side.SELL && index >= positions) continue;
+                out.add(new ExecutedTrade(k == 0 ? t.ticker() : t.ticker() + k, t.side(), t.qty(), "bench"));
+            }
+        }
+        return out;
+    }
+
+    public static Map<Category, BigDecimal> targetState() {
+        return new EnumMap<>(TARGET);
+    }
+
+    public static PortfolioResponse response(int positions) {
+        Map<Category, List<StockPosition>> holdings = holdings(positions);
+        List<BigDecimal> amounts = new ArrayList<>();
+        holdings.values().forEach(l -> l.forEach(sp -> amounts.add(sp.totalAmount())));
+        JsonNode u = CREATE.get("userDetails");
+        JsonNode rm = CREATE.get("rmDetails");
+        LocalDateTime at = LocalDateTime.of(2026, 2, 19, 19, 23, 24);
+        return new PortfolioResponse(
+                10L,
+                new UserDetails(u.get("userId").asText(), u.get("firstName").asText(), u.get("lastName").asText(),
+                        u.get("email").asText(), u.get("phoneNumber").asText()),
+                new RMDetails(rm.get("rmId").asText(), rm.get("firstName").asText(), rm.get("lastName").asText(),
+                        rm.get("email").asText(), rm.get("phoneNumber").asText()),
+                holdings,
+                targetState(),
+                PortfolioMath.sum(amounts),
+                at,
+                at,
+                TriggerMode.valueOf(CREATE.get("triggerMode").asText()),
+                CREATE.get("freeCash").decimalValue(),
+                CREATE.get("driftThresholdAbs").decimalValue(),
+                CREATE.get("cooldownDays").asInt()
+        );
+    }
+
+    public static BigDecimal freeCash() {
+        return CREATE.get("freeCash").decimalValue();
+    }
+
+    private static int copies(int positions) {
+        return (positions + INSTRUMENTS.size() - 1) / INSTRUMENTS.size();
+    }
+
+    private static int indexOf(String ticker) {
+        for (int i = 0; i < INSTRUMENTS.size(); i++) {
+            if (INSTRUMENTS.get(i).ticker().equals(ticker)) return i;
+        }
+        throw new IllegalStateException("Sample trade on unknown ticker " + ticker);
+    }
+
+    private static String ticker(Instrument in, int copy) {
+        return copy == 0 ? in.ticker() : in.ticker() + copy;
+    }
+
+    private static JsonNode read(ObjectMapper om, String resource) {
+        try (InputStream in = Fixtures.class.getResourceAsStream(resource)) {
+            if (in == null) throw new IllegalStateException("Missing fixture " + resource);
+            return om.readTree(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
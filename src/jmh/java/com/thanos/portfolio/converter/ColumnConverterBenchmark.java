@@ -0,0 +1,74 @@
+package com.thanos.portfolio.converter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thanos.portfolio.bench.Fixtures;
+import com.thanos.portfolio.config.JacksonConfig;
+import com.thanos.portfolio.dto.PortfolioResponse;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.StockPosition;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Column round trips and the API response body. JSON only by default; compare the other column
+// encodings with -p encoding=JSON,SMILE,SMILE_DEFLATE. Each trial also prints the stored sizes, so
+// the bytes/row comparison comes from the same fixtures as the timings. The legacy portfolio column
+// is only read now; its read benchmark covers rows still stored in any encoding.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColumnConverterBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int positions;
+
+    @Param({"JSON"})
+    ColumnEncoding encoding;
+
+    private final PortfolioDetailsConverter portfolioConverter = new PortfolioDetailsConverter();
+    private final TargetStateConverter targetConverter = new TargetStateConverter();
+    private final ObjectMapper objectMapper = new JacksonConfig().objectMapper();
+
+    private Map<Category, List<StockPosition>> holdings;
+    private String portfolioColumn;
+    private Map<Category, BigDecimal> targetState;
+    private PortfolioResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+        ColumnCodec.setWriteEncoding(encoding);
+        holdings = Fixtures.holdings(positions);
+        portfolioColumn = ColumnCodec.encode(holdings, encoding);
+        targetState = Fixtures.targetState();
+        System.out.printf("%n# %s, %d positions: legacy portfolio column %d chars, target_state %d chars%n", encoding,
+                positions, portfolioColumn.length(), targetConverter.convertToDatabaseColumn(targetState).length());
+        response = Fixtures.response(positions);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ColumnCodec.setWriteEncoding(ColumnEncoding.JSON);
+    }
+
+    @Benchmark
+    public Object portfolioColumnRead() {
+        return portfolioConverter.convertToEntityAttribute(portfolioColumn);
+    }
+
+    // Same size whatever the portfolio; kept next to the others as the per-row fixed cost
+    @Benchmark
+    public Object targetStateRoundTrip() {
+        return targetConverter.convertToEntityAttribute(targetConverter.convertToDatabaseColumn(targetState));
+    }
+
+    @Benchmark
+    public byte[] responseSerialization() throws Exception {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,75 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.bench.Fixtures;
+import com.thanos.portfolio.entities.Portfolio;
+import com.thanos.portfolio.model.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// The in-memory part of an apply: the trade loop, the revaluation of the book at frame prices and the
+// percentage pass. No repository is touched, so the service is built with none; the stage timers
+// are real, so their cost shows up in the numbers.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PortfolioServiceBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int positions;
+
+    private StageMetrics stages;
+    private PortfolioService service;
+    private Portfolio entity;
+    private List<ExecutedTrade> trades;
+    private Map<String, PriceRow> prices;
+    private Map<Category, List<StockPosition>> holdings;
+    private List<StockPosition> largestCategory;
+
+    @Setup
+    public void setup() {
+        stages = new StageMetrics(new SimpleMeterRegistry());
+        service = new PortfolioService(null, null, null, null, null, null, null, null, null, stages, null, null,
+                ApplyMode.PESSIMISTIC, 1, Duration.ZERO, Duration.ZERO);
+
+        holdings = Fixtures.holdings(positions);
+        entity = new Portfolio();
+        entity.setPortfolio(holdings);
+        entity.setFreeCash(Fixtures.freeCash());
+        trades = Fixtures.trades(positions);
+        prices = new HashMap<>();
+        for (PriceRow r : Fixtures.priceFrame(positions)) prices.put(r.symbol(), r);
+
+        largestCategory = holdings.values().stream().max(Comparator.comparingInt(List::size)).orElseThrow();
+    }
+
+    @Benchmark
+    public Object applyTrades() {
+        StageMetrics.Laps laps = stages.laps(StageMetrics.Op.APPLY);
+        Object outcome = service.applyTrades(entity, trades, prices, laps);
+        laps.record();
+        return outcome;
+    }
+
+    @Benchmark
+    public Object recomputeTotalsAndPercentages() {
+        return service.recomputeTotalsAndPercentages(holdings, prices);
+    }
+
+    @Benchmark
+    public Object applyPercentages() {
+        return service.applyPercentages(holdings);
+    }
+
+    // Worst case: a BUY of a ticker the category does not hold yet scans the whole list
+    @Benchmark
+    public int indexOfTickerMiss() {
+        return service.indexOfTicker(largestCategory, "NOT-HELD");
+    }
+}
@@ -0,0 +1,386 @@
+package com.thanos.portfolio.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.thanos.portfolio.PortfolioApplication;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+// End-to-end throughput run: seeds synthetic portfolios shaped like requestJsons/portfolioCreate.json
+// through POST /bulk, then replays a weighted mix of createOrUpdate, getByUserId, getByRmId and apply
+// traffic with hot portfolios and repeated rebalanceIds, and reports per-operation throughput, latency
+// percentiles and the apply lock-wait timers from actuator.
+//
+// The write paths use Postgres-only SQL (ON CONFLICT, = any(?), make_interval), so point it at a
+// throwaway local Postgres, never at a shared one: it writes LOAD-* users and RMs. Example:
+//   createdb portfolio_load
+//   mvn -Pload -DskipTests verify -Dload.args="--portfolios=5000 --rms=50 --concurrency=128 --duration=2m"
+//
+// Options (defaults in LoadOptions): --base-url (skip starting the app), --db-url/--db-user/--db-password,
+// --portfolios, --rms, --duration, --warmup, --concurrency, --rate (0 = closed loop),
+// --mix=create=5,user=40,rm=15,apply=40, --hot-portfolios, --hot-share, --duplicate-share, --report.
+// --spring.*, --portfolio.* etc. go to the application, e.g. --portfolio.apply.mode=OPTIMISTIC; the mode
+// only shows while --portfolio.apply.coalesce.enabled stays false, coalesced applies always lock.
+public final class LoadHarness {
+
+    private static final String API = "/api/v1/portfolio";
+    private static final int SEED_CHUNK = 1000;
+    private static final String[] LOCK_METRICS = {
+            "portfolio.apply.lock.wait", "portfolio.apply.write", "portfolio.apply.coalesced"};
+
+    private final LoadOptions o;
+    private final String baseUrl;
+    private final ObjectMapper om = new ObjectMapper();
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    private final ObjectNode template;
+    private final ArrayNode priceFrame;
+    private final List<String> tickers = new ArrayList<>();
+    private final Map<String, Integer> mixWeights;
+    private final int mixTotal;
+    private final Map<String, OpStats> stats = new LinkedHashMap<>();
+    private final Map<Long, String> lastRebalance = new ConcurrentHashMap<>();
+
+    private long[] ids;
+    private String[] userIds;
+    private volatile boolean measuring;
+
+    LoadHarness(LoadOptions o, String baseUrl) throws IOException {
+        this.o = o;
+        this.baseUrl = baseUrl;
+        try (InputStream in = LoadHarness.class.getResourceAsStream("/requestJsons/portfolioCreate.json")) {
+            this.template = (ObjectNode) om.readTree(Objects.requireNonNull(in, "portfolioCreate.json"));
+        }
+        this.priceFrame = om.createArrayNode();
+        template.get("portfolio").properties().forEach(e -> {
+            for (JsonNode p : e.getValue()) {
+                tickers.add(p.get("ticker").asText());
+                priceFrame.addObject()
+                        .put("category", e.getKey())
+                        .put("symbol", p.get("ticker").asText())
+                        .put("name", p.get("name").asText())
+                        .put("price", p.get("avgPrice").decimalValue().multiply(new BigDecimal("1.01"))
+                                .setScale(2, RoundingMode.HALF_UP));
+            }
+        });
+        this.mixWeights = o.mix();
+        this.mixTotal = mixWeights.values().stream().mapToInt(Integer::intValue).sum();
+        mixWeights.keySet().forEach(op -> stats.put(op, new OpStats()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions o = LoadOptions.parse(args);
+        ConfigurableApplicationContext app = null;
+        String baseUrl = o.baseUrl();
+        if (baseUrl == null) {
+            app = startApplication(o);
+            baseUrl = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+        }
+        try {
+            new LoadHarness(o, baseUrl).run();
+        } finally {
+            if (app != null) app.close();
+        }
+    }
+
+    private static ConfigurableApplicationContext startApplication(LoadOptions o) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=" + o.dbUrl(),
+                "--spring.datasource.username=" + o.dbUser(),
+                "--spring.datasource.password=" + o.dbPassword(),
+                "--spring.datasource.hikari.maximum-pool-size=" + Math.max(10, Math.min(o.concurrency(), 50)),
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN"));
+        args.addAll(o.appArgs());
+        return SpringApplication.run(PortfolioApplication.class, args.toArray(String[]::new));
+    }
+
+    void run() throws Exception {
+        seed();
+        discover();
+        System.out.printf("Seeded %d portfolios across %d RMs; %ds warmup, %ds measured, concurrency %d%s%n",
+                ids.length, o.rms(), o.warmup().toSeconds(), o.duration().toSeconds(), o.concurrency(),
+                o.rate() > 0 ? ", " + o.rate() + " req/s" : ", closed loop");
+
+        long start = System.nanoTime();
+        long measureFrom = start + o.warmup().toNanos();
+        long end = measureFrom + o.duration().toNanos();
+        Map<String, double[]> lockBefore = null;
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int w = 0; w < o.concurrency(); w++) {
+                workers.submit(() -> work(end));
+            }
+            sleepUntil(measureFrom);
+            lockBefore = lockStats();
+            measuring = true;
+        }
+        Map<String, double[]> lockAfter = lockStats();
+        report(lockBefore, lockAfter);
+    }
+
+    private void work(long end) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        long interval = o.rate() > 0 ? (long) (1e9 * o.concurrency() / o.rate()) : 0;
+        long next = System.nanoTime() + (interval > 0 ? rnd.nextLong(interval) : 0);
+        while (true) {
+            long due;
+            if (interval > 0) {
+                sleepUntil(next);
+                due = next;
+                next += interval;
+            } else {
+                due = System.nanoTime();
+            }
+            if (due >= end) return;
+
+            String op = pick(rnd);
+            int status;
+            try {
+                status = execute(op, rnd);
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (measuring) stats.get(op).record((System.nanoTime() - due) / 1_000, status);
+        }
+    }
+
+    private int execute(String op, ThreadLocalRandom rnd) throws IOException, InterruptedException {
+        return switch (LoadOptions.Op.valueOf(op)) {
+            case CREATE -> {
+                int i = portfolio(rnd);
+                yield post(API, create(userIndex(i), rnd.nextInt(1, 10)));
+            }
+            case USER -> get(API + "/user/" + userIds[portfolio(rnd)]);
+            case RM -> get(API + "/rm/LOAD-RM" + rnd.nextInt(o.rms()));
+            case APPLY -> {
+                long id = ids[portfolio(rnd)];
+                String rebalanceId = lastRebalance.get(id);
+                if (rebalanceId == null || rnd.nextDouble() >= o.duplicateShare()) {
+                    rebalanceId = "LOAD-" + UUID.randomUUID();
+                    lastRebalance.put(id, rebalanceId);
+                }
+                yield post(API + "/apply", apply(id, rebalanceId, tickers.get(rnd.nextInt(tickers.size()))));
+            }
+        };
+    }
+
+    private int portfolio(ThreadLocalRandom rnd) {
+        int hot = Math.min(o.hotPortfolios(), ids.length);
+        return hot > 0 && rnd.nextDouble() < o.hotShare() ? rnd.nextInt(hot) : rnd.nextInt(ids.length);
+    }
+
+    private String pick(ThreadLocalRandom rnd) {
+        int r = rnd.nextInt(mixTotal);
+        for (var e : mixWeights.entrySet()) {
+            r -= e.getValue();
+            if (r < 0) return e.getKey();
+        }
+        throw new IllegalStateException();
+    }
+
+    // ---- seeding ----
+
+    private void seed() throws IOException, InterruptedException {
+        for (int from = 0; from < o.portfolios(); from += SEED_CHUNK) {
+            StringBuilder ndjson = new StringBuilder();
+            for (int i = from; i < Math.min(from + SEED_CHUNK, o.portfolios()); i++) {
+                ndjson.append(create(i, 0)).append('\n');
+            }
+            HttpResponse<String> r = http.send(HttpRequest.newBuilder(URI.create(baseUrl + API + "/bulk"))
+                    .header("Content-Type", "application/x-ndjson")
+                    .POST(HttpRequest.BodyPublishers.ofString(ndjson.toString()))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            if (r.statusCode() != 200) {
+                throw new IllegalStateException("Seeding failed with " + r.statusCode() + ": " + r.body());
+            }
+            JsonNode result = om.readTree(r.body());
+            if (result.path("failed").asLong() > 0) {
+                throw new IllegalStateException("Seeding rejected records: " + result.path("errors"));
+            }
+        }
+    }
+
+    private void discover() throws IOException, InterruptedException {
+        List<long[]> found = new ArrayList<>();
+        Map<Long, String> users = new HashMap<>();
+        for (int rm = 0; rm < o.rms(); rm++) {
+            HttpResponse<String> r = http.send(HttpRequest.newBuilder(URI.create(baseUrl + API + "/rm/LOAD-RM" + rm)).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (r.statusCode() != 200) continue;
+            for (JsonNode p : om.readTree(r.body())) {
+                String userId = p.at("/userDetails/userId").asText();
+                int index = Integer.parseInt(userId.substring("LOAD-U".length()));
+                if (index >= o.portfolios()) continue;
+                found.add(new long[]{index, p.get("portfolioId").asLong()});
+                users.put(p.get("portfolioId").asLong(), userId);
+            }
+        }
+        // seeding order, so the hot set is the same portfolios from run to run
+        found.sort(Comparator.comparingLong(a -> a[0]));
+        ids = found.stream().mapToLong(a -> a[1]).toArray();
+        userIds = Arrays.stream(ids).mapToObj(users::get).toArray(String[]::new);
+        if (ids.length == 0) throw new IllegalStateException("No seeded portfolios found");
+    }
+
+    private int userIndex(int i) {
+        return Integer.parseInt(userIds[i].substring("LOAD-U".length()));
+    }
+
+    private String create(int i, int extraQty) throws IOException {
+        ObjectNode req = template.deepCopy();
+        ((ObjectNode) req.get("userDetails")).put("userId", "LOAD-U" + i).put("email", "load" + i + "@example.com");
+        ((ObjectNode) req.get("rmDetails")).put("rmId", "LOAD-RM" + (i % o.rms()));
+        for (JsonNode list : req.get("portfolio")) {
+            for (JsonNode p : list) {
+                ((ObjectNode) p).put("quantity", p.get("quantity").asInt() + i % 7 + extraQty);
+            }
+        }
+        return om.writeValueAsString(req);
+    }
+
+    private String apply(long portfolioId, String rebalanceId, String ticker) throws IOException {
+        ObjectNode req = om.createObjectNode();
+        req.put("rebalanceId", rebalanceId);
+        req.put("portfolioId", portfolioId);
+        // buys only, so a hot portfolio never runs into a failed SELL
+        req.putArray("executedTrades").addObject()
+                .put("ticker", ticker).put("side", "BUY").put("qty", 1).put("reason", "load");
+        req.set("priceFrame", priceFrame);
+        return om.writeValueAsString(req);
+    }
+
+    // ---- HTTP ----
+
+    private int get(String path) throws IOException, InterruptedException {
+        return http.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private int post(String path, String json) throws IOException, InterruptedException {
+        return http.send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    // COUNT, TOTAL_TIME (or TOTAL) and MAX per meter; empty when actuator is not reachable
+    private Map<String, double[]> lockStats() {
+        Map<String, double[]> out = new LinkedHashMap<>();
+        for (String name : LOCK_METRICS) {
+            try {
+                HttpResponse<String> r = http.send(HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/metrics/" + name)).GET().build(),
+                        HttpResponse.BodyHandlers.ofString());
+                if (r.statusCode() != 200) continue;
+                double[] v = new double[3];
+                for (JsonNode m : om.readTree(r.body()).get("measurements")) {
+                    switch (m.get("statistic").asText()) {
+                        case "COUNT" -> v[0] = m.get("value").asDouble();
+                        case "TOTAL_TIME", "TOTAL" -> v[1] = m.get("value").asDouble();
+                        case "MAX" -> v[2] = m.get("value").asDouble();
+                        default -> { }
+                    }
+                }
+                out.put(name, v);
+            } catch (IOException e) {
+                // reported as missing
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return out;
+    }
+
+    // ---- report ----
+
+    private void report(Map<String, double[]> before, Map<String, double[]> after) throws IOException {
+        double seconds = o.duration().toNanos() / 1e9;
+        ObjectNode json = om.createObjectNode();
+        ObjectNode config = json.putObject("config");
+        config.put("portfolios", ids.length).put("rms", o.rms()).put("concurrency", o.concurrency())
+                .put("rate", o.rate()).put("durationSeconds", seconds).put("hotPortfolios", o.hotPortfolios())
+                .put("hotShare", o.hotShare()).put("duplicateShare", o.duplicateShare());
+        config.putPOJO("mix", o.mix());
+
+        System.out.printf("%n%-8s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "op", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        ObjectNode ops = json.putObject("ops");
+        long total = 0;
+        for (var e : stats.entrySet()) {
+            Histogram h = e.getValue().histogram();
+            total += h.getTotalCount();
+            System.out.printf("%-8s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    e.getKey().toLowerCase(), h.getTotalCount(), e.getValue().errors(), h.getTotalCount() / seconds,
+                    ms(h, 50), ms(h, 90), ms(h, 99), ms(h, 99.9), h.getMaxValue() / 1000.0);
+            ObjectNode op = ops.putObject(e.getKey().toLowerCase());
+            op.put("count", h.getTotalCount()).put("errors", e.getValue().errors())
+                    .put("throughput", h.getTotalCount() / seconds)
+                    .put("p50Ms", ms(h, 50)).put("p90Ms", ms(h, 90)).put("p99Ms", ms(h, 99))
+                    .put("p999Ms", ms(h, 99.9)).put("maxMs", h.getMaxValue() / 1000.0);
+            op.putPOJO("statuses", e.getValue().statuses());
+        }
+        System.out.printf("%-8s %9d %7s %9.1f%n", "total", total, "", total / seconds);
+        json.put("throughput", total / seconds);
+
+        ObjectNode locks = json.putObject("lockWait");
+        if (after.isEmpty()) {
+            System.out.println("\nactuator metrics not reachable; no lock-wait statistics");
+        } else {
+            System.out.printf("%n%-28s %10s %12s %10s%n", "meter", "count", "mean", "max");
+            for (var e : after.entrySet()) {
+                double[] b = before == null ? null : before.get(e.getKey());
+                double count = e.getValue()[0] - (b == null ? 0 : b[0]);
+                double sum = e.getValue()[1] - (b == null ? 0 : b[1]);
+                double mean = count == 0 ? 0 : sum / count;
+                boolean timer = !e.getKey().endsWith("coalesced");
+                System.out.printf("%-28s %10.0f %12s %10s%n", e.getKey(), count,
+                        timer ? String.format("%.3f ms", mean * 1000) : String.format("%.2f", mean),
+                        timer ? String.format("%.1f ms", e.getValue()[2] * 1000) : String.format("%.0f", e.getValue()[2]));
+                locks.putObject(e.getKey()).put("count", count).put("mean", timer ? mean * 1000 : mean)
+                        .put("max", timer ? e.getValue()[2] * 1000 : e.getValue()[2]).put("unit", timer ? "ms" : "items");
+            }
+        }
+
+        File file = new File(o.report());
+        if (file.getParentFile() != null) file.getParentFile().mkdirs();
+        om.writerWithDefaultPrettyPrinter().writeValue(file, json);
+        System.out.println("\nReport written to " + file.getAbsolutePath());
+    }
+
+    private static double ms(Histogram h, double percentile) {
+        return h.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long wait = nanoTime - System.nanoTime();
+        if (wait <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
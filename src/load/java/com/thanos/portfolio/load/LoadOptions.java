@@ -0,0 +1,76 @@
+package com.thanos.portfolio.load;
+
+import java.time.Duration;
+import java.util.*;
+
+// --key=value arguments. Anything under --spring.*, --portfolio.*, --server.* or --management.* is
+// passed through to the in-process application instead.
+record LoadOptions(
+        String baseUrl,            // null: start the application in this JVM on a random port
+        String dbUrl,
+        String dbUser,
+        String dbPassword,
+        int portfolios,
+        int rms,
+        Duration duration,
+        Duration warmup,
+        int concurrency,
+        int rate,                  // total requests/s; 0 runs closed loop, each worker as fast as answers come
+        Map<String, Integer> mix,
+        int hotPortfolios,
+        double hotShare,
+        double duplicateShare,
+        String report,
+        List<String> appArgs
+) {
+
+    private static final List<String> PASS_THROUGH = List.of("spring.", "portfolio.", "server.", "management.", "logging.");
+
+    static LoadOptions parse(String[] args) {
+        Map<String, String> kv = new HashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String a : args) {
+            if (!a.startsWith("--") || !a.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value, got " + a);
+            }
+            String key = a.substring(2, a.indexOf('='));
+            if (PASS_THROUGH.stream().anyMatch(key::startsWith)) {
+                appArgs.add(a);
+            } else {
+                kv.put(key, a.substring(a.indexOf('=') + 1));
+            }
+        }
+
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : kv.getOrDefault("mix", "create=5,user=40,rm=15,apply=40").split(",")) {
+            String[] p = part.split("=");
+            Op.valueOf(p[0].trim().toUpperCase());
+            mix.put(p[0].trim().toUpperCase(), Integer.parseInt(p[1].trim()));
+        }
+
+        LoadOptions o = new LoadOptions(
+                kv.remove("base-url"),
+                kv.getOrDefault("db-url", "jdbc:postgresql://localhost:5432/portfolio_load?reWriteBatchedInserts=true"),
+                kv.getOrDefault("db-user", "admin"),
+                kv.getOrDefault("db-password", "admin"),
+                Integer.parseInt(kv.getOrDefault("portfolios", "1000")),
+                Integer.parseInt(kv.getOrDefault("rms", "20")),
+                Duration.parse("PT" + kv.getOrDefault("duration", "60s").toUpperCase()),
+                Duration.parse("PT" + kv.getOrDefault("warmup", "10s").toUpperCase()),
+                Integer.parseInt(kv.getOrDefault("concurrency", "64")),
+                Integer.parseInt(kv.getOrDefault("rate", "0")),
+                mix,
+                Integer.parseInt(kv.getOrDefault("hot-portfolios", "10")),
+                Double.parseDouble(kv.getOrDefault("hot-share", "0.5")),
+                Double.parseDouble(kv.getOrDefault("duplicate-share", "0.05")),
+                kv.getOrDefault("report", "target/load-report.json"),
+                appArgs
+        );
+        kv.keySet().removeAll(List.of("db-url", "db-user", "db-password", "portfolios", "rms", "duration", "warmup",
+                "concurrency", "rate", "mix", "hot-portfolios", "hot-share", "duplicate-share", "report"));
+        if (!kv.isEmpty()) throw new IllegalArgumentException("Unknown options " + kv.keySet());
+        return o;
+    }
+
+    enum Op { CREATE, USER, RM, APPLY }
+}
@@ -0,0 +1,39 @@
+package com.thanos.portfolio.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latencies in microseconds, measured from when a request was due (not when it was sent), so a
+// stalled server shows up in the percentiles instead of just lowering the request count
+final class OpStats {
+
+    private final Recorder recorder = new Recorder(3);
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+
+    void record(long micros, int status) {
+        recorder.recordValue(Math.max(micros, 0));
+        statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        // 304 is a successful conditional read; -1 is a transport failure
+        if (status < 200 || status >= 400) errors.increment();
+    }
+
+    Histogram histogram() {
+        return recorder.getIntervalHistogram();
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+
+    Map<Integer, Long> statuses() {
+        Map<Integer, Long> out = new TreeMap<>();
+        statuses.forEach((k, v) -> out.put(k, v.sum()));
+        return out;
+    }
+}
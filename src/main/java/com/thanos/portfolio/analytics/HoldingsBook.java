@@ -0,0 +1,289 @@
+package com.thanos.portfolio.analytics;
+
+import com.thanos.portfolio.dto.AumBreakdown;
+import com.thanos.portfolio.dto.HoldingAggregate;
+import com.thanos.portfolio.dto.HoldingsBookStats;
+import com.thanos.portfolio.dto.TickerExposure;
+import com.thanos.portfolio.model.Category;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Firm-wide holdings laid out as columns: one set of primitive arrays per interned ticker, one slot
+// per (portfolio, category) holding it. Aggregations are tight loops over long[]; nothing is parsed
+// or boxed on the read path. Money is a long at 4 decimal places.
+@Component
+public class HoldingsBook implements HoldingsView {
+
+    static final int SCALE = 4;
+    private static final Category[] CATEGORIES = Category.values();
+    private static final int CATEGORY_BITS = 3;
+    private static final int NO_RM = -1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state = new State();            // guarded by lock
+    private volatile Instant builtAt;
+    private volatile Instant updatedAt;
+
+    // One ticker's holders; removal swaps the last slot into the hole so the arrays stay dense
+    static final class Column {
+        final String ticker;
+        int size;
+        long[] portfolioIds = new long[4];
+        byte[] categories = new byte[4];
+        int[] rms = new int[4];
+        long[] quantities = new long[4];
+        long[] costBasis = new long[4];
+        long[] values = new long[4];
+        private final Map<Long, Integer> slots = new HashMap<>();   // portfolioId << 3 | category
+
+        Column(String ticker) {
+            this.ticker = ticker;
+        }
+
+        void add(long portfolioId, int category, int rm, long quantity, long cost, long value) {
+            remove(portfolioId, category);
+            if (size == portfolioIds.length) grow();
+            portfolioIds[size] = portfolioId;
+            categories[size] = (byte) category;
+            rms[size] = rm;
+            quantities[size] = quantity;
+            costBasis[size] = cost;
+            values[size] = value;
+            slots.put(key(portfolioId, category), size++);
+        }
+
+        void remove(long portfolioId, int category) {
+            Integer slot = slots.remove(key(portfolioId, category));
+            if (slot == null) return;
+            int last = --size;
+            if (slot != last) {
+                portfolioIds[slot] = portfolioIds[last];
+                categories[slot] = categories[last];
+                rms[slot] = rms[last];
+                quantities[slot] = quantities[last];
+                costBasis[slot] = costBasis[last];
+                values[slot] = values[last];
+                slots.put(key(portfolioIds[slot], categories[slot]), slot);
+            }
+        }
+
+        private void grow() {
+            int n = portfolioIds.length * 2;
+            portfolioIds = Arrays.copyOf(portfolioIds, n);
+            categories = Arrays.copyOf(categories, n);
+            rms = Arrays.copyOf(rms, n);
+            quantities = Arrays.copyOf(quantities, n);
+            costBasis = Arrays.copyOf(costBasis, n);
+            values = Arrays.copyOf(values, n);
+        }
+
+        private static long key(long portfolioId, int category) {
+            return portfolioId << CATEGORY_BITS | category;
+        }
+    }
+
+    static final class State {
+        final Map<String, Integer> tickerIds = new HashMap<>();
+        final List<Column> columns = new ArrayList<>();
+        final Map<String, Integer> rmIds = new HashMap<>();
+        final Map<Long, long[]> heldBy = new HashMap<>();   // portfolio -> tickerId << 3 | category
+        long positions;
+
+        void put(long portfolioId, String rmId, List<PositionRow> rows) {
+            remove(portfolioId);
+            if (rows.isEmpty()) return;
+
+            int rm = rmId == null ? NO_RM : rmIds.computeIfAbsent(rmId, k -> rmIds.size());
+            long[] keys = new long[rows.size()];
+            int n = 0;
+            for (PositionRow r : rows) {
+                if (r.category() == null || r.ticker() == null) continue;
+                String ticker = r.ticker().toUpperCase();
+                int t = tickerIds.computeIfAbsent(ticker, k -> {
+                    columns.add(new Column(k));
+                    return columns.size() - 1;
+                });
+                int c = r.category().ordinal();
+                columns.get(t).add(portfolioId, c, rm, r.quantity(), costBasis(r), units(r.totalAmount()));
+                keys[n++] = (long) t << CATEGORY_BITS | c;
+            }
+            if (n == 0) return;
+            heldBy.put(portfolioId, n == keys.length ? keys : Arrays.copyOf(keys, n));
+            positions += n;
+        }
+
+        void remove(long portfolioId) {
+            long[] keys = heldBy.remove(portfolioId);
+            if (keys == null) return;
+            long mask = (1L << CATEGORY_BITS) - 1;
+            for (long k : keys) {
+                columns.get((int) (k >>> CATEGORY_BITS)).remove(portfolioId, (int) (k & mask));
+            }
+            positions -= keys.length;
+        }
+    }
+
+    @Override
+    public Loader newLoader() {
+        State next = new State();
+        return new Loader() {
+            @Override
+            public void add(long portfolioId, String rmId, List<PositionRow> rows) {
+                next.put(portfolioId, rmId, rows);
+            }
+
+            @Override
+            public void finish() {
+                lock.writeLock().lock();
+                try {
+                    state = next;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                builtAt = Instant.now();
+            }
+        };
+    }
+
+    @Override
+    public void update(long portfolioId, String rmId, List<PositionRow> rows) {
+        lock.writeLock().lock();
+        try {
+            state.put(portfolioId, rmId, rows);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        updatedAt = Instant.now();
+    }
+
+    public Optional<TickerExposure> exposure(String ticker) {
+        lock.readLock().lock();
+        try {
+            Integer t = state.tickerIds.get(ticker.toUpperCase());
+            if (t == null) return Optional.empty();
+            Column col = state.columns.get(t);
+            if (col.size == 0) return Optional.empty();
+
+            long qty = 0, cost = 0, value = 0;
+            long[] byCategory = new long[CATEGORIES.length];
+            for (int i = 0; i < col.size; i++) {
+                qty += col.quantities[i];
+                cost += col.costBasis[i];
+                value += col.values[i];
+                byCategory[col.categories[i]] += col.values[i];
+            }
+            return Optional.of(new TickerExposure(col.ticker, col.size, qty, money(cost), money(value), byCategory(byCategory)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // rmId null means the whole firm
+    public AumBreakdown aum(String rmId) {
+        lock.readLock().lock();
+        try {
+            int rm = rmFilter(rmId);
+            long positions = 0;
+            long[] byCategory = new long[CATEGORIES.length];
+            if (rm != NO_RM || rmId == null) {
+                for (Column col : state.columns) {
+                    long[] values = col.values;
+                    byte[] categories = col.categories;
+                    int[] rms = col.rms;
+                    for (int i = 0; i < col.size; i++) {
+                        if (rmId != null && rms[i] != rm) continue;
+                        byCategory[categories[i]] += values[i];
+                        positions++;
+                    }
+                }
+            }
+            long total = 0;
+            for (long v : byCategory) total += v;
+            return new AumBreakdown(rmId, positions, money(total), byCategory(byCategory));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Tickers with the largest value across the RM's book (the firm's when rmId is null)
+    public List<HoldingAggregate> topHoldings(String rmId, int limit) {
+        if (limit <= 0) return List.of();
+        lock.readLock().lock();
+        try {
+            int rm = rmFilter(rmId);
+            if (rmId != null && rm == NO_RM) return List.of();
+
+            record Agg(Column col, int positions, long qty, long cost, long value) {}
+            PriorityQueue<Agg> top = new PriorityQueue<>(limit + 1, Comparator.comparingLong(Agg::value));
+            for (Column col : state.columns) {
+                int positions = 0;
+                long qty = 0, cost = 0, value = 0;
+                for (int i = 0; i < col.size; i++) {
+                    if (rmId != null && col.rms[i] != rm) continue;
+                    positions++;
+                    qty += col.quantities[i];
+                    cost += col.costBasis[i];
+                    value += col.values[i];
+                }
+                if (positions == 0) continue;
+                if (top.size() < limit) {
+                    top.add(new Agg(col, positions, qty, cost, value));
+                } else if (value > top.peek().value()) {
+                    top.poll();
+                    top.add(new Agg(col, positions, qty, cost, value));
+                }
+            }
+
+            List<HoldingAggregate> out = new ArrayList<>(top.size());
+            for (Agg a : top) {
+                out.add(new HoldingAggregate(a.col().ticker, a.positions(), a.qty(), money(a.cost()), money(a.value())));
+            }
+            out.sort(Comparator.comparing(HoldingAggregate::marketValue).reversed());
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public HoldingsBookStats stats() {
+        lock.readLock().lock();
+        try {
+            return new HoldingsBookStats(state.heldBy.size(), state.positions, state.tickerIds.size(),
+                    state.rmIds.size(), builtAt, updatedAt);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int rmFilter(String rmId) {
+        if (rmId == null) return NO_RM;
+        return state.rmIds.getOrDefault(rmId, NO_RM);
+    }
+
+    private static Map<Category, BigDecimal> byCategory(long[] values) {
+        Map<Category, BigDecimal> out = new EnumMap<>(Category.class);
+        for (Category c : CATEGORIES) {
+            out.put(c, money(values[c.ordinal()]));
+        }
+        return out;
+    }
+
+    private static long costBasis(PositionRow r) {
+        if (r.avgPrice() == null) return 0;
+        return r.avgPrice().multiply(BigDecimal.valueOf(r.quantity()))
+                .setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static long units(BigDecimal amount) {
+        return amount == null ? 0 : amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static BigDecimal money(long units) {
+        return BigDecimal.valueOf(units, SCALE);
+    }
+}
@@ -0,0 +1,213 @@
+package com.thanos.portfolio.analytics;
+
+import com.thanos.portfolio.cache.InvalidationBus;
+import com.thanos.portfolio.event.PortfolioChangedEvent;
+import com.thanos.portfolio.shard.ShardRouter;
+import com.thanos.portfolio.model.Category;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Keeps every HoldingsView in step with portfolio_positions. Positions are read once per change and
+// handed to all views; a single updater thread applies them, so views never see concurrent writers.
+// Committed changes arrive from this node's transactions and from the invalidation bus for the others.
+@Slf4j
+@Component
+public class HoldingsFeed {
+
+    private static final long POLL_MILLIS = 500;
+    private static final int FETCH_SIZE = 10_000;
+
+    private static final String ALL_SQL =
+            "select p.id, p.rm_id, pp.category, pp.ticker, pp.quantity, pp.avg_price, pp.total_amount " +
+            "from portfolios p left join portfolio_positions pp on pp.portfolio_id = p.id order by p.id";
+
+    private static final String SOME_SQL =
+            "select p.id, p.rm_id, pp.category, pp.ticker, pp.quantity, pp.avg_price, pp.total_amount " +
+            "from portfolios p left join portfolio_positions pp on pp.portfolio_id = p.id where p.id = any(?)";
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate readTx;
+    private final ShardRouter router;
+    private final List<HoldingsView> views;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final LinkedBlockingQueue<Long> changed = new LinkedBlockingQueue<>();
+
+    private volatile boolean resync = true;
+    private volatile boolean running;
+    private Thread updater;
+
+    public HoldingsFeed(JdbcTemplate jdbc, PlatformTransactionManager txManager, List<HoldingsView> views,
+                        InvalidationBus bus, ShardRouter router,
+                        @Value("${portfolio.analytics.enabled:true}") boolean enabled,
+                        @Value("${portfolio.analytics.update-batch:500}") int maxBatch) {
+        this.jdbc = jdbc;
+        this.readTx = new TransactionTemplate(txManager);
+        this.readTx.setReadOnly(true);
+        this.router = router;
+        this.views = views;
+        this.enabled = enabled;
+        this.maxBatch = Math.max(1, maxBatch);
+        bus.subscribe(new InvalidationBus.Listener() {
+            @Override
+            public void onChanged(PortfolioChangedEvent event) {
+                enqueue(event.portfolioId());
+            }
+
+            @Override
+            public void onResync() {
+                resync = true;
+            }
+        });
+    }
+
+    // Started only once the migration runners are done, so the first build sees their rows
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || views.isEmpty()) return;
+        running = true;
+        updater = Thread.ofVirtual().name("holdings-feed").start(this::updateLoop);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (updater != null) updater.join();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onCommitted(PortfolioChangedEvent event) {
+        enqueue(event.portfolioId());
+    }
+
+    private void enqueue(Long portfolioId) {
+        if (running && portfolioId != null) changed.add(portfolioId);
+    }
+
+    private void updateLoop() {
+        Set<Long> ids = new LinkedHashSet<>();
+        List<Long> drained = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                if (resync) {
+                    resync = false;
+                    // anything queued so far is covered by the full read
+                    changed.clear();
+                    rebuild();
+                    continue;
+                }
+
+                Long first = changed.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                ids.add(first);
+                changed.drainTo(drained, maxBatch - 1);
+                ids.addAll(drained);
+                refresh(ids);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // the views may now be behind on these portfolios; a full read puts them right
+                log.warn("Holdings update failed, scheduling a full rebuild", e);
+                resync = true;
+                sleepQuietly();
+            } finally {
+                ids.clear();
+                drained.clear();
+            }
+        }
+    }
+
+    public void rebuild() {
+        long started = System.nanoTime();
+        List<HoldingsView.Loader> loaders = views.stream().map(HoldingsView::newLoader).toList();
+        int[] portfolios = {0};
+        // shard by shard; a portfolio caught mid-move on two shards is simply added twice, the later wins
+        router.onEachShard(() -> readTx.execute(status -> {
+            forEachPortfolio(ALL_SQL, null, (id, rmId, rows) -> {
+                loaders.forEach(l -> l.add(id, rmId, rows));
+                portfolios[0]++;
+            });
+            return null;
+        }));
+        loaders.forEach(HoldingsView.Loader::finish);
+        log.info("Holdings views rebuilt from {} portfolios in {} ms",
+                portfolios[0], (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void refresh(Set<Long> ids) {
+        Set<Long> missing = new HashSet<>(ids);
+        router.onPortfolios(List.copyOf(ids), share -> readTx.execute(status -> {
+            forEachPortfolio(SOME_SQL, share.toArray(Long[]::new), (id, rmId, rows) -> {
+                missing.remove(id);
+                views.forEach(v -> v.update(id, rmId, rows));
+            });
+            return List.of();
+        }));
+        // deleted portfolios
+        for (Long id : missing) {
+            views.forEach(v -> v.update(id, null, List.of()));
+        }
+    }
+
+    private interface PortfolioRows {
+        void accept(long portfolioId, String rmId, List<PositionRow> rows);
+    }
+
+    // Each portfolio is emitted once with all of its positions; rmId comes along on every joined row
+    private void forEachPortfolio(String sql, Long[] ids, PortfolioRows consumer) {
+        Map<Long, String> rms = new HashMap<>();
+        Map<Long, List<PositionRow>> grouped = new LinkedHashMap<>();
+        long[] current = {Long.MIN_VALUE};
+
+        jdbc.query(con -> {
+            var ps = con.prepareStatement(sql);
+            ps.setFetchSize(FETCH_SIZE);
+            if (ids != null) ps.setArray(1, con.createArrayOf("bigint", ids));
+            return ps;
+        }, rs -> {
+            long id = rs.getLong(1);
+            // the full scan is ordered by id: hand each portfolio over as soon as the next one starts
+            if (ids == null && id != current[0] && current[0] != Long.MIN_VALUE) {
+                consumer.accept(current[0], rms.remove(current[0]), grouped.remove(current[0]));
+            }
+            current[0] = id;
+            rms.put(id, rs.getString(2));
+            List<PositionRow> rows = grouped.computeIfAbsent(id, k -> new ArrayList<>());
+            PositionRow row = row(rs);
+            if (row != null) rows.add(row);
+        });
+
+        grouped.forEach((id, rows) -> consumer.accept(id, rms.get(id), rows));
+    }
+
+    private static PositionRow row(ResultSet rs) throws SQLException {
+        String category = rs.getString(3);
+        if (category == null) return null;     // portfolio without positions
+        return new PositionRow(Category.valueOf(category), rs.getString(4), rs.getLong(5),
+                rs.getBigDecimal(6), rs.getBigDecimal(7));
+    }
+
+    private static void sleepQuietly() {
+        try {
+            Thread.sleep(POLL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
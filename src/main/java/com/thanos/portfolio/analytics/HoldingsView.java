@@ -0,0 +1,20 @@
+package com.thanos.portfolio.analytics;
+
+import java.util.List;
+
+// An in-memory projection of portfolio_positions kept current by HoldingsFeed
+public interface HoldingsView {
+
+    // Full load: the view builds a new state off to the side and swaps it in on finish()
+    Loader newLoader();
+
+    // Replaces everything the view knows about one portfolio; empty rows means it holds nothing
+    // (or no longer exists). rmId is null for a deleted portfolio.
+    void update(long portfolioId, String rmId, List<PositionRow> rows);
+
+    interface Loader {
+        void add(long portfolioId, String rmId, List<PositionRow> rows);
+
+        void finish();
+    }
+}
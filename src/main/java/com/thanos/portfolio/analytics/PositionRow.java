@@ -0,0 +1,14 @@
+package com.thanos.portfolio.analytics;
+
+import com.thanos.portfolio.model.Category;
+
+import java.math.BigDecimal;
+
+// One portfolio_positions row as the in-memory views see it
+public record PositionRow(
+        Category category,
+        String ticker,
+        long quantity,
+        BigDecimal avgPrice,
+        BigDecimal totalAmount
+) {}
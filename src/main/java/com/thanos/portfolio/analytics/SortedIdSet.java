@@ -0,0 +1,48 @@
+package com.thanos.portfolio.analytics;
+
+import java.util.Arrays;
+
+// Sorted, duplicate-free portfolio ids in one primitive array. Not thread-safe; TickerIndex guards it.
+final class SortedIdSet {
+
+    private long[] ids = new long[4];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    long get(int i) {
+        return ids[i];
+    }
+
+    boolean contains(long id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    boolean add(long id) {
+        int at = Arrays.binarySearch(ids, 0, size, id);
+        if (at >= 0) return false;
+        at = -at - 1;
+        if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+        System.arraycopy(ids, at, ids, at + 1, size - at);
+        ids[at] = id;
+        size++;
+        return true;
+    }
+
+    boolean remove(long id) {
+        int at = Arrays.binarySearch(ids, 0, size, id);
+        if (at < 0) return false;
+        System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+        size--;
+        if (size > 16 && size < ids.length / 4) ids = Arrays.copyOf(ids, ids.length / 2);
+        return true;
+    }
+
+    // Index of the first id greater than `after`
+    int firstAfter(long after) {
+        int at = Arrays.binarySearch(ids, 0, size, after);
+        return at >= 0 ? at + 1 : -at - 1;
+    }
+}
@@ -0,0 +1,178 @@
+package com.thanos.portfolio.analytics;
+
+import com.thanos.portfolio.dto.HoldersPage;
+import com.thanos.portfolio.model.Category;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Ticker -> portfolios holding it, overall and per category. Pages are cut straight from the sorted
+// sets: intersections walk the smallest set and probe the others, unions merge from the cursor on,
+// so a page costs about `limit` steps whatever the size of the sets.
+@Component
+public class TickerIndex implements HoldingsView {
+
+    public enum Match { ANY, ALL }
+
+    private static final SortedIdSet EMPTY = new SortedIdSet();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state = new State();     // guarded by lock
+
+    static final class State {
+        final Map<String, SortedIdSet> byTicker = new HashMap<>();
+        final Map<String, SortedIdSet[]> byTickerCategory = new HashMap<>();
+        final Map<Long, Set<Key>> heldBy = new HashMap<>();
+
+        void put(long portfolioId, List<PositionRow> rows) {
+            Set<Key> next = new HashSet<>();
+            for (PositionRow r : rows) {
+                if (r.ticker() != null && r.category() != null) {
+                    next.add(new Key(r.ticker().toUpperCase(), r.category()));
+                }
+            }
+            Set<Key> prev = heldBy.getOrDefault(portfolioId, Set.of());
+            if (prev.equals(next)) return;
+
+            for (Key k : prev) {
+                if (!next.contains(k)) perCategory(k.ticker())[k.category().ordinal()].remove(portfolioId);
+            }
+            for (Key k : next) {
+                if (!prev.contains(k)) perCategory(k.ticker())[k.category().ordinal()].add(portfolioId);
+            }
+            Set<String> prevTickers = tickers(prev);
+            Set<String> nextTickers = tickers(next);
+            for (String t : prevTickers) {
+                if (!nextTickers.contains(t)) removeTicker(t, portfolioId);
+            }
+            for (String t : nextTickers) {
+                if (!prevTickers.contains(t)) byTicker.computeIfAbsent(t, k -> new SortedIdSet()).add(portfolioId);
+            }
+
+            if (next.isEmpty()) heldBy.remove(portfolioId); else heldBy.put(portfolioId, next);
+        }
+
+        private void removeTicker(String ticker, long portfolioId) {
+            SortedIdSet s = byTicker.get(ticker);
+            if (s == null) return;
+            s.remove(portfolioId);
+            if (s.size() == 0) {
+                byTicker.remove(ticker);
+                byTickerCategory.remove(ticker);
+            }
+        }
+
+        private SortedIdSet[] perCategory(String ticker) {
+            return byTickerCategory.computeIfAbsent(ticker, k -> {
+                SortedIdSet[] sets = new SortedIdSet[Category.values().length];
+                for (int i = 0; i < sets.length; i++) sets[i] = new SortedIdSet();
+                return sets;
+            });
+        }
+
+        private static Set<String> tickers(Set<Key> keys) {
+            Set<String> out = new HashSet<>();
+            for (Key k : keys) out.add(k.ticker());
+            return out;
+        }
+
+        SortedIdSet lookup(String ticker, Category category) {
+            if (category == null) return byTicker.getOrDefault(ticker, EMPTY);
+            SortedIdSet[] sets = byTickerCategory.get(ticker);
+            return sets == null ? EMPTY : sets[category.ordinal()];
+        }
+    }
+
+    private record Key(String ticker, Category category) {}
+
+    @Override
+    public Loader newLoader() {
+        State next = new State();
+        return new Loader() {
+            @Override
+            public void add(long portfolioId, String rmId, List<PositionRow> rows) {
+                next.put(portfolioId, rows);
+            }
+
+            @Override
+            public void finish() {
+                lock.writeLock().lock();
+                try {
+                    state = next;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void update(long portfolioId, String rmId, List<PositionRow> rows) {
+        lock.writeLock().lock();
+        try {
+            state.put(portfolioId, rows);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Portfolio ids strictly after `after` (null: from the start), ascending
+    public HoldersPage holders(List<String> tickers, Category category, Match match, Long after, int limit) {
+        if (tickers == null || tickers.isEmpty()) {
+            throw new IllegalArgumentException("At least one ticker is required");
+        }
+        List<String> normalized = tickers.stream().map(String::toUpperCase).distinct().toList();
+        long from = after == null ? Long.MIN_VALUE : after;
+
+        lock.readLock().lock();
+        try {
+            List<SortedIdSet> sets = new ArrayList<>(normalized.size());
+            for (String t : normalized) sets.add(state.lookup(t, category));
+
+            List<Long> ids = match == Match.ALL ? intersect(sets, from, limit) : union(sets, from, limit);
+            Long next = ids.size() == limit ? ids.get(limit - 1) : null;
+            return new HoldersPage(normalized, category, match, ids, next);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static List<Long> intersect(List<SortedIdSet> sets, long after, int limit) {
+        List<Long> out = new ArrayList<>();
+        if (limit <= 0) return out;
+        SortedIdSet smallest = sets.stream().min(Comparator.comparingInt(SortedIdSet::size)).orElseThrow();
+        for (int i = smallest.firstAfter(after); i < smallest.size() && out.size() < limit; i++) {
+            long id = smallest.get(i);
+            boolean inAll = true;
+            for (SortedIdSet s : sets) {
+                if (s != smallest && !s.contains(id)) { inAll = false; break; }
+            }
+            if (inAll) out.add(id);
+        }
+        return out;
+    }
+
+    static List<Long> union(List<SortedIdSet> sets, long after, int limit) {
+        List<Long> out = new ArrayList<>();
+        int[] pos = new int[sets.size()];
+        for (int s = 0; s < sets.size(); s++) pos[s] = sets.get(s).firstAfter(after);
+
+        while (out.size() < limit) {
+            long min = Long.MAX_VALUE;
+            boolean any = false;
+            for (int s = 0; s < sets.size(); s++) {
+                if (pos[s] < sets.get(s).size()) {
+                    min = Math.min(min, sets.get(s).get(pos[s]));
+                    any = true;
+                }
+            }
+            if (!any) break;
+            out.add(min);
+            for (int s = 0; s < sets.size(); s++) {
+                if (pos[s] < sets.get(s).size() && sets.get(s).get(pos[s]) == min) pos[s]++;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,19 @@
+package com.thanos.portfolio.cache;
+
+import com.thanos.portfolio.event.PortfolioChangedEvent;
+
+// Fans committed portfolio changes out to the other service instances
+public interface InvalidationBus {
+
+    // Called inside the writing transaction, so implementations may defer delivery until commit
+    void publish(PortfolioChangedEvent event);
+
+    void subscribe(Listener listener);
+
+    interface Listener {
+        void onChanged(PortfolioChangedEvent event);
+
+        // changes may have been missed (e.g. after a reconnect); drop everything
+        void onResync();
+    }
+}
@@ -0,0 +1,26 @@
+package com.thanos.portfolio.cache;
+
+import com.thanos.portfolio.event.PortfolioChangedEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Single-node stand-in: there are no other instances, so publishing only reaches in-process subscribers
+@Component
+@ConditionalOnProperty(name = "portfolio.cache.invalidation", havingValue = "local")
+public class LocalInvalidationBus implements InvalidationBus {
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(PortfolioChangedEvent event) {
+        listeners.forEach(l -> l.onChanged(event));
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,84 @@
+package com.thanos.portfolio.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.thanos.portfolio.dto.PortfolioCacheStats;
+import com.thanos.portfolio.dto.PortfolioResponse;
+import com.thanos.portfolio.event.PortfolioChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Built responses keyed both ways; the two maps share the same response instances
+@Component
+public class PortfolioCache {
+
+    private final boolean enabled;
+    private final Cache<Long, PortfolioResponse> byId;
+    private final Cache<String, PortfolioResponse> byUserId;
+
+    // Bumped on every invalidation; a load that overlapped one is not cached, so a read that
+    // raced a write can never be put back after the write's invalidation
+    private final AtomicLong generation = new AtomicLong();
+
+    public PortfolioCache(@Value("${portfolio.cache.enabled:true}") boolean enabled,
+                          @Value("${portfolio.cache.max-size:10000}") long maxSize,
+                          @Value("${portfolio.cache.ttl:10m}") Duration ttl) {
+        this.enabled = enabled;
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.byUserId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    public PortfolioResponse getById(Long id) {
+        return enabled ? byId.getIfPresent(id) : null;
+    }
+
+    public PortfolioResponse getByUserId(String userId) {
+        return enabled ? byUserId.getIfPresent(userId) : null;
+    }
+
+    public long beginLoad() {
+        return generation.get();
+    }
+
+    public void put(PortfolioResponse r, long loadGeneration) {
+        if (!enabled || generation.get() != loadGeneration) return;
+        byId.put(r.portfolioId(), r);
+        byUserId.put(r.userDetails().userId(), r);
+    }
+
+    public void invalidate(PortfolioChangedEvent e) {
+        generation.incrementAndGet();
+        if (e.portfolioId() != null) byId.invalidate(e.portfolioId());
+        if (e.userId() != null) byUserId.invalidate(e.userId());
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        byId.invalidateAll();
+        byUserId.invalidateAll();
+    }
+
+    public PortfolioCacheStats stats() {
+        CacheStats s = byId.stats().plus(byUserId.stats());
+        return new PortfolioCacheStats(
+                enabled,
+                byId.estimatedSize(),
+                s.hitCount(),
+                s.missCount(),
+                s.hitRate(),
+                s.evictionCount()
+        );
+    }
+}
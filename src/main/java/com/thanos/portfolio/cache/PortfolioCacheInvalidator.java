@@ -0,0 +1,39 @@
+package com.thanos.portfolio.cache;
+
+import com.thanos.portfolio.event.PortfolioChangedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+@Component
+public class PortfolioCacheInvalidator {
+
+    private final PortfolioCache cache;
+    private final InvalidationBus bus;
+
+    public PortfolioCacheInvalidator(PortfolioCache cache, InvalidationBus bus) {
+        this.cache = cache;
+        this.bus = bus;
+        bus.subscribe(new InvalidationBus.Listener() {
+            @Override
+            public void onChanged(PortfolioChangedEvent event) {
+                cache.invalidate(event);
+            }
+
+            @Override
+            public void onResync() {
+                cache.invalidateAll();
+            }
+        });
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void publish(PortfolioChangedEvent event) {
+        bus.publish(event);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void evict(PortfolioChangedEvent event) {
+        cache.invalidate(event);
+    }
+}
@@ -0,0 +1,137 @@
+package com.thanos.portfolio.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thanos.portfolio.event.PortfolioChangedEvent;
+import com.thanos.portfolio.shard.ShardContext;
+import com.thanos.portfolio.shard.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// NOTIFY is issued inside the writing transaction, so Postgres only delivers it if the write commits.
+// Sharded, a write notifies on its own shard, so there is one LISTEN connection per shard.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "portfolio.cache.invalidation", havingValue = "postgres", matchIfMissing = true)
+public class PostgresInvalidationBus implements InvalidationBus, SmartLifecycle {
+
+    private static final String CHANNEL = "portfolio_changed";
+    private static final int POLL_MILLIS = 5000;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final JdbcTemplate jdbc;
+    private final DataSource dataSource;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter router;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running;
+    private final List<Thread> listenerThreads = new ArrayList<>();
+
+    public PostgresInvalidationBus(JdbcTemplate jdbc, DataSource dataSource, ObjectMapper objectMapper, ShardRouter router) {
+        this.jdbc = jdbc;
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.router = router;
+    }
+
+    private record Message(String node, Long portfolioId, String userId, String rmId) {}
+
+    @Override
+    public void publish(PortfolioChangedEvent e) {
+        try {
+            String payload = objectMapper.writeValueAsString(new Message(nodeId, e.portfolioId(), e.userId(), e.rmId()));
+            jdbc.query("select pg_notify(?, ?)", rs -> null, CHANNEL, payload);
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to publish cache invalidation", ex);
+        }
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!router.enabled()) {
+            listenerThreads.add(Thread.ofVirtual().name("portfolio-invalidation-listener").start(this::listenLoop));
+            return;
+        }
+        for (String shard : router.shardNames()) {
+            listenerThreads.add(Thread.ofVirtual().name("portfolio-invalidation-listener-" + shard)
+                    .start(() -> ShardContext.run(shard, this::listenLoop)));
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        listenerThreads.forEach(Thread::interrupt);
+        listenerThreads.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listenLoop() {
+        long backoff = 1000;
+        while (running) {
+            try (Connection c = dataSource.getConnection()) {
+                c.setAutoCommit(true);
+                try (Statement st = c.createStatement()) {
+                    st.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pg = c.unwrap(PGConnection.class);
+
+                // anything published while we were not listening is lost
+                listeners.forEach(Listener::onResync);
+                backoff = 1000;
+
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(POLL_MILLIS);
+                    if (notifications == null) continue;
+                    for (PGNotification n : notifications) {
+                        deliver(n.getParameter());
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) return;
+                log.warn("Lost LISTEN connection on {}, retrying in {} ms", CHANNEL, backoff, e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private void deliver(String payload) {
+        try {
+            Message m = objectMapper.readValue(payload, Message.class);
+            if (nodeId.equals(m.node())) return; // our own write, already evicted after commit
+            PortfolioChangedEvent e = new PortfolioChangedEvent(m.portfolioId(), m.userId(), m.rmId());
+            listeners.forEach(l -> l.onChanged(e));
+        } catch (Exception e) {
+            log.warn("Ignoring malformed invalidation payload {}", payload, e);
+        }
+    }
+}
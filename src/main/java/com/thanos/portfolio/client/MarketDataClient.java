@@ -0,0 +1,14 @@
+package com.thanos.portfolio.client;
+
+import com.thanos.portfolio.model.PriceRow;
+import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.web.bind.annotation.GetMapping;
+
+import java.util.List;
+
+@FeignClient(name = "market-data", url = "${portfolio.prices.market-data-url:http://localhost:8003}")
+public interface MarketDataClient {
+
+    @GetMapping("/api/v1/prices")
+    List<PriceRow> latestPrices();
+}
@@ -0,0 +1,58 @@
+package com.thanos.portfolio.config;
+
+import com.thanos.portfolio.shard.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+// With portfolio.sharding.enabled the application DataSource becomes a router over one pool per
+// shard; the lazy proxy defers picking the shard from transaction begin to the first statement.
+// Without it nothing here is created and ShardRouter passes every call straight through.
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+
+    @Configuration
+    @ConditionalOnProperty(name = "portfolio.sharding.enabled", havingValue = "true")
+    static class Enabled {
+
+        @Bean(destroyMethod = "close")
+        ShardSet shardSet(ShardingProperties props) {
+            return ShardSet.create(props);
+        }
+
+        @Bean
+        @Primary
+        DataSource dataSource(ShardSet shards) {
+            return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(shards));
+        }
+
+        @Bean
+        ShardRing shardRing(ShardingProperties props, ShardSet shards) {
+            for (String shard : props.ring()) shards.get(shard);
+            return new ShardRing(props.ring(), props.virtualNodes());
+        }
+
+        @Bean
+        ShardDirectory shardDirectory(ShardSet shards) {
+            return new ShardDirectory(new JdbcTemplate(shards.home()));
+        }
+
+        @Bean
+        ShardRebalancer shardRebalancer(ShardSet shards, ShardDirectory directory, ShardRing ring, ShardingProperties props) {
+            return new ShardRebalancer(shards, directory, ring, props);
+        }
+
+        @Bean
+        ShardSchema shardSchema(ShardSet shards, @Value("${spring.jpa.hibernate.ddl-auto:none}") String ddlAuto) {
+            return new ShardSchema(shards, "update".equalsIgnoreCase(ddlAuto));
+        }
+    }
+}
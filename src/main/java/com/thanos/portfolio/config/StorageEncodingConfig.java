@@ -0,0 +1,15 @@
+package com.thanos.portfolio.config;
+
+import com.thanos.portfolio.converter.ColumnCodec;
+import com.thanos.portfolio.converter.ColumnEncoding;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+// Converters are created by Hibernate, so the write encoding is handed to them through ColumnCodec
+@Configuration
+public class StorageEncodingConfig {
+
+    public StorageEncodingConfig(@Value("${portfolio.storage.encoding:JSON}") ColumnEncoding encoding) {
+        ColumnCodec.setWriteEncoding(encoding);
+    }
+}
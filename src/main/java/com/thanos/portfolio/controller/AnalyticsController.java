@@ -0,0 +1,64 @@
+package com.thanos.portfolio.controller;
+
+import com.thanos.portfolio.analytics.HoldingsBook;
+import com.thanos.portfolio.analytics.TickerIndex;
+import com.thanos.portfolio.dto.AumBreakdown;
+import com.thanos.portfolio.dto.HoldersPage;
+import com.thanos.portfolio.dto.HoldingAggregate;
+import com.thanos.portfolio.dto.HoldingsBookStats;
+import com.thanos.portfolio.dto.TickerExposure;
+import com.thanos.portfolio.model.Category;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/analytics")
+public class AnalyticsController {
+
+    private final HoldingsBook book;
+    private final TickerIndex index;
+
+    public AnalyticsController(HoldingsBook book, TickerIndex index) {
+        this.book = book;
+        this.index = index;
+    }
+
+    @GetMapping("/exposure/{ticker}")
+    public ResponseEntity<TickerExposure> exposure(@PathVariable String ticker) {
+        return ResponseEntity.of(book.exposure(ticker));
+    }
+
+    @GetMapping("/aum")
+    public ResponseEntity<AumBreakdown> aum(@RequestParam(required = false) String rmId) {
+        return ResponseEntity.ok(book.aum(rmId));
+    }
+
+    @GetMapping("/rm/{rmId}/top-holdings")
+    public ResponseEntity<List<HoldingAggregate>> topHoldings(@PathVariable String rmId,
+                                                              @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(book.topHoldings(rmId, Math.min(limit, 1000)));
+    }
+
+    @GetMapping("/top-holdings")
+    public ResponseEntity<List<HoldingAggregate>> firmTopHoldings(@RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(book.topHoldings(null, Math.min(limit, 1000)));
+    }
+
+    // ?ticker=SPY&ticker=QQQ&match=ALL: portfolios holding both; match=ANY (default): either
+    @GetMapping("/holders")
+    public ResponseEntity<HoldersPage> holders(@RequestParam("ticker") List<String> tickers,
+                                               @RequestParam(required = false) String category,
+                                               @RequestParam(defaultValue = "ANY") TickerIndex.Match match,
+                                               @RequestParam(required = false) Long after,
+                                               @RequestParam(defaultValue = "500") int limit) {
+        Category c = category == null ? null : Category.fromWire(category);
+        return ResponseEntity.ok(index.holders(tickers, c, match, after, Math.clamp(limit, 1, 10_000)));
+    }
+
+    @GetMapping("/book/stats")
+    public ResponseEntity<HoldingsBookStats> stats() {
+        return ResponseEntity.ok(book.stats());
+    }
+}
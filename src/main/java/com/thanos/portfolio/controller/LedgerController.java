@@ -0,0 +1,53 @@
+package com.thanos.portfolio.controller;
+
+import com.thanos.portfolio.dto.LedgerHoldings;
+import com.thanos.portfolio.dto.LedgerTrade;
+import com.thanos.portfolio.service.PositionLedger;
+import com.thanos.portfolio.shard.ShardRouter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+@RestController
+@RequestMapping("/api/v1/portfolio/{id}/ledger")
+public class LedgerController {
+
+    private static final int MAX_TRADES = 5000;
+
+    private final PositionLedger ledger;
+    private final ShardRouter router;
+
+    public LedgerController(PositionLedger ledger, ShardRouter router) {
+        this.ledger = ledger;
+        this.router = router;
+    }
+
+    // ?asOf=2024-06-30T23:59:59Z; without it, the latest recorded state
+    @GetMapping("/holdings")
+    public ResponseEntity<LedgerHoldings> holdingsAsOf(@PathVariable Long id,
+                                                       @RequestParam(required = false) Instant asOf) {
+        try {
+            return ResponseEntity.of(router.onPortfolio(id, () -> ledger.asOf(id, asOf == null ? Instant.now() : asOf)));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @GetMapping("/trades")
+    public ResponseEntity<List<LedgerTrade>> trades(@PathVariable Long id,
+                                                    @RequestParam(required = false) Instant from,
+                                                    @RequestParam(required = false) Instant to,
+                                                    @RequestParam(defaultValue = "500") int limit) {
+        try {
+            return ResponseEntity.ok(router.onPortfolio(id, () -> ledger.trades(id,
+                    from == null ? Instant.EPOCH : from,
+                    to == null ? Instant.now() : to,
+                    Math.clamp(limit, 1, MAX_TRADES))));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.ok(List.of());
+        }
+    }
+}
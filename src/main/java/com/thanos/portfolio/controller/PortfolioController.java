@@ -1,52 +1,289 @@
 package com.thanos.portfolio.controller;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thanos.portfolio.dto.ApplyJobStatus;
+import com.thanos.portfolio.dto.ApplyRebalanceBatchRequest;
 import com.thanos.portfolio.dto.ApplyRebalanceRequest;
+import com.thanos.portfolio.dto.ApplyRebalanceResult;
+import com.thanos.portfolio.dto.ApplyStatus;
+import com.thanos.portfolio.dto.BulkUpsertResult;
+import com.thanos.portfolio.dto.DriftScanRequest;
+import com.thanos.portfolio.dto.DriftScanResult;
+import com.thanos.portfolio.dto.PortfolioCacheStats;
+import com.thanos.portfolio.dto.PortfolioChanges;
 import com.thanos.portfolio.dto.PortfolioCreateRequest;
+import com.thanos.portfolio.dto.PortfolioPage;
 import com.thanos.portfolio.dto.PortfolioResponse;
+import com.thanos.portfolio.dto.PortfolioSummary;
+import com.thanos.portfolio.dto.RebalancePlan;
+import com.thanos.portfolio.dto.RebalancePlanBatchRequest;
+import com.thanos.portfolio.dto.RebalancePlanRequest;
+import com.thanos.portfolio.dto.ReadStamp;
+import com.thanos.portfolio.service.ApplyCoalescer;
+import com.thanos.portfolio.service.ApplyJobQueue;
+import com.thanos.portfolio.service.DriftScanner;
+import com.thanos.portfolio.service.PortfolioBulkLoader;
+import com.thanos.portfolio.service.PortfolioExporter;
 import com.thanos.portfolio.service.PortfolioService;
+import com.thanos.portfolio.service.RebalancePlanner;
+import com.thanos.portfolio.service.UnknownPriceSnapshotException;
+import com.thanos.portfolio.shard.ShardRouter;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/v1/portfolio")
 public class PortfolioController {
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final PortfolioService service;
+    private final DriftScanner driftScanner;
+    private final RebalancePlanner planner;
+    private final ApplyCoalescer applyCoalescer;
+    private final ApplyJobQueue applyJobs;
+    private final PortfolioBulkLoader bulkLoader;
+    private final PortfolioExporter exporter;
+    private final ShardRouter router;
+    private final ObjectMapper objectMapper;
 
-    public PortfolioController(PortfolioService service) {
+    public PortfolioController(PortfolioService service, DriftScanner driftScanner, RebalancePlanner planner,
+                               ApplyCoalescer applyCoalescer, ApplyJobQueue applyJobs, PortfolioBulkLoader bulkLoader,
+                               PortfolioExporter exporter, ShardRouter router, ObjectMapper objectMapper) {
         this.service = service;
+        this.driftScanner = driftScanner;
+        this.planner = planner;
+        this.applyCoalescer = applyCoalescer;
+        this.applyJobs = applyJobs;
+        this.bulkLoader = bulkLoader;
+        this.exporter = exporter;
+        this.router = router;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
     public ResponseEntity<PortfolioResponse> createOrUpdate(@RequestBody PortfolioCreateRequest req) {
-        return ResponseEntity.ok(service.createOrUpdate(req));
+        String userId = req.userDetails() == null ? null : req.userDetails().userId();
+        String rmId = req.rmDetails() == null ? null : req.rmDetails().rmId();
+        return ResponseEntity.ok(router.place(userId, rmId, () -> service.createOrUpdate(req), PortfolioResponse::portfolioId));
+    }
+
+    // Body: a JSON array of create requests, NDJSON, or CSV in the static/portfolios.csv layout
+    @PostMapping(value = "/bulk", consumes = {"application/json", "application/x-ndjson", "text/csv"})
+    public ResponseEntity<BulkUpsertResult> bulkUpsert(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                       InputStream body) throws IOException {
+        PortfolioBulkLoader.Format format = NDJSON.isCompatibleWith(contentType) ? PortfolioBulkLoader.Format.NDJSON
+                : MediaType.valueOf("text/csv").isCompatibleWith(contentType) ? PortfolioBulkLoader.Format.CSV
+                : PortfolioBulkLoader.Format.JSON;
+        return ResponseEntity.ok(bulkLoader.load(body, format));
+    }
+
+    // Every portfolio, streamed from a database cursor: NDJSON of responses, or CSV that /bulk reads back
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format,
+                                                        @RequestParam(defaultValue = "false") boolean gzip) {
+        PortfolioExporter.Format f = PortfolioExporter.Format.valueOf(format.toUpperCase());
+        String filename = "portfolios." + f.name().toLowerCase() + (gzip ? ".gz" : "");
+        MediaType type = gzip ? MediaType.parseMediaType("application/gzip")
+                : f == PortfolioExporter.Format.CSV ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+                : NDJSON;
+
+        StreamingResponseBody body = out -> {
+            if (!gzip) {
+                exporter.export(f, out);
+                return;
+            }
+            try (OutputStream zipped = new GZIPOutputStream(out, 64 * 1024)) {
+                exporter.export(f, zipped);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(type)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
     }
 
+    // The stamp is read before the body: a write in between costs the client one extra download, never a stale 304
     @GetMapping("/user/{userId}")
-    public ResponseEntity<PortfolioResponse> getByUserId(@PathVariable String userId) {
-        return ResponseEntity.ok(service.getByUserId(userId));
+    public ResponseEntity<PortfolioResponse> getByUserId(@PathVariable String userId, WebRequest request) {
+        return router.onUser(userId, () -> {
+            ReadStamp stamp = service.stampByUserId(userId);
+            if (notModified(request, "user", stamp)) return null;
+            return validators(ResponseEntity.ok(), "user", stamp).body(service.getByUserId(userId));
+        });
     }
 
     @GetMapping("/rm/{rmId}")
-    public ResponseEntity<List<PortfolioResponse>> getByRmId(@PathVariable String rmId) {
-        return ResponseEntity.ok(service.getByRmId(rmId));
+    public ResponseEntity<List<PortfolioResponse>> getByRmId(@PathVariable String rmId,
+                                                             @RequestParam(required = false) Long after,
+                                                             @RequestParam(required = false) Integer limit,
+                                                             WebRequest request) {
+        return router.onRm(rmId, () -> {
+            ReadStamp stamp = service.stampByRmId(rmId);
+            if (notModified(request, "rm", stamp)) return null;
+
+            if (after == null && limit == null) {
+                return validators(ResponseEntity.ok(), "rm", stamp).body(service.getByRmId(rmId));
+            }
+
+            int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+            PortfolioPage page = service.getByRmIdPage(rmId, after, pageSize);
+
+            ResponseEntity.BodyBuilder ok = validators(ResponseEntity.ok(), "rm", stamp);
+            if (page.nextCursor() != null) {
+                ok.header("X-Next-Cursor", page.nextCursor().toString());
+            }
+            return ok.body(page.items());
+        });
+    }
+
+    @GetMapping(value = "/rm/{rmId}/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamByRmId(@PathVariable String rmId) {
+        // runs later, on the async thread that writes the response
+        StreamingResponseBody body = out -> router.onRm(rmId, () -> {
+            service.streamByRmId(rmId, r -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(r));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return null;
+        });
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    // Only what changed since the last poll; start with the full /rm/{rmId} read, then follow `next`
+    @GetMapping("/rm/{rmId}/changes")
+    public ResponseEntity<PortfolioChanges> changedSince(@PathVariable String rmId,
+                                                         @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                                         LocalDateTime since) {
+        return ResponseEntity.ok(router.onRm(rmId, () -> service.changedSince(rmId, since)));
+    }
+
+    @GetMapping("/rm/{rmId}/summary")
+    public ResponseEntity<List<PortfolioSummary>> getSummariesByRmId(@PathVariable String rmId) {
+        return ResponseEntity.ok(router.onRm(rmId, () -> service.getSummariesByRmId(rmId)));
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<PortfolioCacheStats> cacheStats() {
+        return ResponseEntity.ok(service.cacheStats());
+    }
+
+    @PostMapping("/drift/scan")
+    public ResponseEntity<DriftScanResult> scanDrift(@RequestBody(required = false) DriftScanRequest req) {
+        return ResponseEntity.ok(driftScanner.scan(req == null ? new DriftScanRequest(null, null, null) : req));
+    }
+
+    @PostMapping("/{id}/plan")
+    public ResponseEntity<RebalancePlan> plan(@PathVariable Long id, @RequestBody RebalancePlanRequest req) {
+        return ResponseEntity.ok(router.onPortfolio(id, () -> planner.plan(id, req.priceFrame())));
+    }
+
+    @PostMapping("/plan/batch")
+    public ResponseEntity<List<RebalancePlan>> planBatch(@RequestBody RebalancePlanBatchRequest req) {
+        if (req.portfolioIds() == null || req.portfolioIds().isEmpty()) {
+            return ResponseEntity.ok(router.onRm(req.rmId(), () -> planner.planBatch(req)));
+        }
+        List<RebalancePlan> plans = new ArrayList<>(router.onPortfolios(req.portfolioIds(),
+                ids -> planner.planBatch(new RebalancePlanBatchRequest(null, ids, req.priceFrame()))));
+        plans.sort(Comparator.comparing(RebalancePlan::portfolioId));
+        return ResponseEntity.ok(plans);
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<PortfolioResponse> getById(@PathVariable Long id) {
-        return ResponseEntity.ok(service.getById(id));
+        return ResponseEntity.ok(router.onPortfolio(id, () -> service.getById(id)));
     }
 
     @PostMapping("/apply")
     public ResponseEntity<Void> apply(@RequestBody ApplyRebalanceRequest req) {
         try {
-            service.applyRebalance(req);
+            applyCoalescer.apply(req);
             return ResponseEntity.ok().build();
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
     }
 
-}
\ No newline at end of file
+    // 202 once the job is stored; poll the Location for the outcome. A resubmitted rebalance gets its existing job back.
+    @PostMapping("/apply/async")
+    public ResponseEntity<ApplyJobStatus> applyAsync(@RequestBody ApplyRebalanceRequest req) {
+        ApplyJobStatus job;
+        try {
+            job = applyJobs.submit(req);
+        } catch (UnknownPriceSnapshotException e) {
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/portfolio/apply/jobs/" + job.jobId()))
+                .body(job);
+    }
+
+    @GetMapping("/apply/jobs/{jobId}")
+    public ResponseEntity<ApplyJobStatus> applyJob(@PathVariable Long jobId) {
+        return ResponseEntity.of(applyJobs.status(jobId));
+    }
+
+    @PostMapping("/apply/batch")
+    public ResponseEntity<List<ApplyRebalanceResult>> applyBatch(@RequestBody ApplyRebalanceBatchRequest req) {
+        try {
+            List<ApplyRebalanceRequest> items = req.requests() == null ? List.of() : req.requests();
+            return ResponseEntity.ok(router.splitByPortfolio(items, ApplyRebalanceRequest::portfolioId,
+                    r -> ApplyRebalanceResult.failed(r, "Portfolio not found for id=" + r.portfolioId()),
+                    r -> r.status() == ApplyStatus.FAILED,
+                    share -> service.applyRebalanceBatch(
+                            new ApplyRebalanceBatchRequest(share, req.priceFrame(), req.priceSnapshotId()))));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean notModified(WebRequest request, String scope, ReadStamp stamp) {
+        if (stamp.count() == 0) return false;
+        return request.checkNotModified(etag(scope, stamp), lastModified(stamp));
+    }
+
+    private static ResponseEntity.BodyBuilder validators(ResponseEntity.BodyBuilder ok, String scope, ReadStamp stamp) {
+        if (stamp.count() == 0) return ok;
+        return ok.eTag(etag(scope, stamp)).lastModified(lastModified(stamp));
+    }
+
+    private static String etag(String scope, ReadStamp stamp) {
+        return "\"" + scope + "-" + stamp.count() + "-" + stamp.versionSum() + "-" + stamp.idSum() + "\"";
+    }
+
+    // updated_on is written in the JVM's zone (Hibernate timestamps a LocalDateTime with the local clock)
+    private static long lastModified(ReadStamp stamp) {
+        return stamp.lastModified().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
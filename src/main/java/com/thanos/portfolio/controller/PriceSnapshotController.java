@@ -0,0 +1,46 @@
+package com.thanos.portfolio.controller;
+
+import com.thanos.portfolio.dto.PriceSnapshotInfo;
+import com.thanos.portfolio.model.PriceRow;
+import com.thanos.portfolio.model.PriceSnapshot;
+import com.thanos.portfolio.service.PriceSnapshotStore;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/prices/snapshots")
+public class PriceSnapshotController {
+
+    private final PriceSnapshotStore store;
+
+    public PriceSnapshotController(PriceSnapshotStore store) {
+        this.store = store;
+    }
+
+    @PostMapping
+    public ResponseEntity<PriceSnapshotInfo> push(@RequestBody List<PriceRow> rows) {
+        return ResponseEntity.ok(PriceSnapshotInfo.of(store.publish(rows, "push")));
+    }
+
+    @PostMapping("/refresh")
+    public ResponseEntity<PriceSnapshotInfo> refresh() {
+        return ResponseEntity.ok(PriceSnapshotInfo.of(store.refresh()));
+    }
+
+    @GetMapping
+    public ResponseEntity<List<PriceSnapshotInfo>> list() {
+        return ResponseEntity.ok(store.retained().stream().map(PriceSnapshotInfo::of).toList());
+    }
+
+    @GetMapping("/latest")
+    public ResponseEntity<PriceSnapshot> latest() {
+        return ResponseEntity.of(store.latest());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<PriceSnapshot> get(@PathVariable long id) {
+        return ResponseEntity.of(store.find(id));
+    }
+}
@@ -0,0 +1,50 @@
+package com.thanos.portfolio.controller;
+
+import com.thanos.portfolio.shard.ShardDirectory;
+import com.thanos.portfolio.shard.ShardRebalancer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+// Operator endpoints for resharding; moves run on the request thread, one book at a time
+@RestController
+@RequestMapping("/api/v1/shards")
+@ConditionalOnProperty(name = "portfolio.sharding.enabled", havingValue = "true")
+public class ShardController {
+
+    private final ShardDirectory directory;
+    private final ShardRebalancer rebalancer;
+
+    public ShardController(ShardDirectory directory, ShardRebalancer rebalancer) {
+        this.directory = directory;
+        this.rebalancer = rebalancer;
+    }
+
+    @GetMapping("/placements")
+    public ResponseEntity<List<ShardDirectory.Placement>> placements() {
+        return ResponseEntity.ok(directory.placements());
+    }
+
+    @PostMapping("/rm/{rmId}/move")
+    public ResponseEntity<ShardRebalancer.MoveResult> move(@PathVariable String rmId, @RequestParam String to) {
+        return ResponseEntity.ok(rebalancer.moveRm(rmId, to));
+    }
+
+    // After a change to portfolio.sharding.ring: every book whose ring shard is not where it lives moves there
+    @PostMapping("/rebalance")
+    public ResponseEntity<List<ShardRebalancer.MoveResult>> rebalance() {
+        return ResponseEntity.ok(rebalancer.rebalance());
+    }
+
+    @PostMapping("/cleanup")
+    public ResponseEntity<Integer> cleanup() {
+        return ResponseEntity.ok(rebalancer.cleanup());
+    }
+
+    @PostMapping("/directory/backfill")
+    public ResponseEntity<Integer> backfillDirectory() {
+        return ResponseEntity.ok(rebalancer.backfillDirectory());
+    }
+}
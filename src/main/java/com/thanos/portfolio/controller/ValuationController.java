@@ -0,0 +1,56 @@
+package com.thanos.portfolio.controller;
+
+import com.thanos.portfolio.dto.ValuationPoint;
+import com.thanos.portfolio.service.ValuationHistory;
+import com.thanos.portfolio.shard.ShardRouter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+@RestController
+@RequestMapping("/api/v1/portfolio")
+public class ValuationController {
+
+    private static final int DEFAULT_DAYS = 365;
+
+    private final ValuationHistory history;
+    private final ShardRouter router;
+    private final ZoneId zone;
+
+    public ValuationController(ValuationHistory history, ShardRouter router,
+                               @Value("${portfolio.valuations.zone:UTC}") ZoneId zone) {
+        this.history = history;
+        this.router = router;
+        this.zone = zone;
+    }
+
+    // ?from=2024-01-01&to=2024-12-31&interval=WEEK; dates are inclusive, points sit on each bucket's first day
+    @GetMapping("/{id}/valuations")
+    public ResponseEntity<List<ValuationPoint>> portfolio(@PathVariable Long id,
+                                                          @RequestParam(required = false) LocalDate from,
+                                                          @RequestParam(required = false) LocalDate to,
+                                                          @RequestParam(defaultValue = "DAY") ValuationHistory.Interval interval) {
+        LocalDate end = to == null ? LocalDate.now(zone) : to;
+        LocalDate start = from == null ? end.minusDays(DEFAULT_DAYS) : from;
+        try {
+            return ResponseEntity.ok(router.onPortfolio(id, () -> history.series(id, start, end, interval)));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.ok(List.of());
+        }
+    }
+
+    @GetMapping("/rm/{rmId}/valuations")
+    public ResponseEntity<List<ValuationPoint>> rmBook(@PathVariable String rmId,
+                                                       @RequestParam(required = false) LocalDate from,
+                                                       @RequestParam(required = false) LocalDate to,
+                                                       @RequestParam(defaultValue = "DAY") ValuationHistory.Interval interval) {
+        LocalDate end = to == null ? LocalDate.now(zone) : to;
+        LocalDate start = from == null ? end.minusDays(DEFAULT_DAYS) : from;
+        return ResponseEntity.ok(router.onRm(rmId, () -> history.rmSeries(rmId, start, end, interval)));
+    }
+}
@@ -0,0 +1,92 @@
+package com.thanos.portfolio.converter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Binary encodings are stored as a marker + base64 so the columns stay TEXT and old JSON rows
+// (which never start with a marker) keep reading back unchanged
+public final class ColumnCodec {
+
+    private static final String SMILE_MARKER = "~s1:";
+    private static final String SMILE_DEFLATE_MARKER = "~z1:";
+
+    private static final ObjectMapper SMILE = new ObjectMapper(new SmileFactory());
+
+    private static volatile ColumnEncoding writeEncoding = ColumnEncoding.JSON;
+
+    private ColumnCodec() {}
+
+    public static ColumnEncoding getWriteEncoding() {
+        return writeEncoding;
+    }
+
+    public static void setWriteEncoding(ColumnEncoding encoding) {
+        writeEncoding = encoding;
+    }
+
+    public static ColumnEncoding encodingOf(String dbData) {
+        if (dbData.startsWith(SMILE_DEFLATE_MARKER)) return ColumnEncoding.SMILE_DEFLATE;
+        if (dbData.startsWith(SMILE_MARKER)) return ColumnEncoding.SMILE;
+        return ColumnEncoding.JSON;
+    }
+
+    public static String encode(Object value) throws IOException {
+        return encode(value, writeEncoding);
+    }
+
+    public static String encode(Object value, ColumnEncoding encoding) throws IOException {
+        return switch (encoding) {
+            case JSON -> JsonConverter.OM.writeValueAsString(value);
+            case SMILE -> SMILE_MARKER + Base64.getEncoder().encodeToString(SMILE.writeValueAsBytes(value));
+            case SMILE_DEFLATE -> SMILE_DEFLATE_MARKER + Base64.getEncoder().encodeToString(deflate(SMILE.writeValueAsBytes(value)));
+        };
+    }
+
+    public static <T> T decode(String dbData, Class<T> type) throws IOException {
+        return decode(dbData, JsonConverter.OM.getTypeFactory().constructType(type));
+    }
+
+    public static <T> T decode(String dbData, TypeReference<T> type) throws IOException {
+        return decode(dbData, JsonConverter.OM.getTypeFactory().constructType(type));
+    }
+
+    private static <T> T decode(String dbData, JavaType type) throws IOException {
+        return switch (encodingOf(dbData)) {
+            case JSON -> JsonConverter.OM.readValue(dbData, type);
+            case SMILE -> SMILE.readValue(payload(dbData, SMILE_MARKER), type);
+            case SMILE_DEFLATE -> {
+                try (InputStream in = new InflaterInputStream(
+                        new ByteArrayInputStream(payload(dbData, SMILE_DEFLATE_MARKER)), new Inflater(true))) {
+                    yield SMILE.readValue(in, type);
+                }
+            }
+        };
+    }
+
+    private static byte[] payload(String dbData, String marker) {
+        return Base64.getDecoder().decode(dbData.substring(marker.length()));
+    }
+
+    private static byte[] deflate(byte[] raw) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(raw.length / 2 + 16);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bos, deflater)) {
+            out.write(raw);
+        } finally {
+            deflater.end();
+        }
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,7 @@
+package com.thanos.portfolio.converter;
+
+public enum ColumnEncoding {
+    JSON,
+    SMILE,
+    SMILE_DEFLATE
+}
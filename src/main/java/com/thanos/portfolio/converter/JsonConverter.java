@@ -5,12 +5,17 @@ import jakarta.persistence.AttributeConverter;
 public abstract class JsonConverter<T> implements AttributeConverter<T, String> {
     protected static final ObjectMapper OM = new ObjectMapper();
 
+    private final ColumnMeters meters = new ColumnMeters(column());
+
     protected abstract Class<T> clazz();
 
+    // column name the size and decode meters are tagged with
+    protected abstract String column();
+
     @Override
     public String convertToDatabaseColumn(T attribute) {
         try {
-            return attribute == null ? null : OM.writeValueAsString(attribute);
+            return attribute == null ? null : meters.written(ColumnCodec.encode(attribute));
         } catch (Exception e) {
             throw new RuntimeException("Failed to serialize JSON", e);
         }
@@ -19,7 +24,9 @@ public abstract class JsonConverter<T> implements AttributeConverter<T, String>
     @Override
     public T convertToEntityAttribute(String dbData) {
         try {
-            return dbData == null ? null : OM.readValue(dbData, clazz());
+            if (dbData == null) return null;
+            long start = System.nanoTime();
+            return meters.read(dbData, start, ColumnCodec.decode(dbData, clazz()));
         } catch (Exception e) {
             throw new RuntimeException("Failed to deserialize JSON", e);
         }
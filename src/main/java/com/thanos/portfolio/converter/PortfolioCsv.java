@@ -0,0 +1,85 @@
+package com.thanos.portfolio.converter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.thanos.portfolio.dto.PortfolioCreateRequest;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.RMDetails;
+import com.thanos.portfolio.model.StockPositionInput;
+import com.thanos.portfolio.model.UserDetails;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The static/portfolios.csv layout: a dump of the portfolios table, JSON columns as quoted JSON
+public final class PortfolioCsv {
+
+    public static final List<String> HEADER = List.of(
+            "id", "created_on", "portfolio", "rm_details", "rm_id", "target_state", "updated_on",
+            "user_details", "user_id", "cooldown_days", "drift_threshold_abs", "trigger_mode", "free_cash");
+
+    private final ObjectReader holdings;
+    private final ObjectReader targetState;
+    private final ObjectReader user;
+    private final ObjectReader rm;
+    private final Map<String, Integer> columns = new HashMap<>();
+
+    // header: the file's own first record; columns may come in any order, unknown ones are ignored
+    public PortfolioCsv(ObjectMapper objectMapper, List<String> header) {
+        // positions in the dump carry computed fields (percentageOfPortfolio, totalAmount) that the request recomputes
+        ObjectReader lenient = objectMapper.reader().without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.holdings = lenient.forType(new TypeReference<Map<Category, List<StockPositionInput>>>() {});
+        this.targetState = lenient.forType(new TypeReference<Map<Category, BigDecimal>>() {});
+        this.user = lenient.forType(UserDetails.class);
+        this.rm = lenient.forType(RMDetails.class);
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(), i);
+        }
+        for (String required : List.of("portfolio", "rm_details", "target_state", "user_details")) {
+            if (!columns.containsKey(required)) {
+                throw new IllegalArgumentException("CSV header is missing column " + required);
+            }
+        }
+    }
+
+    public PortfolioCreateRequest toRequest(List<String> row) throws IOException {
+        return new PortfolioCreateRequest(
+                user.readValue(required(row, "user_details")),
+                rm.readValue(required(row, "rm_details")),
+                holdings.readValue(required(row, "portfolio")),
+                targetState.readValue(required(row, "target_state")),
+                decimal(row, "free_cash"),
+                decimal(row, "drift_threshold_abs"),
+                integer(row, "cooldown_days"),
+                cell(row, "trigger_mode")
+        );
+    }
+
+    private String required(List<String> row, String column) {
+        String v = cell(row, column);
+        if (v == null) throw new IllegalArgumentException(column + " is required");
+        return v;
+    }
+
+    private BigDecimal decimal(List<String> row, String column) {
+        String v = cell(row, column);
+        return v == null ? null : new BigDecimal(v);
+    }
+
+    private Integer integer(List<String> row, String column) {
+        String v = cell(row, column);
+        return v == null ? null : Integer.valueOf(v);
+    }
+
+    private String cell(List<String> row, String column) {
+        Integer i = columns.get(column);
+        if (i == null || i >= row.size()) return null;
+        String v = row.get(i).trim();
+        return v.isEmpty() ? null : v;
+    }
+}
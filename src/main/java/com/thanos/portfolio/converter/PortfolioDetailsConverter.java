@@ -9,6 +9,9 @@ import jakarta.persistence.Converter;
 import java.util.List;
 import java.util.Map;
 
+// The legacy holdings column. Holdings live in portfolio_positions and the column is emptied on a
+// portfolio's first write, so it is only read back. Anything written to it is JSON whatever
+// portfolio.storage.encoding says; rows stored in a binary encoding earlier keep reading.
 @Converter
 public class PortfolioDetailsConverter
         implements AttributeConverter<Map<Category, List<StockPosition>>, String> {
@@ -16,10 +19,13 @@ public class PortfolioDetailsConverter
     private static final TypeReference<Map<Category, List<StockPosition>>> TYPE =
             new TypeReference<>() {};
 
+    private static final ColumnMeters METERS = new ColumnMeters("portfolio");
+
     @Override
     public String convertToDatabaseColumn(Map<Category, List<StockPosition>> attribute) {
         try {
-            return attribute == null ? null : JsonConverter.OM.writeValueAsString(attribute);
+            if (attribute == null) return null;
+            return METERS.written(ColumnCodec.encode(attribute, ColumnEncoding.JSON));
         } catch (Exception e) {
             throw new RuntimeException("Failed to serialize portfolio JSON", e);
         }
@@ -28,9 +34,11 @@ public class PortfolioDetailsConverter
     @Override
     public Map<Category, List<StockPosition>> convertToEntityAttribute(String dbData) {
         try {
-            return dbData == null ? null : JsonConverter.OM.readValue(dbData, TYPE);
+            if (dbData == null) return null;
+            long start = System.nanoTime();
+            return METERS.read(dbData, start, ColumnCodec.decode(dbData, TYPE));
         } catch (Exception e) {
             throw new RuntimeException("Failed to deserialize portfolio JSON", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -6,4 +6,5 @@ import jakarta.persistence.Converter;
 @Converter
 public class RMDetailsConverter extends JsonConverter<RMDetails> {
     @Override protected Class<RMDetails> clazz() { return RMDetails.class; }
+    @Override protected String column() { return "rm_details"; }
 }
\ No newline at end of file
@@ -12,11 +12,12 @@ import java.util.Map;
 public class TargetStateConverter implements AttributeConverter<Map<Category, BigDecimal>, String> {
 
     private static final TypeReference<Map<Category, BigDecimal>> TYPE = new TypeReference<>() {};
+    private static final ColumnMeters METERS = new ColumnMeters("target_state");
 
     @Override
     public String convertToDatabaseColumn(Map<Category, BigDecimal> attribute) {
         try {
-            return attribute == null ? null : JsonConverter.OM.writeValueAsString(attribute);
+            return attribute == null ? null : METERS.written(ColumnCodec.encode(attribute));
         } catch (Exception e) {
             throw new RuntimeException("Failed to serialize target_state JSON", e);
         }
@@ -25,7 +26,9 @@ public class TargetStateConverter implements AttributeConverter<Map<Category, Bi
     @Override
     public Map<Category, BigDecimal> convertToEntityAttribute(String dbData) {
         try {
-            return dbData == null ? null : JsonConverter.OM.readValue(dbData, TYPE);
+            if (dbData == null) return null;
+            long start = System.nanoTime();
+            return METERS.read(dbData, start, ColumnCodec.decode(dbData, TYPE));
         } catch (Exception e) {
             throw new RuntimeException("Failed to deserialize target_state JSON", e);
         }
@@ -5,4 +5,5 @@ import jakarta.persistence.Converter;
 @Converter
 public class UserDetailsConverter extends JsonConverter<UserDetails> {
     @Override protected Class<UserDetails> clazz() { return UserDetails.class; }
+    @Override protected String column() { return "user_details"; }
 }
@@ -0,0 +1,113 @@
+package com.thanos.portfolio.converter;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Packs up to CHUNK_DAYS daily points of one portfolio into a few hundred bytes. Layout:
+// version, point count, then per point the day as a varint delta (first point: offset into the
+// chunk) followed by every field as a zigzag varint delta against the previous point.
+// Day-to-day valuations barely move, so most fields cost one to three bytes.
+public final class ValuationChunkCodec {
+
+    public static final int CHUNK_DAYS = 64;
+
+    private static final int VERSION = 1;
+
+    public record Point(int epochDay, long[] fields) {}
+
+    private ValuationChunkCodec() {}
+
+    public static int chunkOf(int epochDay) {
+        return Math.floorDiv(epochDay, CHUNK_DAYS);
+    }
+
+    // points must belong to chunkNo, be sorted by day with no repeats, and all carry `width` fields
+    public static byte[] encode(int chunkNo, int width, List<Point> points) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + points.size() * (width + 1) * 2);
+        writeVarint(out, VERSION);
+        writeVarint(out, width);
+        writeVarint(out, points.size());
+
+        int prevDay = chunkNo * CHUNK_DAYS;
+        long[] prev = new long[width];
+        for (Point p : points) {
+            if (p.epochDay() < prevDay || chunkOf(p.epochDay()) != chunkNo || p.fields().length != width) {
+                throw new IllegalArgumentException("Point for day " + p.epochDay() + " does not fit chunk " + chunkNo);
+            }
+            writeVarint(out, p.epochDay() - prevDay);
+            for (int f = 0; f < width; f++) {
+                writeVarint(out, zigzag(p.fields()[f] - prev[f]));
+            }
+            prevDay = p.epochDay();
+            prev = p.fields();
+        }
+        return out.toByteArray();
+    }
+
+    public static List<Point> decode(int chunkNo, byte[] data) {
+        int[] pos = {0};
+        int version = (int) readVarint(data, pos);
+        if (version != VERSION) {
+            throw new IllegalStateException("Unknown valuation chunk version " + version);
+        }
+        int width = (int) readVarint(data, pos);
+        int count = (int) readVarint(data, pos);
+
+        List<Point> points = new ArrayList<>(count);
+        int day = chunkNo * CHUNK_DAYS;
+        long[] prev = new long[width];
+        for (int i = 0; i < count; i++) {
+            day += (int) readVarint(data, pos);
+            long[] fields = new long[width];
+            for (int f = 0; f < width; f++) {
+                fields[f] = prev[f] + unzigzag(readVarint(data, pos));
+            }
+            points.add(new Point(day, fields));
+            prev = fields;
+        }
+        return points;
+    }
+
+    // Replaces the point for p's day (intraday re-valuations keep only the latest), keeping day order
+    public static List<Point> upsert(List<Point> points, Point p) {
+        List<Point> out = new ArrayList<>(points.size() + 1);
+        boolean placed = false;
+        for (Point q : points) {
+            if (!placed && q.epochDay() >= p.epochDay()) {
+                out.add(p);
+                placed = true;
+                if (q.epochDay() == p.epochDay()) continue;
+            }
+            out.add(q);
+        }
+        if (!placed) out.add(p);
+        return out;
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarint(byte[] data, int[] pos) {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = data[pos[0]++];
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+        throw new IllegalStateException("Malformed varint in valuation chunk");
+    }
+}
@@ -0,0 +1,13 @@
+package com.thanos.portfolio.dto;
+
+import java.time.Instant;
+
+public record ApplyJobStatus(
+        Long jobId,
+        String rebalanceId,
+        Long portfolioId,
+        ApplyStatus status,
+        String message,          // reason when FAILED
+        Instant submittedAt,
+        Instant completedAt      // null while PENDING
+) {}
@@ -0,0 +1,9 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.model.PriceRow;
+
+public record ApplyRebalanceBatchRequest(
+        java.util.List<ApplyRebalanceRequest> requests,
+        java.util.List<PriceRow> priceFrame,  // shared by every item that has no frame of its own
+        Long priceSnapshotId                  // shared fallback when there is no batch frame either
+) {}
@@ -7,6 +7,7 @@ public record ApplyRebalanceRequest(
         String rebalanceId,
         Long portfolioId,
         java.util.List<ExecutedTrade> executedTrades,
-        java.util.List<PriceRow> priceFrame
+        java.util.List<PriceRow> priceFrame,
+        Long priceSnapshotId      // used when priceFrame is empty; see /api/v1/prices/snapshots
 ) {}
 
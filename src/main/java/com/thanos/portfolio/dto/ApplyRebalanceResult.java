@@ -0,0 +1,16 @@
+package com.thanos.portfolio.dto;
+
+public record ApplyRebalanceResult(
+        String rebalanceId,
+        Long portfolioId,
+        ApplyStatus status,
+        String message
+) {
+    public static ApplyRebalanceResult of(ApplyRebalanceRequest req, ApplyStatus status) {
+        return new ApplyRebalanceResult(req.rebalanceId(), req.portfolioId(), status, null);
+    }
+
+    public static ApplyRebalanceResult failed(ApplyRebalanceRequest req, String message) {
+        return new ApplyRebalanceResult(req.rebalanceId(), req.portfolioId(), ApplyStatus.FAILED, message);
+    }
+}
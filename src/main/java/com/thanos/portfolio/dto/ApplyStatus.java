@@ -0,0 +1,9 @@
+package com.thanos.portfolio.dto;
+
+public enum ApplyStatus {
+    PENDING,      // async job stored, not applied yet
+    APPLIED,
+    DUPLICATE,
+    NOOP,
+    FAILED
+}
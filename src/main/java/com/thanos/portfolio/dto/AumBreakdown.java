@@ -0,0 +1,13 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.model.Category;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+public record AumBreakdown(
+        String rmId,
+        long positions,
+        BigDecimal total,
+        Map<Category, BigDecimal> byCategory
+) {}
@@ -0,0 +1,4 @@
+package com.thanos.portfolio.dto;
+
+// record: 0-based position in the upload; line is set for CSV/NDJSON input
+public record BulkUpsertError(long record, Long line, String userId, String message) {}
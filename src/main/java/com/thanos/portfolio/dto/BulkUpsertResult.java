@@ -0,0 +1,12 @@
+package com.thanos.portfolio.dto;
+
+import java.util.List;
+
+public record BulkUpsertResult(
+        long received,
+        long upserted,
+        long failed,
+        boolean truncated,      // parsing stopped early; see the last error
+        long elapsedMillis,
+        List<BulkUpsertError> errors
+) {}
@@ -0,0 +1,18 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.entities.TriggerMode;
+import com.thanos.portfolio.model.Category;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+public record DriftBreach(
+        Long portfolioId,
+        String userId,
+        String rmId,
+        TriggerMode triggerMode,
+        Category maxDriftCategory,
+        BigDecimal maxDrift,            // fraction, same unit as driftThresholdAbs
+        BigDecimal driftThresholdAbs,
+        Map<Category, BigDecimal> driftByCategory   // signed: actual - target, as a fraction
+) {}
@@ -0,0 +1,30 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.entities.CategoryWeights;
+import com.thanos.portfolio.entities.TriggerMode;
+import com.thanos.portfolio.model.Category;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+// Row shape the drift scanner reads from portfolios; no JSON columns involved. targetState is null
+// while the summary backfill has not filled the target_* columns of the row yet.
+public record DriftCandidate(
+        Long portfolioId,
+        String userId,
+        String rmId,
+        TriggerMode triggerMode,
+        BigDecimal driftThresholdAbs,
+        Integer cooldownDays,
+        Map<Category, BigDecimal> targetState
+) {
+    public DriftCandidate(Long portfolioId, String userId, String rmId, TriggerMode triggerMode,
+                          BigDecimal driftThresholdAbs, Integer cooldownDays, CategoryWeights targetWeights) {
+        this(portfolioId, userId, rmId, triggerMode, driftThresholdAbs, cooldownDays,
+                targetWeights == null ? null : targetWeights.toMap());
+    }
+
+    public DriftCandidate withTargetState(Map<Category, BigDecimal> targetState) {
+        return new DriftCandidate(portfolioId, userId, rmId, triggerMode, driftThresholdAbs, cooldownDays, targetState);
+    }
+}
@@ -0,0 +1,12 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.entities.TriggerMode;
+import com.thanos.portfolio.model.PriceRow;
+
+import java.util.List;
+
+public record DriftScanRequest(
+        String rmId,                 // optional: scan a single RM book
+        TriggerMode triggerMode,     // optional: only portfolios in this mode
+        List<PriceRow> priceFrame    // optional: revalue holdings at these prices instead of stored totals
+) {}
@@ -0,0 +1,10 @@
+package com.thanos.portfolio.dto;
+
+import java.util.List;
+
+public record DriftScanResult(
+        int scanned,
+        int skippedCooldown,
+        long elapsedMillis,
+        List<DriftBreach> breaches
+) {}
@@ -0,0 +1,14 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.analytics.TickerIndex;
+import com.thanos.portfolio.model.Category;
+
+import java.util.List;
+
+public record HoldersPage(
+        List<String> tickers,
+        Category category,
+        TickerIndex.Match match,
+        List<Long> portfolioIds,
+        Long nextAfter
+) {}
@@ -0,0 +1,11 @@
+package com.thanos.portfolio.dto;
+
+import java.math.BigDecimal;
+
+public record HoldingAggregate(
+        String ticker,
+        int positions,
+        long quantity,
+        BigDecimal costBasis,
+        BigDecimal marketValue
+) {}
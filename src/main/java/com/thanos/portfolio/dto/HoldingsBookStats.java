@@ -0,0 +1,12 @@
+package com.thanos.portfolio.dto;
+
+import java.time.Instant;
+
+public record HoldingsBookStats(
+        int portfolios,
+        long positions,
+        int tickers,
+        int rms,
+        Instant builtAt,
+        Instant updatedAt
+) {}
@@ -0,0 +1,20 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.StockPosition;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+public record LedgerHoldings(
+        Long portfolioId,
+        Instant asOf,
+        Long lastEventId,
+        Long snapshotEventId,
+        int replayedEvents,
+        BigDecimal freeCash,
+        BigDecimal portfolioValue,
+        Map<Category, List<StockPosition>> holdings
+) {}
@@ -0,0 +1,24 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.entities.PositionLedgerEvent;
+import com.thanos.portfolio.entities.Side;
+import com.thanos.portfolio.model.Category;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+public record LedgerTrade(
+        Long eventId,
+        String rebalanceId,
+        Category category,
+        String ticker,
+        Side side,
+        Integer quantity,
+        BigDecimal price,
+        Instant recordedAt
+) {
+    public static LedgerTrade of(PositionLedgerEvent e) {
+        return new LedgerTrade(e.getId(), e.getRebalanceId(), e.getCategory(), e.getTicker(), e.getSide(),
+                e.getQuantity(), e.getPrice(), e.getRecordedAt());
+    }
+}
@@ -0,0 +1,10 @@
+package com.thanos.portfolio.dto;
+
+public record PortfolioCacheStats(
+        boolean enabled,
+        long size,
+        long hitCount,
+        long missCount,
+        double hitRate,
+        long evictionCount
+) {}
@@ -0,0 +1,9 @@
+package com.thanos.portfolio.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record PortfolioChanges(
+        List<PortfolioResponse> items,   // updated after `since`, oldest first
+        LocalDateTime next               // pass back as ?since= ; overlaps the previous window on purpose
+) {}
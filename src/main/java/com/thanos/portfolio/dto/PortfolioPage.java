@@ -0,0 +1,8 @@
+package com.thanos.portfolio.dto;
+
+import java.util.List;
+
+public record PortfolioPage(
+        List<PortfolioResponse> items,
+        Long nextCursor   // pass back as ?after= ; null on the last page
+) {}
@@ -0,0 +1,31 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.entities.CategoryWeights;
+import com.thanos.portfolio.model.Category;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+public record PortfolioSummary(
+        Long portfolioId,
+        String userId,
+        String rmId,
+        BigDecimal portfolioValue,
+        BigDecimal freeCash,
+        BigDecimal maxDrift,            // max |weight - target| across categories, as a fraction like driftThresholdAbs
+        BigDecimal driftThresholdAbs,
+        Map<Category, BigDecimal> weights,      // category -> % of invested value (0-100)
+        Map<Category, BigDecimal> targetState,  // category -> % (0-100)
+        LocalDateTime updatedOn
+) {
+    // Used by the JPQL constructor expression in PortfolioRepo
+    public PortfolioSummary(Long portfolioId, String userId, String rmId, BigDecimal portfolioValue,
+                            BigDecimal freeCash, BigDecimal maxDrift, BigDecimal driftThresholdAbs,
+                            CategoryWeights weights, CategoryWeights targetWeights, LocalDateTime updatedOn) {
+        this(portfolioId, userId, rmId, portfolioValue, freeCash, maxDrift, driftThresholdAbs,
+                weights == null ? Map.of() : weights.toMap(),
+                targetWeights == null ? Map.of() : targetWeights.toMap(),
+                updatedOn);
+    }
+}
@@ -0,0 +1,16 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.model.PriceSnapshot;
+
+import java.time.Instant;
+
+public record PriceSnapshotInfo(
+        long id,
+        Instant createdAt,
+        String source,
+        int symbols
+) {
+    public static PriceSnapshotInfo of(PriceSnapshot s) {
+        return new PriceSnapshotInfo(s.id(), s.createdAt(), s.source(), s.bySymbol().size());
+    }
+}
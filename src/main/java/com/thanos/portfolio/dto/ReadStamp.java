@@ -0,0 +1,12 @@
+package com.thanos.portfolio.dto;
+
+import java.time.LocalDateTime;
+
+// Cheap validator for a read: changes whenever a covered portfolio is written (version only grows)
+// or one enters or leaves the set (count, idSum)
+public record ReadStamp(
+        long count,
+        long versionSum,
+        long idSum,
+        LocalDateTime lastModified   // null when count == 0
+) {}
@@ -0,0 +1,19 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.ExecutedTrade;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+public record RebalancePlan(
+        Long portfolioId,
+        List<ExecutedTrade> trades,             // sells first, then buys; can be posted to /apply as-is
+        BigDecimal freeCashBefore,
+        BigDecimal freeCashAfter,               // conservative: buys costed rounded up, sells rounded down
+        BigDecimal maxDriftBefore,              // fraction, same unit as driftThresholdAbs
+        BigDecimal maxDriftAfter,
+        BigDecimal driftThresholdAbs,
+        Map<Category, BigDecimal> weightsAfter  // category -> % of invested value (0-100)
+) {}
@@ -0,0 +1,9 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.model.PriceRow;
+
+public record RebalancePlanBatchRequest(
+        String rmId,                              // plan a whole RM book ...
+        java.util.List<Long> portfolioIds,        // ... or an explicit list
+        java.util.List<PriceRow> priceFrame
+) {}
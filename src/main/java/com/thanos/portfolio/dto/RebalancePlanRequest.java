@@ -0,0 +1,7 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.model.PriceRow;
+
+public record RebalancePlanRequest(
+        java.util.List<PriceRow> priceFrame
+) {}
@@ -0,0 +1,15 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.model.Category;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+public record TickerExposure(
+        String ticker,
+        int positions,
+        long quantity,
+        BigDecimal costBasis,
+        BigDecimal marketValue,
+        Map<Category, BigDecimal> marketValueByCategory
+) {}
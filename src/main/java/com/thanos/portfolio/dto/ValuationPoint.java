@@ -0,0 +1,14 @@
+package com.thanos.portfolio.dto;
+
+import com.thanos.portfolio.model.Category;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+
+public record ValuationPoint(
+        LocalDate date,
+        BigDecimal portfolioValue,
+        BigDecimal freeCash,
+        Map<Category, BigDecimal> byCategory
+) {}
@@ -0,0 +1,49 @@
+package com.thanos.portfolio.entities;
+
+import com.thanos.portfolio.dto.ApplyStatus;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// One POST /apply/async submission. The row is committed before the 202 goes out, so a job
+// the client holds an id for is either finished or re-queued by the next start.
+@Entity
+@Table(
+        name = "apply_jobs",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_apply_jobs",
+                columnNames = {"portfolio_id", "rebalance_id"}
+        ),
+        indexes = @Index(name = "idx_apply_jobs_status_id", columnList = "status, id")
+)
+@Getter @Setter @NoArgsConstructor
+public class ApplyJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "portfolio_id", nullable = false)
+    private Long portfolioId;
+
+    @Column(name = "rebalance_id", nullable = false, length = 200)
+    private String rebalanceId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private ApplyStatus status;
+
+    // the full ApplyRebalanceRequest; cleared once the job completes
+    @Column(name = "request_json", columnDefinition = "TEXT")
+    private String requestJson;
+
+    @Column(name = "message", columnDefinition = "TEXT")
+    private String message;
+
+    @Column(name = "submitted_at", nullable = false)
+    private Instant submittedAt;
+
+    @Column(name = "completed_at")
+    private Instant completedAt;
+}
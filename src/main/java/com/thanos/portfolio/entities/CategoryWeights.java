@@ -0,0 +1,82 @@
+package com.thanos.portfolio.entities;
+
+import com.thanos.portfolio.model.Category;
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+// One numeric column per Category so dashboards can read weights without touching the JSON blobs
+@Embeddable
+@Getter
+@Setter
+@NoArgsConstructor
+public class CategoryWeights {
+
+    @Column(precision = 9, scale = 4)
+    private BigDecimal largeCap;
+
+    @Column(precision = 9, scale = 4)
+    private BigDecimal midCap;
+
+    @Column(precision = 9, scale = 4)
+    private BigDecimal smallCap;
+
+    @Column(precision = 9, scale = 4)
+    private BigDecimal bonds;
+
+    @Column(precision = 9, scale = 4)
+    private BigDecimal gold;
+
+    @Column(precision = 9, scale = 4)
+    private BigDecimal silver;
+
+    @Column(precision = 9, scale = 4)
+    private BigDecimal commodities;
+
+    public static CategoryWeights of(Map<Category, BigDecimal> weights) {
+        CategoryWeights w = new CategoryWeights();
+        for (Category c : Category.values()) {
+            w.set(c, weights.getOrDefault(c, BigDecimal.ZERO));
+        }
+        return w;
+    }
+
+    public BigDecimal get(Category c) {
+        return switch (c) {
+            case LARGE_CAP -> largeCap;
+            case MID_CAP -> midCap;
+            case SMALL_CAP -> smallCap;
+            case BONDS -> bonds;
+            case GOLD -> gold;
+            case SILVER -> silver;
+            case COMMODITIES -> commodities;
+        };
+    }
+
+    public void set(Category c, BigDecimal v) {
+        switch (c) {
+            case LARGE_CAP -> largeCap = v;
+            case MID_CAP -> midCap = v;
+            case SMALL_CAP -> smallCap = v;
+            case BONDS -> bonds = v;
+            case GOLD -> gold = v;
+            case SILVER -> silver = v;
+            case COMMODITIES -> commodities = v;
+        }
+    }
+
+    public Map<Category, BigDecimal> toMap() {
+        Map<Category, BigDecimal> out = new EnumMap<>(Category.class);
+        for (Category c : Category.values()) {
+            BigDecimal v = get(c);
+            if (v != null) out.put(c, v);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,8 @@
+package com.thanos.portfolio.entities;
+
+public enum LedgerEventKind {
+    RESET,      // createOrUpdate replaced the whole book; the POSITION rows that follow are all of it
+    POSITION,   // state of one holding after the write; quantity 0 closes it
+    TRADE,      // one executed trade, kept for history; replay goes by POSITION rows
+    CASH        // free cash after the write
+}
@@ -10,8 +10,8 @@ import com.thanos.portfolio.model.StockPosition;
 import com.thanos.portfolio.model.UserDetails;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.CreationTimestamp;
-import org.hibernate.annotations.UpdateTimestamp;
 
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -25,13 +25,21 @@ import java.util.Map;
 @NoArgsConstructor
 @Builder
 @Entity
-@Table(name = "portfolios")
+@Table(name = "portfolios", indexes = {
+        @Index(name = "idx_portfolios_rm_id_id", columnList = "rm_id, id"),
+        @Index(name = "idx_portfolios_rm_id_updated_on", columnList = "rm_id, updated_on")
+})
 public class Portfolio {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Bumped on every write; the optimistic apply mode compares-and-sets on it
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     @Column(name = "free_cash", nullable = false, precision = 18, scale = 2)
     private BigDecimal freeCash = BigDecimal.ZERO;
 
@@ -56,8 +64,9 @@ public class Portfolio {
     @CreationTimestamp
     private LocalDateTime createdOn;
 
+    // Set by the create and apply paths rather than on every flush, so maintenance writes (summary
+    // backfill) do not show up as edits in Last-Modified or the changes feed
     @Column(name = "updated_on", nullable = false)
-    @UpdateTimestamp
     private LocalDateTime updatedOn;
 
     @Column(name = "user_details", nullable = false, columnDefinition = "TEXT")
@@ -68,12 +77,67 @@ public class Portfolio {
     @Convert(converter = RMDetailsConverter.class)
     private RMDetails rmDetails;
 
-    @Column(name = "portfolio", nullable = false, columnDefinition = "TEXT")
+    // Pre-normalization JSON copy of the holdings; null once migrated into portfolio_positions
+    @Column(name = "portfolio", columnDefinition = "TEXT")
     @Convert(converter = PortfolioDetailsConverter.class)
+    private Map<Category, List<StockPosition>> legacyPortfolio;
+
+    @OneToMany(mappedBy = "owner", fetch = FetchType.LAZY, cascade = CascadeType.DETACH)
+    @OrderBy("id")
+    @BatchSize(size = 50)
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private List<PortfolioPosition> positions;
+
+    // Working copy of the holdings; rows are written through PortfolioPositionRepo, not by flushing this field
+    @Transient
     private Map<Category, List<StockPosition>> portfolio;
 
     @Column(name = "target_state", nullable = false, columnDefinition = "TEXT")
     @Convert(converter = TargetStateConverter.class)
     private Map<Category, BigDecimal> targetState;
 
+    // ---- denormalized summary, maintained by PortfolioService on every write ----
+
+    @Column(name = "portfolio_value", precision = 18, scale = 4)
+    private BigDecimal portfolioValue;
+
+    @Column(name = "max_drift", precision = 10, scale = 6)
+    private BigDecimal maxDrift;
+
+    @Embedded
+    @AttributeOverrides({
+            @AttributeOverride(name = "largeCap", column = @Column(name = "weight_large_cap", precision = 9, scale = 4)),
+            @AttributeOverride(name = "midCap", column = @Column(name = "weight_mid_cap", precision = 9, scale = 4)),
+            @AttributeOverride(name = "smallCap", column = @Column(name = "weight_small_cap", precision = 9, scale = 4)),
+            @AttributeOverride(name = "bonds", column = @Column(name = "weight_bonds", precision = 9, scale = 4)),
+            @AttributeOverride(name = "gold", column = @Column(name = "weight_gold", precision = 9, scale = 4)),
+            @AttributeOverride(name = "silver", column = @Column(name = "weight_silver", precision = 9, scale = 4)),
+            @AttributeOverride(name = "commodities", column = @Column(name = "weight_commodities", precision = 9, scale = 4))
+    })
+    private CategoryWeights categoryWeights;
+
+    @Embedded
+    @AttributeOverrides({
+            @AttributeOverride(name = "largeCap", column = @Column(name = "target_large_cap", precision = 9, scale = 4)),
+            @AttributeOverride(name = "midCap", column = @Column(name = "target_mid_cap", precision = 9, scale = 4)),
+            @AttributeOverride(name = "smallCap", column = @Column(name = "target_small_cap", precision = 9, scale = 4)),
+            @AttributeOverride(name = "bonds", column = @Column(name = "target_bonds", precision = 9, scale = 4)),
+            @AttributeOverride(name = "gold", column = @Column(name = "target_gold", precision = 9, scale = 4)),
+            @AttributeOverride(name = "silver", column = @Column(name = "target_silver", precision = 9, scale = 4)),
+            @AttributeOverride(name = "commodities", column = @Column(name = "target_commodities", precision = 9, scale = 4))
+    })
+    private CategoryWeights targetWeights;
+
+    public Map<Category, List<StockPosition>> getPortfolio() {
+        if (portfolio == null) {
+            if (positions != null && !positions.isEmpty()) {
+                portfolio = PortfolioPosition.toHoldings(positions);
+            } else if (legacyPortfolio != null) {
+                portfolio = legacyPortfolio;
+            }
+        }
+        return portfolio;
+    }
+
 }
@@ -0,0 +1,100 @@
+package com.thanos.portfolio.entities;
+
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.PortfolioMath;
+import com.thanos.portfolio.model.StockPosition;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Entity
+@Table(
+        name = "portfolio_positions",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_portfolio_positions",
+                columnNames = {"portfolio_id", "category", "ticker"}
+        )
+)
+@Getter @Setter @NoArgsConstructor
+public class PortfolioPosition {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "portfolio_id", nullable = false)
+    private Long portfolioId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "portfolio_id", insertable = false, updatable = false)
+    private Portfolio owner;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "category", nullable = false, length = 20)
+    private Category category;
+
+    @Column(name = "ticker", nullable = false, length = 32)
+    private String ticker;
+
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+
+    // unconstrained numeric keeps the scale we wrote, so API output matches the old JSON column
+    @Column(name = "avg_price", columnDefinition = "numeric")
+    private BigDecimal avgPrice;
+
+    @Column(name = "total_amount", columnDefinition = "numeric")
+    private BigDecimal totalAmount;
+
+    @Column(name = "position_date")
+    private Instant positionDate;
+
+    public PortfolioPosition(Long portfolioId, Category category, StockPosition sp) {
+        this.portfolioId = portfolioId;
+        this.category = category;
+        this.ticker = sp.ticker();
+        this.name = sp.name();
+        this.quantity = sp.quantity();
+        this.avgPrice = sp.avgPrice();
+        this.totalAmount = sp.totalAmount();
+        this.positionDate = sp.positionDate();
+    }
+
+    // percentageOfPortfolio is derived here rather than stored, so writing one row never dirties the others
+    public static Map<Category, List<StockPosition>> toHoldings(List<PortfolioPosition> rows) {
+        List<BigDecimal> amounts = new ArrayList<>(rows.size());
+        for (PortfolioPosition r : rows) amounts.add(r.totalAmount);
+        BigDecimal total = PortfolioMath.sum(amounts);
+
+        Map<Category, List<StockPosition>> out = new LinkedHashMap<>();
+        for (Category c : Category.values()) {
+            out.put(c, new ArrayList<>());
+        }
+
+        for (PortfolioPosition r : rows) {
+            BigDecimal pct = total.compareTo(BigDecimal.ZERO) <= 0 || r.totalAmount == null
+                    ? BigDecimal.ZERO
+                    : PortfolioMath.percentOf(r.totalAmount, total);
+
+            out.get(r.category).add(new StockPosition(
+                    r.ticker,
+                    r.name,
+                    r.quantity,
+                    r.avgPrice,
+                    pct,
+                    r.totalAmount,
+                    r.positionDate
+            ));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,38 @@
+package com.thanos.portfolio.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// Applied rebalances past the retention window. Rows are moved here by RebalanceRetentionJob and
+// still count for idempotency; ids are carried over from portfolio_rebalance_applied.
+@Entity
+@Table(
+        name = "portfolio_rebalance_archive",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_portfolio_rebalance_archive",
+                columnNames = {"portfolio_id", "rebalance_id"}
+        )
+)
+@Getter @Setter @NoArgsConstructor
+public class PortfolioRebalanceArchive {
+
+    @Id
+    private Long id;
+
+    @Column(name = "portfolio_id", nullable = false)
+    private Long portfolioId;
+
+    @Column(name = "rebalance_id", nullable = false, length = 200)
+    private String rebalanceId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+
+    @Column(name = "trades_json", columnDefinition = "TEXT")
+    private String tradesJson;
+}
@@ -0,0 +1,67 @@
+package com.thanos.portfolio.entities;
+
+import com.thanos.portfolio.model.Category;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+// Append-only; written over JDBC by PositionLedgerBatchRepoImpl
+@Entity
+@Table(name = "position_ledger", indexes = @Index(name = "ix_position_ledger_portfolio", columnList = "portfolio_id, id"))
+@Getter @Setter @NoArgsConstructor
+public class PositionLedgerEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "portfolio_id", nullable = false)
+    private Long portfolioId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "kind", nullable = false, length = 10)
+    private LedgerEventKind kind;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "category", length = 20)
+    private Category category;
+
+    @Column(name = "ticker", length = 32)
+    private String ticker;
+
+    @Column(name = "name")
+    private String name;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "side", length = 4)
+    private Side side;
+
+    @Column(name = "quantity")
+    private Integer quantity;
+
+    @Column(name = "price", columnDefinition = "numeric")
+    private BigDecimal price;
+
+    @Column(name = "avg_price", columnDefinition = "numeric")
+    private BigDecimal avgPrice;
+
+    @Column(name = "total_amount", columnDefinition = "numeric")
+    private BigDecimal totalAmount;
+
+    @Column(name = "free_cash", columnDefinition = "numeric")
+    private BigDecimal freeCash;
+
+    @Column(name = "rebalance_id", length = 200)
+    private String rebalanceId;
+
+    // clock_timestamp() at insert, i.e. after the row lock: never goes backwards within one portfolio
+    @Column(name = "recorded_at", nullable = false)
+    private Instant recordedAt;
+
+    public PositionLedgerEvent(Long portfolioId, LedgerEventKind kind) {
+        this.portfolioId = portfolioId;
+        this.kind = kind;
+    }
+}
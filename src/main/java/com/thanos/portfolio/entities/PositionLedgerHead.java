@@ -0,0 +1,18 @@
+package com.thanos.portfolio.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// Events appended since the portfolio's last snapshot; the snapshot job picks the portfolios over its threshold
+@Entity
+@Table(name = "position_ledger_heads")
+@Getter @Setter @NoArgsConstructor
+public class PositionLedgerHead {
+
+    @Id
+    @Column(name = "portfolio_id")
+    private Long portfolioId;
+
+    @Column(name = "pending_events", nullable = false)
+    private Integer pendingEvents;
+}
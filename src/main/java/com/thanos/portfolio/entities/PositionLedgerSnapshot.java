@@ -0,0 +1,41 @@
+package com.thanos.portfolio.entities;
+
+import com.thanos.portfolio.converter.PortfolioDetailsConverter;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.StockPosition;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+// Compacted ledger state: everything up to and including lastEventId folded into one row
+@Entity
+@Table(name = "position_ledger_snapshots",
+        indexes = @Index(name = "ix_position_ledger_snapshots_portfolio", columnList = "portfolio_id, taken_at"))
+@Getter @Setter @NoArgsConstructor
+public class PositionLedgerSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "portfolio_id", nullable = false)
+    private Long portfolioId;
+
+    @Column(name = "last_event_id", nullable = false)
+    private Long lastEventId;
+
+    // recorded_at of the last folded event, so "snapshot taken_at <= t" means "every folded event <= t"
+    @Column(name = "taken_at", nullable = false)
+    private Instant takenAt;
+
+    @Column(name = "free_cash", columnDefinition = "numeric")
+    private BigDecimal freeCash;
+
+    @Convert(converter = PortfolioDetailsConverter.class)
+    @Column(name = "holdings", nullable = false, columnDefinition = "TEXT")
+    private Map<Category, List<StockPosition>> holdings;
+}
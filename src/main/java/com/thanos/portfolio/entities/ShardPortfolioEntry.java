@@ -0,0 +1,24 @@
+package com.thanos.portfolio.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// id and userId lookups resolve to an RM here, then to a shard through shard_rm_directory, so moving
+// a whole book is a single row update
+@Entity
+@Table(name = "shard_portfolio_directory",
+        uniqueConstraints = @UniqueConstraint(name = "uk_shard_portfolio_directory_user", columnNames = "user_id"),
+        indexes = @Index(name = "idx_shard_portfolio_directory_rm", columnList = "rm_id"))
+@Getter @Setter @NoArgsConstructor
+public class ShardPortfolioEntry {
+
+    @Id
+    @Column(name = "portfolio_id")
+    private Long portfolioId;
+
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Column(name = "rm_id", nullable = false)
+    private String rmId;
+}
@@ -0,0 +1,27 @@
+package com.thanos.portfolio.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// Which shard holds an RM's book. Lives on the home shard; moving_to is set while the book is copied.
+// A null rmId is stored as ''.
+@Entity
+@Table(name = "shard_rm_directory")
+@Getter @Setter @NoArgsConstructor
+public class ShardRmPlacement {
+
+    @Id
+    @Column(name = "rm_id")
+    private String rmId;
+
+    @Column(name = "shard", nullable = false, length = 64)
+    private String shard;
+
+    @Column(name = "moving_to", length = 64)
+    private String movingTo;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
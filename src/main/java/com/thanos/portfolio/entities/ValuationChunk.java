@@ -0,0 +1,41 @@
+package com.thanos.portfolio.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// Up to ValuationChunkCodec.CHUNK_DAYS daily valuations of one portfolio, delta/varint packed.
+// rm_id is the portfolio's RM when the chunk was last written, so a moved book keeps its history
+// under the RM it had at the time.
+@Entity
+@Table(
+        name = "valuation_chunks",
+        uniqueConstraints = @UniqueConstraint(name = "uk_valuation_chunks", columnNames = {"portfolio_id", "chunk_no"}),
+        indexes = @Index(name = "ix_valuation_chunks_rm", columnList = "rm_id, chunk_no")
+)
+@Getter @Setter @NoArgsConstructor
+public class ValuationChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "portfolio_id", nullable = false)
+    private Long portfolioId;
+
+    @Column(name = "rm_id")
+    private String rmId;
+
+    @Column(name = "chunk_no", nullable = false)
+    private Integer chunkNo;
+
+    @Column(name = "points", nullable = false)
+    private Integer points;
+
+    @Column(name = "data", nullable = false, columnDefinition = "bytea")
+    private byte[] data;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
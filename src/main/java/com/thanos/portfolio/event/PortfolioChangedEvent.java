@@ -0,0 +1,4 @@
+package com.thanos.portfolio.event;
+
+// Published inside the writing transaction; listeners that need committed state use AFTER_COMMIT
+public record PortfolioChangedEvent(Long portfolioId, String userId, String rmId) {}
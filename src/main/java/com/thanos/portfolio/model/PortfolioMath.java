@@ -0,0 +1,149 @@
+package com.thanos.portfolio.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collection;
+
+// Valuation and percentage arithmetic on scaled longs. Every method returns exactly what the
+// equivalent BigDecimal chain returns (value and scale); anything that would not fit in a long,
+// or carries more than MAX_SCALE decimals, takes the BigDecimal path instead.
+public final class PortfolioMath {
+
+    public static final int MAX_SCALE = 8;
+
+    static final int PCT_DIVIDE_SCALE = 8;   // divide(whole, 8, HALF_UP)
+    static final int PCT_SCALE = 4;          // .multiply(100).setScale(4, HALF_UP)
+    static final long NO_FIT = Long.MIN_VALUE;
+    static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private PortfolioMath() {}
+
+    // price * qty, unrounded
+    public static BigDecimal multiply(BigDecimal price, int qty) {
+        long u = unscaled(price);
+        if (u != NO_FIT) {
+            long p = mulOrNoFit(u, qty);
+            if (p != NO_FIT) return BigDecimal.valueOf(p, price.scale());
+        }
+        return price.multiply(BigDecimal.valueOf(qty));
+    }
+
+    // (price * qty).setScale(scale, HALF_UP)
+    public static BigDecimal multiply(BigDecimal price, int qty, int scale) {
+        long u = unscaled(price);
+        if (u != NO_FIT && scale >= 0 && scale <= MAX_SCALE) {
+            long p = mulOrNoFit(u, qty);
+            if (p != NO_FIT) {
+                long r = rescale(p, price.scale(), scale);
+                if (r != NO_FIT) return BigDecimal.valueOf(r, scale);
+            }
+        }
+        return price.multiply(BigDecimal.valueOf(qty)).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    // Sum at the largest scale among the inputs, like reduce(ZERO, BigDecimal::add); nulls are skipped
+    public static BigDecimal sum(Collection<BigDecimal> amounts) {
+        int scale = 0;
+        for (BigDecimal a : amounts) {
+            if (a != null) scale = Math.max(scale, a.scale());
+        }
+
+        if (scale <= MAX_SCALE) {
+            long total = 0;
+            boolean fits = true;
+            for (BigDecimal a : amounts) {
+                if (a == null) continue;
+                long v = toScale(a, scale);
+                if (v == NO_FIT) { fits = false; break; }
+                long s = total + v;
+                if (((total ^ s) & (v ^ s)) < 0) { fits = false; break; }
+                total = s;
+            }
+            if (fits) return BigDecimal.valueOf(total, scale);
+        }
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal a : amounts) {
+            if (a != null) total = total.add(a);
+        }
+        return total;
+    }
+
+    // part / whole as a percentage with 4 decimals, rounded the way the service always has:
+    // part.divide(whole, 8, HALF_UP).multiply(100).setScale(4, HALF_UP)
+    public static BigDecimal percentOf(BigDecimal part, BigDecimal whole) {
+        int scale = Math.max(part.scale(), whole.scale());
+        if (scale <= MAX_SCALE && scale >= 0) {
+            long n = toScale(part, scale);
+            long d = toScale(whole, scale);
+            if (n != NO_FIT && d != NO_FIT && d != 0) {
+                long pct = percentOf(n, d);
+                if (pct != NO_FIT) return BigDecimal.valueOf(pct, PCT_SCALE);
+            }
+        }
+        return part.divide(whole, PCT_DIVIDE_SCALE, RoundingMode.HALF_UP)
+                .multiply(BigDecimal.valueOf(100))
+                .setScale(PCT_SCALE, RoundingMode.HALF_UP);
+    }
+
+    // Unscaled percentOf for two unscaled values at the same scale; the result is at PCT_SCALE
+    static long percentOf(long n, long d) {
+        long n8 = mulOrNoFit(n, POW10[PCT_DIVIDE_SCALE]);
+        if (n8 == NO_FIT) return NO_FIT;
+        long q8 = divideHalfUp(n8, d);
+        return divideHalfUp(q8, POW10[PCT_DIVIDE_SCALE - PCT_SCALE - 2]);
+    }
+
+    // n / d rounded half away from zero
+    static long divideHalfUp(long n, long d) {
+        long q = n / d;
+        long r = n % d;
+        if (r == 0) return q;
+        long absR = Math.abs(r);
+        long absD = Math.abs(d);
+        if (absR >= absD - absR) {
+            q += (n < 0) == (d < 0) ? 1 : -1;
+        }
+        return q;
+    }
+
+    // unscaled value of v rescaled to `scale`, rounding HALF_UP when decimals are dropped
+    static long rescale(long unscaled, int from, int to) {
+        if (from == to) return unscaled;
+        if (from < to) {
+            if (to - from >= POW10.length) return NO_FIT;
+            return mulOrNoFit(unscaled, POW10[to - from]);
+        }
+        if (from - to >= POW10.length) return NO_FIT;
+        return divideHalfUp(unscaled, POW10[from - to]);
+    }
+
+    // exact widening only; NO_FIT if v has more decimals than `scale` or overflows
+    static long toScale(BigDecimal v, int scale) {
+        if (v.scale() > scale || v.scale() < 0) return NO_FIT;
+        long u = unscaled(v);
+        if (u == NO_FIT) return NO_FIT;
+        return rescale(u, v.scale(), scale);
+    }
+
+    static long unscaled(BigDecimal v) {
+        if (v.scale() > MAX_SCALE || v.scale() < 0) return NO_FIT;
+        if (v.scale() == 0 && v.precision() < 19) return v.longValue();
+        var u = v.unscaledValue();
+        return u.bitLength() < 63 ? u.longValue() : NO_FIT;
+    }
+
+    static long mulOrNoFit(long a, long b) {
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a * b;
+        if ((hi == 0 && lo >= 0) || (hi == -1 && lo < 0)) {
+            return lo == NO_FIT ? NO_FIT : lo;
+        }
+        return NO_FIT;
+    }
+}
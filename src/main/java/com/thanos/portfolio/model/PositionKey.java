@@ -0,0 +1,8 @@
+package com.thanos.portfolio.model;
+
+// Identifies one holding inside a portfolio; ticker is always upper-cased
+public record PositionKey(Category category, String ticker) {
+    public static PositionKey of(Category category, String ticker) {
+        return new PositionKey(category, ticker.toUpperCase());
+    }
+}
@@ -0,0 +1,32 @@
+package com.thanos.portfolio.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Immutable once built; the symbol index is what apply uses instead of rebuilding a map per call
+public record PriceSnapshot(
+        long id,
+        Instant createdAt,
+        String source,
+        List<PriceRow> rows,
+        @JsonIgnore
+        Map<String, PriceRow> bySymbol
+) {
+    public static PriceSnapshot of(long id, String source, List<PriceRow> rows) {
+        Map<String, PriceRow> bySymbol = new HashMap<>();
+        for (PriceRow r : rows) {
+            if (r == null || r.symbol() == null || r.symbol().isBlank()) {
+                throw new IllegalArgumentException("Every price row needs a symbol");
+            }
+            if (r.price() == null) {
+                throw new IllegalArgumentException("Missing price for symbol=" + r.symbol());
+            }
+            bySymbol.putIfAbsent(r.symbol().toUpperCase(), r);   // first row wins, as in priceLookup
+        }
+        return new PriceSnapshot(id, Instant.now(), source, List.copyOf(rows), Map.copyOf(bySymbol));
+    }
+}
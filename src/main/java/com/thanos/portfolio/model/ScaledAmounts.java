@@ -0,0 +1,141 @@
+package com.thanos.portfolio.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+import static com.thanos.portfolio.model.PortfolioMath.*;
+
+// The amounts of one book, in the order they were added, as unscaled longs with their scale, plus
+// their running total. Totals, sums and percentages stay primitive; a BigDecimal is only built when
+// amount(i), total() or percentOf(i) is read, i.e. once per position written out. Results match the
+// BigDecimal chains in PortfolioMath (value and scale). An amount that does not fit a long at
+// MAX_SCALE switches the whole book to BigDecimal, so there is no mix to reason about.
+public final class ScaledAmounts {
+
+    private static final int ABSENT = -1;
+
+    private long[] unscaled;
+    private int[] scales;
+    private BigDecimal[] exact;          // non-null once the book left the long path
+    private int size;
+
+    private long total;
+    private int totalScale;
+    private BigDecimal exactTotal;
+
+    public ScaledAmounts(int expected) {
+        int capacity = Math.max(expected, 4);
+        unscaled = new long[capacity];
+        scales = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // An amount as it is; null is kept as absent and left out of the total
+    public int add(BigDecimal amount) {
+        if (amount == null) return append(0, ABSENT, null);
+        long u = exact == null ? toScale(amount, amount.scale()) : NO_FIT;
+        return u != NO_FIT ? append(u, amount.scale(), null) : append(0, 0, amount);
+    }
+
+    // price * qty, unrounded
+    public int addProduct(BigDecimal price, int qty) {
+        if (exact == null) {
+            long u = unscaled(price);
+            long p = u == NO_FIT ? NO_FIT : mulOrNoFit(u, qty);
+            if (p != NO_FIT) return append(p, price.scale(), null);
+        }
+        return append(0, 0, PortfolioMath.multiply(price, qty));
+    }
+
+    // (price * qty).setScale(scale, HALF_UP)
+    public int addProduct(BigDecimal price, int qty, int scale) {
+        if (exact == null && scale >= 0 && scale <= MAX_SCALE) {
+            long u = unscaled(price);
+            long p = u == NO_FIT ? NO_FIT : mulOrNoFit(u, qty);
+            long r = p == NO_FIT ? NO_FIT : rescale(p, price.scale(), scale);
+            if (r != NO_FIT) return append(r, scale, null);
+        }
+        return append(0, 0, PortfolioMath.multiply(price, qty, scale));
+    }
+
+    public BigDecimal amount(int i) {
+        if (exact != null) return exact[i];
+        return scales[i] == ABSENT ? null : BigDecimal.valueOf(unscaled[i], scales[i]);
+    }
+
+    // Like PortfolioMath.sum over every amount added
+    public BigDecimal total() {
+        return exact != null ? exactTotal : BigDecimal.valueOf(total, totalScale);
+    }
+
+    public int signum() {
+        return exact != null ? exactTotal.signum() : Long.signum(total);
+    }
+
+    // Like PortfolioMath.percentOf(amount(i), total()); zero for an absent amount
+    public BigDecimal percentOf(int i) {
+        if (exact != null) {
+            return exact[i] == null ? BigDecimal.ZERO : PortfolioMath.percentOf(exact[i], exactTotal);
+        }
+        if (scales[i] == ABSENT) return BigDecimal.ZERO;
+        if (total == 0) throw new ArithmeticException("Division by zero");
+        long n = rescale(unscaled[i], scales[i], totalScale);
+        long pct = n == NO_FIT ? NO_FIT : PortfolioMath.percentOf(n, total);
+        if (pct != NO_FIT) return BigDecimal.valueOf(pct, PCT_SCALE);
+        return amount(i).divide(total(), PCT_DIVIDE_SCALE, RoundingMode.HALF_UP)
+                .multiply(BigDecimal.valueOf(100))
+                .setScale(PCT_SCALE, RoundingMode.HALF_UP);
+    }
+
+    private int append(long u, int scale, BigDecimal big) {
+        if (big == null && exact == null && scale != ABSENT && !addToTotal(u, scale)) {
+            big = BigDecimal.valueOf(u, scale);
+        }
+        if (big != null && exact == null) leaveLongPath();
+
+        if (size == unscaled.length) grow();
+        int i = size++;
+        if (exact != null) {
+            exact[i] = scale == ABSENT ? null : big;
+            if (exact[i] != null) exactTotal = exactTotal.add(exact[i]);
+        } else {
+            unscaled[i] = u;
+            scales[i] = scale;
+        }
+        return i;
+    }
+
+    // false, leaving the total as it was, if the sum no longer fits
+    private boolean addToTotal(long u, int scale) {
+        int s = Math.max(scale, totalScale);
+        long t = rescale(total, totalScale, s);
+        long v = rescale(u, scale, s);
+        if (t == NO_FIT || v == NO_FIT) return false;
+        long sum = t + v;
+        if (((t ^ sum) & (v ^ sum)) < 0 || sum == NO_FIT) return false;
+        total = sum;
+        totalScale = s;
+        return true;
+    }
+
+    private void leaveLongPath() {
+        exact = new BigDecimal[unscaled.length];
+        exactTotal = BigDecimal.ZERO;
+        for (int i = 0; i < size; i++) {
+            if (scales[i] == ABSENT) continue;
+            exact[i] = BigDecimal.valueOf(unscaled[i], scales[i]);
+            exactTotal = exactTotal.add(exact[i]);
+        }
+    }
+
+    private void grow() {
+        int capacity = unscaled.length * 2;
+        unscaled = Arrays.copyOf(unscaled, capacity);
+        scales = Arrays.copyOf(scales, capacity);
+        if (exact != null) exact = Arrays.copyOf(exact, capacity);
+    }
+}
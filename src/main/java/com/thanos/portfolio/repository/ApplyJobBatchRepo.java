@@ -0,0 +1,32 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.dto.ApplyJobStatus;
+import com.thanos.portfolio.dto.ApplyStatus;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+public interface ApplyJobBatchRepo {
+
+    // queued is false when the (portfolio, rebalance) pair already has a job that has not failed;
+    // that job is returned as is
+    record Submitted(ApplyJobStatus job, boolean queued) {}
+
+    record PendingJob(long id, String requestJson) {}
+
+    // Inserts and commits a PENDING job, or resets a FAILED one for the same pair
+    Submitted submit(Long portfolioId, String rebalanceId, String requestJson);
+
+    // Never reads request_json
+    Optional<ApplyJobStatus> findStatus(long id);
+
+    // Only moves a job out of PENDING; false when it was already finished (e.g. by another instance)
+    boolean complete(long id, ApplyStatus status, String message);
+
+    long maxId();
+
+    List<PendingJob> findPending(long afterId, long upToId, int limit);
+
+    int deleteCompletedOlderThan(Duration retention, int limit);
+}
@@ -0,0 +1,98 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.dto.ApplyJobStatus;
+import com.thanos.portfolio.dto.ApplyStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+public class ApplyJobBatchRepoImpl implements ApplyJobBatchRepo {
+
+    private static final String COLUMNS =
+            "id, rebalance_id, portfolio_id, status, message, submitted_at, completed_at";
+
+    // A concurrent submit of the same pair waits on the unique index, then falls through to SELECT_SQL
+    private static final String SUBMIT_SQL =
+            "insert into apply_jobs (portfolio_id, rebalance_id, status, request_json, submitted_at) " +
+            "values (?, ?, 'PENDING', ?, now()) " +
+            "on conflict (portfolio_id, rebalance_id) do update set status = 'PENDING', " +
+            "request_json = excluded.request_json, message = null, submitted_at = now(), completed_at = null " +
+            "where apply_jobs.status = 'FAILED' " +
+            "returning " + COLUMNS;
+
+    private static final String SELECT_SQL =
+            "select " + COLUMNS + " from apply_jobs where portfolio_id = ? and rebalance_id = ?";
+
+    private static final String STATUS_SQL = "select " + COLUMNS + " from apply_jobs where id = ?";
+
+    private static final String COMPLETE_SQL =
+            "update apply_jobs set status = ?, message = ?, request_json = null, completed_at = now() " +
+            "where id = ? and status = 'PENDING'";
+
+    private static final String PENDING_SQL =
+            "select id, request_json from apply_jobs where status = 'PENDING' and id > ? and id <= ? order by id limit ?";
+
+    private static final String PURGE_SQL =
+            "delete from apply_jobs where id in (" +
+            "  select id from apply_jobs where status <> 'PENDING' and completed_at < now() - make_interval(secs => ?) " +
+            "  order by id limit ?)";
+
+    private final JdbcTemplate jdbc;
+
+    public ApplyJobBatchRepoImpl(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public Submitted submit(Long portfolioId, String rebalanceId, String requestJson) {
+        List<ApplyJobStatus> inserted = jdbc.query(SUBMIT_SQL, ApplyJobBatchRepoImpl::status, portfolioId, rebalanceId, requestJson);
+        if (!inserted.isEmpty()) {
+            return new Submitted(inserted.get(0), true);
+        }
+        return new Submitted(jdbc.queryForObject(SELECT_SQL, ApplyJobBatchRepoImpl::status, portfolioId, rebalanceId), false);
+    }
+
+    @Override
+    public Optional<ApplyJobStatus> findStatus(long id) {
+        return jdbc.query(STATUS_SQL, ApplyJobBatchRepoImpl::status, id).stream().findFirst();
+    }
+
+    @Override
+    public boolean complete(long id, ApplyStatus status, String message) {
+        return jdbc.update(COMPLETE_SQL, status.name(), message, id) == 1;
+    }
+
+    @Override
+    public long maxId() {
+        Long id = jdbc.queryForObject("select coalesce(max(id), 0) from apply_jobs", Long.class);
+        return id == null ? 0 : id;
+    }
+
+    @Override
+    public List<PendingJob> findPending(long afterId, long upToId, int limit) {
+        return jdbc.query(PENDING_SQL, (rs, i) -> new PendingJob(rs.getLong(1), rs.getString(2)), afterId, upToId, limit);
+    }
+
+    @Override
+    public int deleteCompletedOlderThan(Duration retention, int limit) {
+        return jdbc.update(PURGE_SQL, retention.toSeconds(), limit);
+    }
+
+    private static ApplyJobStatus status(ResultSet rs, int row) throws SQLException {
+        Timestamp completed = rs.getTimestamp("completed_at");
+        return new ApplyJobStatus(
+                rs.getLong("id"),
+                rs.getString("rebalance_id"),
+                rs.getLong("portfolio_id"),
+                ApplyStatus.valueOf(rs.getString("status")),
+                rs.getString("message"),
+                rs.getTimestamp("submitted_at").toInstant(),
+                completed == null ? null : completed.toInstant()
+        );
+    }
+}
@@ -0,0 +1,7 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.entities.ApplyJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ApplyJobRepo extends JpaRepository<ApplyJob, Long>, ApplyJobBatchRepo {
+}
@@ -0,0 +1,19 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.entities.PortfolioPosition;
+import com.thanos.portfolio.model.PositionKey;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface PortfolioPositionBatchRepo {
+    void upsertAll(List<PortfolioPosition> rows);
+
+    void deleteAll(Long portfolioId, Collection<PositionKey> keys);
+
+    void replaceAll(Long portfolioId, List<PortfolioPosition> rows);
+
+    // Several portfolios at once: one delete, one insert batch
+    void replaceAll(Map<Long, List<PortfolioPosition>> rowsByPortfolio);
+}
@@ -0,0 +1,83 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.entities.PortfolioPosition;
+import com.thanos.portfolio.model.PositionKey;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public class PortfolioPositionBatchRepoImpl implements PortfolioPositionBatchRepo {
+
+    private static final String UPSERT_SQL =
+            "insert into portfolio_positions " +
+            "(portfolio_id, category, ticker, name, quantity, avg_price, total_amount, position_date) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?) " +
+            "on conflict (portfolio_id, category, ticker) do update set " +
+            "name = excluded.name, quantity = excluded.quantity, avg_price = excluded.avg_price, " +
+            "total_amount = excluded.total_amount, position_date = excluded.position_date";
+
+    private static final String DELETE_SQL =
+            "delete from portfolio_positions where portfolio_id = ? and category = ? and upper(ticker) = ?";
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbc;
+
+    public PortfolioPositionBatchRepoImpl(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public void upsertAll(List<PortfolioPosition> rows) {
+        if (rows.isEmpty()) return;
+        jdbc.batchUpdate(UPSERT_SQL, rows, BATCH_SIZE, (ps, r) -> {
+            ps.setLong(1, r.getPortfolioId());
+            ps.setString(2, r.getCategory().name());
+            ps.setString(3, r.getTicker());
+            ps.setString(4, r.getName());
+            ps.setInt(5, r.getQuantity());
+            ps.setBigDecimal(6, r.getAvgPrice());
+            ps.setBigDecimal(7, r.getTotalAmount());
+            if (r.getPositionDate() == null) {
+                ps.setNull(8, Types.TIMESTAMP);
+            } else {
+                ps.setTimestamp(8, Timestamp.from(r.getPositionDate()));
+            }
+        });
+    }
+
+    @Override
+    public void deleteAll(Long portfolioId, Collection<PositionKey> keys) {
+        if (keys.isEmpty()) return;
+        jdbc.batchUpdate(DELETE_SQL, new ArrayList<>(keys), BATCH_SIZE, (ps, k) -> {
+            ps.setLong(1, portfolioId);
+            ps.setString(2, k.category().name());
+            ps.setString(3, k.ticker());
+        });
+    }
+
+    @Override
+    public void replaceAll(Long portfolioId, List<PortfolioPosition> rows) {
+        jdbc.update("delete from portfolio_positions where portfolio_id = ?", portfolioId);
+        upsertAll(rows);
+    }
+
+    @Override
+    public void replaceAll(Map<Long, List<PortfolioPosition>> rowsByPortfolio) {
+        if (rowsByPortfolio.isEmpty()) return;
+        Long[] ids = rowsByPortfolio.keySet().toArray(Long[]::new);
+        jdbc.update(con -> {
+            var ps = con.prepareStatement("delete from portfolio_positions where portfolio_id = any(?)");
+            ps.setArray(1, con.createArrayOf("bigint", ids));
+            return ps;
+        });
+        List<PortfolioPosition> rows = new ArrayList<>();
+        rowsByPortfolio.values().forEach(rows::addAll);
+        upsertAll(rows);
+    }
+}
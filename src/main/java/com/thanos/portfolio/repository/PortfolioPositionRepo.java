@@ -0,0 +1,30 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.entities.PortfolioPosition;
+import com.thanos.portfolio.model.Category;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+
+public interface PortfolioPositionRepo extends JpaRepository<PortfolioPosition, Long>, PortfolioPositionBatchRepo {
+    List<PortfolioPosition> findByPortfolioIdOrderById(Long portfolioId);
+
+    List<PortfolioPosition> findByPortfolioIdInOrderByPortfolioIdAscIdAsc(Collection<Long> portfolioIds);
+
+    @Query("select p.portfolioId as portfolioId, p.category as category, p.ticker as ticker, " +
+            "p.quantity as quantity, p.totalAmount as totalAmount " +
+            "from PortfolioPosition p where p.portfolioId in :portfolioIds")
+    List<PositionValue> findValuesByPortfolioIdIn(@Param("portfolioIds") Collection<Long> portfolioIds);
+
+    interface PositionValue {
+        Long getPortfolioId();
+        Category getCategory();
+        String getTicker();
+        Integer getQuantity();
+        BigDecimal getTotalAmount();
+    }
+}
@@ -0,0 +1,19 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.entities.PortfolioRebalanceApplied;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+public interface PortfolioRebalanceAppliedBatchRepo {
+    void insertAll(List<PortfolioRebalanceApplied> rows);
+
+    // Moves up to `limit` rows older than `retention` into portfolio_rebalance_archive; returns rows moved
+    int archiveOlderThan(Duration retention, int limit);
+
+    // Every (portfolio_id, rebalance_id) in the hot and archive tables; must run inside a transaction
+    void forEachAppliedKey(ObjLongConsumer<String> consumer);
+
+    long countAppliedKeys();
+}
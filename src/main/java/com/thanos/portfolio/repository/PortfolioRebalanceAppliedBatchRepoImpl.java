@@ -0,0 +1,76 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.entities.PortfolioRebalanceApplied;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+// IDENTITY ids switch off Hibernate insert batching, so idempotency rows go through plain JDBC batches
+public class PortfolioRebalanceAppliedBatchRepoImpl implements PortfolioRebalanceAppliedBatchRepo {
+
+    private static final String INSERT_SQL =
+            "insert into portfolio_rebalance_applied (portfolio_id, rebalance_id, created_at, trades_json) " +
+            "values (?, ?, now(), ?)";
+
+    // One statement per chunk, so a row is never in both tables or in neither; skip locked lets
+    // several instances run the job at once
+    private static final String ARCHIVE_SQL =
+            "with moved as (" +
+            "  delete from portfolio_rebalance_applied where id in (" +
+            "    select id from portfolio_rebalance_applied where created_at < now() - make_interval(secs => ?) " +
+            "    order by id limit ? for update skip locked)" +
+            "  returning id, portfolio_id, rebalance_id, created_at, trades_json) " +
+            "insert into portfolio_rebalance_archive (id, portfolio_id, rebalance_id, created_at, archived_at, trades_json) " +
+            "select id, portfolio_id, rebalance_id, created_at, now(), trades_json from moved " +
+            "on conflict (portfolio_id, rebalance_id) do nothing";
+
+    private static final String KEYS_SQL =
+            "select portfolio_id, rebalance_id from portfolio_rebalance_applied " +
+            "union all select portfolio_id, rebalance_id from portfolio_rebalance_archive";
+
+    private static final String COUNT_SQL =
+            "select (select count(*) from portfolio_rebalance_applied) + (select count(*) from portfolio_rebalance_archive)";
+
+    private static final int BATCH_SIZE = 500;
+    private static final int FETCH_SIZE = 10_000;
+
+    private final JdbcTemplate jdbc;
+
+    public PortfolioRebalanceAppliedBatchRepoImpl(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public void insertAll(List<PortfolioRebalanceApplied> rows) {
+        if (rows.isEmpty()) return;
+        jdbc.batchUpdate(INSERT_SQL, rows, BATCH_SIZE, (ps, row) -> {
+            ps.setLong(1, row.getPortfolioId());
+            ps.setString(2, row.getRebalanceId());
+            ps.setString(3, row.getTradesJson());
+        });
+    }
+
+    @Override
+    public int archiveOlderThan(Duration retention, int limit) {
+        return jdbc.update(ARCHIVE_SQL, retention.toSeconds(), limit);
+    }
+
+    @Override
+    public void forEachAppliedKey(ObjLongConsumer<String> consumer) {
+        jdbc.query(con -> {
+            var ps = con.prepareStatement(KEYS_SQL);
+            ps.setFetchSize(FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            consumer.accept(rs.getString(2), rs.getLong(1));
+        });
+    }
+
+    @Override
+    public long countAppliedKeys() {
+        Long n = jdbc.queryForObject(COUNT_SQL, Long.class);
+        return n == null ? 0 : n;
+    }
+}
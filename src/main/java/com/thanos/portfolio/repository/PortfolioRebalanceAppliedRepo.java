@@ -2,7 +2,41 @@ package com.thanos.portfolio.repository;
 
 import com.thanos.portfolio.entities.PortfolioRebalanceApplied;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface PortfolioRebalanceAppliedRepo extends JpaRepository<PortfolioRebalanceApplied, Long> {
-    boolean existsByPortfolioIdAndRebalanceId(Long portfolioId, String rebalanceId);
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface PortfolioRebalanceAppliedRepo
+        extends JpaRepository<PortfolioRebalanceApplied, Long>, PortfolioRebalanceAppliedBatchRepo {
+    // Authoritative check: archived rebalances still count as applied
+    @Query(value = "select exists(select 1 from portfolio_rebalance_applied where portfolio_id = :portfolioId and rebalance_id = :rebalanceId) " +
+            "or exists(select 1 from portfolio_rebalance_archive where portfolio_id = :portfolioId and rebalance_id = :rebalanceId)",
+            nativeQuery = true)
+    boolean isApplied(@Param("portfolioId") Long portfolioId, @Param("rebalanceId") String rebalanceId);
+
+    // Over-fetches the cross product of both IN lists; callers match exact pairs in memory
+    @Query(value = "select portfolio_id as \"portfolioId\", rebalance_id as \"rebalanceId\" from portfolio_rebalance_applied " +
+            "where portfolio_id in (:portfolioIds) and rebalance_id in (:rebalanceIds) " +
+            "union all select portfolio_id, rebalance_id from portfolio_rebalance_archive " +
+            "where portfolio_id in (:portfolioIds) and rebalance_id in (:rebalanceIds)",
+            nativeQuery = true)
+    List<AppliedKey> findAppliedKeys(@Param("portfolioIds") Collection<Long> portfolioIds,
+                                     @Param("rebalanceIds") Collection<String> rebalanceIds);
+
+    @Query("select a.portfolioId as portfolioId, max(a.createdAt) as lastAppliedAt from PortfolioRebalanceApplied a " +
+            "where a.portfolioId in :portfolioIds group by a.portfolioId")
+    List<LastApplied> findLastAppliedAt(@Param("portfolioIds") Collection<Long> portfolioIds);
+
+    interface LastApplied {
+        Long getPortfolioId();
+        LocalDateTime getLastAppliedAt();
+    }
+
+    interface AppliedKey {
+        Long getPortfolioId();
+        String getRebalanceId();
+    }
 }
@@ -1,20 +1,98 @@
 package com.thanos.portfolio.repository;
 
+import com.thanos.portfolio.dto.DriftCandidate;
+import com.thanos.portfolio.dto.PortfolioSummary;
+import com.thanos.portfolio.dto.ReadStamp;
 import com.thanos.portfolio.entities.Portfolio;
-import feign.Param;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.StockPosition;
 import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface PortfolioRepo extends JpaRepository<Portfolio, Long> {
     Optional<Portfolio> findByUserId(String userId);
+
+    List<Portfolio> findByUserIdIn(Collection<String> userIds);
     Optional<List<Portfolio>> findByRmId(String rmId);
 
+    // Keyset page over the (rm_id, id) index
+    List<Portfolio> findByRmIdAndIdGreaterThanOrderByIdAsc(String rmId, Long afterId, Limit limit);
+
+    // Forward-only JDBC cursor; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select p from Portfolio p where p.rmId = :rmId order by p.id")
+    Stream<Portfolio> streamByRmId(@Param("rmId") String rmId);
+
+    // Reads only the summary columns; the JSON columns are never selected or parsed
+    @Query("select new com.thanos.portfolio.dto.PortfolioSummary(p.id, p.userId, p.rmId, p.portfolioValue, " +
+            "p.freeCash, p.maxDrift, p.driftThresholdAbs, p.categoryWeights, p.targetWeights, p.updatedOn) " +
+            "from Portfolio p where p.rmId = :rmId order by p.id")
+    List<PortfolioSummary> findSummariesByRmId(@Param("rmId") String rmId);
+
+    // Served by the (rm_id, updated_on) index
+    List<Portfolio> findByRmIdAndUpdatedOnGreaterThanOrderByUpdatedOnAscIdAsc(String rmId, LocalDateTime since);
+
+    // Validators for conditional GETs: no JSON column is read
+    @Query("select new com.thanos.portfolio.dto.ReadStamp(count(p), coalesce(sum(p.version), 0L), " +
+            "coalesce(sum(p.id), 0L), max(p.updatedOn)) from Portfolio p where p.rmId = :rmId")
+    ReadStamp findStampByRmId(@Param("rmId") String rmId);
+
+    @Query("select new com.thanos.portfolio.dto.ReadStamp(count(p), coalesce(sum(p.version), 0L), " +
+            "coalesce(sum(p.id), 0L), max(p.updatedOn)) from Portfolio p where p.userId = :userId")
+    ReadStamp findStampByUserId(@Param("userId") String userId);
+
+    List<Portfolio> findByPortfolioValueIsNullOrderByIdAsc(Limit limit);
+
+    @Query("select new com.thanos.portfolio.dto.DriftCandidate(p.id, p.userId, p.rmId, p.triggerMode, " +
+            "p.driftThresholdAbs, p.cooldownDays, p.targetWeights) from Portfolio p where p.id > :after order by p.id")
+    List<DriftCandidate> findDriftCandidates(@Param("after") Long after, Pageable page);
+
+    @Query("select new com.thanos.portfolio.dto.DriftCandidate(p.id, p.userId, p.rmId, p.triggerMode, " +
+            "p.driftThresholdAbs, p.cooldownDays, p.targetWeights) from Portfolio p " +
+            "where p.rmId = :rmId and p.id > :after order by p.id")
+    List<DriftCandidate> findDriftCandidatesByRmId(@Param("rmId") String rmId, @Param("after") Long after, Pageable page);
+
+    // Holdings still in the pre-normalization JSON column, i.e. not migrated into portfolio_positions yet
+    @Query("select p.id as portfolioId, p.legacyPortfolio as holdings from Portfolio p " +
+            "where p.id in :ids and p.legacyPortfolio is not null")
+    List<LegacyHoldings> findLegacyHoldings(@Param("ids") Collection<Long> ids);
+
+    interface LegacyHoldings {
+        Long getPortfolioId();
+        Map<Category, List<StockPosition>> getHoldings();
+    }
+
+    // Targets from the JSON column, for rows whose target_* columns are not backfilled yet
+    @Query("select p.id as portfolioId, p.targetState as targetState from Portfolio p where p.id in :ids")
+    List<TargetStateOnly> findTargetStates(@Param("ids") Collection<Long> ids);
+
+    interface TargetStateOnly {
+        Long getPortfolioId();
+        Map<Category, BigDecimal> getTargetState();
+    }
+
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select p from Portfolio p where p.id = :id")
     Optional<Portfolio> findByIdForUpdate(@Param("id") Long id);
+
+    // Rows are locked in id order so overlapping batches always queue behind each other instead of deadlocking
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from Portfolio p where p.id in :ids order by p.id")
+    List<Portfolio> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,31 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.entities.PositionLedgerEvent;
+import com.thanos.portfolio.entities.PositionLedgerSnapshot;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public interface PositionLedgerBatchRepo {
+
+    // One JDBC batch of events plus one batch of head counters
+    void appendAll(List<PositionLedgerEvent> events);
+
+    // Ids among these with no head row, i.e. nothing ever appended
+    List<Long> findWithoutHistory(Collection<Long> portfolioIds);
+
+    Optional<PositionLedgerSnapshot> findSnapshotAsOf(Long portfolioId, Instant asOf);
+
+    // Replayable (non-TRADE) events after afterEventId and no later than asOf, in append order
+    void forEachStateEvent(Long portfolioId, long afterEventId, Instant asOf, Consumer<PositionLedgerEvent> consumer);
+
+    List<PositionLedgerEvent> findTrades(Long portfolioId, Instant from, Instant to, int limit);
+
+    List<Long> findSnapshotDue(int minPendingEvents, int limit);
+
+    // Stores the snapshot and takes the events it folded off the portfolio's pending count
+    void insertSnapshot(PositionLedgerSnapshot snapshot, int foldedEvents);
+}
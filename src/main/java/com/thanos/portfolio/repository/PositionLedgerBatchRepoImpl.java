@@ -0,0 +1,176 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.converter.PortfolioDetailsConverter;
+import com.thanos.portfolio.entities.LedgerEventKind;
+import com.thanos.portfolio.entities.PositionLedgerEvent;
+import com.thanos.portfolio.entities.PositionLedgerSnapshot;
+import com.thanos.portfolio.entities.Side;
+import com.thanos.portfolio.model.Category;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+
+public class PositionLedgerBatchRepoImpl implements PositionLedgerBatchRepo {
+
+    private static final String INSERT_SQL =
+            "insert into position_ledger (portfolio_id, kind, category, ticker, name, side, quantity, price, " +
+            "avg_price, total_amount, free_cash, rebalance_id, recorded_at) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, clock_timestamp())";
+
+    private static final String HEAD_SQL =
+            "insert into position_ledger_heads (portfolio_id, pending_events) values (?, ?) " +
+            "on conflict (portfolio_id) do update set pending_events = position_ledger_heads.pending_events + excluded.pending_events";
+
+    private static final String WITHOUT_HISTORY_SQL =
+            "select p.id from unnest(?) as p(id) " +
+            "where not exists (select 1 from position_ledger_heads h where h.portfolio_id = p.id)";
+
+    private static final String COLUMNS =
+            "id, portfolio_id, kind, category, ticker, name, side, quantity, price, avg_price, total_amount, " +
+            "free_cash, rebalance_id, recorded_at";
+
+    private static final String STATE_EVENTS_SQL =
+            "select " + COLUMNS + " from position_ledger " +
+            "where portfolio_id = ? and id > ? and recorded_at <= ? and kind <> 'TRADE' order by id";
+
+    private static final String TRADES_SQL =
+            "select " + COLUMNS + " from position_ledger " +
+            "where portfolio_id = ? and kind = 'TRADE' and recorded_at >= ? and recorded_at <= ? order by id limit ?";
+
+    private static final String SNAPSHOT_SQL =
+            "select id, portfolio_id, last_event_id, taken_at, free_cash, holdings from position_ledger_snapshots " +
+            "where portfolio_id = ? and taken_at <= ? order by taken_at desc, last_event_id desc limit 1";
+
+    private static final String INSERT_SNAPSHOT_SQL =
+            "insert into position_ledger_snapshots (portfolio_id, last_event_id, taken_at, free_cash, holdings) " +
+            "values (?, ?, ?, ?, ?)";
+
+    private static final String FOLD_HEAD_SQL =
+            "update position_ledger_heads set pending_events = greatest(pending_events - ?, 0) where portfolio_id = ?";
+
+    private static final String DUE_SQL =
+            "select portfolio_id from position_ledger_heads where pending_events >= ? order by pending_events desc limit ?";
+
+    private static final int BATCH_SIZE = 500;
+    private static final int FETCH_SIZE = 1_000;
+
+    private final JdbcTemplate jdbc;
+    private final PortfolioDetailsConverter holdingsConverter = new PortfolioDetailsConverter();
+
+    public PositionLedgerBatchRepoImpl(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public void appendAll(List<PositionLedgerEvent> events) {
+        if (events.isEmpty()) return;
+        jdbc.batchUpdate(INSERT_SQL, events, BATCH_SIZE, (ps, e) -> {
+            ps.setLong(1, e.getPortfolioId());
+            ps.setString(2, e.getKind().name());
+            ps.setString(3, e.getCategory() == null ? null : e.getCategory().name());
+            ps.setString(4, e.getTicker());
+            ps.setString(5, e.getName());
+            ps.setString(6, e.getSide() == null ? null : e.getSide().name());
+            if (e.getQuantity() == null) ps.setNull(7, Types.INTEGER); else ps.setInt(7, e.getQuantity());
+            ps.setBigDecimal(8, e.getPrice());
+            ps.setBigDecimal(9, e.getAvgPrice());
+            ps.setBigDecimal(10, e.getTotalAmount());
+            ps.setBigDecimal(11, e.getFreeCash());
+            ps.setString(12, e.getRebalanceId());
+        });
+
+        // only what a replay has to read counts towards the next snapshot; ordered, so concurrent
+        // batches lock head rows in the same order
+        Map<Long, Integer> perPortfolio = new TreeMap<>();
+        for (PositionLedgerEvent e : events) {
+            if (e.getKind() != LedgerEventKind.TRADE) perPortfolio.merge(e.getPortfolioId(), 1, Integer::sum);
+        }
+        jdbc.batchUpdate(HEAD_SQL, new ArrayList<>(perPortfolio.entrySet()), BATCH_SIZE, (ps, e) -> {
+            ps.setLong(1, e.getKey());
+            ps.setInt(2, e.getValue());
+        });
+    }
+
+    @Override
+    public List<Long> findWithoutHistory(Collection<Long> portfolioIds) {
+        if (portfolioIds.isEmpty()) return List.of();
+        Long[] ids = portfolioIds.toArray(Long[]::new);
+        return jdbc.query(con -> {
+            var ps = con.prepareStatement(WITHOUT_HISTORY_SQL);
+            ps.setArray(1, con.createArrayOf("bigint", ids));
+            return ps;
+        }, (rs, i) -> rs.getLong(1));
+    }
+
+    @Override
+    public Optional<PositionLedgerSnapshot> findSnapshotAsOf(Long portfolioId, Instant asOf) {
+        List<PositionLedgerSnapshot> rows = jdbc.query(SNAPSHOT_SQL, (rs, i) -> {
+            PositionLedgerSnapshot s = new PositionLedgerSnapshot();
+            s.setId(rs.getLong(1));
+            s.setPortfolioId(rs.getLong(2));
+            s.setLastEventId(rs.getLong(3));
+            s.setTakenAt(rs.getTimestamp(4).toInstant());
+            s.setFreeCash(rs.getBigDecimal(5));
+            s.setHoldings(holdingsConverter.convertToEntityAttribute(rs.getString(6)));
+            return s;
+        }, portfolioId, Timestamp.from(asOf));
+        return rows.stream().findFirst();
+    }
+
+    @Override
+    public void forEachStateEvent(Long portfolioId, long afterEventId, Instant asOf, Consumer<PositionLedgerEvent> consumer) {
+        jdbc.query(con -> {
+            var ps = con.prepareStatement(STATE_EVENTS_SQL);
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setLong(1, portfolioId);
+            ps.setLong(2, afterEventId);
+            ps.setTimestamp(3, Timestamp.from(asOf));
+            return ps;
+        }, rs -> {
+            consumer.accept(event(rs));
+        });
+    }
+
+    @Override
+    public List<PositionLedgerEvent> findTrades(Long portfolioId, Instant from, Instant to, int limit) {
+        return jdbc.query(TRADES_SQL, (rs, i) -> event(rs), portfolioId, Timestamp.from(from), Timestamp.from(to), limit);
+    }
+
+    @Override
+    public List<Long> findSnapshotDue(int minPendingEvents, int limit) {
+        return jdbc.queryForList(DUE_SQL, Long.class, minPendingEvents, limit);
+    }
+
+    @Override
+    public void insertSnapshot(PositionLedgerSnapshot s, int foldedEvents) {
+        jdbc.update(INSERT_SNAPSHOT_SQL, s.getPortfolioId(), s.getLastEventId(), Timestamp.from(s.getTakenAt()),
+                s.getFreeCash(), holdingsConverter.convertToDatabaseColumn(s.getHoldings()));
+        jdbc.update(FOLD_HEAD_SQL, foldedEvents, s.getPortfolioId());
+    }
+
+    private static PositionLedgerEvent event(ResultSet rs) throws SQLException {
+        PositionLedgerEvent e = new PositionLedgerEvent(rs.getLong(2), LedgerEventKind.valueOf(rs.getString(3)));
+        e.setId(rs.getLong(1));
+        String category = rs.getString(4);
+        e.setCategory(category == null ? null : Category.valueOf(category));
+        e.setTicker(rs.getString(5));
+        e.setName(rs.getString(6));
+        String side = rs.getString(7);
+        e.setSide(side == null ? null : Side.valueOf(side));
+        int qty = rs.getInt(8);
+        e.setQuantity(rs.wasNull() ? null : qty);
+        e.setPrice(rs.getBigDecimal(9));
+        e.setAvgPrice(rs.getBigDecimal(10));
+        e.setTotalAmount(rs.getBigDecimal(11));
+        e.setFreeCash(rs.getBigDecimal(12));
+        e.setRebalanceId(rs.getString(13));
+        e.setRecordedAt(rs.getTimestamp(14).toInstant());
+        return e;
+    }
+}
@@ -0,0 +1,7 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.entities.PositionLedgerEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface PositionLedgerRepo extends JpaRepository<PositionLedgerEvent, Long>, PositionLedgerBatchRepo {
+}
@@ -0,0 +1,28 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.entities.ValuationChunk;
+import com.thanos.portfolio.model.Category;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface ValuationChunkBatchRepo {
+
+    record CurrentValuation(Long portfolioId, String rmId, BigDecimal freeCash, Map<Category, BigDecimal> byCategory) {}
+
+    // Free cash and summed position value per category, straight from portfolios/portfolio_positions
+    List<CurrentValuation> currentValuations(Collection<Long> portfolioIds);
+
+    List<Long> findPortfolioIdsAfter(long afterId, int limit);
+
+    // Creates the missing rows empty, then row-locks all of them for a read-modify-write
+    List<ValuationChunk> lockChunks(Map<Long, Integer> chunkByPortfolio);
+
+    void updateAll(List<ValuationChunk> chunks);
+
+    List<ValuationChunk> findChunks(Long portfolioId, int fromChunk, int toChunk);
+
+    List<ValuationChunk> findChunksByRmId(String rmId, int fromChunk, int toChunk);
+}
@@ -0,0 +1,130 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.entities.ValuationChunk;
+import com.thanos.portfolio.model.Category;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+public class ValuationChunkBatchRepoImpl implements ValuationChunkBatchRepo {
+
+    private static final String CURRENT_SQL =
+            "select p.id, p.rm_id, p.free_cash, pp.category, sum(pp.total_amount) " +
+            "from portfolios p left join portfolio_positions pp on pp.portfolio_id = p.id " +
+            "where p.id = any(?) group by p.id, p.rm_id, p.free_cash, pp.category";
+
+    private static final String IDS_SQL = "select id from portfolios where id > ? order by id limit ?";
+
+    private static final String CREATE_SQL =
+            "insert into valuation_chunks (portfolio_id, rm_id, chunk_no, points, data, updated_at) " +
+            "values (?, null, ?, 0, ?, now()) on conflict (portfolio_id, chunk_no) do nothing";
+
+    private static final String COLUMNS = "id, portfolio_id, rm_id, chunk_no, points, data, updated_at";
+
+    // the ORDER BY fixes the lock order, so the daily job and the on-apply recorder can't deadlock
+    private static final String LOCK_SQL =
+            "select " + COLUMNS + " from valuation_chunks c join unnest(?::bigint[], ?::int[]) as k(portfolio_id, chunk_no) " +
+            "using (portfolio_id, chunk_no) order by c.portfolio_id, c.chunk_no for update of c";
+
+    private static final String UPDATE_SQL =
+            "update valuation_chunks set rm_id = ?, points = ?, data = ?, updated_at = now() where id = ?";
+
+    private static final String FIND_SQL =
+            "select " + COLUMNS + " from valuation_chunks where portfolio_id = ? and chunk_no between ? and ? order by chunk_no";
+
+    private static final String FIND_BY_RM_SQL =
+            "select " + COLUMNS + " from valuation_chunks where rm_id = ? and chunk_no between ? and ? " +
+            "order by portfolio_id, chunk_no";
+
+    private static final int BATCH_SIZE = 500;
+    private static final byte[] EMPTY = {};
+
+    private static final RowMapper<ValuationChunk> CHUNK = (rs, i) -> {
+        ValuationChunk c = new ValuationChunk();
+        c.setId(rs.getLong(1));
+        c.setPortfolioId(rs.getLong(2));
+        c.setRmId(rs.getString(3));
+        c.setChunkNo(rs.getInt(4));
+        c.setPoints(rs.getInt(5));
+        c.setData(rs.getBytes(6));
+        c.setUpdatedAt(rs.getTimestamp(7).toInstant());
+        return c;
+    };
+
+    private final JdbcTemplate jdbc;
+
+    public ValuationChunkBatchRepoImpl(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public List<CurrentValuation> currentValuations(Collection<Long> portfolioIds) {
+        if (portfolioIds.isEmpty()) return List.of();
+        Map<Long, CurrentValuation> out = new LinkedHashMap<>();
+        jdbc.query(con -> {
+            var ps = con.prepareStatement(CURRENT_SQL);
+            ps.setArray(1, con.createArrayOf("bigint", portfolioIds.toArray()));
+            return ps;
+        }, rs -> {
+            long id = rs.getLong(1);
+            CurrentValuation v = out.get(id);
+            if (v == null) {
+                v = new CurrentValuation(id, rs.getString(2), rs.getBigDecimal(3), new EnumMap<>(Category.class));
+                out.put(id, v);
+            }
+            String category = rs.getString(4);
+            BigDecimal sum = rs.getBigDecimal(5);
+            if (category != null && sum != null) v.byCategory().put(Category.valueOf(category), sum);
+        });
+        return new ArrayList<>(out.values());
+    }
+
+    @Override
+    public List<Long> findPortfolioIdsAfter(long afterId, int limit) {
+        return jdbc.queryForList(IDS_SQL, Long.class, afterId, limit);
+    }
+
+    @Override
+    public List<ValuationChunk> lockChunks(Map<Long, Integer> chunkByPortfolio) {
+        if (chunkByPortfolio.isEmpty()) return List.of();
+        List<Map.Entry<Long, Integer>> keys = new ArrayList<>(chunkByPortfolio.entrySet());
+        keys.sort(Map.Entry.comparingByKey());
+        jdbc.batchUpdate(CREATE_SQL, keys, BATCH_SIZE, (ps, k) -> {
+            ps.setLong(1, k.getKey());
+            ps.setInt(2, k.getValue());
+            ps.setBytes(3, EMPTY);
+        });
+
+        Long[] portfolioIds = keys.stream().map(Map.Entry::getKey).toArray(Long[]::new);
+        Integer[] chunkNos = keys.stream().map(Map.Entry::getValue).toArray(Integer[]::new);
+        return jdbc.query(con -> {
+            var ps = con.prepareStatement(LOCK_SQL);
+            ps.setArray(1, con.createArrayOf("bigint", portfolioIds));
+            ps.setArray(2, con.createArrayOf("integer", chunkNos));
+            return ps;
+        }, CHUNK);
+    }
+
+    @Override
+    public void updateAll(List<ValuationChunk> chunks) {
+        if (chunks.isEmpty()) return;
+        jdbc.batchUpdate(UPDATE_SQL, chunks, BATCH_SIZE, (ps, c) -> {
+            ps.setString(1, c.getRmId());
+            ps.setInt(2, c.getPoints());
+            ps.setBytes(3, c.getData());
+            ps.setLong(4, c.getId());
+        });
+    }
+
+    @Override
+    public List<ValuationChunk> findChunks(Long portfolioId, int fromChunk, int toChunk) {
+        return jdbc.query(FIND_SQL, CHUNK, portfolioId, fromChunk, toChunk);
+    }
+
+    @Override
+    public List<ValuationChunk> findChunksByRmId(String rmId, int fromChunk, int toChunk) {
+        return jdbc.query(FIND_BY_RM_SQL, CHUNK, rmId, fromChunk, toChunk);
+    }
+}
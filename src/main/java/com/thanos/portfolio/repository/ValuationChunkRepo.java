@@ -0,0 +1,7 @@
+package com.thanos.portfolio.repository;
+
+import com.thanos.portfolio.entities.ValuationChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ValuationChunkRepo extends JpaRepository<ValuationChunk, Long>, ValuationChunkBatchRepo {
+}
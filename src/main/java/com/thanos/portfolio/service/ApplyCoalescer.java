@@ -0,0 +1,182 @@
+package com.thanos.portfolio.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.thanos.portfolio.dto.ApplyRebalanceBatchRequest;
+import com.thanos.portfolio.dto.ApplyRebalanceRequest;
+import com.thanos.portfolio.dto.ApplyRebalanceResult;
+import com.thanos.portfolio.dto.ApplyStatus;
+import com.thanos.portfolio.shard.ShardRouter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Single writer per portfolio stripe. Whatever piles up behind a running write is drained and
+// applied as one batch: one lock, one save per portfolio, one JDBC batch of idempotency rows.
+// Sharded, a batch commits once per shard it touches. Batches always lock pessimistically, so
+// portfolio.apply.mode does not apply to coalesced writes; off by default for that reason.
+@Slf4j
+@Component
+public class ApplyCoalescer implements SmartLifecycle {
+
+    private static final long POLL_MILLIS = 500;
+
+    private record Pending(ApplyRebalanceRequest req, CompletableFuture<ApplyRebalanceResult> result) {}
+
+    private final PortfolioService service;
+    private final PriceSnapshotStore priceSnapshots;
+    private final ShardRouter router;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final LinkedBlockingQueue<Pending>[] stripes;
+    private final Thread[] writers;
+    private final DistributionSummary batchSize;
+
+    private volatile boolean running;
+
+    @SuppressWarnings("unchecked")
+    public ApplyCoalescer(PortfolioService service, PriceSnapshotStore priceSnapshots, ShardRouter router,
+                          MeterRegistry registry,
+                          @Value("${portfolio.apply.coalesce.enabled:false}") boolean enabled,
+                          @Value("${portfolio.apply.coalesce.stripes:32}") int stripes,
+                          @Value("${portfolio.apply.coalesce.max-batch:200}") int maxBatch) {
+        this.service = service;
+        this.priceSnapshots = priceSnapshots;
+        this.router = router;
+        this.enabled = enabled;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.stripes = new LinkedBlockingQueue[Math.max(1, stripes)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new LinkedBlockingQueue<>();
+        }
+        this.writers = new Thread[this.stripes.length];
+        this.batchSize = DistributionSummary.builder("portfolio.apply.coalesced")
+                .description("Rebalances committed together by one stripe writer")
+                .register(registry);
+    }
+
+    // Same contract as PortfolioService.applyRebalance: returns on APPLIED/DUPLICATE/NOOP, throws otherwise
+    public void apply(ApplyRebalanceRequest req) throws JsonProcessingException {
+        if (req.portfolioId() == null) {
+            service.applyRebalance(req);
+            return;
+        }
+        if (!enabled || !running) {
+            router.onPortfolio(req.portfolioId(), () -> {
+                service.applyRebalance(req);
+                return null;
+            });
+            return;
+        }
+
+        // inside a batch an unknown snapshot is just a FAILED item; surface it as the 410 applyRebalance gives
+        if (req.priceSnapshotId() != null && (req.priceFrame() == null || req.priceFrame().isEmpty())) {
+            priceSnapshots.require(req.priceSnapshotId());
+        }
+
+        ApplyRebalanceResult r;
+        try {
+            r = submit(req).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+        if (r.status() == ApplyStatus.FAILED) {
+            throw new IllegalStateException(r.message());
+        }
+    }
+
+    public CompletableFuture<ApplyRebalanceResult> submit(ApplyRebalanceRequest req) {
+        Pending p = new Pending(req, new CompletableFuture<>());
+        LinkedBlockingQueue<Pending> queue = stripes[Math.floorMod(Long.hashCode(req.portfolioId()), stripes.length)];
+        queue.add(p);
+        // lost the race with stop(): the writer may already have done its final drain
+        if (!running && queue.remove(p)) {
+            p.result().completeExceptionally(new IllegalStateException("Apply queue is shutting down"));
+        }
+        return p.result();
+    }
+
+    private void drainLoop(LinkedBlockingQueue<Pending> queue) {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running) {
+            Pending first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (first == null) continue;
+            batch.add(first);
+            queue.drainTo(batch, maxBatch - 1);
+            write(batch);
+            batch.clear();
+        }
+
+        // shutting down: nothing new is written, callers must not hang
+        queue.drainTo(batch);
+        batch.forEach(p -> p.result().completeExceptionally(new IllegalStateException("Apply queue is shutting down")));
+    }
+
+    private void write(List<Pending> batch) {
+        batchSize.record(batch.size());
+        try {
+            List<ApplyRebalanceRequest> requests = batch.stream().map(Pending::req).toList();
+            List<ApplyRebalanceResult> results = router.splitByPortfolio(requests, ApplyRebalanceRequest::portfolioId,
+                    r -> ApplyRebalanceResult.failed(r, "Portfolio not found for id=" + r.portfolioId()),
+                    r -> r.status() == ApplyStatus.FAILED,
+                    items -> service.applyRebalanceBatch(new ApplyRebalanceBatchRequest(items, null, null)));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(results.get(i));
+            }
+        } catch (Exception e) {
+            if (batch.size() > 1) {
+                // the batch rolled back as a whole; retry one by one so a single bad item only fails its own caller
+                log.warn("Coalesced apply of {} rebalances failed, retrying individually", batch.size(), e);
+                batch.forEach(p -> write(List.of(p)));
+                return;
+            }
+            batch.get(0).result().completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) return;
+        running = true;
+        for (int i = 0; i < stripes.length; i++) {
+            LinkedBlockingQueue<Pending> queue = stripes[i];
+            writers[i] = Thread.ofVirtual().name("apply-writer-" + i).start(() -> drainLoop(queue));
+        }
+    }
+
+    // Not interrupted: a writer in the middle of a batch finishes it, then sees running == false
+    @Override
+    public void stop() {
+        running = false;
+        for (Thread t : writers) {
+            if (t == null) continue;
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,296 @@
+package com.thanos.portfolio.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thanos.portfolio.dto.ApplyJobStatus;
+import com.thanos.portfolio.dto.ApplyRebalanceBatchRequest;
+import com.thanos.portfolio.dto.ApplyRebalanceRequest;
+import com.thanos.portfolio.dto.ApplyRebalanceResult;
+import com.thanos.portfolio.dto.ApplyStatus;
+import com.thanos.portfolio.model.PriceRow;
+import com.thanos.portfolio.repository.ApplyJobBatchRepo;
+import com.thanos.portfolio.repository.ApplyJobRepo;
+import com.thanos.portfolio.shard.ShardRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Background applies for POST /apply/async. A job is committed to apply_jobs before the caller gets
+// its 202, and a bounded number of them wait in memory; past that, callers are turned away instead of
+// holding request threads. One virtual thread per running job, at most maxConcurrency at a time, so
+// the burst never asks the pool for more connections than it can give. The apply and the job's final
+// status commit in one transaction: a crash leaves the job PENDING and the next start runs it again.
+// Sharded, apply_jobs stays on the home shard and the apply commits on the portfolio's shard first;
+// a crash in between reruns the job, which the rebalance idempotency key answers with DUPLICATE.
+@Slf4j
+@Component
+public class ApplyJobQueue implements SmartLifecycle {
+
+    private static final long POLL_MILLIS = 500;
+    private static final int RECOVERY_PAGE = 500;
+    private static final int PURGE_CHUNK = 1000;
+
+    private record Job(long id, ApplyRebalanceRequest req) {}
+
+    private final ApplyJobRepo jobs;
+    private final PortfolioService service;
+    private final PriceSnapshotStore priceSnapshots;
+    private final ShardRouter router;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate writeTx;
+    private final boolean enabled;
+    private final int maxConcurrency;
+    private final Duration retention;
+    private final LinkedBlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private final Semaphore admission;    // one permit per job queued or running
+    private final Semaphore dbPermits;    // one permit per job inside its transaction
+    private final Counter rejected;
+
+    private volatile boolean running;
+    private Thread dispatcher;
+    private Thread recovery;
+
+    public ApplyJobQueue(ApplyJobRepo jobs, PortfolioService service, PriceSnapshotStore priceSnapshots,
+                         ShardRouter router, ObjectMapper objectMapper,
+                         PlatformTransactionManager txManager, MeterRegistry registry,
+                         @Value("${portfolio.apply.async.enabled:true}") boolean enabled,
+                         @Value("${portfolio.apply.async.queue-capacity:10000}") int queueCapacity,
+                         @Value("${portfolio.apply.async.max-concurrency:8}") int maxConcurrency,
+                         @Value("${portfolio.apply.async.retention:7d}") Duration retention) {
+        this.jobs = jobs;
+        this.service = service;
+        this.priceSnapshots = priceSnapshots;
+        this.router = router;
+        this.objectMapper = objectMapper;
+        this.writeTx = new TransactionTemplate(txManager);
+        this.enabled = enabled;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.retention = retention;
+        this.admission = new Semaphore(Math.max(1, queueCapacity));
+        this.dbPermits = new Semaphore(this.maxConcurrency);
+        Gauge.builder("portfolio.apply.async.queued", queue, LinkedBlockingQueue::size)
+                .description("Async apply jobs waiting for a worker")
+                .register(registry);
+        this.rejected = Counter.builder("portfolio.apply.async.rejected")
+                .description("Async apply submissions turned away because the queue was full")
+                .register(registry);
+    }
+
+    // Throws IllegalArgumentException for a request that can never be stored (UnknownPriceSnapshotException
+    // for a snapshot id this node does not hold), RejectedExecutionException when the queue is full and
+    // IllegalStateException when async apply is off or shutting down
+    public ApplyJobStatus submit(ApplyRebalanceRequest req) {
+        if (req.rebalanceId() == null || req.rebalanceId().isBlank()) {
+            throw new IllegalArgumentException("rebalanceId is required");
+        }
+        if (req.portfolioId() == null) {
+            throw new IllegalArgumentException("portfolioId is required");
+        }
+        req = withSnapshotFrame(req);
+        if (!running) {
+            throw new IllegalStateException("Async apply is not accepting jobs");
+        }
+        if (!admission.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException("Apply queue is full");
+        }
+
+        ApplyJobBatchRepo.Submitted s;
+        try {
+            s = jobs.submit(req.portfolioId(), req.rebalanceId(), objectMapper.writeValueAsString(req));
+        } catch (JsonProcessingException e) {
+            admission.release();
+            throw new IllegalArgumentException("Unserializable apply request: " + e.getOriginalMessage(), e);
+        } catch (RuntimeException e) {
+            admission.release();
+            throw e;
+        }
+        if (s.queued()) {
+            // stop() may run right now; the row stays PENDING and the next start picks it up
+            queue.add(new Job(s.job().jobId(), req));
+        } else {
+            admission.release();
+        }
+        return s.job();
+    }
+
+    // Snapshots are in-memory and per node; the job may run after a restart or on another node's
+    // recovery, so it carries the frame the id pointed to at submission
+    private ApplyRebalanceRequest withSnapshotFrame(ApplyRebalanceRequest req) {
+        if (req.priceSnapshotId() == null || (req.priceFrame() != null && !req.priceFrame().isEmpty())) return req;
+        List<PriceRow> frame = priceSnapshots.require(req.priceSnapshotId()).rows();
+        return new ApplyRebalanceRequest(req.rebalanceId(), req.portfolioId(), req.executedTrades(), frame,
+                req.priceSnapshotId());
+    }
+
+    public Optional<ApplyJobStatus> status(long jobId) {
+        return jobs.findStatus(jobId);
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            Job job;
+            try {
+                job = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (job == null) continue;
+                dbPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            Thread.ofVirtual().name("apply-job-" + job.id()).start(() -> {
+                try {
+                    run(job);
+                } finally {
+                    dbPermits.release();
+                    admission.release();
+                }
+            });
+        }
+    }
+
+    private void run(Job job) {
+        try {
+            if (router.enabled()) {
+                ApplyRebalanceResult r = applyOne(job.req());
+                jobs.complete(job.id(), r.status(), r.message());
+            } else {
+                writeTx.executeWithoutResult(status -> {
+                    ApplyRebalanceResult r = applyOne(job.req());
+                    jobs.complete(job.id(), r.status(), r.message());
+                });
+            }
+        } catch (RuntimeException e) {
+            log.warn("Async apply job {} failed", job.id(), e);
+            try {
+                jobs.complete(job.id(), ApplyStatus.FAILED, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+            } catch (RuntimeException again) {
+                log.warn("Could not record failure of apply job {}; it stays PENDING until the next start", job.id(), again);
+            }
+        }
+    }
+
+    private ApplyRebalanceResult applyOne(ApplyRebalanceRequest req) {
+        try {
+            return router.splitByPortfolio(List.of(req), ApplyRebalanceRequest::portfolioId,
+                    r -> ApplyRebalanceResult.failed(r, "Portfolio not found for id=" + r.portfolioId()),
+                    r -> r.status() == ApplyStatus.FAILED,
+                    items -> service.applyRebalanceBatch(new ApplyRebalanceBatchRequest(items, null, null))).get(0);
+        } catch (JsonProcessingException e) {
+            return ApplyRebalanceResult.failed(req, e.getOriginalMessage());
+        }
+    }
+
+    // Every instance re-queues every PENDING job up to the id it saw at start; the rebalance
+    // idempotency key and complete()'s status guard make a job run by two instances harmless
+    private void recover(long upToId) {
+        long after = 0;
+        int requeued = 0;
+        try {
+            while (running) {
+                List<ApplyJobBatchRepo.PendingJob> page = jobs.findPending(after, upToId, RECOVERY_PAGE);
+                for (ApplyJobBatchRepo.PendingJob p : page) {
+                    after = p.id();
+                    ApplyRebalanceRequest req;
+                    try {
+                        req = objectMapper.readValue(p.requestJson(), ApplyRebalanceRequest.class);
+                    } catch (JsonProcessingException e) {
+                        jobs.complete(p.id(), ApplyStatus.FAILED, "Unreadable stored request: " + e.getOriginalMessage());
+                        continue;
+                    }
+                    while (!admission.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (!running) return;
+                    }
+                    queue.add(new Job(p.id(), req));
+                    requeued++;
+                }
+                if (page.size() < RECOVERY_PAGE) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Recovering pending apply jobs stopped after {}", requeued, e);
+            return;
+        }
+        if (requeued > 0) {
+            log.info("Re-queued {} apply jobs left pending by a previous run", requeued);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${portfolio.apply.async.purge-interval:1h}",
+               initialDelayString = "${portfolio.apply.async.purge-initial-delay:10m}")
+    public void purge() {
+        if (!enabled) return;
+        long total = 0;
+        try {
+            int n;
+            do {
+                n = jobs.deleteCompletedOlderThan(retention, PURGE_CHUNK);
+                total += n;
+            } while (n == PURGE_CHUNK);
+        } catch (RuntimeException e) {
+            log.warn("Apply job purge stopped after {} rows", total, e);
+            return;
+        }
+        if (total > 0) {
+            log.info("Purged {} finished apply jobs older than {}", total, retention);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) return;
+        long upToId;
+        try {
+            // submissions from here on are queued by submit() itself
+            upToId = jobs.maxId();
+        } catch (RuntimeException e) {
+            log.warn("Could not look up pending apply jobs; they wait for the next start", e);
+            upToId = 0;
+        }
+        running = true;
+        dispatcher = Thread.ofVirtual().name("apply-job-dispatcher").start(this::dispatchLoop);
+        long recoverUpTo = upToId;
+        if (recoverUpTo > 0) {
+            recovery = Thread.ofVirtual().name("apply-job-recovery").start(() -> recover(recoverUpTo));
+        }
+    }
+
+    // Running jobs finish; queued ones stay PENDING in the table for the next start
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            if (recovery != null) recovery.join();
+            if (dispatcher != null) dispatcher.join();
+            dbPermits.acquire(maxConcurrency);
+            dbPermits.release(maxConcurrency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Job> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        admission.release(dropped.size());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,57 @@
+package com.thanos.portfolio.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Meters are registered per mode up front so both modes show up side by side, even at zero
+@Component
+public class ApplyMetrics {
+
+    private final Map<ApplyMode, Timer> lockWait = new EnumMap<>(ApplyMode.class);
+    private final Map<ApplyMode, Timer> writeTx = new EnumMap<>(ApplyMode.class);
+    private final Map<ApplyMode, DistributionSummary> attempts = new EnumMap<>(ApplyMode.class);
+    private final Map<ApplyMode, Counter> conflicts = new EnumMap<>(ApplyMode.class);
+    private final Map<ApplyMode, Counter> exhausted = new EnumMap<>(ApplyMode.class);
+
+    public ApplyMetrics(MeterRegistry registry) {
+        for (ApplyMode mode : ApplyMode.values()) {
+            String tag = mode.name().toLowerCase(Locale.ROOT);
+            lockWait.put(mode, Timer.builder("portfolio.apply.lock.wait")
+                    .description("Time blocked on the portfolio row: FOR UPDATE, or the versioned UPDATE")
+                    .tag("mode", tag)
+                    .register(registry));
+            writeTx.put(mode, Timer.builder("portfolio.apply.write")
+                    .description("Time inside the write transaction, i.e. how long the row stays locked")
+                    .tag("mode", tag)
+                    .register(registry));
+            attempts.put(mode, DistributionSummary.builder("portfolio.apply.attempts")
+                    .description("Write attempts per applied rebalance")
+                    .tag("mode", tag)
+                    .register(registry));
+            conflicts.put(mode, Counter.builder("portfolio.apply.conflicts")
+                    .description("Version conflicts that forced a retry")
+                    .tag("mode", tag)
+                    .register(registry));
+            exhausted.put(mode, Counter.builder("portfolio.apply.retries.exhausted")
+                    .tag("mode", tag)
+                    .register(registry));
+        }
+    }
+
+    public Timer lockWait(ApplyMode mode) { return lockWait.get(mode); }
+
+    public Timer writeTx(ApplyMode mode) { return writeTx.get(mode); }
+
+    public void attempts(ApplyMode mode, int n) { attempts.get(mode).record(n); }
+
+    public void conflict(ApplyMode mode) { conflicts.get(mode).increment(); }
+
+    public void exhausted(ApplyMode mode) { exhausted.get(mode).increment(); }
+}
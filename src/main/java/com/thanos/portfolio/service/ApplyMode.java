@@ -0,0 +1,6 @@
+package com.thanos.portfolio.service;
+
+public enum ApplyMode {
+    PESSIMISTIC,   // SELECT ... FOR UPDATE, trade math under the row lock
+    OPTIMISTIC     // trade math on an unlocked read, version compare-and-set on write, jittered retry
+}
@@ -0,0 +1,108 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.converter.ColumnCodec;
+import com.thanos.portfolio.converter.ColumnEncoding;
+import com.thanos.portfolio.converter.RMDetailsConverter;
+import com.thanos.portfolio.converter.TargetStateConverter;
+import com.thanos.portfolio.converter.UserDetailsConverter;
+import com.thanos.portfolio.shard.ShardRouter;
+import jakarta.persistence.AttributeConverter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Rewrites converter-backed columns still stored in another encoding, in the background, one id range at a time.
+// The legacy portfolio column is left alone: it is emptied on a portfolio's first write and always written as JSON.
+@Slf4j
+@Component
+public class ColumnReencodeJob implements ApplicationRunner {
+
+    private static final String[] COLUMNS = {"user_details", "rm_details", "target_state"};
+
+    private final JdbcTemplate jdbc;
+    private final ShardRouter router;
+    private final boolean enabled;
+    private final int chunkSize;
+
+    private final Map<String, AttributeConverter<Object, String>> converters = Map.of(
+            "user_details", raw(new UserDetailsConverter()),
+            "rm_details", raw(new RMDetailsConverter()),
+            "target_state", raw(new TargetStateConverter())
+    );
+
+    public ColumnReencodeJob(JdbcTemplate jdbc, ShardRouter router,
+                             @Value("${portfolio.storage.reencode-on-startup:false}") boolean enabled,
+                             @Value("${portfolio.storage.reencode-chunk-size:500}") int chunkSize) {
+        this.jdbc = jdbc;
+        this.router = router;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) return;
+        Thread.ofVirtual().name("column-reencode").start(() -> router.onEachShard(() -> {
+            reencodeAll();
+            return null;
+        }));
+    }
+
+    void reencodeAll() {
+        ColumnEncoding target = ColumnCodec.getWriteEncoding();
+        long after = 0;
+        int rewritten = 0;
+        try {
+            while (true) {
+                List<Map<String, Object>> rows = jdbc.queryForList(
+                        "select id, user_details, rm_details, target_state from portfolios " +
+                        "where id > ? order by id limit ?", after, chunkSize);
+                if (rows.isEmpty()) break;
+
+                List<Object[]> updates = new ArrayList<>();
+                for (Map<String, Object> row : rows) {
+                    // new values, id, then the values we read (compare-and-set against concurrent writes)
+                    Object[] values = new Object[COLUMNS.length * 2 + 1];
+                    boolean changed = false;
+                    for (int i = 0; i < COLUMNS.length; i++) {
+                        String current = (String) row.get(COLUMNS[i]);
+                        values[i] = current;
+                        values[COLUMNS.length + 1 + i] = current;
+                        if (current != null && ColumnCodec.encodingOf(current) != target) {
+                            AttributeConverter<Object, String> c = converters.get(COLUMNS[i]);
+                            values[i] = c.convertToDatabaseColumn(c.convertToEntityAttribute(current));
+                            changed = true;
+                        }
+                    }
+                    long id = ((Number) row.get("id")).longValue();
+                    values[COLUMNS.length] = id;
+                    if (changed) updates.add(values);
+                    after = id;
+                }
+
+                if (!updates.isEmpty()) {
+                    jdbc.batchUpdate(
+                            "update portfolios set user_details = ?, rm_details = ?, target_state = ? " +
+                            "where id = ? and user_details is not distinct from ? and rm_details is not distinct from ? " +
+                            "and target_state is not distinct from ?", updates);
+                    rewritten += updates.size();
+                }
+            }
+            log.info("Re-encoded {} portfolio rows as {}", rewritten, target);
+        } catch (RuntimeException e) {
+            log.warn("Column re-encode stopped after {} rows (last id {})", rewritten, after, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AttributeConverter<Object, String> raw(AttributeConverter<?, String> c) {
+        return (AttributeConverter<Object, String>) c;
+    }
+}
@@ -0,0 +1,236 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.dto.DriftBreach;
+import com.thanos.portfolio.dto.DriftCandidate;
+import com.thanos.portfolio.dto.DriftScanRequest;
+import com.thanos.portfolio.dto.DriftScanResult;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.PortfolioMath;
+import com.thanos.portfolio.model.PriceRow;
+import com.thanos.portfolio.model.StockPosition;
+import com.thanos.portfolio.repository.PortfolioPositionRepo;
+import com.thanos.portfolio.repository.PortfolioPositionRepo.PositionValue;
+import com.thanos.portfolio.repository.PortfolioRebalanceAppliedRepo;
+import com.thanos.portfolio.repository.PortfolioRepo;
+import com.thanos.portfolio.shard.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+public class DriftScanner {
+
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    private record Part(int scanned, int skippedCooldown, List<DriftBreach> breaches) {}
+
+    private record LegacyPosition(Long portfolioId, Category category, String ticker, Integer quantity,
+                                  BigDecimal totalAmount) implements PositionValue {
+        public Long getPortfolioId() { return portfolioId; }
+        public Category getCategory() { return category; }
+        public String getTicker() { return ticker; }
+        public Integer getQuantity() { return quantity; }
+        public BigDecimal getTotalAmount() { return totalAmount; }
+    }
+
+    private final PortfolioRepo repo;
+    private final PortfolioPositionRepo positionRepo;
+    private final PortfolioRebalanceAppliedRepo appliedRepo;
+    private final ShardRouter router;
+    private final int chunkSize;
+
+    public DriftScanner(PortfolioRepo repo, PortfolioPositionRepo positionRepo,
+                        PortfolioRebalanceAppliedRepo appliedRepo, ShardRouter router,
+                        @Value("${portfolio.drift.scan-chunk-size:2000}") int chunkSize) {
+        this.repo = repo;
+        this.positionRepo = positionRepo;
+        this.appliedRepo = appliedRepo;
+        this.router = router;
+        this.chunkSize = chunkSize;
+    }
+
+    // One RM book is scanned on its shard, the whole fleet shard by shard
+    public DriftScanResult scan(DriftScanRequest req) {
+        long started = System.nanoTime();
+        Map<String, BigDecimal> prices = priceLookup(req.priceFrame());
+        LocalDateTime now = LocalDateTime.now();
+
+        List<Part> parts = req.rmId() == null
+                ? router.onEachShard(() -> scanShard(req, prices, now))
+                : List.of(router.onRm(req.rmId(), () -> scanShard(req, prices, now)));
+
+        int scanned = 0;
+        int skippedCooldown = 0;
+        List<DriftBreach> breaches = new ArrayList<>();
+        for (Part part : parts) {
+            scanned += part.scanned();
+            skippedCooldown += part.skippedCooldown();
+            breaches.addAll(part.breaches());
+        }
+        breaches.sort(Comparator.comparing(DriftBreach::maxDrift).reversed()
+                .thenComparing(DriftBreach::portfolioId));
+
+        long elapsed = (System.nanoTime() - started) / 1_000_000;
+        log.info("Drift scan: scanned={} cooldown={} breaches={} in {}ms",
+                scanned, skippedCooldown, breaches.size(), elapsed);
+        return new DriftScanResult(scanned, skippedCooldown, elapsed, breaches);
+    }
+
+    // Reads go chunk by chunk on the calling thread; the math for chunk N runs on the
+    // fork-join pool while chunk N+1 is being fetched.
+    private Part scanShard(DriftScanRequest req, Map<String, BigDecimal> prices, LocalDateTime now) {
+        List<DriftBreach> breaches = new ArrayList<>();
+        CompletableFuture<List<DriftBreach>> pending = CompletableFuture.completedFuture(List.of());
+        int scanned = 0;
+        int skippedCooldown = 0;
+        long after = 0L;
+
+        while (true) {
+            List<DriftCandidate> page = req.rmId() == null
+                    ? repo.findDriftCandidates(after, PageRequest.ofSize(chunkSize))
+                    : repo.findDriftCandidatesByRmId(req.rmId(), after, PageRequest.ofSize(chunkSize));
+            if (page.isEmpty()) break;
+            after = page.get(page.size() - 1).portfolioId();
+
+            List<DriftCandidate> candidates = req.triggerMode() == null
+                    ? page
+                    : page.stream().filter(c -> c.triggerMode() == req.triggerMode()).toList();
+            scanned += candidates.size();
+
+            List<DriftCandidate> due = withTargetStates(dropCoolingDown(candidates, now));
+            skippedCooldown += candidates.size() - due.size();
+
+            Map<Long, List<PositionValue>> positions = due.isEmpty()
+                    ? Map.of()
+                    : withLegacyHoldings(due, positionRepo.findValuesByPortfolioIdIn(ids(due)).stream()
+                            .collect(Collectors.groupingBy(PositionValue::getPortfolioId)));
+
+            breaches.addAll(pending.join());
+            pending = CompletableFuture.supplyAsync(() -> due.parallelStream()
+                    .map(c -> evaluate(c, positions.getOrDefault(c.portfolioId(), List.of()), prices))
+                    .filter(Objects::nonNull)
+                    .toList());
+
+            if (page.size() < chunkSize) break;
+        }
+        breaches.addAll(pending.join());
+        return new Part(scanned, skippedCooldown, breaches);
+    }
+
+    // A portfolio the position migration has not reached yet (or never will, with migrate-on-startup
+    // off) has no rows; without its JSON holdings it would look all cash and breach on every target
+    private Map<Long, List<PositionValue>> withLegacyHoldings(List<DriftCandidate> due, Map<Long, List<PositionValue>> positions) {
+        List<Long> missing = due.stream().map(DriftCandidate::portfolioId).filter(id -> !positions.containsKey(id)).toList();
+        if (missing.isEmpty()) return positions;
+
+        Map<Long, List<PositionValue>> out = new HashMap<>(positions);
+        for (PortfolioRepo.LegacyHoldings h : repo.findLegacyHoldings(missing)) {
+            List<PositionValue> values = new ArrayList<>();
+            h.getHoldings().forEach((cat, list) -> {
+                for (StockPosition sp : list) {
+                    values.add(new LegacyPosition(h.getPortfolioId(), cat, sp.ticker(), sp.quantity(), sp.totalAmount()));
+                }
+            });
+            out.put(h.getPortfolioId(), values);
+        }
+        return out;
+    }
+
+    // Rows the summary backfill has not reached (or skipped) have no target_* columns; compared with
+    // zero targets they would all breach, so their targets come from the JSON column instead
+    private List<DriftCandidate> withTargetStates(List<DriftCandidate> due) {
+        List<Long> missing = due.stream().filter(c -> c.targetState() == null).map(DriftCandidate::portfolioId).toList();
+        if (missing.isEmpty()) return due;
+
+        Map<Long, Map<Category, BigDecimal>> targets = new HashMap<>();
+        for (PortfolioRepo.TargetStateOnly t : repo.findTargetStates(missing)) {
+            targets.put(t.getPortfolioId(), t.getTargetState() == null ? Map.of() : t.getTargetState());
+        }
+        return due.stream()
+                .map(c -> c.targetState() == null ? c.withTargetState(targets.getOrDefault(c.portfolioId(), Map.of())) : c)
+                .toList();
+    }
+
+    private List<DriftCandidate> dropCoolingDown(List<DriftCandidate> candidates, LocalDateTime now) {
+        if (candidates.isEmpty()) return candidates;
+
+        Map<Long, LocalDateTime> lastApplied = new HashMap<>();
+        for (PortfolioRebalanceAppliedRepo.LastApplied row : appliedRepo.findLastAppliedAt(ids(candidates))) {
+            lastApplied.put(row.getPortfolioId(), row.getLastAppliedAt());
+        }
+        if (lastApplied.isEmpty()) return candidates;
+
+        return candidates.stream()
+                .filter(c -> {
+                    LocalDateTime last = lastApplied.get(c.portfolioId());
+                    int days = c.cooldownDays() == null ? 0 : c.cooldownDays();
+                    return last == null || !last.plusDays(days).isAfter(now);
+                })
+                .toList();
+    }
+
+    // Same weight/drift arithmetic as the summary columns, so a stored maxDrift and a scan agree
+    static DriftBreach evaluate(DriftCandidate c, List<PositionValue> positions, Map<String, BigDecimal> prices) {
+        Map<Category, BigDecimal> byCategory = new EnumMap<>(Category.class);
+        BigDecimal total = BigDecimal.ZERO;
+        for (PositionValue p : positions) {
+            BigDecimal value = valueOf(p, prices);
+            if (value == null) continue;
+            byCategory.merge(p.getCategory(), value, BigDecimal::add);
+            total = total.add(value);
+        }
+
+        Map<Category, BigDecimal> drifts = new EnumMap<>(Category.class);
+        Category worst = null;
+        BigDecimal maxDrift = BigDecimal.ZERO;
+        for (Category cat : Category.values()) {
+            BigDecimal weight = total.compareTo(BigDecimal.ZERO) <= 0
+                    ? BigDecimal.ZERO
+                    : PortfolioMath.percentOf(byCategory.getOrDefault(cat, BigDecimal.ZERO), total);
+            BigDecimal target = c.targetState().getOrDefault(cat, BigDecimal.ZERO);
+            BigDecimal drift = weight.subtract(target).divide(HUNDRED, 6, RoundingMode.HALF_UP);
+            drifts.put(cat, drift);
+            if (worst == null || drift.abs().compareTo(maxDrift) > 0) {
+                worst = cat;
+                maxDrift = drift.abs();
+            }
+        }
+
+        BigDecimal threshold = c.driftThresholdAbs();
+        if (threshold == null || maxDrift.compareTo(threshold) <= 0) return null;
+
+        return new DriftBreach(c.portfolioId(), c.userId(), c.rmId(), c.triggerMode(),
+                worst, maxDrift, threshold, drifts);
+    }
+
+    private static BigDecimal valueOf(PositionValue p, Map<String, BigDecimal> prices) {
+        BigDecimal price = p.getTicker() == null ? null : prices.get(p.getTicker().toUpperCase());
+        if (price != null && p.getQuantity() != null) {
+            return PortfolioMath.multiply(price, p.getQuantity(), 2);
+        }
+        return p.getTotalAmount();
+    }
+
+    private static Map<String, BigDecimal> priceLookup(List<PriceRow> priceFrame) {
+        if (priceFrame == null || priceFrame.isEmpty()) return Map.of();
+        Map<String, BigDecimal> out = new HashMap<>();
+        for (PriceRow r : priceFrame) {
+            if (r.symbol() == null || r.price() == null) continue;
+            out.putIfAbsent(r.symbol().toUpperCase(), r.price());
+        }
+        return out;
+    }
+
+    private static List<Long> ids(List<DriftCandidate> candidates) {
+        return candidates.stream().map(DriftCandidate::portfolioId).toList();
+    }
+}
@@ -0,0 +1,103 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.cache.BloomFilter;
+import com.thanos.portfolio.repository.PortfolioRebalanceAppliedRepo;
+import com.thanos.portfolio.shard.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Front door for "was this rebalance already applied?". The Bloom filter only answers the
+// lock-free fast path: it knows every key in the tables at startup plus everything this node
+// applied since, but not what other nodes applied, so the check under the row lock always
+// goes to the database.
+@Slf4j
+@Component
+public class IdempotencyGuard {
+
+    private final PortfolioRebalanceAppliedRepo appliedRepo;
+    private final TransactionTemplate readTx;
+    private final ShardRouter router;
+    private final boolean filterEnabled;
+    private final long minExpectedKeys;
+    private final double falsePositiveRate;
+
+    private volatile BloomFilter filter;     // null until the startup rebuild finished
+    private volatile BloomFilter building;   // also fed by recordApplied while a rebuild scans
+
+    public IdempotencyGuard(PortfolioRebalanceAppliedRepo appliedRepo, PlatformTransactionManager txManager,
+                            ShardRouter router,
+                            @Value("${portfolio.idempotency.filter.enabled:true}") boolean filterEnabled,
+                            @Value("${portfolio.idempotency.filter.expected-keys:1000000}") long minExpectedKeys,
+                            @Value("${portfolio.idempotency.filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.appliedRepo = appliedRepo;
+        this.readTx = new TransactionTemplate(txManager);
+        this.readTx.setReadOnly(true);
+        this.router = router;
+        this.filterEnabled = filterEnabled;
+        this.minExpectedKeys = minExpectedKeys;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (!filterEnabled) return;
+        Thread.ofVirtual().name("idempotency-filter-rebuild").start(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                // without a filter every fast-path check simply goes to the database
+                log.warn("Could not build the applied-rebalance filter", e);
+            }
+        });
+    }
+
+    public void rebuild() {
+        long started = System.nanoTime();
+        long existing = router.onEachShard(appliedRepo::countAppliedKeys).stream().mapToLong(Long::longValue).sum();
+        // headroom for keys applied while this node runs
+        BloomFilter next = BloomFilter.create(Math.max(minExpectedKeys, existing * 2), falsePositiveRate);
+
+        // a half-built filter must never answer "absent", so it only goes live once the scan is done;
+        // keys this node applies meanwhile are fed to it directly
+        building = next;
+        long[] loaded = {0};
+        try {
+            router.onEachShard(() -> readTx.execute(status -> {
+                appliedRepo.forEachAppliedKey((rebalanceId, portfolioId) -> {
+                    next.put(portfolioId, rebalanceId);
+                    loaded[0]++;
+                });
+                return null;
+            }));
+            filter = next;
+        } finally {
+            building = null;
+        }
+        log.info("Applied-rebalance filter built from {} keys ({} bits) in {} ms",
+                loaded[0], next.bitSize(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Fast path before any lock; most new rebalance ids never reach the database here
+    public boolean probablyApplied(Long portfolioId, String rebalanceId) {
+        BloomFilter f = filter;
+        if (f != null && !f.mightContain(portfolioId, rebalanceId)) return false;
+        return appliedRepo.isApplied(portfolioId, rebalanceId);
+    }
+
+    // Under the portfolio lock (or inside the versioned write): always authoritative
+    public boolean isApplied(Long portfolioId, String rebalanceId) {
+        return appliedRepo.isApplied(portfolioId, rebalanceId);
+    }
+
+    public void recordApplied(Long portfolioId, String rebalanceId) {
+        BloomFilter f = filter;
+        if (f != null) f.put(portfolioId, rebalanceId);
+        BloomFilter b = building;
+        if (b != null) b.put(portfolioId, rebalanceId);
+    }
+}
@@ -0,0 +1,204 @@
+package com.thanos.portfolio.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.thanos.portfolio.converter.CsvReader;
+import com.thanos.portfolio.converter.PortfolioCsv;
+import com.thanos.portfolio.dto.BulkUpsertError;
+import com.thanos.portfolio.dto.BulkUpsertResult;
+import com.thanos.portfolio.dto.PortfolioCreateRequest;
+import com.thanos.portfolio.shard.ShardRouter;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Streams a bulk upload record by record: nothing beyond the current chunk is held in memory.
+// Records failing validation are reported and skipped; the rest go to PortfolioService.upsertChunk,
+// split by shard when sharded.
+@Slf4j
+@Component
+public class PortfolioBulkLoader {
+
+    public enum Format { JSON, NDJSON, CSV }
+
+    private final PortfolioService service;
+    private final ShardRouter router;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader requestReader;
+    private final Validator validator;
+    private final int chunkSize;
+    private final int maxErrors;
+
+    public PortfolioBulkLoader(PortfolioService service, ShardRouter router, ObjectMapper objectMapper, Validator validator,
+                               @Value("${portfolio.bulk.chunk-size:500}") int chunkSize,
+                               @Value("${portfolio.bulk.max-errors:1000}") int maxErrors) {
+        this.service = service;
+        this.router = router;
+        this.objectMapper = objectMapper;
+        this.requestReader = objectMapper.readerFor(PortfolioCreateRequest.class);
+        this.validator = validator;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxErrors = maxErrors;
+    }
+
+    private final class Run {
+        final long started = System.nanoTime();
+        final List<PortfolioCreateRequest> chunk = new ArrayList<>();
+        final List<long[]> chunkPositions = new ArrayList<>();   // {record, line}
+        final List<BulkUpsertError> errors = new ArrayList<>();
+        long received;
+        long upserted;
+        long failed;
+        boolean truncated;
+
+        void accept(PortfolioCreateRequest req, Long line) {
+            long record = received++;
+            Set<ConstraintViolation<PortfolioCreateRequest>> violations = validator.validate(req);
+            if (!violations.isEmpty()) {
+                fail(record, line, req, violations.stream()
+                        .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; ")));
+                return;
+            }
+            chunk.add(req);
+            chunkPositions.add(new long[]{record, line == null ? -1 : line});
+            if (chunk.size() >= chunkSize) flush();
+        }
+
+        void reject(Long line, String message) {
+            fail(received++, line, null, message);
+        }
+
+        void flush() {
+            if (chunk.isEmpty()) return;
+            List<String> results = router.placeAll(chunk, r -> r.userDetails().userId(), r -> r.rmDetails().rmId(),
+                    service::upsertChunk);
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i) == null) {
+                    upserted++;
+                } else {
+                    long[] pos = chunkPositions.get(i);
+                    fail(pos[0], pos[1] < 0 ? null : pos[1], chunk.get(i), results.get(i));
+                }
+            }
+            chunk.clear();
+            chunkPositions.clear();
+        }
+
+        void fail(long record, Long line, PortfolioCreateRequest req, String message) {
+            failed++;
+            if (errors.size() < maxErrors) {
+                String userId = req == null || req.userDetails() == null ? null : req.userDetails().userId();
+                errors.add(new BulkUpsertError(record, line, userId, message));
+            }
+        }
+
+        BulkUpsertResult finish() {
+            flush();
+            long elapsed = (System.nanoTime() - started) / 1_000_000;
+            log.info("Bulk upsert: {} received, {} upserted, {} failed in {} ms", received, upserted, failed, elapsed);
+            return new BulkUpsertResult(received, upserted, failed, truncated, elapsed, List.copyOf(errors));
+        }
+    }
+
+    public BulkUpsertResult load(InputStream in, Format format) throws IOException {
+        Run run = new Run();
+        switch (format) {
+            case JSON -> loadJson(in, run);
+            case NDJSON -> loadNdjson(in, run);
+            case CSV -> loadCsv(in, run);
+        }
+        return run.finish();
+    }
+
+    // A top-level array (or concatenated objects) read one element at a time. A malformed element
+    // can't be skipped reliably inside an array, so it ends the load after what came before it.
+    private void loadJson(InputStream in, Run run) throws IOException {
+        try (JsonParser p = objectMapper.getFactory().createParser(in)) {
+            JsonToken first = p.nextToken();
+            if (first == null) return;
+            boolean array = first == JsonToken.START_ARRAY;
+            JsonToken t = array ? p.nextToken() : first;
+            while (t != null && t != JsonToken.END_ARRAY) {
+                PortfolioCreateRequest req;
+                try {
+                    req = requestReader.readValue(p);
+                } catch (JsonProcessingException e) {
+                    run.reject(null, "Malformed JSON, load stopped: " + e.getOriginalMessage());
+                    run.truncated = true;
+                    return;
+                }
+                run.accept(req, null);
+                t = p.nextToken();
+            }
+        } catch (JsonParseException e) {
+            run.reject(null, "Malformed JSON, load stopped: " + e.getOriginalMessage());
+            run.truncated = true;
+        }
+    }
+
+    // One document per line, so a bad line only fails itself
+    private void loadNdjson(InputStream in, Run run) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String text;
+        long line = 0;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.isBlank()) continue;
+            PortfolioCreateRequest req;
+            try {
+                req = requestReader.readValue(text);
+            } catch (JsonProcessingException e) {
+                run.reject(line, "Malformed JSON: " + e.getOriginalMessage());
+                continue;
+            }
+            run.accept(req, line);
+        }
+    }
+
+    private void loadCsv(InputStream in, Run run) throws IOException {
+        CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        List<String> header = reader.next();
+        if (header == null) return;
+        if (!header.isEmpty() && header.get(0).startsWith("﻿")) {
+            header.set(0, header.get(0).substring(1));
+        }
+        PortfolioCsv csv = new PortfolioCsv(objectMapper, header);
+
+        while (true) {
+            long line = reader.line();
+            List<String> row;
+            try {
+                row = reader.next();
+            } catch (IOException e) {
+                run.reject(line, e.getMessage() + ", load stopped");
+                run.truncated = true;
+                return;
+            }
+            if (row == null) return;
+            if (row.size() == 1 && row.get(0).isBlank()) continue;
+            PortfolioCreateRequest req;
+            try {
+                req = csv.toRequest(row);
+            } catch (IOException | RuntimeException e) {
+                run.reject(line, e.getMessage());
+                continue;
+            }
+            run.accept(req, line);
+        }
+    }
+}
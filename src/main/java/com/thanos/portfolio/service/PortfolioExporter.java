@@ -0,0 +1,201 @@
+package com.thanos.portfolio.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thanos.portfolio.converter.*;
+import com.thanos.portfolio.dto.PortfolioResponse;
+import com.thanos.portfolio.entities.PortfolioPosition;
+import com.thanos.portfolio.entities.TriggerMode;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.PortfolioMath;
+import com.thanos.portfolio.model.StockPosition;
+import com.thanos.portfolio.shard.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Full dump of every portfolio. Two forward-only cursors, portfolios by id and positions by
+// portfolio_id, are merged as they stream in, so only one portfolio is ever in memory and no
+// portfolio column is repeated per position. One repeatable-read transaction gives both cursors
+// the same snapshot. Sharded, the shards are dumped one after another, each from its own snapshot.
+@Slf4j
+@Component
+public class PortfolioExporter {
+
+    public enum Format { NDJSON, CSV }
+
+    private static final String PORTFOLIOS_SQL =
+            "select id, created_on, updated_on, user_id, rm_id, user_details, rm_details, target_state, " +
+            "free_cash, drift_threshold_abs, cooldown_days, trigger_mode, portfolio from portfolios order by id";
+
+    private static final String POSITIONS_SQL =
+            "select portfolio_id, category, ticker, name, quantity, avg_price, total_amount, position_date " +
+            "from portfolio_positions order by portfolio_id, id";
+
+    private static final DateTimeFormatter CSV_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate snapshotTx;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter router;
+    private final int fetchSize;
+    private final UserDetailsConverter userConverter = new UserDetailsConverter();
+    private final RMDetailsConverter rmConverter = new RMDetailsConverter();
+    private final TargetStateConverter targetConverter = new TargetStateConverter();
+    private final PortfolioDetailsConverter legacyConverter = new PortfolioDetailsConverter();
+
+    public PortfolioExporter(JdbcTemplate jdbc, PlatformTransactionManager txManager, ObjectMapper objectMapper,
+                             ShardRouter router,
+                             @Value("${portfolio.export.fetch-size:5000}") int fetchSize) {
+        this.jdbc = jdbc;
+        this.snapshotTx = new TransactionTemplate(txManager);
+        this.snapshotTx.setReadOnly(true);
+        this.snapshotTx.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.objectMapper = objectMapper;
+        this.router = router;
+        this.fetchSize = fetchSize;
+    }
+
+    private interface Sink {
+        void write(PortfolioResponse p) throws IOException;
+    }
+
+    // Writes to `out` as rows arrive; the caller owns (and closes) the stream
+    public long export(Format format, OutputStream out) throws IOException {
+        long started = System.nanoTime();
+        Writer text = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        Sink sink;
+        if (format == Format.CSV) {
+            CsvWriter csv = new CsvWriter(text);
+            csv.writeRow(PortfolioCsv.HEADER);
+            sink = p -> csv.writeRow(csvRow(p));
+        } else {
+            sink = p -> {
+                text.write(objectMapper.writeValueAsString(p));
+                text.write('\n');
+            };
+        }
+
+        long[] count = {0};
+        try {
+            router.onEachShard(() -> snapshotTx.execute(status -> jdbc.execute((ConnectionCallback<Void>) con -> {
+                try (PreparedStatement portfolios = con.prepareStatement(PORTFOLIOS_SQL);
+                     PreparedStatement positions = con.prepareStatement(POSITIONS_SQL)) {
+                    portfolios.setFetchSize(fetchSize);
+                    positions.setFetchSize(fetchSize);
+                    try (ResultSet p = portfolios.executeQuery(); ResultSet pos = positions.executeQuery()) {
+                        merge(p, pos, sink, count);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            })));
+        } catch (UncheckedIOException e) {
+            // the client went away; nothing to roll back
+            throw e.getCause();
+        }
+        text.flush();
+        log.info("Exported {} portfolios as {} in {} ms", count[0], format, (System.nanoTime() - started) / 1_000_000);
+        return count[0];
+    }
+
+    private void merge(ResultSet p, ResultSet pos, Sink sink, long[] count) throws SQLException, IOException {
+        boolean hasPosition = pos.next();
+        List<PortfolioPosition> rows = new ArrayList<>();
+        while (p.next()) {
+            long id = p.getLong("id");
+            rows.clear();
+            // positions of ids we never see (none, given the foreign key) are skipped, not buffered
+            while (hasPosition && pos.getLong(1) <= id) {
+                if (pos.getLong(1) == id) rows.add(position(pos));
+                hasPosition = pos.next();
+            }
+            sink.write(toResponse(p, rows));
+            count[0]++;
+        }
+    }
+
+    private PortfolioResponse toResponse(ResultSet p, List<PortfolioPosition> rows) throws SQLException {
+        Map<Category, List<StockPosition>> holdings = PortfolioPosition.toHoldings(rows);
+        if (rows.isEmpty()) {
+            // not migrated into portfolio_positions yet
+            Map<Category, List<StockPosition>> legacy = legacyConverter.convertToEntityAttribute(p.getString("portfolio"));
+            if (legacy != null) holdings = legacy;
+        }
+        List<BigDecimal> amounts = new ArrayList<>();
+        holdings.values().forEach(list -> list.forEach(sp -> amounts.add(sp.totalAmount())));
+        String trigger = p.getString("trigger_mode");
+        return new PortfolioResponse(
+                p.getLong("id"),
+                userConverter.convertToEntityAttribute(p.getString("user_details")),
+                rmConverter.convertToEntityAttribute(p.getString("rm_details")),
+                holdings,
+                targetConverter.convertToEntityAttribute(p.getString("target_state")),
+                PortfolioMath.sum(amounts),
+                localDateTime(p.getTimestamp("updated_on")),
+                localDateTime(p.getTimestamp("created_on")),
+                trigger == null ? null : TriggerMode.valueOf(trigger),
+                p.getBigDecimal("free_cash"),
+                p.getBigDecimal("drift_threshold_abs"),
+                (Integer) p.getObject("cooldown_days")
+        );
+    }
+
+    private List<String> csvRow(PortfolioResponse r) throws IOException {
+        return List.of(
+                String.valueOf(r.portfolioId()),
+                csvTimestamp(r.createdOn()),
+                objectMapper.writeValueAsString(r.portfolio()),
+                objectMapper.writeValueAsString(r.rmDetails()),
+                r.rmDetails() == null || r.rmDetails().rmId() == null ? "" : r.rmDetails().rmId(),
+                objectMapper.writeValueAsString(r.targetState()),
+                csvTimestamp(r.updatedOn()),
+                objectMapper.writeValueAsString(r.userDetails()),
+                r.userDetails() == null || r.userDetails().userId() == null ? "" : r.userDetails().userId(),
+                r.cooldownDays() == null ? "" : r.cooldownDays().toString(),
+                r.driftThresholdAbs() == null ? "" : r.driftThresholdAbs().toPlainString(),
+                r.triggerMode() == null ? "" : r.triggerMode().name(),
+                r.freeCash() == null ? "" : r.freeCash().toPlainString()
+        );
+    }
+
+    private static PortfolioPosition position(ResultSet rs) throws SQLException {
+        PortfolioPosition pp = new PortfolioPosition();
+        pp.setPortfolioId(rs.getLong(1));
+        pp.setCategory(Category.valueOf(rs.getString(2)));
+        pp.setTicker(rs.getString(3));
+        pp.setName(rs.getString(4));
+        pp.setQuantity(rs.getInt(5));
+        pp.setAvgPrice(rs.getBigDecimal(6));
+        pp.setTotalAmount(rs.getBigDecimal(7));
+        Timestamp date = rs.getTimestamp(8);
+        pp.setPositionDate(date == null ? null : date.toInstant());
+        return pp;
+    }
+
+    private static LocalDateTime localDateTime(Timestamp ts) {
+        return ts == null ? null : ts.toLocalDateTime();
+    }
+
+    private static String csvTimestamp(LocalDateTime t) {
+        return t == null ? "" : CSV_TIMESTAMP.format(t);
+    }
+}
@@ -3,138 +3,326 @@ package com.thanos.portfolio.service;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.thanos.portfolio.dto.*;
+import com.thanos.portfolio.entities.CategoryWeights;
+import com.thanos.portfolio.entities.PortfolioPosition;
 import com.thanos.portfolio.entities.PortfolioRebalanceApplied;
+import com.thanos.portfolio.entities.PositionLedgerEvent;
 import com.thanos.portfolio.entities.Side;
 import com.thanos.portfolio.entities.TriggerMode;
 import com.thanos.portfolio.model.*;
 import com.thanos.portfolio.entities.Portfolio;
+import com.thanos.portfolio.repository.PortfolioPositionRepo;
 import com.thanos.portfolio.repository.PortfolioRebalanceAppliedRepo;
 import com.thanos.portfolio.repository.PortfolioRepo;
+import com.thanos.portfolio.cache.PortfolioCache;
+import com.thanos.portfolio.event.PortfolioChangedEvent;
+import com.thanos.portfolio.service.StageMetrics.Duplicate;
+import com.thanos.portfolio.service.StageMetrics.Op;
+import com.thanos.portfolio.service.StageMetrics.Stage;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.OptimisticLockException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+@Slf4j
 @Service
 public class PortfolioService {
 
     private final PortfolioRebalanceAppliedRepo appliedRepo;
     private final PortfolioRepo repo;
+    private final PortfolioPositionRepo positionRepo;
+    private final EntityManager entityManager;
+    private final PortfolioCache cache;
+    private final ApplicationEventPublisher events;
+    private final TransactionTemplate readTx;
+    private final TransactionTemplate writeTx;
+    private final PriceSnapshotStore priceSnapshots;
+    private final ApplyMetrics applyMetrics;
+    private final StageMetrics stages;
+    private final IdempotencyGuard idempotency;
+    private final PositionLedger ledger;
+    private final ApplyMode applyMode;
+    private final int optimisticMaxAttempts;
+    private final Duration optimisticBackoff;
+    private final Duration deltaOverlap;
     private final ObjectMapper objectMapper =  new ObjectMapper();
 
-    public PortfolioService(PortfolioRebalanceAppliedRepo appliedRepo, PortfolioRepo repo) {
+    public PortfolioService(PortfolioRebalanceAppliedRepo appliedRepo, PortfolioRepo repo,
+                            PortfolioPositionRepo positionRepo, EntityManager entityManager,
+                            PortfolioCache cache, ApplicationEventPublisher events,
+                            PlatformTransactionManager txManager, PriceSnapshotStore priceSnapshots,
+                            ApplyMetrics applyMetrics, StageMetrics stages,
+                            IdempotencyGuard idempotency, PositionLedger ledger,
+                            @Value("${portfolio.apply.mode:PESSIMISTIC}") ApplyMode applyMode,
+                            @Value("${portfolio.apply.optimistic.max-attempts:5}") int optimisticMaxAttempts,
+                            @Value("${portfolio.apply.optimistic.backoff:10ms}") Duration optimisticBackoff,
+                            @Value("${portfolio.delta.overlap:5s}") Duration deltaOverlap) {
         this.appliedRepo = appliedRepo;
         this.repo = repo;
+        this.positionRepo = positionRepo;
+        this.entityManager = entityManager;
+        this.cache = cache;
+        this.events = events;
+        this.readTx = new TransactionTemplate(txManager);
+        this.readTx.setReadOnly(true);
+        this.writeTx = new TransactionTemplate(txManager);
+        this.priceSnapshots = priceSnapshots;
+        this.applyMetrics = applyMetrics;
+        this.stages = stages;
+        this.idempotency = idempotency;
+        this.ledger = ledger;
+        this.applyMode = applyMode;
+        this.optimisticMaxAttempts = Math.max(1, optimisticMaxAttempts);
+        this.optimisticBackoff = optimisticBackoff;
+        this.deltaOverlap = deltaOverlap;
     }
 
+    // Not @Transactional: a cache hit must not take a pooled connection
     public PortfolioResponse getById(Long id) {
-        Portfolio e = repo.findById(id)
-                .orElseThrow(() -> new NoSuchElementException("Portfolio not found for id=" + id));
+        long start = System.nanoTime();
+        PortfolioResponse cached = cache.getById(id);
+        long t = stages.lap(Op.READ_BY_ID, Stage.CACHE, start);
+        if (cached != null) return cached;
+
+        long generation = cache.beginLoad();
+        PortfolioResponse r = readTx.execute(status -> {
+            Portfolio e = repo.findById(id)
+                    .orElseThrow(() -> new NoSuchElementException("Portfolio not found for id=" + id));
+            long mapped = stages.lap(Op.READ_BY_ID, Stage.QUERY, t);
+
+            PortfolioResponse out = toResponse(e);
+            stages.lap(Op.READ_BY_ID, Stage.MAP, mapped);
+            return out;
+        });
+        cache.put(r, generation);
+        return r;
+    }
 
-        UserDetails user = new UserDetails(
-                e.getUserDetails().userId(),
-                e.getUserDetails().firstName(),
-                e.getUserDetails().lastName(),
-                e.getUserDetails().email(),
-                e.getUserDetails().phoneNumber()
-        );
+    @Transactional(readOnly = true)
+    public List<PortfolioResponse> getByRmId(String rmId) {
+        long t = System.nanoTime();
+        List<Portfolio> portfolios = repo.findByRmId(rmId)
+                .orElseThrow(() -> new NoSuchElementException("No portfolios found for rmId=" + rmId));
+        t = stages.lap(Op.READ_BY_RM, Stage.QUERY, t);
 
-        RMDetails rm = new RMDetails(
-                e.getRmDetails().rmId(),
-                e.getRmDetails().firstName(),
-                e.getRmDetails().lastName(),
-                e.getRmDetails().email(),
-                e.getRmDetails().phoneNumber()
-        );
+        List<PortfolioResponse> out = portfolios.stream().map(this::toResponse).toList();
+        stages.lap(Op.READ_BY_RM, Stage.MAP, t);
+        return out;
+    }
 
-        Map<Category, List<StockPosition>> portfolio = fromEntityPortfolio(e.getPortfolio());
+    @Transactional(readOnly = true)
+    public PortfolioPage getByRmIdPage(String rmId, Long after, int limit) {
+        // Fetch one extra row to know whether another page exists without a count query
+        List<Portfolio> rows = repo.findByRmIdAndIdGreaterThanOrderByIdAsc(
+                rmId, after == null ? 0L : after, Limit.of(limit + 1));
 
-        BigDecimal portfolioValue = sumPortfolioValue(portfolio);
+        boolean hasMore = rows.size() > limit;
+        List<PortfolioResponse> items = rows.stream().limit(limit).map(this::toResponse).toList();
+        Long nextCursor = hasMore ? items.get(items.size() - 1).portfolioId() : null;
 
-        return new PortfolioResponse(
-                e.getId(),
-                user,
-                rm,
-                portfolio,
-                e.getTargetState(), // Map<Category, BigDecimal>
-                portfolioValue,
-                e.getUpdatedOn(),
-                e.getCreatedOn(),
-                e.getTriggerMode(),
-                e.getFreeCash(),
-                e.getDriftThresholdAbs(),
-                e.getCooldownDays()
-        );
+        return new PortfolioPage(items, nextCursor);
     }
 
-    public List<PortfolioResponse> getByRmId(String rmId) {
-        List<Portfolio> portfolios = repo.findByRmId(rmId)
-                .orElseThrow(() -> new NoSuchElementException("No portfolios found for rmId=" + rmId));
+    // Portfolios of the book written after `since`. Clocks of other instances and transactions still
+    // in flight can land a write slightly behind the newest updated_on seen, so the cursor handed back
+    // trails now() by `overlap`; clients upsert by portfolioId and tolerate repeats. A portfolio moved
+    // to another RM does not show up here; the full /rm/{rmId} read stays the way to catch that.
+    @Transactional(readOnly = true)
+    public PortfolioChanges changedSince(String rmId, LocalDateTime since) {
+        LocalDateTime next = LocalDateTime.now().minus(deltaOverlap);
+        if (next.isBefore(since)) next = since;
+        List<PortfolioResponse> items = repo.findByRmIdAndUpdatedOnGreaterThanOrderByUpdatedOnAscIdAsc(rmId, since)
+                .stream().map(this::toResponse).toList();
+        return new PortfolioChanges(items, next);
+    }
 
-        return portfolios.stream().map(e -> {
-            UserDetails user = new UserDetails(
-                    e.getUserDetails().userId(),
-                    e.getUserDetails().firstName(),
-                    e.getUserDetails().lastName(),
-                    e.getUserDetails().email(),
-                    e.getUserDetails().phoneNumber()
-            );
-
-            RMDetails rm = new RMDetails(
-                    e.getRmDetails().rmId(),
-                    e.getRmDetails().firstName(),
-                    e.getRmDetails().lastName(),
-                    e.getRmDetails().email(),
-                    e.getRmDetails().phoneNumber()
-            );
-
-            Map<Category, List<StockPosition>> portfolio = fromEntityPortfolio(e.getPortfolio());
-
-            BigDecimal portfolioValue = sumPortfolioValue(portfolio);
-
-            return new PortfolioResponse(
-                    e.getId(),
-                    user,
-                    rm,
-                    portfolio,
-                    e.getTargetState(), // Map<Category, BigDecimal>
-                    portfolioValue,
-                    e.getUpdatedOn(),
-                    e.getCreatedOn(),
-                    e.getTriggerMode(),
-                    e.getFreeCash(),
-                    e.getDriftThresholdAbs(),
-                    e.getCooldownDays()
-            );
-        }).toList();
+    @Transactional(readOnly = true)
+    public ReadStamp stampByRmId(String rmId) {
+        return repo.findStampByRmId(rmId);
+    }
+
+    @Transactional(readOnly = true)
+    public ReadStamp stampByUserId(String userId) {
+        return repo.findStampByUserId(userId);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamByRmId(String rmId, Consumer<PortfolioResponse> sink) {
+        try (Stream<Portfolio> rows = repo.streamByRmId(rmId)) {
+            rows.forEach(e -> {
+                sink.accept(toResponse(e));
+                // keep the persistence context from growing with the book
+                entityManager.detach(e);
+            });
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<PortfolioSummary> getSummariesByRmId(String rmId) {
+        return repo.findSummariesByRmId(rmId);
+    }
+
+    // Fills summary columns for rows written before they existed; returns how many rows were updated
+    @Transactional
+    public int backfillSummaries(int chunkSize) {
+        List<Portfolio> rows = repo.findByPortfolioValueIsNullOrderByIdAsc(Limit.of(chunkSize));
+        for (Portfolio e : rows) {
+            refreshSummary(e, fromEntityPortfolio(e.getPortfolio()));
+        }
+        return rows.size();
     }
 
     @Transactional
     public PortfolioResponse createOrUpdate(PortfolioCreateRequest req) {
-        String userId = req.userDetails().userId();
+        long t = System.nanoTime();
+        PreparedUpsert p = prepareUpsert(req);
+        t = stages.lap(Op.CREATE, Stage.MATH, t);
+
+        // 3) Persist (upsert)
+        Portfolio entity = repo.findByUserId(req.userDetails().userId()).orElseGet(Portfolio::new);
+        t = stages.lap(Op.CREATE, Stage.QUERY, t);
+        fill(entity, p);
+
+        Long versionBefore = entity.getVersion();
+        Portfolio saved = repo.saveAndFlush(entity);
+        bumpVersionIfUnchanged(saved, versionBefore);
+        t = stages.lap(Op.CREATE, Stage.FLUSH, t);
+        positionRepo.replaceAll(saved.getId(), toPositionRows(saved.getId(), p.holdings()));
+        t = stages.lap(Op.CREATE, Stage.POSITIONS, t);
+        ledger.append(ledger.replaced(saved.getId(), p.holdings(), saved.getFreeCash()));
+        stages.lap(Op.CREATE, Stage.LEDGER, t);
+        publishChanged(saved);
+
+        return new PortfolioResponse(
+                saved.getId(),
+                req.userDetails(),
+                req.rmDetails(),
+                p.holdings(),
+                req.targetState(),
+                p.portfolioValue(),
+                saved.getUpdatedOn(),
+                saved.getCreatedOn(),
+                saved.getTriggerMode(),
+                saved.getFreeCash(),
+                saved.getDriftThresholdAbs(),
+                saved.getCooldownDays()
+        );
+    }
+
+    // One chunk of a bulk load: holdings are computed in parallel, existing rows come from one
+    // user_id IN (...) query and everything is written in one transaction. Returns an error message
+    // per request (null when it was stored); if the chunk write fails as a whole, each request is
+    // retried on its own so one bad row only fails itself.
+    public List<String> upsertChunk(List<PortfolioCreateRequest> chunk) {
+        String[] errors = new String[chunk.size()];
+        PreparedUpsert[] prepared = new PreparedUpsert[chunk.size()];
+        IntStream.range(0, chunk.size()).parallel().forEach(i -> {
+            try {
+                prepared[i] = prepareUpsert(chunk.get(i));
+            } catch (RuntimeException e) {
+                errors[i] = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            }
+        });
+
+        try {
+            writeTx.executeWithoutResult(status -> writeChunk(prepared));
+        } catch (RuntimeException e) {
+            log.warn("Bulk upsert of {} portfolios failed, retrying one by one", chunk.size(), e);
+            for (int i = 0; i < chunk.size(); i++) {
+                if (prepared[i] == null) continue;
+                PortfolioCreateRequest req = chunk.get(i);
+                try {
+                    writeTx.executeWithoutResult(status -> createOrUpdate(req));
+                } catch (RuntimeException one) {
+                    errors[i] = one.getMessage() == null ? one.getClass().getSimpleName() : one.getMessage();
+                }
+            }
+        }
+        return Arrays.asList(errors);
+    }
+
+    private void writeChunk(PreparedUpsert[] prepared) {
+        Set<String> userIds = new HashSet<>();
+        for (PreparedUpsert p : prepared) {
+            if (p != null) userIds.add(p.req().userDetails().userId());
+        }
+        if (userIds.isEmpty()) return;
+
+        Map<String, Portfolio> byUser = new HashMap<>();
+        for (Portfolio e : repo.findByUserIdIn(userIds)) byUser.put(e.getUserId(), e);
+        Map<Portfolio, Long> versionsBefore = new IdentityHashMap<>();
+        byUser.values().forEach(e -> versionsBefore.put(e, e.getVersion()));
+
+        // a user repeated within the chunk ends up with its last request, like sequential calls would
+        Map<Portfolio, PreparedUpsert> last = new LinkedHashMap<>();
+        for (PreparedUpsert p : prepared) {
+            if (p == null) continue;
+            Portfolio entity = byUser.computeIfAbsent(p.req().userDetails().userId(), k -> new Portfolio());
+            fill(entity, p);
+            last.remove(entity);
+            last.put(entity, p);
+        }
+
+        repo.saveAllAndFlush(last.keySet());
+        Map<Long, List<PortfolioPosition>> rows = new HashMap<>();
+        List<PositionLedgerEvent> ledgerEvents = new ArrayList<>();
+        last.forEach((entity, p) -> {
+            bumpVersionIfUnchanged(entity, versionsBefore.get(entity));
+            rows.put(entity.getId(), toPositionRows(entity.getId(), p.holdings()));
+            ledgerEvents.addAll(ledger.replaced(entity.getId(), p.holdings(), entity.getFreeCash()));
+        });
+        positionRepo.replaceAll(rows);
+        ledger.append(ledgerEvents);
+        last.keySet().forEach(this::publishChanged);
+    }
+
+    private record PreparedUpsert(PortfolioCreateRequest req,
+                                  Map<Category, List<StockPosition>> holdings,
+                                  BigDecimal portfolioValue,
+                                  BigDecimal freeCash,
+                                  Integer cooldownDays,
+                                  BigDecimal driftThresholdAbs,
+                                  TriggerMode triggerMode) {}
+
+    // Everything that needs no database: defaults, totals and percentages
+    private PreparedUpsert prepareUpsert(PortfolioCreateRequest req) {
         BigDecimal freeCash = req.freeCash() != null ? req.freeCash() : BigDecimal.ZERO;
         Integer cooldownDays = req.cooldownDays() != null ? req.cooldownDays() : 3;
         BigDecimal driftThresholdAbs = req.driftThresholdAbs() != null ? req.driftThresholdAbs() : new BigDecimal("0.05");
         TriggerMode triggerMode = req.triggerMode() != null ? TriggerMode.valueOf(req.triggerMode()) : TriggerMode.MANUAL;
-        // 1) Compute totals per position and total portfolio value
-        Map<Category, List<StockPosition>> computed = compute(req.portfolio());
-        BigDecimal portfolioValue = sumPortfolioValue(computed);
-
-        // 2) Apply percentageOfPortfolio
-        Map<Category, List<StockPosition>> withPct = applyPercentages(computed, portfolioValue);
+        // Totals per position, total portfolio value and percentageOfPortfolio
+        Valuation computed = compute(req.portfolio());
+        return new PreparedUpsert(req, computed.holdings(), computed.portfolioValue(), freeCash, cooldownDays, driftThresholdAbs, triggerMode);
+    }
 
-        // 3) Persist (upsert)
-        Portfolio entity = repo.findByUserId(userId).orElseGet(Portfolio::new);
-        entity.setFreeCash(freeCash);
-        entity.setCooldownDays(cooldownDays);
-        entity.setDriftThresholdAbs(driftThresholdAbs);
-        entity.setTriggerMode(triggerMode);
-        entity.setUserId(userId);
+    private void fill(Portfolio entity, PreparedUpsert p) {
+        PortfolioCreateRequest req = p.req();
+        entity.setFreeCash(p.freeCash());
+        entity.setCooldownDays(p.cooldownDays());
+        entity.setDriftThresholdAbs(p.driftThresholdAbs());
+        entity.setTriggerMode(p.triggerMode());
+        entity.setUserId(req.userDetails().userId());
         entity.setRmId(req.rmDetails().rmId());
 
         entity.setUserDetails(new UserDetails(
@@ -153,70 +341,39 @@ public class PortfolioService {
                 req.rmDetails().phoneNumber()
         ));
 
-        // Save computed portfolio into entity StockPosition (JSON)
-        entity.setPortfolio(toEntityPortfolio(withPct));
+        // Keep computed portfolio on the entity; rows go to portfolio_positions separately
+        entity.setPortfolio(toEntityPortfolio(p.holdings()));
+        entity.setLegacyPortfolio(null);
         entity.setTargetState(req.targetState()); // Map<Category, BigDecimal>
-
-        Portfolio saved = repo.save(entity);
-
-        return new PortfolioResponse(
-                saved.getId(),
-                req.userDetails(),
-                req.rmDetails(),
-                withPct,
-                req.targetState(),
-                portfolioValue,
-                saved.getUpdatedOn(),
-                saved.getCreatedOn(),
-                saved.getTriggerMode(),
-                saved.getFreeCash(),
-                saved.getDriftThresholdAbs(),
-                saved.getCooldownDays()
-        );
+        refreshSummary(entity, p.holdings());
+        markWritten(entity);
     }
 
-    @Transactional(readOnly = true)
     public PortfolioResponse getByUserId(String userId) {
-        Portfolio e = repo.findByUserId(userId)
-                .orElseThrow(() -> new NoSuchElementException("Portfolio not found for userId=" + userId));
-
-        UserDetails user = new UserDetails(
-                e.getUserDetails().userId(),
-                e.getUserDetails().firstName(),
-                e.getUserDetails().lastName(),
-                e.getUserDetails().email(),
-                e.getUserDetails().phoneNumber()
-        );
-
-        RMDetails rm = new RMDetails(
-                e.getRmDetails().rmId(),
-                e.getRmDetails().firstName(),
-                e.getRmDetails().lastName(),
-                e.getRmDetails().email(),
-                e.getRmDetails().phoneNumber()
-        );
-
-        Map<Category, List<StockPosition>> portfolio = fromEntityPortfolio(e.getPortfolio());
-
-        BigDecimal portfolioValue = sumPortfolioValue(portfolio);
+        long start = System.nanoTime();
+        PortfolioResponse cached = cache.getByUserId(userId);
+        long t = stages.lap(Op.READ_BY_USER, Stage.CACHE, start);
+        if (cached != null) return cached;
+
+        long generation = cache.beginLoad();
+        PortfolioResponse r = readTx.execute(status -> {
+            Portfolio e = repo.findByUserId(userId)
+                    .orElseThrow(() -> new NoSuchElementException("Portfolio not found for userId=" + userId));
+            long mapped = stages.lap(Op.READ_BY_USER, Stage.QUERY, t);
+
+            PortfolioResponse out = toResponse(e);
+            stages.lap(Op.READ_BY_USER, Stage.MAP, mapped);
+            return out;
+        });
+        cache.put(r, generation);
+        return r;
+    }
 
-        return new PortfolioResponse(
-                e.getId(),
-                user,
-                rm,
-                portfolio,
-                e.getTargetState(), // Map<Category, BigDecimal>
-                portfolioValue,
-                e.getUpdatedOn(),
-                e.getCreatedOn(),
-                e.getTriggerMode(),
-                e.getFreeCash(),
-                e.getDriftThresholdAbs(),
-                e.getCooldownDays()
-        );
+    public PortfolioCacheStats cacheStats() {
+        return cache.stats();
     }
 
-    @Transactional
+    // Not @Transactional: each mode draws its own transaction boundaries
     public void applyRebalance(ApplyRebalanceRequest req) throws JsonProcessingException {
         if (req.rebalanceId() == null || req.rebalanceId().isBlank()) {
             throw new IllegalArgumentException("rebalanceId is required");
@@ -227,33 +384,298 @@ public class PortfolioService {
         if (req.executedTrades() == null || req.executedTrades().isEmpty()) {
             return;
         }
-        if (req.priceFrame() == null || req.priceFrame().isEmpty()) {
-            throw new IllegalArgumentException("priceFrame is required to update cash + totals");
-        }
+        StageMetrics.Laps laps = stages.laps(Op.APPLY);
+        try {
+            long t = System.nanoTime();
+            Map<String, PriceRow> prices = resolvePrices(req.priceFrame(), req.priceSnapshotId());
+            if (prices == null) {
+                throw new IllegalArgumentException("priceFrame or priceSnapshotId is required to update cash + totals");
+            }
+            t = laps.lap(Stage.PRICES, t);
+
+            // ✅ idempotency first (fast path)
+            boolean seen = idempotency.probablyApplied(req.portfolioId(), req.rebalanceId());
+            laps.lap(Stage.IDEMPOTENCY_FILTER, t);
+            if (seen) {
+                stages.duplicate(Duplicate.FAST_PATH);
+                return;
+            }
 
-        // ✅ idempotency first (fast path)
-        if (appliedRepo.existsByPortfolioIdAndRebalanceId(req.portfolioId(), req.rebalanceId())) {
-            return;
+            String tradesJson = objectMapper.writeValueAsString(req.executedTrades());
+            if (applyMode == ApplyMode.OPTIMISTIC) {
+                applyOptimistic(req, prices, tradesJson, laps);
+            } else {
+                applyMetrics.writeTx(ApplyMode.PESSIMISTIC).record(() ->
+                        writeTx.executeWithoutResult(status -> applyLocked(req, prices, tradesJson, laps)));
+                applyMetrics.attempts(ApplyMode.PESSIMISTIC, 1);
+            }
+        } finally {
+            laps.record();
         }
+    }
 
+    private void applyLocked(ApplyRebalanceRequest req, Map<String, PriceRow> prices, String tradesJson,
+                             StageMetrics.Laps laps) {
         // ✅ lock portfolio row to prevent concurrent updates
-        Portfolio entity = repo.findByIdForUpdate(req.portfolioId())
+        long t = System.nanoTime();
+        Portfolio entity = applyMetrics.lockWait(ApplyMode.PESSIMISTIC).record(() -> repo.findByIdForUpdate(req.portfolioId()))
                 .orElseThrow(() -> new NoSuchElementException("Portfolio not found for id=" + req.portfolioId()));
+        t = laps.lap(Stage.LOCK, t);
 
         // Re-check idempotency inside lock to avoid race
-        if (appliedRepo.existsByPortfolioIdAndRebalanceId(req.portfolioId(), req.rebalanceId())) {
+        boolean seen = idempotency.isApplied(req.portfolioId(), req.rebalanceId());
+        laps.lap(Stage.IDEMPOTENCY, t);
+        if (seen) {
+            stages.duplicate(Duplicate.IN_LOCK);
             return;
         }
 
-        // Build price lookup
-        Map<String, PriceRow> priceBySymbol = req.priceFrame().stream()
-                .collect(Collectors.toMap(
-                        r -> r.symbol().toUpperCase(),
-                        r -> r,
-                        (a, b) -> a
-                ));
+        TradeOutcome outcome = applyTrades(entity, req.executedTrades(), prices, laps);
+        Long versionBefore = entity.getVersion();
+
+        t = System.nanoTime();
+        entity.setPortfolio(toEntityPortfolio(outcome.portfolio()));
+        entity.setFreeCash(outcome.freeCash());
+        refreshSummary(entity, outcome.portfolio());
+        markWritten(entity);
+        t = laps.lap(Stage.SUMMARY, t);
+
+        repo.saveAndFlush(entity);
+        bumpVersionIfUnchanged(entity, versionBefore);
+        t = laps.lap(Stage.FLUSH, t);
+        persistPositions(entity, outcome.touched());
+        t = laps.lap(Stage.POSITIONS, t);
+        ledger.append(ledger.applied(entity.getId(), req.rebalanceId(), req.executedTrades(), prices,
+                outcome.portfolio(), outcome.touched(), outcome.freeCash(), ledger.unseeded(entity.getId())));
+        t = laps.lap(Stage.LEDGER, t);
+        publishChanged(entity);
+        // record idempotency
+        appliedRepo.save(new PortfolioRebalanceApplied(entity.getId(), req.rebalanceId(), tradesJson));
+        idempotency.recordApplied(entity.getId(), req.rebalanceId());
+        laps.lap(Stage.RECORD, t);
+    }
+
+    // Trade math runs on an unlocked read; the write only succeeds if nobody else wrote the row in between.
+    // Every successful write bumps the version, so a concurrent duplicate always loses the compare-and-set
+    // and then finds the idempotency row on its retry. Stage times of all attempts add up in laps.
+    private void applyOptimistic(ApplyRebalanceRequest req, Map<String, PriceRow> prices, String tradesJson,
+                                 StageMetrics.Laps laps) {
+        for (int attempt = 1; ; attempt++) {
+            Portfolio snapshot = readTx.execute(status -> {
+                Portfolio p = repo.findById(req.portfolioId())
+                        .orElseThrow(() -> new NoSuchElementException("Portfolio not found for id=" + req.portfolioId()));
+                p.getPortfolio();   // pull the holdings in before the entity detaches
+                return p;
+            });
+            TradeOutcome outcome = applyTrades(snapshot, req.executedTrades(), prices, laps);
+
+            try {
+                applyMetrics.writeTx(ApplyMode.OPTIMISTIC).record(() -> writeTx.executeWithoutResult(status -> {
+                    long t = System.nanoTime();
+                    boolean seen = idempotency.isApplied(req.portfolioId(), req.rebalanceId());
+                    t = laps.lap(Stage.IDEMPOTENCY, t);
+                    if (seen) {
+                        stages.duplicate(Duplicate.IN_LOCK);
+                        return;
+                    }
+                    Portfolio entity = repo.findById(req.portfolioId())
+                            .orElseThrow(() -> new NoSuchElementException("Portfolio not found for id=" + req.portfolioId()));
+                    if (!Objects.equals(entity.getVersion(), snapshot.getVersion())) {
+                        throw new ObjectOptimisticLockingFailureException(Portfolio.class, req.portfolioId());
+                    }
+
+                    t = System.nanoTime();
+                    entity.setPortfolio(toEntityPortfolio(outcome.portfolio()));
+                    entity.setFreeCash(outcome.freeCash());
+                    refreshSummary(entity, outcome.portfolio());
+                    markWritten(entity);
+                    t = laps.lap(Stage.SUMMARY, t);
+
+                    // the versioned UPDATE goes out here; it only waits if another writer holds the row
+                    applyMetrics.lockWait(ApplyMode.OPTIMISTIC).record(() -> {
+                        repo.saveAndFlush(entity);
+                        bumpVersionIfUnchanged(entity, snapshot.getVersion());
+                    });
+                    t = laps.lap(Stage.FLUSH, t);
+                    persistPositions(entity, outcome.touched());
+                    t = laps.lap(Stage.POSITIONS, t);
+                    ledger.append(ledger.applied(entity.getId(), req.rebalanceId(), req.executedTrades(), prices,
+                            outcome.portfolio(), outcome.touched(), outcome.freeCash(), ledger.unseeded(entity.getId())));
+                    t = laps.lap(Stage.LEDGER, t);
+                    publishChanged(entity);
+                    appliedRepo.save(new PortfolioRebalanceApplied(entity.getId(), req.rebalanceId(), tradesJson));
+                    idempotency.recordApplied(entity.getId(), req.rebalanceId());
+                    laps.lap(Stage.RECORD, t);
+                }));
+                applyMetrics.attempts(ApplyMode.OPTIMISTIC, attempt);
+                return;
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                applyMetrics.conflict(ApplyMode.OPTIMISTIC);
+                if (attempt >= optimisticMaxAttempts) {
+                    applyMetrics.exhausted(ApplyMode.OPTIMISTIC);
+                    applyMetrics.attempts(ApplyMode.OPTIMISTIC, attempt);
+                    throw new IllegalStateException("Portfolio " + req.portfolioId() + " kept changing; gave up after "
+                            + attempt + " attempts", e);
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    // Position rows are written over JDBC, so a write that leaves the portfolio row itself unchanged would
+    // not move the version; force it then, so an optimistic writer never commits over a stale read
+    private void bumpVersionIfUnchanged(Portfolio entity, Long versionBefore) {
+        if (versionBefore != null && versionBefore.equals(entity.getVersion())) {
+            entityManager.lock(entity, LockModeType.PESSIMISTIC_FORCE_INCREMENT);
+        }
+    }
+
+    // Full jitter: sleep somewhere in [0, base * 2^(attempt-1)), capped at 64x base
+    private void backoff(int attempt) {
+        long capMillis = optimisticBackoff.toMillis() << Math.min(attempt - 1, 6);
+        if (capMillis <= 0) return;
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(capMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying apply for portfolio", e);
+        }
+    }
+
+    @Transactional
+    public List<ApplyRebalanceResult> applyRebalanceBatch(ApplyRebalanceBatchRequest batch) throws JsonProcessingException {
+        List<ApplyRebalanceRequest> items = batch.requests() == null ? List.of() : batch.requests();
+        ApplyRebalanceResult[] results = new ApplyRebalanceResult[items.size()];
+
+        // Build the shared price lookup once for the whole batch
+        long t = System.nanoTime();
+        Map<String, PriceRow> sharedPrices = resolvePrices(batch.priceFrame(), batch.priceSnapshotId());
+        t = stages.lap(Op.APPLY, Stage.PRICES, t);
+
+        // 1) Validate up front so bad items never take a lock
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            ApplyRebalanceRequest req = items.get(i);
+            if (req == null) {
+                results[i] = new ApplyRebalanceResult(null, null, ApplyStatus.FAILED, "request is required");
+            } else if (req.rebalanceId() == null || req.rebalanceId().isBlank()) {
+                results[i] = ApplyRebalanceResult.failed(req, "rebalanceId is required");
+            } else if (req.portfolioId() == null) {
+                results[i] = ApplyRebalanceResult.failed(req, "portfolioId is required");
+            } else if (req.executedTrades() == null || req.executedTrades().isEmpty()) {
+                results[i] = ApplyRebalanceResult.of(req, ApplyStatus.NOOP);
+            } else if (sharedPrices == null && (req.priceFrame() == null || req.priceFrame().isEmpty())
+                    && req.priceSnapshotId() == null) {
+                results[i] = ApplyRebalanceResult.failed(req, "priceFrame or priceSnapshotId is required to update cash + totals");
+            } else {
+                pending.add(i);
+            }
+        }
+        if (pending.isEmpty()) {
+            return Arrays.asList(results);
+        }
+
+        // 2) Lock every affected portfolio in one ordered statement
+        SortedSet<Long> portfolioIds = new TreeSet<>();
+        Set<String> rebalanceIds = new HashSet<>();
+        for (int i : pending) {
+            portfolioIds.add(items.get(i).portfolioId());
+            rebalanceIds.add(items.get(i).rebalanceId());
+        }
+        Map<Long, Portfolio> locked = new HashMap<>();
+        Map<Long, Long> versionsBefore = new HashMap<>();
+        t = System.nanoTime();
+        for (Portfolio p : repo.findAllByIdForUpdate(portfolioIds)) {
+            locked.put(p.getId(), p);
+            versionsBefore.put(p.getId(), p.getVersion());
+        }
+        t = stages.lap(Op.APPLY, Stage.LOCK, t);
+
+        // 3) Idempotency for the whole batch in one query, inside the locks
+        Set<String> applied = new HashSet<>();
+        for (var k : appliedRepo.findAppliedKeys(portfolioIds, rebalanceIds)) {
+            applied.add(idempotencyKey(k.getPortfolioId(), k.getRebalanceId()));
+        }
+        stages.lap(Op.APPLY, Stage.IDEMPOTENCY, t);
+
+        // 4) Apply in request order; a failed item leaves its portfolio untouched
+        Map<Portfolio, Set<PositionKey>> dirty = new LinkedHashMap<>();
+        List<PortfolioRebalanceApplied> appliedRows = new ArrayList<>();
+        List<PositionLedgerEvent> ledgerEvents = new ArrayList<>();
+        // portfolios from before the ledger get their whole book recorded by the first item that touches them
+        Set<Long> unseeded = new HashSet<>(ledger.unseeded(locked.keySet()));
+
+        for (int i : pending) {
+            ApplyRebalanceRequest req = items.get(i);
+            String key = idempotencyKey(req.portfolioId(), req.rebalanceId());
+            if (!applied.add(key)) {
+                stages.duplicate(Duplicate.IN_BATCH);
+                results[i] = ApplyRebalanceResult.of(req, ApplyStatus.DUPLICATE);
+                continue;
+            }
+
+            Portfolio entity = locked.get(req.portfolioId());
+            if (entity == null) {
+                applied.remove(key);
+                results[i] = ApplyRebalanceResult.failed(req, "Portfolio not found for id=" + req.portfolioId());
+                continue;
+            }
+
+            // load, math and summary are per item; the other stages once for the whole batch
+            TradeOutcome outcome;
+            Map<String, PriceRow> prices;
+            StageMetrics.Laps itemLaps = stages.laps(Op.APPLY);
+            try {
+                Map<String, PriceRow> own = resolvePrices(req.priceFrame(), req.priceSnapshotId());
+                prices = own == null ? sharedPrices : own;
+                outcome = applyTrades(entity, req.executedTrades(), prices, itemLaps);
+                long m = System.nanoTime();
+                entity.setPortfolio(toEntityPortfolio(outcome.portfolio()));
+                entity.setFreeCash(outcome.freeCash());
+                refreshSummary(entity, outcome.portfolio());
+                markWritten(entity);
+                itemLaps.lap(Stage.SUMMARY, m);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                applied.remove(key);
+                results[i] = ApplyRebalanceResult.failed(req, e.getMessage());
+                continue;
+            } finally {
+                itemLaps.record();
+            }
+
+            dirty.computeIfAbsent(entity, p -> new HashSet<>()).addAll(outcome.touched());
+            ledgerEvents.addAll(ledger.applied(entity.getId(), req.rebalanceId(), req.executedTrades(), prices,
+                    outcome.portfolio(), outcome.touched(), outcome.freeCash(), unseeded.remove(entity.getId())));
+            appliedRows.add(new PortfolioRebalanceApplied(
+                    entity.getId(), req.rebalanceId(), objectMapper.writeValueAsString(req.executedTrades())));
+            results[i] = ApplyRebalanceResult.of(req, ApplyStatus.APPLIED);
+        }
 
+        // 5) One save per touched portfolio, only the traded position rows, one JDBC batch of idempotency rows
+        t = System.nanoTime();
+        repo.saveAllAndFlush(dirty.keySet());
+        dirty.keySet().forEach(p -> bumpVersionIfUnchanged(p, versionsBefore.get(p.getId())));
+        t = stages.lap(Op.APPLY, Stage.FLUSH, t);
+        dirty.forEach(this::persistPositions);
+        t = stages.lap(Op.APPLY, Stage.POSITIONS, t);
+        ledger.append(ledgerEvents);
+        t = stages.lap(Op.APPLY, Stage.LEDGER, t);
+        appliedRepo.insertAll(appliedRows);
+        appliedRows.forEach(r -> idempotency.recordApplied(r.getPortfolioId(), r.getRebalanceId()));
+        dirty.keySet().forEach(this::publishChanged);
+        stages.lap(Op.APPLY, Stage.RECORD, t);
+
+        return Arrays.asList(results);
+    }
+
+    record TradeOutcome(Map<Category, List<StockPosition>> portfolio, BigDecimal freeCash, Set<PositionKey> touched) {}
+
+    // Package-private, like indexOfTicker, recomputeTotalsAndPercentages and applyPercentages, so the
+    // benchmarks under src/jmh can drive them without a database
+    TradeOutcome applyTrades(Portfolio entity, List<ExecutedTrade> trades, Map<String, PriceRow> priceBySymbol,
+                             StageMetrics.Laps laps) {
         // Load holdings into mutable map
+        long clock = System.nanoTime();
         Map<Category, List<StockPosition>> holdings = new LinkedHashMap<>();
         Map<Category, List<StockPosition>> current = fromEntityPortfolio(entity.getPortfolio());
 
@@ -261,11 +683,13 @@ public class PortfolioService {
             List<StockPosition> list = current.getOrDefault(c, List.of());
             holdings.put(c, new ArrayList<>(list));
         }
+        clock = laps.lap(Stage.LOAD, clock);
 
         BigDecimal freeCash = entity.getFreeCash() == null ? BigDecimal.ZERO : entity.getFreeCash();
+        Set<PositionKey> touched = new HashSet<>();
 
         // Apply trades
-        for (ExecutedTrade t : req.executedTrades()) {
+        for (ExecutedTrade t : trades) {
             if (t == null) continue;
             String sym = t.ticker() == null ? null : t.ticker().toUpperCase();
             if (sym == null || sym.isBlank()) continue;
@@ -281,6 +705,7 @@ public class PortfolioService {
             List<StockPosition> list = holdings.get(cat);
 
             int idx = indexOfTicker(list, sym);
+            touched.add(PositionKey.of(cat, sym));
 
             if (t.side() == Side.BUY) {
                 BigDecimal cost = px.multiply(BigDecimal.valueOf(t.qty()));
@@ -323,12 +748,14 @@ public class PortfolioService {
 
             } else if (t.side() == Side.SELL) {
                 if (idx == -1) {
+                    stages.sellNoHolding();
                     throw new IllegalStateException("Cannot SELL; no holding for " + sym + " in category " + cat);
                 }
 
                 StockPosition cur = list.get(idx);
                 int oldQty = cur.quantity() == null ? 0 : cur.quantity();
                 if (oldQty < t.qty()) {
+                    stages.sellInsufficient();
                     throw new IllegalStateException("Cannot SELL " + t.qty() + " of " + sym + "; only " + oldQty + " available");
                 }
 
@@ -355,152 +782,274 @@ public class PortfolioService {
 
         // Recompute totals + percentages using latest prices
         Map<Category, List<StockPosition>> updated = recomputeTotalsAndPercentages(holdings, priceBySymbol);
+        laps.lap(Stage.MATH, clock);
 
-        entity.setPortfolio(toEntityPortfolio(updated));
-        entity.setFreeCash(freeCash);
-
-        repo.save(entity);
-        String tradesJson = objectMapper.writeValueAsString(req.executedTrades());
-        // record idempotency
-        appliedRepo.save(new PortfolioRebalanceApplied(entity.getId(), req.rebalanceId(), tradesJson));
+        return new TradeOutcome(updated, freeCash, touched);
     }
 
     // ---------------- helpers ----------------
 
-    private int indexOfTicker(List<StockPosition> list, String sym) {
-        for (int i = 0; i < list.size(); i++) {
-            StockPosition sp = list.get(i);
-            if (sp.ticker() != null && sp.ticker().equalsIgnoreCase(sym)) return i;
-        }
-        return -1;
+    private PortfolioResponse toResponse(Portfolio e) {
+        UserDetails user = new UserDetails(
+                e.getUserDetails().userId(),
+                e.getUserDetails().firstName(),
+                e.getUserDetails().lastName(),
+                e.getUserDetails().email(),
+                e.getUserDetails().phoneNumber()
+        );
+
+        RMDetails rm = new RMDetails(
+                e.getRmDetails().rmId(),
+                e.getRmDetails().firstName(),
+                e.getRmDetails().lastName(),
+                e.getRmDetails().email(),
+                e.getRmDetails().phoneNumber()
+        );
+
+        Map<Category, List<StockPosition>> portfolio = fromEntityPortfolio(e.getPortfolio());
+
+        BigDecimal portfolioValue = sumPortfolioValue(portfolio);
+
+        return new PortfolioResponse(
+                e.getId(),
+                user,
+                rm,
+                portfolio,
+                e.getTargetState(), // Map<Category, BigDecimal>
+                portfolioValue,
+                e.getUpdatedOn(),
+                e.getCreatedOn(),
+                e.getTriggerMode(),
+                e.getFreeCash(),
+                e.getDriftThresholdAbs(),
+                e.getCooldownDays()
+        );
     }
 
-    private Map<Category, List<StockPosition>> recomputeTotalsAndPercentages(
-            Map<Category, List<StockPosition>> holdings,
-            Map<String, PriceRow> priceBySymbol
-    ) {
-        BigDecimal totalValue = BigDecimal.ZERO;
+    private void refreshSummary(Portfolio entity, Map<Category, List<StockPosition>> holdings) {
+        stages.positions(positionCount(holdings));
 
-        // First pass: compute totalValue
-        for (var e : holdings.entrySet()) {
-            for (StockPosition sp : e.getValue()) {
-                PriceRow pr = priceBySymbol.get(sp.ticker().toUpperCase());
-                if (pr == null || pr.price() == null) continue;
-                totalValue = totalValue.add(pr.price().multiply(BigDecimal.valueOf(sp.quantity())));
-            }
+        BigDecimal value = sumPortfolioValue(holdings);
+        Map<Category, BigDecimal> target = entity.getTargetState() == null ? Map.of() : entity.getTargetState();
+
+        Map<Category, BigDecimal> weights = new EnumMap<>(Category.class);
+        BigDecimal maxDrift = BigDecimal.ZERO;
+
+        for (Category c : Category.values()) {
+            BigDecimal categoryValue = PortfolioMath.sum(holdings.getOrDefault(c, List.of()).stream()
+                    .map(StockPosition::totalAmount)
+                    .toList());
+
+            BigDecimal weight = value.compareTo(BigDecimal.ZERO) <= 0
+                    ? BigDecimal.ZERO
+                    : PortfolioMath.percentOf(categoryValue, value);
+            weights.put(c, weight);
+
+            // weights/targets are in percent, driftThresholdAbs is a fraction (0.05 = 5%)
+            BigDecimal drift = weight.subtract(target.getOrDefault(c, BigDecimal.ZERO)).abs()
+                    .divide(BigDecimal.valueOf(100), 6, RoundingMode.HALF_UP);
+            maxDrift = maxDrift.max(drift);
         }
 
-        if (totalValue.compareTo(BigDecimal.ZERO) <= 0) {
-            return holdings;
+        entity.setPortfolioValue(value);
+        entity.setCategoryWeights(CategoryWeights.of(weights));
+        entity.setTargetWeights(CategoryWeights.of(target));
+        entity.setMaxDrift(maxDrift);
+    }
+
+    // Create and apply only: delta sync and Last-Modified follow updated_on. Positions live in their own
+    // table, so a holdings-only write would not touch the row by itself.
+    private static void markWritten(Portfolio entity) {
+        entity.setUpdatedOn(LocalDateTime.now());
+    }
+
+    private void publishChanged(Portfolio entity) {
+        events.publishEvent(new PortfolioChangedEvent(entity.getId(), entity.getUserId(), entity.getRmId()));
+    }
+
+    private void persistPositions(Portfolio entity, Set<PositionKey> touched) {
+        Map<Category, List<StockPosition>> holdings = entity.getPortfolio();
+
+        // Rows still living in the legacy JSON column move over in full on their first write
+        if (entity.getLegacyPortfolio() != null) {
+            positionRepo.replaceAll(entity.getId(), toPositionRows(entity.getId(), holdings));
+            entity.setLegacyPortfolio(null);
+            return;
         }
 
-        Map<Category, List<StockPosition>> out = new LinkedHashMap<>();
+        List<PortfolioPosition> upserts = new ArrayList<>();
+        List<PositionKey> deletes = new ArrayList<>();
+        for (PositionKey k : touched) {
+            List<StockPosition> list = holdings.getOrDefault(k.category(), List.of());
+            int idx = indexOfTicker(list, k.ticker());
+            if (idx == -1) {
+                deletes.add(k);
+            } else {
+                upserts.add(new PortfolioPosition(entity.getId(), k.category(), list.get(idx)));
+            }
+        }
+        positionRepo.deleteAll(entity.getId(), deletes);
+        positionRepo.upsertAll(upserts);
+    }
 
+    private List<PortfolioPosition> toPositionRows(Long portfolioId, Map<Category, List<StockPosition>> holdings) {
+        List<PortfolioPosition> rows = new ArrayList<>();
         for (var e : holdings.entrySet()) {
-            Category cat = e.getKey();
+            for (StockPosition sp : e.getValue()) {
+                rows.add(new PortfolioPosition(portfolioId, e.getKey(), sp));
+            }
+        }
+        return rows;
+    }
 
-            BigDecimal finalTotalValue = totalValue;
-            List<StockPosition> updated = e.getValue().stream().map(sp -> {
-                PriceRow pr = priceBySymbol.get(sp.ticker().toUpperCase());
-                if (pr == null || pr.price() == null) return sp;
+    // An inline frame wins over a snapshot reference; null when the caller sent neither
+    private Map<String, PriceRow> resolvePrices(List<PriceRow> priceFrame, Long priceSnapshotId) {
+        if (priceFrame != null && !priceFrame.isEmpty()) return priceLookup(priceFrame);
+        if (priceSnapshotId != null) return priceSnapshots.require(priceSnapshotId).bySymbol();
+        return null;
+    }
 
-                BigDecimal totalAmt = pr.price()
-                        .multiply(BigDecimal.valueOf(sp.quantity()))
-                        .setScale(2, RoundingMode.HALF_UP);
+    private Map<String, PriceRow> priceLookup(List<PriceRow> priceFrame) {
+        return priceFrame.stream()
+                .collect(Collectors.toMap(
+                        r -> r.symbol().toUpperCase(),
+                        r -> r,
+                        (a, b) -> a
+                ));
+    }
+
+    private static String idempotencyKey(Long portfolioId, String rebalanceId) {
+        return portfolioId + ":" + rebalanceId;
+    }
 
-                BigDecimal pct = totalAmt
-                        .divide(finalTotalValue, 8, RoundingMode.HALF_UP)
-                        .multiply(BigDecimal.valueOf(100))
-                        .setScale(4, RoundingMode.HALF_UP);
+    int indexOfTicker(List<StockPosition> list, String sym) {
+        for (int i = 0; i < list.size(); i++) {
+            StockPosition sp = list.get(i);
+            if (sp.ticker() != null && sp.ticker().equalsIgnoreCase(sym)) return i;
+        }
+        return -1;
+    }
 
-                return new StockPosition(
-                        sp.ticker(),
-                        sp.name(),
-                        sp.quantity(),
-                        sp.avgPrice(),
-                        pct,
-                        totalAmt,
-                        Instant.now()
-                );
-            }).toList();
+    record Valuation(Map<Category, List<StockPosition>> holdings, BigDecimal portfolioValue) {}
 
-            out.put(cat, updated);
+    // Totals, the portfolio value and percentages stay in one ScaledAmounts for the whole pass;
+    // each position's BigDecimals are built once, in withPercentages
+    Map<Category, List<StockPosition>> recomputeTotalsAndPercentages(
+            Map<Category, List<StockPosition>> holdings,
+            Map<String, PriceRow> priceBySymbol
+    ) {
+        // Every position the frame prices is revalued, so value, percentages and the summary columns all
+        // describe one moment; positions it does not price keep their stored valuation. Only the traded
+        // rows are written back (persistPositions).
+        ScaledAmounts amounts = new ScaledAmounts(positionCount(holdings));
+
+        for (List<StockPosition> positions : holdings.values()) {
+            for (StockPosition sp : positions) {
+                PriceRow pr = sp.ticker() == null ? null : priceBySymbol.get(sp.ticker().toUpperCase());
+                if (pr == null || pr.price() == null) {
+                    amounts.add(sp.totalAmount());
+                } else {
+                    amounts.addProduct(pr.price(), sp.quantity(), 2);
+                }
+            }
         }
 
-        return out;
+        return withPercentages(holdings, amounts);
     }
 
-    private Map<Category, List<StockPosition>> compute(Map<Category, List<StockPositionInput>> input) {
+    private Valuation compute(Map<Category, List<StockPositionInput>> input) {
+        int count = 0;
+        for (List<StockPositionInput> positions : input.values()) count += positions == null ? 0 : positions.size();
+        ScaledAmounts amounts = new ScaledAmounts(count);
+
+        for (List<StockPositionInput> positions : input.values()) {
+            if (positions == null) continue;
+            for (StockPositionInput p : positions) amounts.addProduct(p.avgPrice(), p.quantity());
+        }
+
+        boolean priced = amounts.signum() > 0;
+        Instant now = Instant.now();
         Map<Category, List<StockPosition>> out = new LinkedHashMap<>();
+        int i = 0;
 
         for (var e : input.entrySet()) {
-            Category category = e.getKey();
             List<StockPositionInput> positions = e.getValue() == null ? List.of() : e.getValue();
+            List<StockPosition> computed = new ArrayList<>(positions.size());
+
+            for (StockPositionInput p : positions) {
+                computed.add(new StockPosition(
+                        p.ticker(),
+                        p.name(),
+                        p.quantity(),
+                        p.avgPrice(),
+                        priced ? amounts.percentOf(i) : BigDecimal.ZERO,
+                        amounts.amount(i),
+                        now
+                ));
+                i++;
+            }
 
-            List<StockPosition> computed = positions.stream()
-                    .map(p -> {
-                        BigDecimal total = p.avgPrice().multiply(BigDecimal.valueOf(p.quantity()));
-                        return new StockPosition(
-                                p.ticker(),
-                                p.name(),
-                                p.quantity(),
-                                p.avgPrice(),
-                                BigDecimal.ZERO,   // percentageOfPortfolio computed later
-                                total,
-                                Instant.now()
-                        );
-                    })
-                    .toList();
-
-            out.put(category, computed);
+            out.put(e.getKey(), computed);
         }
 
-        return out;
+        return new Valuation(out, amounts.total());
     }
 
     private BigDecimal sumPortfolioValue(Map<Category, List<StockPosition>> portfolio) {
-        return portfolio.values().stream()
-                .flatMap(List::stream)
-                .map(StockPosition::totalAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return amountsOf(portfolio).total();
+    }
+
+    Map<Category, List<StockPosition>> applyPercentages(Map<Category, List<StockPosition>> portfolio) {
+        return withPercentages(portfolio, amountsOf(portfolio));
     }
 
-    private Map<Category, List<StockPosition>> applyPercentages(
+    private ScaledAmounts amountsOf(Map<Category, List<StockPosition>> portfolio) {
+        ScaledAmounts amounts = new ScaledAmounts(positionCount(portfolio));
+        for (List<StockPosition> positions : portfolio.values()) {
+            for (StockPosition sp : positions) amounts.add(sp.totalAmount());
+        }
+        return amounts;
+    }
+
+    // amounts holds one entry per position of portfolio, in iteration order. Without a positive
+    // value percentages are left as they were.
+    private Map<Category, List<StockPosition>> withPercentages(
             Map<Category, List<StockPosition>> portfolio,
-            BigDecimal portfolioValue
+            ScaledAmounts amounts
     ) {
-        if (portfolioValue.compareTo(BigDecimal.ZERO) <= 0) return portfolio;
-
+        boolean priced = amounts.signum() > 0;
+        Instant now = Instant.now();
         Map<Category, List<StockPosition>> out = new LinkedHashMap<>();
+        int i = 0;
 
         for (var e : portfolio.entrySet()) {
-            Category category = e.getKey();
-
-            List<StockPosition> updated = e.getValue().stream()
-                    .map(p -> {
-                        BigDecimal pct = p.totalAmount()
-                                .divide(portfolioValue, 8, RoundingMode.HALF_UP)
-                                .multiply(BigDecimal.valueOf(100))
-                                .setScale(4, RoundingMode.HALF_UP);
-
-                        return new StockPosition(
-                                p.ticker(),
-                                p.name(),
-                                p.quantity(),
-                                p.avgPrice(),
-                                pct,
-                                p.totalAmount(),
-                                Instant.now()
-                        );
-                    })
-                    .toList();
-
-            out.put(category, updated);
+            List<StockPosition> updated = new ArrayList<>(e.getValue().size());
+
+            for (StockPosition p : e.getValue()) {
+                updated.add(new StockPosition(
+                        p.ticker(),
+                        p.name(),
+                        p.quantity(),
+                        p.avgPrice(),
+                        priced ? amounts.percentOf(i) : p.percentageOfPortfolio(),
+                        amounts.amount(i),
+                        now
+                ));
+                i++;
+            }
+
+            out.put(e.getKey(), updated);
         }
 
         return out;
     }
 
+    private static int positionCount(Map<Category, List<StockPosition>> portfolio) {
+        int count = 0;
+        for (List<StockPosition> positions : portfolio.values()) count += positions.size();
+        return count;
+    }
+
     private Map<Category, List<StockPosition>> toEntityPortfolio(
             Map<Category, List<StockPosition>> apiPortfolio
     ) {
@@ -0,0 +1,261 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.dto.LedgerHoldings;
+import com.thanos.portfolio.dto.LedgerTrade;
+import com.thanos.portfolio.entities.LedgerEventKind;
+import com.thanos.portfolio.entities.PositionLedgerEvent;
+import com.thanos.portfolio.entities.PositionLedgerSnapshot;
+import com.thanos.portfolio.model.*;
+import com.thanos.portfolio.repository.PositionLedgerRepo;
+import com.thanos.portfolio.shard.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+
+// Append-only history of every holding. Writers append POSITION rows carrying the post-write state of
+// each holding they touched (plus TRADE rows for the trades themselves), in the same transaction as the
+// write. An as-of read starts from the newest snapshot at or before the timestamp and replays only the
+// events after it; the snapshot job keeps that tail at most about snapshot-every events long.
+@Slf4j
+@Component
+public class PositionLedger {
+
+    private final PositionLedgerRepo ledgerRepo;
+    private final ShardRouter router;
+    private final TransactionTemplate tx;
+    private final TransactionTemplate readTx;
+    private final boolean enabled;
+    private final int snapshotEvery;
+    private final int snapshotBatch;
+
+    public PositionLedger(PositionLedgerRepo ledgerRepo, PlatformTransactionManager txManager, ShardRouter router,
+                          @Value("${portfolio.ledger.enabled:true}") boolean enabled,
+                          @Value("${portfolio.ledger.snapshot-every:200}") int snapshotEvery,
+                          @Value("${portfolio.ledger.snapshot-batch:500}") int snapshotBatch) {
+        this.ledgerRepo = ledgerRepo;
+        this.router = router;
+        this.tx = new TransactionTemplate(txManager);
+        this.readTx = new TransactionTemplate(txManager);
+        this.readTx.setReadOnly(true);
+        this.enabled = enabled;
+        this.snapshotEvery = Math.max(1, snapshotEvery);
+        this.snapshotBatch = snapshotBatch;
+    }
+
+    // createOrUpdate: the request replaces the whole book
+    public List<PositionLedgerEvent> replaced(Long portfolioId, Map<Category, List<StockPosition>> holdings, BigDecimal freeCash) {
+        List<PositionLedgerEvent> out = new ArrayList<>();
+        out.add(new PositionLedgerEvent(portfolioId, LedgerEventKind.RESET));
+        holdings.forEach((c, list) -> {
+            for (StockPosition sp : list) out.add(position(portfolioId, c, sp.ticker().toUpperCase(), sp));
+        });
+        out.add(cash(portfolioId, freeCash));
+        return out;
+    }
+
+    // One applied rebalance: its trades, then the resulting state of every touched holding and the cash.
+    // With `seed` (a portfolio from before the ledger, see unseeded) the whole book follows a RESET
+    // instead, so as-of reads from here on see every holding, not just the traded ones.
+    public List<PositionLedgerEvent> applied(Long portfolioId, String rebalanceId, List<ExecutedTrade> trades,
+                                             Map<String, PriceRow> prices, Map<Category, List<StockPosition>> holdingsAfter,
+                                             Set<PositionKey> touched, BigDecimal freeCashAfter, boolean seed) {
+        List<PositionLedgerEvent> out = new ArrayList<>();
+        for (ExecutedTrade t : trades) {
+            if (t == null || t.ticker() == null || t.ticker().isBlank() || t.qty() <= 0) continue;
+            String sym = t.ticker().toUpperCase();
+            PriceRow pr = prices.get(sym);
+            PositionLedgerEvent e = new PositionLedgerEvent(portfolioId, LedgerEventKind.TRADE);
+            e.setCategory(pr == null ? null : Category.fromWire(pr.category()));
+            e.setTicker(sym);
+            e.setSide(t.side());
+            e.setQuantity(t.qty());
+            e.setPrice(pr == null ? null : pr.price());
+            e.setRebalanceId(rebalanceId);
+            out.add(e);
+        }
+        if (seed) {
+            List<PositionLedgerEvent> book = replaced(portfolioId, holdingsAfter, freeCashAfter);
+            book.forEach(e -> e.setRebalanceId(rebalanceId));
+            out.addAll(book);
+            return out;
+        }
+
+        List<PositionKey> keys = new ArrayList<>(touched);
+        keys.sort(Comparator.comparing(PositionKey::category).thenComparing(PositionKey::ticker));
+        for (PositionKey k : keys) {
+            StockPosition sp = holdingsAfter.getOrDefault(k.category(), List.of()).stream()
+                    .filter(p -> p.ticker() != null && p.ticker().equalsIgnoreCase(k.ticker()))
+                    .findFirst().orElse(null);
+            PositionLedgerEvent e = position(portfolioId, k.category(), k.ticker(), sp);
+            e.setRebalanceId(rebalanceId);
+            out.add(e);
+        }
+        PositionLedgerEvent c = cash(portfolioId, freeCashAfter);
+        c.setRebalanceId(rebalanceId);
+        out.add(c);
+        return out;
+    }
+
+    // Portfolios among these the ledger has never recorded, i.e. created before it was turned on; none
+    // while it is off. Ask inside the writing transaction, with the portfolio rows locked.
+    public Set<Long> unseeded(Collection<Long> portfolioIds) {
+        if (!enabled || portfolioIds.isEmpty()) return Set.of();
+        return Set.copyOf(ledgerRepo.findWithoutHistory(portfolioIds));
+    }
+
+    public boolean unseeded(Long portfolioId) {
+        return !unseeded(List.of(portfolioId)).isEmpty();
+    }
+
+    // Called inside the writing transaction
+    public void append(List<PositionLedgerEvent> events) {
+        if (!enabled || events.isEmpty()) return;
+        ledgerRepo.appendAll(events);
+    }
+
+    public Optional<LedgerHoldings> asOf(Long portfolioId, Instant asOf) {
+        return readTx.execute(status -> {
+            Replay r = replay(portfolioId, asOf);
+            return r.empty() ? Optional.<LedgerHoldings>empty() : Optional.of(r.toHoldings(portfolioId, asOf));
+        });
+    }
+
+    public List<LedgerTrade> trades(Long portfolioId, Instant from, Instant to, int limit) {
+        return ledgerRepo.findTrades(portfolioId, from, to, limit).stream().map(LedgerTrade::of).toList();
+    }
+
+    @Scheduled(fixedDelayString = "${portfolio.ledger.snapshot-interval:5m}",
+               initialDelayString = "${portfolio.ledger.snapshot-initial-delay:2m}")
+    public void snapshotDue() {
+        if (!enabled) return;
+        int[] written = {0};
+        try {
+            router.onEachShard(() -> {
+                List<Long> due;
+                do {
+                    due = ledgerRepo.findSnapshotDue(snapshotEvery, snapshotBatch);
+                    for (Long id : due) {
+                        Boolean ok = tx.execute(status -> snapshot(id));
+                        if (Boolean.TRUE.equals(ok)) written[0]++;
+                    }
+                } while (due.size() == snapshotBatch);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Ledger snapshots stopped after {} portfolios", written[0], e);
+            return;
+        }
+        if (written[0] > 0) {
+            log.info("Wrote {} ledger snapshots", written[0]);
+        }
+    }
+
+    private boolean snapshot(Long portfolioId) {
+        Replay r = replay(portfolioId, Instant.now());
+        if (r.replayed == 0) return false;
+
+        PositionLedgerSnapshot s = new PositionLedgerSnapshot();
+        s.setPortfolioId(portfolioId);
+        s.setLastEventId(r.lastEventId);
+        s.setTakenAt(r.lastAt);
+        s.setFreeCash(r.freeCash);
+        s.setHoldings(r.holdings());
+        ledgerRepo.insertSnapshot(s, r.replayed);
+        return true;
+    }
+
+    private Replay replay(Long portfolioId, Instant asOf) {
+        Replay r = new Replay();
+        ledgerRepo.findSnapshotAsOf(portfolioId, asOf).ifPresent(r::start);
+        ledgerRepo.forEachStateEvent(portfolioId, r.lastEventId, asOf, r::apply);
+        return r;
+    }
+
+    private static PositionLedgerEvent position(Long portfolioId, Category category, String ticker, StockPosition sp) {
+        PositionLedgerEvent e = new PositionLedgerEvent(portfolioId, LedgerEventKind.POSITION);
+        e.setCategory(category);
+        e.setTicker(ticker);
+        if (sp == null) {
+            e.setQuantity(0);
+            return e;
+        }
+        e.setName(sp.name());
+        e.setQuantity(sp.quantity() == null ? 0 : sp.quantity());
+        e.setAvgPrice(sp.avgPrice());
+        e.setTotalAmount(sp.totalAmount());
+        return e;
+    }
+
+    private static PositionLedgerEvent cash(Long portfolioId, BigDecimal freeCash) {
+        PositionLedgerEvent e = new PositionLedgerEvent(portfolioId, LedgerEventKind.CASH);
+        e.setFreeCash(freeCash);
+        return e;
+    }
+
+    // Folds snapshot + events into holdings; last POSITION row per holding wins
+    static final class Replay {
+        final Map<PositionKey, StockPosition> positions = new LinkedHashMap<>();
+        BigDecimal freeCash;
+        long lastEventId;
+        Long snapshotEventId;
+        Instant lastAt;
+        int replayed;
+
+        void start(PositionLedgerSnapshot s) {
+            s.getHoldings().forEach((c, list) -> {
+                for (StockPosition sp : list) positions.put(PositionKey.of(c, sp.ticker()), sp);
+            });
+            freeCash = s.getFreeCash();
+            lastEventId = s.getLastEventId();
+            snapshotEventId = s.getLastEventId();
+            lastAt = s.getTakenAt();
+        }
+
+        void apply(PositionLedgerEvent e) {
+            switch (e.getKind()) {
+                case RESET -> positions.clear();
+                case POSITION -> {
+                    PositionKey k = PositionKey.of(e.getCategory(), e.getTicker());
+                    if (e.getQuantity() == null || e.getQuantity() == 0) {
+                        positions.remove(k);
+                    } else {
+                        positions.put(k, new StockPosition(k.ticker(), e.getName(), e.getQuantity(), e.getAvgPrice(),
+                                null, e.getTotalAmount(), e.getRecordedAt()));
+                    }
+                }
+                case CASH -> freeCash = e.getFreeCash();
+                case TRADE -> { }
+            }
+            lastEventId = e.getId();
+            lastAt = e.getRecordedAt();
+            replayed++;
+        }
+
+        boolean empty() {
+            return snapshotEventId == null && replayed == 0;
+        }
+
+        Map<Category, List<StockPosition>> holdings() {
+            Map<Category, List<StockPosition>> out = new EnumMap<>(Category.class);
+            positions.forEach((k, sp) -> out.computeIfAbsent(k.category(), c -> new ArrayList<>()).add(sp));
+            return out;
+        }
+
+        LedgerHoldings toHoldings(Long portfolioId, Instant asOf) {
+            BigDecimal value = PortfolioMath.sum(positions.values().stream().map(StockPosition::totalAmount).toList());
+            Map<Category, List<StockPosition>> holdings = new EnumMap<>(Category.class);
+            holdings().forEach((c, list) -> holdings.put(c, list.stream().map(sp -> new StockPosition(
+                    sp.ticker(), sp.name(), sp.quantity(), sp.avgPrice(),
+                    sp.totalAmount() == null || value.signum() == 0 ? BigDecimal.ZERO : PortfolioMath.percentOf(sp.totalAmount(), value),
+                    sp.totalAmount(), sp.positionDate())).toList()));
+            return new LedgerHoldings(portfolioId, asOf, lastEventId, snapshotEventId, replayed, freeCash, value, holdings);
+        }
+    }
+}
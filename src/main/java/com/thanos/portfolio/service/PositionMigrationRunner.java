@@ -0,0 +1,96 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.converter.PortfolioDetailsConverter;
+import com.thanos.portfolio.entities.PortfolioPosition;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.StockPosition;
+import com.thanos.portfolio.repository.PortfolioPositionRepo;
+import com.thanos.portfolio.shard.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Moves holdings out of the portfolios.portfolio JSON column into portfolio_positions, one chunk per transaction
+@Slf4j
+@Component
+public class PositionMigrationRunner implements SmartInitializingSingleton, ApplicationRunner {
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final PortfolioPositionRepo positionRepo;
+    private final ShardRouter router;
+    private final PortfolioDetailsConverter converter = new PortfolioDetailsConverter();
+    private final boolean enabled;
+    private final int chunkSize;
+
+    public PositionMigrationRunner(JdbcTemplate jdbc,
+                                   TransactionTemplate tx,
+                                   PortfolioPositionRepo positionRepo,
+                                   ShardRouter router,
+                                   @Value("${portfolio.positions.migrate-on-startup:true}") boolean enabled,
+                                   @Value("${portfolio.positions.migration-chunk-size:200}") int chunkSize) {
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.positionRepo = positionRepo;
+        this.router = router;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        // ddl-auto=update never relaxes constraints, and new rows no longer fill the JSON column.
+        // Home only: other shards get the column from ShardSchema, already nullable.
+        jdbc.execute("alter table portfolios alter column portfolio drop not null");
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) return;
+
+        int[] total = {0};
+        router.onEachShard(() -> {
+            int n;
+            do {
+                Integer migrated = tx.execute(status -> migrateChunk());
+                n = migrated == null ? 0 : migrated;
+                total[0] += n;
+            } while (n == chunkSize);
+            return null;
+        });
+
+        if (total[0] > 0) {
+            log.info("Migrated holdings of {} portfolios into portfolio_positions", total[0]);
+        }
+    }
+
+    private int migrateChunk() {
+        List<Map<String, Object>> rows = jdbc.queryForList(
+                "select id, portfolio from portfolios where portfolio is not null order by id limit ? for update",
+                chunkSize);
+
+        for (Map<String, Object> row : rows) {
+            Long id = ((Number) row.get("id")).longValue();
+            Map<Category, List<StockPosition>> holdings = converter.convertToEntityAttribute((String) row.get("portfolio"));
+
+            List<PortfolioPosition> positions = new ArrayList<>();
+            for (var e : holdings.entrySet()) {
+                for (StockPosition sp : e.getValue()) {
+                    positions.add(new PortfolioPosition(id, e.getKey(), sp));
+                }
+            }
+            positionRepo.replaceAll(id, positions);
+            jdbc.update("update portfolios set portfolio = null where id = ?", id);
+        }
+        return rows.size();
+    }
+}
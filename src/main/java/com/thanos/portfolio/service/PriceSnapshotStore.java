@@ -0,0 +1,103 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.client.MarketDataClient;
+import com.thanos.portfolio.model.PriceRow;
+import com.thanos.portfolio.model.PriceSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Versioned, in-memory price frames. Readers only ever do one volatile read plus a map lookup;
+// writers build a new state and swap it in, keeping the newest `retain` snapshots.
+//
+// Snapshots live in this node's memory only. Ids carry a random per-process prefix in the high 31 bits
+// and a counter in the low 32, so an id handed out before a restart or by another node is unknown here
+// and fails the apply with 410 instead of silently picking up a different frame. Within one process ids
+// still only go up. Async jobs store the frame itself, not the id.
+@Slf4j
+@Component
+public class PriceSnapshotStore {
+
+    private record State(PriceSnapshot latest, NavigableMap<Long, PriceSnapshot> byId) {}
+
+    private final AtomicReference<State> state =
+            new AtomicReference<>(new State(null, Collections.emptyNavigableMap()));
+    private final AtomicLong ids = new AtomicLong((long) new SecureRandom().nextInt(Integer.MAX_VALUE) << 32);
+    private final MarketDataClient marketData;
+    private final int retain;
+    private final boolean loadOnStartup;
+
+    public PriceSnapshotStore(MarketDataClient marketData,
+                              @Value("${portfolio.prices.retain:16}") int retain,
+                              @Value("${portfolio.prices.load-on-startup:false}") boolean loadOnStartup) {
+        if (retain < 1) {
+            throw new IllegalArgumentException("portfolio.prices.retain must be at least 1");
+        }
+        this.marketData = marketData;
+        this.retain = retain;
+        this.loadOnStartup = loadOnStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!loadOnStartup) return;
+        try {
+            PriceSnapshot s = refresh();
+            log.info("Loaded price snapshot {} with {} symbols", s.id(), s.bySymbol().size());
+        } catch (RuntimeException e) {
+            // apply still works with inline frames; the next refresh call can fill the store
+            log.warn("Could not load prices from market data on startup", e);
+        }
+    }
+
+    public PriceSnapshot refresh() {
+        List<PriceRow> rows = marketData.latestPrices();
+        return publish(rows == null ? List.of() : rows, "market-data");
+    }
+
+    public PriceSnapshot publish(List<PriceRow> rows, String source) {
+        if (rows == null || rows.isEmpty()) {
+            throw new IllegalArgumentException("A price snapshot needs at least one row");
+        }
+        PriceSnapshot snapshot = PriceSnapshot.of(ids.incrementAndGet(), source, rows);
+
+        State prev;
+        State next;
+        do {
+            prev = state.get();
+            TreeMap<Long, PriceSnapshot> byId = new TreeMap<>(prev.byId());
+            byId.put(snapshot.id(), snapshot);
+            while (byId.size() > retain) {
+                byId.pollFirstEntry();
+            }
+            // two publishers can race; the higher id is the newer frame whichever swaps last
+            PriceSnapshot latest = prev.latest() == null || prev.latest().id() < snapshot.id() ? snapshot : prev.latest();
+            next = new State(latest, Collections.unmodifiableNavigableMap(byId));
+        } while (!state.compareAndSet(prev, next));
+
+        return snapshot;
+    }
+
+    public Optional<PriceSnapshot> find(long id) {
+        return Optional.ofNullable(state.get().byId().get(id));
+    }
+
+    public PriceSnapshot require(long id) {
+        return find(id).orElseThrow(() -> new UnknownPriceSnapshotException(id));
+    }
+
+    public Optional<PriceSnapshot> latest() {
+        return Optional.ofNullable(state.get().latest());
+    }
+
+    public List<PriceSnapshot> retained() {
+        return List.copyOf(state.get().byId().descendingMap().values());
+    }
+}
@@ -0,0 +1,268 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.dto.RebalancePlan;
+import com.thanos.portfolio.entities.Side;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.ExecutedTrade;
+import com.thanos.portfolio.model.PriceRow;
+import com.thanos.portfolio.model.StockPosition;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.*;
+
+// Integer-share planner. Money is a long at 4 decimal places and weights are parts per million,
+// so a whole RM book can be planned without allocating a BigDecimal per position per step.
+// BigDecimal only appears when reading the inputs and writing the plan.
+final class RebalancePlanKernel {
+
+    static final int SCALE = 4;
+    private static final long PPM = 1_000_000L;      // 100% as a fraction in parts per million
+    private static final int CATEGORIES = Category.values().length;
+
+    record Input(Long portfolioId,
+                 Map<Category, List<StockPosition>> holdings,
+                 BigDecimal freeCash,
+                 Map<Category, BigDecimal> targetState,
+                 BigDecimal driftThresholdAbs) {}
+
+    // One tradable (or merely held) line; quantities and money are all scaled longs
+    private static final class Line {
+        final Category category;
+        final String ticker;
+        final long qty;
+        final long buyPx;     // price rounded up: what a buy may cost at most
+        final long sellPx;    // price rounded down: what a sell yields at least; also used for valuation
+        final long value;
+        long buy;
+        long sell;
+
+        Line(Category category, String ticker, long qty, long buyPx, long sellPx, long value) {
+            this.category = category;
+            this.ticker = ticker;
+            this.qty = qty;
+            this.buyPx = buyPx;
+            this.sellPx = sellPx;
+            this.value = value;
+        }
+
+        boolean priced() { return sellPx > 0; }
+
+        long valueAfter() { return priced() ? (qty - sell + buy) * sellPx : value; }
+    }
+
+    private RebalancePlanKernel() {}
+
+    static RebalancePlan plan(Input in, Map<String, PriceRow> prices, Map<Category, List<PriceRow>> frameByCategory) {
+        List<Line> lines = lines(in.holdings(), prices);
+        long[] targetPpm = new long[CATEGORIES];
+        for (Category c : Category.values()) {
+            BigDecimal pct = in.targetState() == null ? null : in.targetState().get(c);
+            targetPpm[c.ordinal()] = pct == null ? 0 : pct.movePointRight(4).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        }
+        long thresholdPpm = in.driftThresholdAbs() == null
+                ? 0
+                : in.driftThresholdAbs().movePointRight(6).setScale(0, RoundingMode.HALF_UP).longValueExact();
+
+        long cashBefore = in.freeCash() == null ? 0 : toUnits(in.freeCash(), RoundingMode.FLOOR);
+        long cash = cashBefore;     // a negative balance is paid down by sells before anything is bought
+
+        long[] catValue = categoryValues(lines, false);
+        long maxDriftBefore = maxDrift(catValue, targetPpm);
+
+        List<ExecutedTrade> trades = new ArrayList<>();
+        if (maxDriftBefore > thresholdPpm) {
+            long base = sum(catValue) + Math.max(cash, 0);
+            long[] target = new long[CATEGORIES];
+            for (int c = 0; c < CATEGORIES; c++) {
+                target[c] = mulDiv(base, targetPpm[c], PPM);
+            }
+
+            // 1. sells: free cash from over-weight categories, never more than is held
+            for (Category c : Category.values()) {
+                long excess = catValue[c.ordinal()] - target[c.ordinal()];
+                if (excess <= 0) continue;
+                List<Line> sellable = lines.stream().filter(l -> l.category == c && l.priced() && l.qty > 0).toList();
+                long sold = allocate(sellable, excess, false);
+                cash += sold;
+                catValue[c.ordinal()] -= sold;
+            }
+
+            // 2. buys: biggest deficit first, scaled down pro rata when cash can't cover them all
+            long[] deficit = new long[CATEGORIES];
+            long totalDeficit = 0;
+            for (int c = 0; c < CATEGORIES; c++) {
+                deficit[c] = Math.max(target[c] - catValue[c], 0);
+                totalDeficit += deficit[c];
+            }
+            Integer[] order = new Integer[CATEGORIES];
+            for (int c = 0; c < CATEGORIES; c++) order[c] = c;
+            Arrays.sort(order, (a, b) -> Long.compare(deficit[b], deficit[a]));
+
+            long available = Math.max(cash, 0);
+            for (int c : order) {
+                if (deficit[c] == 0) break;
+                long budget = totalDeficit <= available ? deficit[c] : mulDiv(deficit[c], available, totalDeficit);
+                budget = Math.min(budget, cash);
+                if (budget <= 0) continue;
+
+                Category cat = Category.values()[c];
+                List<Line> buyable = lines.stream().filter(l -> l.category == cat && l.priced()).toList();
+                if (buyable.isEmpty()) {
+                    buyable = newLines(cat, frameByCategory.getOrDefault(cat, List.of()), lines);
+                }
+                long spent = allocate(buyable, budget, true);
+                cash -= spent;
+            }
+
+            for (Line l : lines) {
+                if (l.sell > 0) trades.add(new ExecutedTrade(l.ticker, Side.SELL, Math.toIntExact(l.sell), reason(l.category)));
+            }
+            for (Line l : lines) {
+                if (l.buy > 0) trades.add(new ExecutedTrade(l.ticker, Side.BUY, Math.toIntExact(l.buy), reason(l.category)));
+            }
+        }
+
+        long[] after = categoryValues(lines, true);
+        long investedAfter = sum(after);
+        Map<Category, BigDecimal> weightsAfter = new EnumMap<>(Category.class);
+        for (Category c : Category.values()) {
+            long w = investedAfter <= 0 ? 0 : mulDivHalfUp(after[c.ordinal()], PPM, investedAfter);
+            weightsAfter.put(c, BigDecimal.valueOf(w, 4));
+        }
+
+        return new RebalancePlan(
+                in.portfolioId(),
+                trades,
+                in.freeCash() == null ? BigDecimal.ZERO : in.freeCash(),
+                BigDecimal.valueOf(cash, SCALE),
+                BigDecimal.valueOf(maxDriftBefore, 6),
+                BigDecimal.valueOf(maxDrift(after, targetPpm), 6),
+                in.driftThresholdAbs(),
+                weightsAfter
+        );
+    }
+
+    // Splits amount across lines in proportion to their current value (equally when none has value),
+    // then tops up greedily with whatever the share rounding left over. Returns the money moved.
+    private static long allocate(List<Line> lines, long amount, boolean buying) {
+        if (lines.isEmpty() || amount <= 0) return 0;
+
+        long totalValue = 0;
+        for (Line l : lines) totalValue += l.value;
+
+        long moved = 0;
+        for (Line l : lines) {
+            long share = totalValue > 0 ? mulDiv(amount, l.value, totalValue) : amount / lines.size();
+            moved += take(l, share, buying);
+        }
+
+        List<Line> byValue = new ArrayList<>(lines);
+        byValue.sort(Comparator.comparingLong((Line l) -> l.value).reversed());
+        for (Line l : byValue) {
+            if (amount - moved <= 0) break;
+            moved += take(l, amount - moved, buying);
+        }
+        return moved;
+    }
+
+    private static long take(Line l, long budget, boolean buying) {
+        long px = buying ? l.buyPx : l.sellPx;
+        long q = budget / px;
+        if (!buying) q = Math.min(q, l.qty - l.sell);
+        if (q <= 0) return 0;
+        if (buying) l.buy += q; else l.sell += q;
+        return q * px;
+    }
+
+    private static List<Line> newLines(Category cat, List<PriceRow> frame, List<Line> all) {
+        List<Line> out = new ArrayList<>();
+        for (PriceRow r : frame) {
+            if (r.symbol() == null || r.price() == null) continue;
+            String sym = r.symbol().toUpperCase();
+            if (all.stream().anyMatch(l -> l.ticker.equals(sym))) continue;
+            long buyPx = toUnits(r.price(), RoundingMode.CEILING);
+            long sellPx = toUnits(r.price(), RoundingMode.FLOOR);
+            if (sellPx <= 0) continue;
+            Line l = new Line(cat, sym, 0, buyPx, sellPx, 0);
+            out.add(l);
+            all.add(l);
+        }
+        return out;
+    }
+
+    private static List<Line> lines(Map<Category, List<StockPosition>> holdings, Map<String, PriceRow> prices) {
+        List<Line> out = new ArrayList<>();
+        for (Category c : Category.values()) {
+            for (StockPosition sp : holdings.getOrDefault(c, List.of())) {
+                if (sp == null || sp.ticker() == null) continue;
+                String sym = sp.ticker().toUpperCase();
+                long qty = sp.quantity() == null ? 0 : sp.quantity();
+
+                // only tradable when the frame files the ticker under the same category /apply will use
+                PriceRow pr = prices.get(sym);
+                boolean priced = pr != null && pr.price() != null && pr.price().signum() > 0
+                        && Category.fromWire(pr.category()) == c;
+                if (priced) {
+                    long sellPx = toUnits(pr.price(), RoundingMode.FLOOR);
+                    out.add(new Line(c, sym, qty, toUnits(pr.price(), RoundingMode.CEILING), sellPx,
+                            Math.multiplyExact(qty, sellPx)));
+                } else {
+                    long value = sp.totalAmount() == null ? 0 : toUnits(sp.totalAmount(), RoundingMode.HALF_UP);
+                    out.add(new Line(c, sym, qty, 0, 0, value));
+                }
+            }
+        }
+        return out;
+    }
+
+    private static long[] categoryValues(List<Line> lines, boolean afterTrades) {
+        long[] v = new long[CATEGORIES];
+        for (Line l : lines) {
+            v[l.category.ordinal()] += afterTrades ? l.valueAfter() : l.value;
+        }
+        return v;
+    }
+
+    // Same units as the summary columns: weight to 4dp of a percent, drift to 6dp of a fraction
+    private static long maxDrift(long[] catValue, long[] targetPpm) {
+        long invested = sum(catValue);
+        long max = 0;
+        for (int c = 0; c < CATEGORIES; c++) {
+            long w = invested <= 0 ? 0 : mulDivHalfUp(catValue[c], PPM, invested);
+            max = Math.max(max, Math.abs(w - targetPpm[c]));
+        }
+        return max;
+    }
+
+    private static String reason(Category c) {
+        return "rebalance " + c.toWire();
+    }
+
+    private static long sum(long[] values) {
+        long s = 0;
+        for (long v : values) s += v;
+        return s;
+    }
+
+    static long toUnits(BigDecimal amount, RoundingMode mode) {
+        return amount.setScale(SCALE, mode).unscaledValue().longValueExact();
+    }
+
+    // floor(a * b / c) for non-negative inputs; falls back to BigInteger only when a * b overflows
+    static long mulDiv(long a, long b, long c) {
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a * b;
+        if (hi == 0 && lo >= 0) return lo / c;
+        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).divide(BigInteger.valueOf(c)).longValueExact();
+    }
+
+    static long mulDivHalfUp(long a, long b, long c) {
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a * b;
+        if (hi == 0 && lo >= 0 && lo <= Long.MAX_VALUE - c / 2) return (lo + c / 2) / c;
+        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).add(BigInteger.valueOf(c / 2))
+                .divide(BigInteger.valueOf(c)).longValueExact();
+    }
+}
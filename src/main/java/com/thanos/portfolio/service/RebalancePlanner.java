@@ -0,0 +1,87 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.dto.RebalancePlan;
+import com.thanos.portfolio.dto.RebalancePlanBatchRequest;
+import com.thanos.portfolio.entities.Portfolio;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.PriceRow;
+import com.thanos.portfolio.repository.PortfolioRepo;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+@Service
+public class RebalancePlanner {
+
+    private final PortfolioRepo repo;
+
+    public RebalancePlanner(PortfolioRepo repo) {
+        this.repo = repo;
+    }
+
+    @Transactional(readOnly = true)
+    public RebalancePlan plan(Long portfolioId, List<PriceRow> priceFrame) {
+        requireFrame(priceFrame);
+        Portfolio p = repo.findById(portfolioId)
+                .orElseThrow(() -> new NoSuchElementException("Portfolio not found for id=" + portfolioId));
+
+        return RebalancePlanKernel.plan(input(p), priceLookup(priceFrame), byCategory(priceFrame));
+    }
+
+    // Inputs are read on the transaction's thread (holdings are lazy); only the kernel runs in parallel
+    @Transactional(readOnly = true)
+    public List<RebalancePlan> planBatch(RebalancePlanBatchRequest req) {
+        requireFrame(req.priceFrame());
+
+        List<Portfolio> portfolios;
+        if (req.portfolioIds() != null && !req.portfolioIds().isEmpty()) {
+            portfolios = repo.findAllById(req.portfolioIds());
+        } else if (req.rmId() != null && !req.rmId().isBlank()) {
+            portfolios = repo.findByRmId(req.rmId()).orElse(List.of());
+        } else {
+            throw new IllegalArgumentException("rmId or portfolioIds is required");
+        }
+
+        List<RebalancePlanKernel.Input> inputs = portfolios.stream()
+                .sorted(Comparator.comparing(Portfolio::getId))
+                .map(RebalancePlanner::input)
+                .toList();
+
+        Map<String, PriceRow> prices = priceLookup(req.priceFrame());
+        Map<Category, List<PriceRow>> frame = byCategory(req.priceFrame());
+        return inputs.parallelStream()
+                .map(in -> RebalancePlanKernel.plan(in, prices, frame))
+                .toList();
+    }
+
+    private static RebalancePlanKernel.Input input(Portfolio p) {
+        return new RebalancePlanKernel.Input(p.getId(), p.getPortfolio(), p.getFreeCash(),
+                p.getTargetState(), p.getDriftThresholdAbs());
+    }
+
+    private static void requireFrame(List<PriceRow> priceFrame) {
+        if (priceFrame == null || priceFrame.isEmpty()) {
+            throw new IllegalArgumentException("priceFrame is required");
+        }
+    }
+
+    private static Map<String, PriceRow> priceLookup(List<PriceRow> priceFrame) {
+        Map<String, PriceRow> out = new HashMap<>();
+        for (PriceRow r : priceFrame) {
+            if (r.symbol() == null) continue;
+            out.putIfAbsent(r.symbol().toUpperCase(), r);
+        }
+        return out;
+    }
+
+    private static Map<Category, List<PriceRow>> byCategory(List<PriceRow> priceFrame) {
+        Map<Category, List<PriceRow>> out = new EnumMap<>(Category.class);
+        Set<String> seen = new HashSet<>();
+        for (PriceRow r : priceFrame) {
+            if (r.symbol() == null || r.category() == null || !seen.add(r.symbol().toUpperCase())) continue;
+            out.computeIfAbsent(Category.fromWire(r.category()), c -> new ArrayList<>()).add(r);
+        }
+        return out;
+    }
+}
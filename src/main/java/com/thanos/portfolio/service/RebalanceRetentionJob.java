@@ -0,0 +1,59 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.repository.PortfolioRebalanceAppliedRepo;
+import com.thanos.portfolio.shard.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// Keeps portfolio_rebalance_applied down to the retention window. Older rows, trades JSON included,
+// move to portfolio_rebalance_archive, which IdempotencyGuard still consults.
+// The window must stay longer than any portfolio's cooldownDays: the drift scanner reads the hot table only.
+@Slf4j
+@Component
+public class RebalanceRetentionJob {
+
+    private final PortfolioRebalanceAppliedRepo appliedRepo;
+    private final ShardRouter router;
+    private final boolean enabled;
+    private final Duration retention;
+    private final int chunkSize;
+
+    public RebalanceRetentionJob(PortfolioRebalanceAppliedRepo appliedRepo, ShardRouter router,
+                                 @Value("${portfolio.idempotency.archive.enabled:true}") boolean enabled,
+                                 @Value("${portfolio.idempotency.archive.retention:30d}") Duration retention,
+                                 @Value("${portfolio.idempotency.archive.chunk-size:1000}") int chunkSize) {
+        this.appliedRepo = appliedRepo;
+        this.router = router;
+        this.enabled = enabled;
+        this.retention = retention;
+        this.chunkSize = chunkSize;
+    }
+
+    @Scheduled(fixedDelayString = "${portfolio.idempotency.archive.interval:1h}",
+               initialDelayString = "${portfolio.idempotency.archive.initial-delay:5m}")
+    public void archive() {
+        if (!enabled) return;
+        long[] total = {0};
+        try {
+            router.onEachShard(() -> {
+                int n;
+                do {
+                    // each chunk is its own statement and its own commit, so the hot table is never locked for long
+                    n = appliedRepo.archiveOlderThan(retention, chunkSize);
+                    total[0] += n;
+                } while (n == chunkSize);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Rebalance archiving stopped after {} rows", total[0], e);
+            return;
+        }
+        if (total[0] > 0) {
+            log.info("Archived {} applied rebalances older than {}", total[0], retention);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.thanos.portfolio.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Where the time of one call goes. Every meter is registered up front and looked up by array index,
+// so the hot path pays two nanoTime reads and one lock-free record per stage, nothing more.
+// Usage: long t = System.nanoTime(); ...; t = stages.lap(op, stage, t); ...
+// A call that can pass a stage more than once (optimistic retries) laps into stages.laps(op) instead
+// and records once at the end, so every stage counts one sample per call.
+@Component
+public class StageMetrics {
+
+    public enum Op { APPLY, CREATE, READ_BY_ID, READ_BY_USER, READ_BY_RM }
+
+    public enum Stage {
+        PRICES,         // price frame lookup or snapshot fetch
+        IDEMPOTENCY_FILTER, // apply fast path: in-memory filter, then the row only if the filter might hold it
+        IDEMPOTENCY,    // applied-rebalance row lookup
+        LOCK,           // row lock(s) for the write
+        CACHE,          // read-through cache probe
+        QUERY,          // row fetch
+        LOAD,           // holdings materialized from position rows or the legacy JSON column
+        MATH,           // trade application, totals and percentages (create: the whole prepared upsert)
+        SUMMARY,        // apply only: holdings written back to the entity plus value/weights/drift columns
+        FLUSH,          // portfolio row UPDATE/INSERT
+        POSITIONS,      // position row upserts/deletes
+        LEDGER,         // ledger events
+        RECORD,         // idempotency row + change event
+        MAP             // entity to response
+    }
+
+    public enum Duplicate { FAST_PATH, IN_LOCK, IN_BATCH }
+
+    private static final Map<Op, Set<Stage>> STAGES = new EnumMap<>(Map.of(
+            Op.APPLY, EnumSet.of(Stage.PRICES, Stage.IDEMPOTENCY_FILTER, Stage.IDEMPOTENCY, Stage.LOCK, Stage.LOAD, Stage.MATH,
+                    Stage.SUMMARY, Stage.FLUSH, Stage.POSITIONS, Stage.LEDGER, Stage.RECORD),
+            Op.CREATE, EnumSet.of(Stage.MATH, Stage.QUERY, Stage.FLUSH, Stage.POSITIONS, Stage.LEDGER),
+            Op.READ_BY_ID, EnumSet.of(Stage.CACHE, Stage.QUERY, Stage.MAP),
+            Op.READ_BY_USER, EnumSet.of(Stage.CACHE, Stage.QUERY, Stage.MAP),
+            Op.READ_BY_RM, EnumSet.of(Stage.QUERY, Stage.MAP)
+    ));
+
+    private final Timer[][] timers = new Timer[Op.values().length][Stage.values().length];
+    private final Counter[] duplicates = new Counter[Duplicate.values().length];
+    private final Counter sellNoHolding;
+    private final Counter sellInsufficient;
+    private final DistributionSummary positions;
+
+    public StageMetrics(MeterRegistry registry) {
+        STAGES.forEach((op, stages) -> {
+            for (Stage stage : stages) {
+                timers[op.ordinal()][stage.ordinal()] = Timer.builder("portfolio.stage")
+                        .description("Time spent in one stage of an apply, create or read call")
+                        .tag("op", tag(op))
+                        .tag("stage", tag(stage))
+                        .register(registry);
+            }
+        });
+        for (Duplicate d : Duplicate.values()) {
+            duplicates[d.ordinal()] = Counter.builder("portfolio.apply.duplicates")
+                    .description("Rebalances skipped because they were already applied")
+                    .tag("check", tag(d))
+                    .register(registry);
+        }
+        sellNoHolding = Counter.builder("portfolio.apply.sell.rejected")
+                .description("SELL trades refused by the trade math")
+                .tag("reason", "no_holding")
+                .register(registry);
+        sellInsufficient = Counter.builder("portfolio.apply.sell.rejected")
+                .description("SELL trades refused by the trade math")
+                .tag("reason", "insufficient_qty")
+                .register(registry);
+        positions = DistributionSummary.builder("portfolio.positions")
+                .description("Positions held by a portfolio after a write")
+                .baseUnit("positions")
+                .register(registry);
+    }
+
+    // Records now - start against op/stage and returns now, so consecutive stages chain off one clock read
+    public long lap(Op op, Stage stage, long start) {
+        long now = System.nanoTime();
+        timers[op.ordinal()][stage.ordinal()].record(now - start, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    public Laps laps(Op op) {
+        return new Laps(op);
+    }
+
+    // Stage times of one call, summed per stage; not thread-safe, one per call
+    public final class Laps {
+        private final Op op;
+        private final long[] nanos = new long[Stage.values().length];
+        private final boolean[] seen = new boolean[Stage.values().length];
+
+        private Laps(Op op) {
+            this.op = op;
+        }
+
+        public long lap(Stage stage, long start) {
+            long now = System.nanoTime();
+            nanos[stage.ordinal()] += now - start;
+            seen[stage.ordinal()] = true;
+            return now;
+        }
+
+        public void record() {
+            for (int i = 0; i < seen.length; i++) {
+                if (seen[i]) timers[op.ordinal()][i].record(nanos[i], TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    public void duplicate(Duplicate where) { duplicates[where.ordinal()].increment(); }
+
+    public void sellNoHolding() { sellNoHolding.increment(); }
+
+    public void sellInsufficient() { sellInsufficient.increment(); }
+
+    public void positions(int count) { positions.record(count); }
+
+    private static String tag(Enum<?> e) {
+        return e.name().toLowerCase(Locale.ROOT);
+    }
+}
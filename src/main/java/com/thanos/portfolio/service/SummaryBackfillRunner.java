@@ -0,0 +1,46 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.shard.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+public class SummaryBackfillRunner implements ApplicationRunner {
+
+    private final PortfolioService service;
+    private final ShardRouter router;
+    private final int chunkSize;
+
+    public SummaryBackfillRunner(PortfolioService service, ShardRouter router,
+                                 @Value("${portfolio.summary.backfill-chunk-size:500}") int chunkSize) {
+        this.service = service;
+        this.router = router;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int[] total = {0};
+        try {
+            router.onEachShard(() -> {
+                int n;
+                do {
+                    n = service.backfillSummaries(chunkSize);
+                    total[0] += n;
+                } while (n == chunkSize);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // a bad row would otherwise be picked up again forever; leave it for the next write to fix
+            log.warn("Summary backfill stopped after {} rows", total[0], e);
+            return;
+        }
+        if (total[0] > 0) {
+            log.info("Backfilled summary columns for {} portfolios", total[0]);
+        }
+    }
+}
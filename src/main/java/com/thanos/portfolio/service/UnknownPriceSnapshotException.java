@@ -0,0 +1,15 @@
+package com.thanos.portfolio.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// A priceSnapshotId this node does not hold: evicted past portfolio.prices.retain, pushed to another
+// node, or handed out before a restart. 410 rather than 400, since the same request with a fresh
+// snapshot (or an inline priceFrame) would go through.
+@ResponseStatus(HttpStatus.GONE)
+public class UnknownPriceSnapshotException extends IllegalArgumentException {
+
+    public UnknownPriceSnapshotException(long id) {
+        super("Price snapshot " + id + " is unknown or no longer retained");
+    }
+}
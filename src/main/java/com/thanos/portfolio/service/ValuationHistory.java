@@ -0,0 +1,224 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.converter.ValuationChunkCodec;
+import com.thanos.portfolio.converter.ValuationChunkCodec.Point;
+import com.thanos.portfolio.dto.ValuationPoint;
+import com.thanos.portfolio.entities.ValuationChunk;
+import com.thanos.portfolio.event.PortfolioChangedEvent;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.repository.ValuationChunkBatchRepo.CurrentValuation;
+import com.thanos.portfolio.repository.ValuationChunkRepo;
+import com.thanos.portfolio.shard.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Daily valuation per portfolio, kept as delta/varint packed chunks of ValuationChunkCodec.CHUNK_DAYS days.
+// A point is free cash plus the value held in each category at 4 decimal places; the portfolio value
+// is their category sum, as in PortfolioService. The daily job writes every portfolio's point, and
+// committed writes re-value the day of the portfolios they touched; the latest value of a day wins.
+@Slf4j
+@Component
+public class ValuationHistory {
+
+    public enum Interval { DAY, WEEK, MONTH }
+
+    static final int SCALE = 4;
+    private static final Category[] CATEGORIES = Category.values();
+    private static final int FREE_CASH = 0;
+    static final int WIDTH = 1 + CATEGORIES.length;
+
+    private final ValuationChunkRepo chunkRepo;
+    private final ShardRouter router;
+    private final TransactionTemplate tx;
+    private final boolean enabled;
+    private final int batchSize;
+    private final ZoneId zone;
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    public ValuationHistory(ValuationChunkRepo chunkRepo, PlatformTransactionManager txManager, ShardRouter router,
+                            @Value("${portfolio.valuations.enabled:true}") boolean enabled,
+                            @Value("${portfolio.valuations.batch-size:500}") int batchSize,
+                            @Value("${portfolio.valuations.zone:UTC}") ZoneId zone) {
+        this.chunkRepo = chunkRepo;
+        this.router = router;
+        this.tx = new TransactionTemplate(txManager);
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.zone = zone;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onCommitted(PortfolioChangedEvent event) {
+        if (enabled && event.portfolioId() != null) pending.add(event.portfolioId());
+    }
+
+    // Re-values today's point of every portfolio written since the last run, off the request path
+    @Scheduled(fixedDelayString = "${portfolio.valuations.flush-interval:10s}")
+    public void flushPending() {
+        if (!enabled || pending.isEmpty()) return;
+        List<Long> ids = new ArrayList<>(pending);
+        pending.removeAll(ids);
+        LocalDate today = LocalDate.now(zone);
+        try {
+            router.onPortfolios(ids, share -> {
+                for (int i = 0; i < share.size(); i += batchSize) {
+                    record(share.subList(i, Math.min(i + batchSize, share.size())), today);
+                }
+                return List.of();
+            });
+        } catch (RuntimeException e) {
+            pending.addAll(ids);
+            log.warn("Recording valuations of {} changed portfolios failed, will retry", ids.size(), e);
+        }
+    }
+
+    @Scheduled(cron = "${portfolio.valuations.daily-cron:0 5 0 * * *}", zone = "${portfolio.valuations.zone:UTC}")
+    public void recordDaily() {
+        if (!enabled) return;
+        LocalDate today = LocalDate.now(zone);
+        int[] total = {0};
+        try {
+            router.onEachShard(() -> {
+                long after = 0;
+                List<Long> ids;
+                do {
+                    ids = chunkRepo.findPortfolioIdsAfter(after, batchSize);
+                    if (ids.isEmpty()) break;
+                    record(ids, today);
+                    total[0] += ids.size();
+                    after = ids.get(ids.size() - 1);
+                } while (ids.size() == batchSize);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Daily valuation stopped after {} portfolios", total[0], e);
+            return;
+        }
+        log.info("Recorded {} valuations for {}", total[0], today);
+    }
+
+    // One transaction per batch: read current values, lock the day's chunks in id order, merge, write back
+    public void record(List<Long> portfolioIds, LocalDate day) {
+        int epochDay = Math.toIntExact(day.toEpochDay());
+        int chunkNo = ValuationChunkCodec.chunkOf(epochDay);
+        tx.executeWithoutResult(status -> {
+            Map<Long, CurrentValuation> current = new HashMap<>();
+            for (CurrentValuation v : chunkRepo.currentValuations(portfolioIds)) current.put(v.portfolioId(), v);
+            if (current.isEmpty()) return;
+
+            Map<Long, Integer> keys = new HashMap<>();
+            current.keySet().forEach(id -> keys.put(id, chunkNo));
+            List<ValuationChunk> chunks = chunkRepo.lockChunks(keys);
+            for (ValuationChunk c : chunks) {
+                CurrentValuation v = current.get(c.getPortfolioId());
+                List<Point> points = c.getPoints() == 0 ? List.of() : ValuationChunkCodec.decode(chunkNo, c.getData());
+                points = ValuationChunkCodec.upsert(points, new Point(epochDay, fields(v)));
+                c.setRmId(v.rmId());
+                c.setPoints(points.size());
+                c.setData(ValuationChunkCodec.encode(chunkNo, WIDTH, points));
+            }
+            chunkRepo.updateAll(chunks);
+        });
+    }
+
+    public List<ValuationPoint> series(Long portfolioId, LocalDate from, LocalDate to, Interval interval) {
+        List<Point> points = new ArrayList<>();
+        for (ValuationChunk c : chunkRepo.findChunks(portfolioId, chunkOf(from), chunkOf(to))) {
+            points.addAll(inRange(c, from, to));
+        }
+        List<ValuationPoint> out = new ArrayList<>();
+        downsample(points, interval).forEach((bucket, p) -> out.add(toDto(new Point(bucket, p.fields()))));
+        return out;
+    }
+
+    // Sum over the RM's book: each portfolio contributes its last point per bucket
+    public List<ValuationPoint> rmSeries(String rmId, LocalDate from, LocalDate to, Interval interval) {
+        Map<Long, List<Point>> byPortfolio = new LinkedHashMap<>();
+        for (ValuationChunk c : chunkRepo.findChunksByRmId(rmId, chunkOf(from), chunkOf(to))) {
+            byPortfolio.computeIfAbsent(c.getPortfolioId(), k -> new ArrayList<>()).addAll(inRange(c, from, to));
+        }
+
+        TreeMap<Integer, long[]> totals = new TreeMap<>();
+        for (List<Point> points : byPortfolio.values()) {
+            downsample(points, interval).forEach((bucket, p) -> {
+                long[] sum = totals.computeIfAbsent(bucket, k -> new long[WIDTH]);
+                for (int f = 0; f < WIDTH; f++) sum[f] += p.fields()[f];
+            });
+        }
+        List<ValuationPoint> out = new ArrayList<>(totals.size());
+        totals.forEach((bucket, sum) -> out.add(toDto(new Point(bucket, sum))));
+        return out;
+    }
+
+    // Last point of each bucket, keyed by the bucket's first day
+    static TreeMap<Integer, Point> downsample(List<Point> points, Interval interval) {
+        TreeMap<Integer, Point> out = new TreeMap<>();
+        for (Point p : points) {
+            out.merge(bucketOf(p.epochDay(), interval), p, (a, b) -> b.epochDay() >= a.epochDay() ? b : a);
+        }
+        return out;
+    }
+
+    private static int bucketOf(int epochDay, Interval interval) {
+        LocalDate d = LocalDate.ofEpochDay(epochDay);
+        LocalDate start = switch (interval) {
+            case DAY -> d;
+            case WEEK -> d.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> d.withDayOfMonth(1);
+        };
+        return Math.toIntExact(start.toEpochDay());
+    }
+
+    private static List<Point> inRange(ValuationChunk c, LocalDate from, LocalDate to) {
+        if (c.getPoints() == 0) return List.of();
+        long lo = from.toEpochDay();
+        long hi = to.toEpochDay();
+        return ValuationChunkCodec.decode(c.getChunkNo(), c.getData()).stream()
+                .filter(p -> p.epochDay() >= lo && p.epochDay() <= hi)
+                .toList();
+    }
+
+    private static int chunkOf(LocalDate d) {
+        return ValuationChunkCodec.chunkOf(Math.toIntExact(d.toEpochDay()));
+    }
+
+    static long[] fields(CurrentValuation v) {
+        long[] f = new long[WIDTH];
+        f[FREE_CASH] = units(v.freeCash());
+        for (Category c : CATEGORIES) {
+            f[1 + c.ordinal()] = units(v.byCategory().get(c));
+        }
+        return f;
+    }
+
+    static ValuationPoint toDto(Point p) {
+        long invested = 0;
+        Map<Category, BigDecimal> byCategory = new EnumMap<>(Category.class);
+        for (Category c : CATEGORIES) {
+            long v = p.fields()[1 + c.ordinal()];
+            invested += v;
+            byCategory.put(c, BigDecimal.valueOf(v, SCALE));
+        }
+        return new ValuationPoint(LocalDate.ofEpochDay(p.epochDay()), BigDecimal.valueOf(invested, SCALE),
+                BigDecimal.valueOf(p.fields()[FREE_CASH], SCALE), byCategory);
+    }
+
+    private static long units(BigDecimal amount) {
+        return amount == null ? 0 : amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+}
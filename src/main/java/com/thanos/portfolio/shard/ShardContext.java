@@ -0,0 +1,38 @@
+package com.thanos.portfolio.shard;
+
+// The shard the current thread talks to. ShardRoutingDataSource reads it when a connection is
+// actually opened, which behind LazyConnectionDataSourceProxy is the first statement of a
+// transaction: set it before the transaction starts, or at least before its first query.
+public final class ShardContext {
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {}
+
+    // null means the home shard
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    public static <T, E extends Exception> T on(String shard, Call<T, E> call) throws E {
+        String previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return call.call();
+        } finally {
+            if (previous == null) CURRENT.remove(); else CURRENT.set(previous);
+        }
+    }
+
+    public static void run(String shard, Runnable task) {
+        on(shard, () -> {
+            task.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,135 @@
+package com.thanos.portfolio.shard;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Home-shard tables mapping RMs to shards and portfolios to RMs. Runs on the home pool directly,
+// never through the routing DataSource, so a lookup never joins a shard transaction.
+public class ShardDirectory {
+
+    public record Placement(String rmId, String shard, String movingTo) {}
+
+    public record Entry(long portfolioId, String userId, String rmId) {}
+
+    private static final String PLACEMENT_COLUMNS = "r.rm_id, r.shard, r.moving_to";
+
+    private static final RowMapper<Placement> PLACEMENT = (rs, i) ->
+            new Placement(rs.getString(1), rs.getString(2), rs.getString(3));
+
+    private static final RowMapper<Entry> ENTRY = (rs, i) ->
+            new Entry(rs.getLong(1), rs.getString(2), rs.getString(3));
+
+    private static final String REGISTER =
+            "insert into shard_portfolio_directory (portfolio_id, user_id, rm_id) values (?, ?, ?) " +
+            "on conflict (portfolio_id) do update set user_id = excluded.user_id, rm_id = excluded.rm_id " +
+            "where (shard_portfolio_directory.user_id, shard_portfolio_directory.rm_id) " +
+            "is distinct from (excluded.user_id, excluded.rm_id)";
+
+    private final JdbcTemplate jdbc;
+
+    public ShardDirectory(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    // Directory key of an RM; portfolios without one share the '' book
+    public static String key(String rmId) {
+        return rmId == null ? "" : rmId;
+    }
+
+    public Optional<Placement> rm(String rmId) {
+        return one("select " + PLACEMENT_COLUMNS + " from shard_rm_directory r where r.rm_id = ?", key(rmId));
+    }
+
+    public Optional<Placement> portfolio(long portfolioId) {
+        return one("select " + PLACEMENT_COLUMNS + " from shard_portfolio_directory p " +
+                "join shard_rm_directory r on r.rm_id = p.rm_id where p.portfolio_id = ?", portfolioId);
+    }
+
+    public Optional<Placement> user(String userId) {
+        return one("select " + PLACEMENT_COLUMNS + " from shard_portfolio_directory p " +
+                "join shard_rm_directory r on r.rm_id = p.rm_id where p.user_id = ?", userId);
+    }
+
+    public Optional<Entry> entryOfUser(String userId) {
+        return entriesOfUsers(List.of(userId)).stream().findFirst();
+    }
+
+    public List<Entry> entriesOfUsers(Collection<String> userIds) {
+        return jdbc.query("select portfolio_id, user_id, rm_id from shard_portfolio_directory where user_id = any(?)",
+                ENTRY, (Object) userIds.toArray(String[]::new));
+    }
+
+    // Settled placements only; a book in the middle of a move has no single answer
+    public Map<Long, String> shardsOf(List<Long> portfolioIds) {
+        Map<Long, String> out = new HashMap<>();
+        jdbc.query("select p.portfolio_id, r.shard from shard_portfolio_directory p " +
+                        "join shard_rm_directory r on r.rm_id = p.rm_id " +
+                        "where p.portfolio_id = any(?) and r.moving_to is null",
+                rs -> {
+                    out.put(rs.getLong(1), rs.getString(2));
+                }, (Object) portfolioIds.toArray(Long[]::new));
+        return out;
+    }
+
+    public List<Placement> placements() {
+        return jdbc.query("select " + PLACEMENT_COLUMNS + " from shard_rm_directory r order by r.rm_id", PLACEMENT);
+    }
+
+    // First placement wins; returns the shard the RM actually lives on
+    public String place(String rmId, String shard) {
+        jdbc.update("insert into shard_rm_directory (rm_id, shard, updated_at) values (?, ?, now()) " +
+                "on conflict (rm_id) do nothing", key(rmId), shard);
+        return rm(rmId).orElseThrow().shard();
+    }
+
+    public void register(long portfolioId, String userId, String rmId) {
+        jdbc.update(REGISTER, portfolioId, userId, key(rmId));
+    }
+
+    public int registerAll(List<Entry> entries) {
+        return batch(REGISTER, entries);
+    }
+
+    // Backfill: keeps whatever is already registered
+    public int backfill(List<Entry> entries) {
+        return batch("insert into shard_portfolio_directory (portfolio_id, user_id, rm_id) " +
+                "values (?, ?, ?) on conflict do nothing", entries);
+    }
+
+    // Compare-and-set, so two movers never copy the same book at once
+    public boolean beginMove(String rmId, String from, String to) {
+        return jdbc.update("update shard_rm_directory set moving_to = ?, updated_at = now() " +
+                "where rm_id = ? and shard = ? and moving_to is null", to, key(rmId), from) == 1;
+    }
+
+    // The switch-over: from here on every lookup of the book resolves to `to`
+    public boolean finishMove(String rmId, String to) {
+        return jdbc.update("update shard_rm_directory set shard = moving_to, moving_to = null, updated_at = now() " +
+                "where rm_id = ? and moving_to = ?", key(rmId), to) == 1;
+    }
+
+    public void abortMove(String rmId) {
+        jdbc.update("update shard_rm_directory set moving_to = null, updated_at = now() where rm_id = ?", key(rmId));
+    }
+
+    private int batch(String sql, List<Entry> entries) {
+        int[][] counts = jdbc.batchUpdate(sql, entries, 500, (ps, e) -> {
+            ps.setLong(1, e.portfolioId());
+            ps.setString(2, e.userId());
+            ps.setString(3, key(e.rmId()));
+        });
+        int n = 0;
+        for (int[] batch : counts) for (int c : batch) n += Math.max(c, 0);
+        return n;
+    }
+
+    private Optional<Placement> one(String sql, Object arg) {
+        return jdbc.query(sql, PLACEMENT, arg).stream().findFirst();
+    }
+}
@@ -0,0 +1,386 @@
+package com.thanos.portfolio.shard;
+
+import com.thanos.portfolio.shard.ShardDirectory.Entry;
+import com.thanos.portfolio.shard.ShardDirectory.Placement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+
+import java.sql.*;
+import java.time.Duration;
+import java.util.*;
+
+// Online moves of portfolios between shards. A move locks the portfolio rows on the source (writers
+// queue behind it), copies every row keyed by those portfolios to the target and commits there,
+// switches the directory, keeps the frozen source copy readable for one directory-cache TTL, then
+// deletes it. Writers that were queued wake up to a missing row and the router retries them on the
+// target. Ids are unique across shards (see ShardSchema), so rows are copied verbatim; the target's
+// id counters are then pushed past the copied ids, so rows it writes later still sort after them.
+//
+// A crash before the switch leaves a partial copy on the target that the next attempt replaces; a
+// crash after it leaves a stale copy on the source that cleanup() removes.
+@Slf4j
+public class ShardRebalancer implements ApplicationRunner {
+
+    private record Table(String name, String key) {}
+
+    // Everything keyed by portfolio, parents first. A new per-portfolio table has to be listed here.
+    private static final List<Table> TABLES = List.of(
+            new Table("portfolios", "id"),
+            new Table("portfolio_positions", "portfolio_id"),
+            new Table("portfolio_rebalance_applied", "portfolio_id"),
+            new Table("portfolio_rebalance_archive", "portfolio_id"),
+            new Table("position_ledger", "portfolio_id"),
+            new Table("position_ledger_heads", "portfolio_id"),
+            new Table("position_ledger_snapshots", "portfolio_id"),
+            new Table("valuation_chunks", "portfolio_id"));
+
+    private static final int BATCH = 500;
+    private static final int LATE_PASSES = 3;
+
+    public record MoveResult(String rmId, String from, String to, int portfolios, long millis) {}
+
+    @FunctionalInterface
+    private interface Locker {
+        List<Long> lock(Connection source) throws SQLException;
+    }
+
+    private final ShardSet shards;
+    private final ShardDirectory directory;
+    private final ShardRing ring;
+    private final Duration grace;
+    private final boolean backfillOnStartup;
+
+    public ShardRebalancer(ShardSet shards, ShardDirectory directory, ShardRing ring, ShardingProperties props) {
+        this.shards = shards;
+        this.directory = directory;
+        this.ring = ring;
+        this.grace = props.directoryCacheTtl();
+        this.backfillOnStartup = props.directoryBackfillOnStartup();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (backfillOnStartup) backfillDirectory();
+    }
+
+    // Moves the whole book of an RM; the RM is marked as moving so no new portfolio is created on the source meanwhile
+    public MoveResult moveRm(String rmId, String to) {
+        shards.get(to);
+        Placement p = directory.rm(rmId)
+                .orElseThrow(() -> new NoSuchElementException("No shard placement for rmId=" + rmId));
+        if (p.shard().equals(to)) return new MoveResult(p.rmId(), to, to, 0, 0);
+        if (!directory.beginMove(rmId, p.shard(), to)) {
+            throw new IllegalStateException("Book of rmId=" + rmId + " is already moving");
+        }
+
+        long started = System.nanoTime();
+        int moved;
+        try {
+            moved = copyAndSwitch(p.shard(), to, src -> lockBook(src, rmId), () -> {
+                if (!directory.finishMove(rmId, to)) {
+                    throw new IllegalStateException("Placement of rmId=" + rmId + " changed during the move");
+                }
+            });
+            // the book was empty on the source, nothing was switched
+            if (moved == 0) directory.finishMove(rmId, to);
+        } catch (RuntimeException e) {
+            directory.abortMove(rmId);
+            throw e;
+        }
+
+        // a create that resolved the source just before the RM was marked may still have committed there
+        for (int pass = 0; pass < LATE_PASSES; pass++) {
+            int late = copyAndSwitch(p.shard(), to, src -> lockBook(src, rmId), () -> {});
+            if (late == 0) break;
+            moved += late;
+        }
+
+        MoveResult r = new MoveResult(p.rmId(), p.shard(), to, moved, (System.nanoTime() - started) / 1_000_000);
+        log.info("Moved {} portfolios of rmId={} from shard {} to {} in {} ms", r.portfolios(), r.rmId(), r.from(), r.to(), r.millis());
+        return r;
+    }
+
+    // One portfolio whose RM lives elsewhere now; `switchOver` repoints its directory entry
+    public void movePortfolio(long portfolioId, String from, String to, Runnable switchOver) {
+        copyAndSwitch(from, to, src -> lockIds(src, List.of(portfolioId)), switchOver);
+    }
+
+    // Moves every book whose ring shard differs from where it lives: run after adding a shard to (or
+    // removing one from) portfolio.sharding.ring. One book at a time, so only one book is paused at once.
+    public List<MoveResult> rebalance() {
+        List<MoveResult> out = new ArrayList<>();
+        for (Placement p : directory.placements()) {
+            if (p.movingTo() != null) continue;
+            String want = ring.shardFor(p.rmId());
+            if (!want.equals(p.shard())) {
+                out.add(moveRm(p.rmId(), want));
+            }
+        }
+        return out;
+    }
+
+    // Deletes copies left behind on a shard by a move that crashed after its switch-over. A row is
+    // only removed when the directory places it elsewhere and that shard really has it.
+    public int cleanup() {
+        int removed = 0;
+        for (String shard : shards.names()) {
+            long after = 0;
+            while (true) {
+                List<Long> ids = queryIds(shard, "select id from portfolios where id > ? order by id limit " + BATCH, after);
+                if (ids.isEmpty()) break;
+                after = ids.get(ids.size() - 1);
+
+                Map<String, List<Long>> elsewhere = new HashMap<>();
+                directory.shardsOf(ids).forEach((id, s) -> {
+                    if (!s.equals(shard)) elsewhere.computeIfAbsent(s, k -> new ArrayList<>()).add(id);
+                });
+                for (var e : elsewhere.entrySet()) {
+                    List<Long> present = queryIds(e.getKey(), "select id from portfolios where id = any(?)", e.getValue());
+                    if (present.isEmpty()) continue;
+                    removed += delete(shard, present);
+                    log.info("Removed {} stale portfolio copies from shard {}; they live on {}", present.size(), shard, e.getKey());
+                }
+            }
+        }
+        return removed;
+    }
+
+    // Registers every portfolio that is not in the directory yet, pinning its RM to the shard it was
+    // found on. Turning sharding on over an existing database is just this on the home shard.
+    public int backfillDirectory() {
+        int registered = 0;
+        for (String shard : shards.names()) {
+            Set<String> placed = new HashSet<>();
+            long after = 0;
+            while (true) {
+                List<Entry> rows = queryEntries(shard, after);
+                if (rows.isEmpty()) break;
+                after = rows.get(rows.size() - 1).portfolioId();
+
+                for (Entry e : rows) {
+                    String rm = ShardDirectory.key(e.rmId());
+                    if (!placed.add(rm)) continue;
+                    String actual = directory.place(rm, shard);
+                    if (!actual.equals(shard)) {
+                        log.warn("rmId={} has portfolios on shards {} and {}; the directory keeps {}", rm, shard, actual, actual);
+                    }
+                }
+                registered += directory.backfill(rows);
+            }
+        }
+        if (registered > 0) log.info("Registered {} portfolios in the shard directory", registered);
+        return registered;
+    }
+
+    private int copyAndSwitch(String from, String to, Locker locker, Runnable switchOver) {
+        try (Connection src = shards.get(from).getConnection(); Connection dst = shards.get(to).getConnection()) {
+            src.setAutoCommit(false);
+            dst.setAutoCommit(false);
+            try {
+                List<Long> ids = locker.lock(src);
+                if (ids.isEmpty()) {
+                    src.rollback();
+                    return 0;
+                }
+                Array keys = src.createArrayOf("bigint", ids.toArray());
+                Array targetKeys = dst.createArrayOf("bigint", ids.toArray());
+
+                for (Table t : TABLES.reversed()) {
+                    exec(dst, "delete from " + t.name() + " where " + t.key() + " = any(?)", targetKeys);
+                }
+                for (Table t : TABLES) {
+                    copy(src, dst, t, keys);
+                }
+                for (Table t : TABLES) {
+                    advanceIds(dst, t.name(), shards.slot(to), shards.idStride());
+                }
+                dst.commit();
+
+                switchOver.run();
+                // callers that cached the old placement still read a complete, frozen copy meanwhile
+                Thread.sleep(grace.toMillis());
+
+                for (Table t : TABLES.reversed()) {
+                    exec(src, "delete from " + t.name() + " where " + t.key() + " = any(?)", keys);
+                }
+                src.commit();
+                return ids.size();
+            } catch (SQLException | RuntimeException | InterruptedException e) {
+                rollbackQuietly(dst);
+                rollbackQuietly(src);
+                if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+                if (e instanceof RuntimeException re) throw re;
+                throw new IllegalStateException("Moving portfolios from shard " + from + " to " + to + " failed", e);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not connect to shard " + from + " or " + to, e);
+        }
+    }
+
+    private static List<Long> lockBook(Connection src, String rmId) throws SQLException {
+        String rm = ShardDirectory.key(rmId);
+        String where = rm.isEmpty() ? "rm_id is null" : "rm_id = ?";
+        try (PreparedStatement ps = src.prepareStatement("select id from portfolios where " + where + " order by id for update")) {
+            if (!rm.isEmpty()) ps.setString(1, rm);
+            return ids(ps);
+        }
+    }
+
+    private static List<Long> lockIds(Connection src, List<Long> portfolioIds) throws SQLException {
+        try (PreparedStatement ps = src.prepareStatement("select id from portfolios where id = any(?) order by id for update")) {
+            ps.setArray(1, src.createArrayOf("bigint", portfolioIds.toArray()));
+            return ids(ps);
+        }
+    }
+
+    // Column lists come from the source result set, so column order may differ between shards
+    private static void copy(Connection src, Connection dst, Table t, Array keys) throws SQLException {
+        try (PreparedStatement sel = src.prepareStatement("select * from " + t.name() + " where " + t.key() + " = any(?)")) {
+            sel.setArray(1, keys);
+            try (ResultSet rs = sel.executeQuery()) {
+                ResultSetMetaData md = rs.getMetaData();
+                int n = md.getColumnCount();
+                StringJoiner cols = new StringJoiner(", ");
+                StringJoiner marks = new StringJoiner(", ");
+                for (int i = 1; i <= n; i++) {
+                    cols.add(md.getColumnName(i));
+                    marks.add("?");
+                }
+                try (PreparedStatement ins = dst.prepareStatement(
+                        "insert into " + t.name() + " (" + cols + ") values (" + marks + ")")) {
+                    int pending = 0;
+                    while (rs.next()) {
+                        for (int i = 1; i <= n; i++) ins.setObject(i, rs.getObject(i));
+                        ins.addBatch();
+                        if (++pending == BATCH) {
+                            ins.executeBatch();
+                            pending = 0;
+                        }
+                    }
+                    if (pending > 0) ins.executeBatch();
+                }
+            }
+        }
+    }
+
+    // Each shard's counter grows at its own pace, so a book from a busier shard can arrive with ids ahead
+    // of the target's. Readers replay the ledger by id, so the next id here has to clear them. The table
+    // lock holds off inserts (and with them nextval) until the copy commits.
+    private static void advanceIds(Connection dst, String table, int slot, int stride) throws SQLException {
+        String seq;
+        try (PreparedStatement ps = dst.prepareStatement("select pg_get_serial_sequence(table_name, 'id') " +
+                "from information_schema.columns where table_schema = current_schema() and table_name = ? and column_name = 'id'")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                seq = rs.next() ? rs.getString(1) : null;
+            }
+        }
+        if (seq == null) return;
+
+        long max;
+        long next;
+        try (Statement st = dst.createStatement()) {
+            st.execute("lock table " + table + " in share row exclusive mode");
+            try (ResultSet rs = st.executeQuery("select coalesce(max(id), 0) from " + table)) {
+                rs.next();
+                max = rs.getLong(1);
+            }
+            try (ResultSet rs = st.executeQuery("select last_value, is_called from " + seq)) {
+                rs.next();
+                next = rs.getBoolean(2) ? rs.getLong(1) + stride : rs.getLong(1);
+            }
+        }
+        if (next > max) return;
+
+        long above = max + 1;
+        long aligned = above + Math.floorMod(slot - above, stride);
+        try (PreparedStatement ps = dst.prepareStatement("select setval(?::regclass, ?, false)")) {
+            ps.setString(1, seq);
+            ps.setLong(2, aligned);
+            ps.executeQuery();
+        }
+    }
+
+    private int delete(String shard, List<Long> portfolioIds) {
+        try (Connection c = shards.get(shard).getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                Array keys = c.createArrayOf("bigint", portfolioIds.toArray());
+                for (Table t : TABLES.reversed()) {
+                    exec(c, "delete from " + t.name() + " where " + t.key() + " = any(?)", keys);
+                }
+                c.commit();
+                return portfolioIds.size();
+            } catch (SQLException | RuntimeException e) {
+                rollbackQuietly(c);
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cleanup on shard " + shard + " failed", e);
+        }
+    }
+
+    private List<Long> queryIds(String shard, String sql, Object arg) {
+        try (Connection c = shards.get(shard).getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            if (arg instanceof List<?> list) ps.setArray(1, c.createArrayOf("bigint", list.toArray()));
+            else ps.setObject(1, arg);
+            return ids(ps);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Query on shard " + shard + " failed", e);
+        }
+    }
+
+    private List<Entry> queryEntries(String shard, long after) {
+        try (Connection c = shards.get(shard).getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "select id, user_id, rm_id from portfolios where id > ? order by id limit " + BATCH)) {
+            ps.setLong(1, after);
+            List<Entry> out = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(new Entry(rs.getLong(1), rs.getString(2), rs.getString(3)));
+            }
+            return out;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Query on shard " + shard + " failed", e);
+        }
+    }
+
+    // What a shard holds for these users, straight from its portfolios table
+    public List<Entry> entriesOn(String shard, Collection<String> userIds) {
+        try (Connection c = shards.get(shard).getConnection();
+             PreparedStatement ps = c.prepareStatement("select id, user_id, rm_id from portfolios where user_id = any(?)")) {
+            ps.setArray(1, c.createArrayOf("varchar", userIds.toArray()));
+            List<Entry> out = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(new Entry(rs.getLong(1), rs.getString(2), rs.getString(3)));
+            }
+            return out;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Query on shard " + shard + " failed", e);
+        }
+    }
+
+    private static List<Long> ids(PreparedStatement ps) throws SQLException {
+        List<Long> out = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) out.add(rs.getLong(1));
+        }
+        return out;
+    }
+
+    private static void exec(Connection c, String sql, Array keys) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setArray(1, keys);
+            ps.executeUpdate();
+        }
+    }
+
+    private static void rollbackQuietly(Connection c) {
+        try {
+            c.rollback();
+        } catch (SQLException e) {
+            log.warn("Rollback failed", e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.thanos.portfolio.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Consistent hashing of rmIds onto shards. Each shard owns `virtualNodes` points on a 64-bit ring and
+// a key goes to the first point at or after its hash, so adding a shard only takes keys from its
+// neighbours (about 1/N of them) instead of reshuffling everything.
+public final class ShardRing {
+
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+
+    public ShardRing(Collection<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A shard ring needs at least one shard");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be at least 1");
+        }
+        // sorted, so every node builds the same ring whatever order the shards were configured in
+        for (String shard : new TreeSet<>(shards)) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.putIfAbsent(hash(shard + "#" + i), shard);
+            }
+        }
+    }
+
+    public String shardFor(String key) {
+        Map.Entry<Long, String> e = points.ceilingEntry(hash(key == null ? "" : key));
+        return (e == null ? points.firstEntry() : e).getValue();
+    }
+
+    // FNV-1a over the UTF-8 bytes, then the splitmix64 finalizer so close keys land far apart
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
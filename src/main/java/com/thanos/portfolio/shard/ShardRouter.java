@@ -0,0 +1,342 @@
+package com.thanos.portfolio.shard;
+
+import com.thanos.portfolio.shard.ShardContext.Call;
+import com.thanos.portfolio.shard.ShardDirectory.Placement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// Picks the shard for a call and runs it there. Call it outside any transaction: the shard is bound
+// to the thread before the transaction opens its (lazy) connection.
+//
+// Lookups are cached for a short TTL. A stale entry sends a call to the shard a book just left; the
+// mover keeps the old copy readable for one TTL after the switch, and a call that fails there is
+// retried once on the shard the directory names now. With sharding off every call runs as is.
+@Slf4j
+@Component
+public class ShardRouter {
+
+    private record Cached(String value, long expiresAt) {}
+
+    @FunctionalInterface
+    public interface BatchCall<I, R, E extends Exception> {
+        List<R> call(List<I> items) throws E;
+    }
+
+    private final ShardDirectory directory;
+    private final ShardRing ring;
+    private final ShardSet shards;
+    private final ShardRebalancer rebalancer;
+    private final long ttlNanos;
+    private final long moveWaitMillis;
+    private final int cacheSize;
+    private final Map<String, Cached> shardOfRm = new ConcurrentHashMap<>();
+    private final Map<Long, Cached> rmOfPortfolio = new ConcurrentHashMap<>();
+    private final Map<String, Cached> rmOfUser = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ShardRouter(ShardingProperties props, ObjectProvider<ShardSet> shards, ObjectProvider<ShardDirectory> directory,
+                       ObjectProvider<ShardRing> ring, ObjectProvider<ShardRebalancer> rebalancer) {
+        this(shards.getIfAvailable(), directory.getIfAvailable(), ring.getIfAvailable(), rebalancer.getIfAvailable(),
+                props.directoryCacheTtl(), props.moveWait(), props.directoryCacheSize());
+    }
+
+    private ShardRouter(ShardSet shards, ShardDirectory directory, ShardRing ring, ShardRebalancer rebalancer,
+                        Duration ttl, Duration moveWait, int cacheSize) {
+        this.shards = shards;
+        this.directory = directory;
+        this.ring = ring;
+        this.rebalancer = rebalancer;
+        this.ttlNanos = ttl.toNanos();
+        this.moveWaitMillis = moveWait.toMillis();
+        this.cacheSize = cacheSize;
+    }
+
+    // Runs every call as is; for code built outside a Spring context (tests, benchmarks)
+    public static ShardRouter unsharded() {
+        return new ShardRouter(null, null, null, null, Duration.ZERO, Duration.ZERO, 0);
+    }
+
+    public boolean enabled() {
+        return shards != null;
+    }
+
+    public <T, E extends Exception> T onRm(String rmId, Call<T, E> call) throws E {
+        if (!enabled()) return call.call();
+        String rm = ShardDirectory.key(rmId);
+        String shard = cached(shardOfRm, rm, () -> rmShard(rm));
+        return withRetry(shard, () -> {
+            shardOfRm.remove(rm);
+            return rmShard(rm);
+        }, call);
+    }
+
+    public <T, E extends Exception> T onPortfolio(Long portfolioId, Call<T, E> call) throws E {
+        if (!enabled()) return call.call();
+        String shard = shardOfPortfolio(portfolioId);
+        if (shard == null) throw new NoSuchElementException("Portfolio not found for id=" + portfolioId);
+        return withRetry(shard, () -> {
+            evictPortfolio(portfolioId);
+            return directory.portfolio(portfolioId).map(this::remember).map(Placement::shard).orElse(null);
+        }, call);
+    }
+
+    public <T, E extends Exception> T onUser(String userId, Call<T, E> call) throws E {
+        if (!enabled()) return call.call();
+        String rm = cached(rmOfUser, userId, () -> directory.user(userId).map(this::remember).map(Placement::rmId).orElse(null));
+        if (rm == null) throw new NoSuchElementException("Portfolio not found for userId=" + userId);
+        String shard = cached(shardOfRm, rm, () -> rmShard(rm));
+        return withRetry(shard, () -> {
+            rmOfUser.remove(userId);
+            shardOfRm.remove(rm);
+            return directory.user(userId).map(this::remember).map(Placement::shard).orElse(null);
+        }, call);
+    }
+
+    // Creates and updates. Always reads the directory afresh: a new portfolio must never land on a
+    // shard its book is leaving. A portfolio handed to an RM on another shard is moved there first.
+    public <T, E extends Exception> T place(String userId, String rmId, Call<T, E> write, Function<T, Long> idOf) throws E {
+        if (!enabled()) return write.call();
+        String rm = ShardDirectory.key(rmId);
+        String target = settledShard(rm);
+
+        Optional<ShardDirectory.Entry> existing = directory.entryOfUser(userId);
+        if (existing.isPresent()) {
+            String from = settledShard(existing.get().rmId());
+            if (!from.equals(target)) {
+                long id = existing.get().portfolioId();
+                rebalancer.movePortfolio(id, from, target, () -> directory.register(id, userId, rm));
+                evictPortfolio(id);
+            }
+        }
+
+        T result = ShardContext.on(target, write);
+        Long id = idOf.apply(result);
+        directory.register(id, userId, rm);
+        rmOfUser.remove(userId);
+        evictPortfolio(id);
+        return result;
+    }
+
+    // Bulk creates and updates: split by the settled shard of each item's RM, `call` once per shard.
+    // `call` answers null per item that was written and an error message otherwise; items whose RM
+    // is still moving after moveWait fail with that message instead of holding up the rest.
+    public <I, E extends Exception> List<String> placeAll(List<I> items, Function<I, String> userIdOf,
+                                                          Function<I, String> rmIdOf,
+                                                          BatchCall<I, String, E> call) throws E {
+        if (!enabled()) return call.call(items);
+
+        List<String> results = new ArrayList<>(Collections.nCopies(items.size(), null));
+        Map<String, String> target = new HashMap<>();
+        Map<String, String> refused = new HashMap<>();
+        Map<String, List<Integer>> byShard = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            String rm = ShardDirectory.key(rmIdOf.apply(items.get(i)));
+            if (!target.containsKey(rm) && !refused.containsKey(rm)) {
+                try {
+                    target.put(rm, settledShard(rm));
+                } catch (IllegalStateException e) {
+                    refused.put(rm, e.getMessage());
+                }
+            }
+            if (refused.containsKey(rm)) {
+                results.set(i, refused.get(rm));
+            } else {
+                byShard.computeIfAbsent(target.get(rm), s -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // portfolios handed to an RM on another shard follow it there before the write
+        Map<String, Integer> indexOfUser = new HashMap<>();
+        byShard.values().forEach(idx -> idx.forEach(i -> indexOfUser.put(userIdOf.apply(items.get(i)), i)));
+        Set<Integer> blocked = new HashSet<>();
+        for (ShardDirectory.Entry e : directory.entriesOfUsers(indexOfUser.keySet())) {
+            int i = indexOfUser.get(e.userId());
+            String rm = ShardDirectory.key(rmIdOf.apply(items.get(i)));
+            try {
+                String from = settledShard(e.rmId());
+                if (from.equals(target.get(rm))) continue;
+                rebalancer.movePortfolio(e.portfolioId(), from, target.get(rm), () -> directory.register(e.portfolioId(), e.userId(), rm));
+                evictPortfolio(e.portfolioId());
+            } catch (IllegalStateException ex) {
+                results.set(i, ex.getMessage());
+                blocked.add(i);
+            }
+        }
+
+        for (var group : byShard.entrySet()) {
+            List<Integer> idx = group.getValue().stream().filter(i -> !blocked.contains(i)).toList();
+            if (idx.isEmpty()) continue;
+            List<String> out = ShardContext.on(group.getKey(), () -> call.call(idx.stream().map(items::get).toList()));
+            List<String> written = new ArrayList<>();
+            for (int k = 0; k < idx.size(); k++) {
+                results.set(idx.get(k), out.get(k));
+                if (out.get(k) == null) written.add(userIdOf.apply(items.get(idx.get(k))));
+            }
+            if (written.isEmpty()) continue;
+            List<ShardDirectory.Entry> entries = rebalancer.entriesOn(group.getKey(), written);
+            directory.registerAll(entries);
+            entries.forEach(e -> {
+                rmOfUser.remove(e.userId());
+                evictPortfolio(e.portfolioId());
+            });
+        }
+        return results;
+    }
+
+    // Splits a batch by the shard of each item's portfolio, runs `call` once per shard and puts the
+    // results back in request order. Items with no portfolio id go home for validation; items whose
+    // portfolio is unknown get `unknown`. Failed items whose portfolio moved meanwhile run again there.
+    public <I, R, E extends Exception> List<R> splitByPortfolio(List<I> items, Function<I, Long> portfolioIdOf,
+                                                               Function<I, R> unknown, Predicate<R> failed,
+                                                               BatchCall<I, R, E> call) throws E {
+        if (!enabled()) return call.call(items);
+
+        List<R> results = new ArrayList<>(Collections.nCopies(items.size(), null));
+        Map<String, List<Integer>> byShard = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            I item = items.get(i);
+            Long id = item == null ? null : portfolioIdOf.apply(item);
+            String shard = id == null ? shards.homeName() : shardOfPortfolio(id);
+            if (shard == null) {
+                results.set(i, unknown.apply(item));
+            } else {
+                byShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(i);
+            }
+        }
+
+        Map<String, List<Integer>> moved = new LinkedHashMap<>();
+        for (var group : byShard.entrySet()) {
+            List<Integer> idx = group.getValue();
+            List<R> out = ShardContext.on(group.getKey(), () -> call.call(idx.stream().map(items::get).toList()));
+            for (int k = 0; k < idx.size(); k++) {
+                int i = idx.get(k);
+                results.set(i, out.get(k));
+                Long id = items.get(i) == null ? null : portfolioIdOf.apply(items.get(i));
+                if (id == null || !failed.test(out.get(k))) continue;
+                evictPortfolio(id);
+                String now = directory.portfolio(id).map(this::remember).map(Placement::shard).orElse(null);
+                if (now != null && !now.equals(group.getKey())) {
+                    moved.computeIfAbsent(now, s -> new ArrayList<>()).add(i);
+                }
+            }
+        }
+        for (var group : moved.entrySet()) {
+            List<Integer> idx = group.getValue();
+            List<R> out = ShardContext.on(group.getKey(), () -> call.call(idx.stream().map(items::get).toList()));
+            for (int k = 0; k < idx.size(); k++) results.set(idx.get(k), out.get(k));
+        }
+        return results;
+    }
+
+    // Work over a set of portfolios that can be done shard by shard and concatenated: `call` gets each
+    // shard's share of `portfolioIds`. Ids the directory does not know are left out, as a lookup by
+    // id would leave them out.
+    public <T, E extends Exception> List<T> onPortfolios(List<Long> portfolioIds, BatchCall<Long, T, E> call) throws E {
+        if (!enabled()) return call.call(portfolioIds);
+        Map<String, List<Long>> byShard = new LinkedHashMap<>();
+        for (Long id : portfolioIds) {
+            String shard = id == null ? null : shardOfPortfolio(id);
+            if (shard != null) byShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(id);
+        }
+        List<T> out = new ArrayList<>();
+        for (var group : byShard.entrySet()) {
+            out.addAll(ShardContext.on(group.getKey(), () -> call.call(group.getValue())));
+        }
+        return out;
+    }
+
+    // Fleet-wide work: once per shard, home first. With sharding off, once.
+    public <T, E extends Exception> List<T> onEachShard(Call<T, E> call) throws E {
+        if (!enabled()) return Collections.singletonList(call.call());
+        List<T> out = new ArrayList<>();
+        for (String shard : shardNames()) {
+            out.add(ShardContext.on(shard, call));
+        }
+        return out;
+    }
+
+    public List<String> shardNames() {
+        if (!enabled()) return List.of();
+        List<String> names = new ArrayList<>(shards.names());
+        names.remove(shards.homeName());
+        names.add(0, shards.homeName());
+        return names;
+    }
+
+    // null when the portfolio is not in the directory
+    public String shardOfPortfolio(Long portfolioId) {
+        String rm = cached(rmOfPortfolio, portfolioId,
+                () -> directory.portfolio(portfolioId).map(this::remember).map(Placement::rmId).orElse(null));
+        return rm == null ? null : cached(shardOfRm, rm, () -> rmShard(rm));
+    }
+
+    private <T, E extends Exception> T withRetry(String shard, Supplier<String> fresh, Call<T, E> call) throws E {
+        try {
+            return ShardContext.on(shard, call);
+        } catch (RuntimeException e) {
+            String now = fresh.get();
+            if (now == null || now.equals(shard)) throw e;
+            log.debug("Shard moved from {} to {} under a call, retrying there", shard, now);
+            return ShardContext.on(now, call);
+        }
+    }
+
+    // An RM never seen before reads from its ring shard; only a write pins it
+    private String rmShard(String rm) {
+        return directory.rm(rm).map(Placement::shard).orElseGet(() -> ring.shardFor(rm));
+    }
+
+    private String settledShard(String rm) {
+        long deadline = System.currentTimeMillis() + moveWaitMillis;
+        while (true) {
+            Optional<Placement> p = directory.rm(rm);
+            if (p.isEmpty()) return directory.place(rm, ring.shardFor(rm));
+            if (p.get().movingTo() == null) {
+                shardOfRm.remove(rm);
+                return p.get().shard();
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Book of rmId=" + rm + " is moving to shard " + p.get().movingTo() + "; retry shortly");
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a shard move", e);
+            }
+        }
+    }
+
+    private Placement remember(Placement p) {
+        put(shardOfRm, p.rmId(), p.shard());
+        return p;
+    }
+
+    private void evictPortfolio(Long portfolioId) {
+        Cached c = rmOfPortfolio.remove(portfolioId);
+        if (c != null && c.value() != null) shardOfRm.remove(c.value());
+    }
+
+    private <K> String cached(Map<K, Cached> cache, K key, Supplier<String> load) {
+        Cached c = cache.get(key);
+        if (c != null && c.expiresAt() - System.nanoTime() > 0) return c.value();
+        String value = load.get();
+        if (value != null) put(cache, key, value);
+        return value;
+    }
+
+    private <K> void put(Map<K, Cached> cache, K key, String value) {
+        // crude bound; a full clear only costs one directory read per hot key
+        if (cache.size() >= cacheSize) cache.clear();
+        cache.put(key, new Cached(value, System.nanoTime() + ttlNanos));
+    }
+}
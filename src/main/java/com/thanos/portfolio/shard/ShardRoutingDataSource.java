@@ -0,0 +1,22 @@
+package com.thanos.portfolio.shard;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.util.HashMap;
+
+// Connections go to the shard in ShardContext, or home when none is set. An unknown shard name fails
+// instead of quietly falling back to home.
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    public ShardRoutingDataSource(ShardSet shards) {
+        setTargetDataSources(new HashMap<>(shards.dataSources()));
+        setDefaultTargetDataSource(shards.home());
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+}
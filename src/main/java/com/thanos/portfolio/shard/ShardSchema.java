@@ -0,0 +1,117 @@
+package com.thanos.portfolio.shard;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+// Hibernate only runs ddl-auto against the connection it boots with, i.e. home. This replays the
+// same mapping (captured through an Integrator) on every other shard, then makes ids unique across
+// shards: each identity column counts up in steps of idStride from the shard's slot, so a row keeps
+// its id when the rebalancer moves it (which then moves the target's counter past it). The id setup
+// runs once per shard, when it first sees the column still stepping by 1; turn sharding on while no
+// other node is writing.
+@Slf4j
+public class ShardSchema implements HibernatePropertiesCustomizer, Integrator, SmartInitializingSingleton {
+
+    private final ShardSet shards;
+    private final boolean updateSchema;
+
+    private volatile Metadata metadata;
+
+    public ShardSchema(ShardSet shards, boolean updateSchema) {
+        this.shards = shards;
+        this.updateSchema = updateSchema;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put("hibernate.integrator_provider", (IntegratorProvider) () -> List.of(this));
+    }
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+        this.metadata = metadata;
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (updateSchema && metadata != null) {
+            for (String shard : shards.names()) {
+                if (!shard.equals(shards.homeName())) updateSchema(shard);
+            }
+        }
+        alignIds();
+    }
+
+    private void updateSchema(String shard) {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.JAKARTA_NON_JTA_DATASOURCE, shards.get(shard))
+                .build();
+        try {
+            SchemaManagementToolCoordinator.process(metadata, registry,
+                    Map.of(AvailableSettings.HBM2DDL_AUTO, "update"), action -> {});
+            log.info("Schema updated on shard {}", shard);
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    private void alignIds() {
+        int stride = shards.idStride();
+        List<String> tables = new JdbcTemplate(shards.home()).queryForList(
+                "select table_name from information_schema.columns " +
+                "where table_schema = current_schema() and column_name = 'id' and is_identity = 'YES' order by table_name",
+                String.class);
+
+        for (String table : tables) {
+            long globalMax = 0;
+            for (String shard : shards.names()) {
+                Long max = new JdbcTemplate(shards.get(shard)).queryForObject(
+                        "select coalesce(max(id), 0) from " + table, Long.class);
+                globalMax = Math.max(globalMax, max == null ? 0 : max);
+            }
+            for (String shard : shards.names()) {
+                alignIds(shard, table, globalMax, stride);
+            }
+        }
+    }
+
+    private void alignIds(String shard, String table, long globalMax, int stride) {
+        JdbcTemplate jdbc = new JdbcTemplate(shards.get(shard));
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(shards.get(shard)));
+        tx.executeWithoutResult(status -> {
+            // two nodes starting together must not both restart the sequence
+            jdbc.queryForList("select pg_advisory_xact_lock(hashtext(?))", "shard-ids:" + table);
+            Long step = jdbc.queryForObject("select seqincrement from pg_sequence " +
+                    "where seqrelid = pg_get_serial_sequence(?, 'id')::regclass", Long.class, table);
+            if (step != null && step == stride) return;
+
+            Long localMax = jdbc.queryForObject("select coalesce(max(id), 0) from " + table, Long.class);
+            long above = Math.max(globalMax, localMax == null ? 0 : localMax) + 1;
+            int slot = shards.slot(shard);
+            long next = above + Math.floorMod(slot - above, stride);
+            jdbc.execute("alter table " + table + " alter column id set increment by " + stride + " restart with " + next);
+            log.info("Ids of {} on shard {} now step by {} from {}", table, shard, stride, next);
+        });
+    }
+}
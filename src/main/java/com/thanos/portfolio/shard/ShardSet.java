@@ -0,0 +1,75 @@
+package com.thanos.portfolio.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.util.*;
+
+// One pool per shard. Home holds the directory and everything that is not per portfolio
+// (apply jobs, price snapshots, cache invalidation traffic).
+public final class ShardSet implements AutoCloseable {
+
+    private final String home;
+    private final Map<String, DataSource> dataSources;
+    private final Map<String, Integer> slots;
+    private final int idStride;
+
+    ShardSet(String home, Map<String, DataSource> dataSources, Map<String, Integer> slots, int idStride) {
+        if (!dataSources.containsKey(home)) {
+            throw new IllegalArgumentException("Home shard " + home + " is not among the configured shards");
+        }
+        if (new HashSet<>(slots.values()).size() != slots.size()) {
+            throw new IllegalArgumentException("Shard slots must be unique: " + slots);
+        }
+        for (var e : slots.entrySet()) {
+            if (e.getValue() < 0 || e.getValue() >= idStride) {
+                throw new IllegalArgumentException("Slot of shard " + e.getKey() + " must be in [0, " + idStride + ")");
+            }
+        }
+        this.home = home;
+        this.dataSources = Collections.unmodifiableMap(new LinkedHashMap<>(dataSources));
+        this.slots = Map.copyOf(slots);
+        this.idStride = idStride;
+    }
+
+    public static ShardSet create(ShardingProperties props) {
+        Map<String, DataSource> pools = new LinkedHashMap<>();
+        Map<String, Integer> slots = new HashMap<>();
+        props.shards().forEach((name, s) -> {
+            HikariDataSource ds = new HikariDataSource();
+            ds.setPoolName("shard-" + name);
+            ds.setJdbcUrl(s.url());
+            ds.setUsername(s.username());
+            ds.setPassword(s.password());
+            ds.setMaximumPoolSize(s.maxPoolSize());
+            pools.put(name, ds);
+            slots.put(name, s.slot());
+        });
+        return new ShardSet(props.home(), pools, slots, props.idStride());
+    }
+
+    public String homeName() { return home; }
+
+    public DataSource home() { return dataSources.get(home); }
+
+    public Set<String> names() { return dataSources.keySet(); }
+
+    public Map<String, DataSource> dataSources() { return dataSources; }
+
+    public DataSource get(String shard) {
+        DataSource ds = dataSources.get(shard);
+        if (ds == null) throw new IllegalArgumentException("Unknown shard " + shard);
+        return ds;
+    }
+
+    public int slot(String shard) { return slots.get(shard); }
+
+    public int idStride() { return idStride; }
+
+    @Override
+    public void close() {
+        dataSources.values().forEach(ds -> {
+            if (ds instanceof HikariDataSource h) h.close();
+        });
+    }
+}
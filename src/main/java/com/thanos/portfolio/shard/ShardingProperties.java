@@ -0,0 +1,37 @@
+package com.thanos.portfolio.shard;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+// portfolio.sharding.*; a map of shards does not fit @Value, hence the one properties record
+@ConfigurationProperties("portfolio.sharding")
+public record ShardingProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("s0") String home,
+        Map<String, Shard> shards,
+        List<String> ring,
+        @DefaultValue("128") int virtualNodes,
+        @DefaultValue("64") int idStride,
+        @DefaultValue("10s") Duration moveWait,
+        @DefaultValue("2s") Duration directoryCacheTtl,
+        @DefaultValue("100000") int directoryCacheSize,
+        @DefaultValue("true") boolean directoryBackfillOnStartup) {
+
+    // slot: residue of every id this shard generates modulo idStride, unique per shard
+    public record Shard(String url, String username, String password, int slot,
+                        @DefaultValue("10") int maxPoolSize) {}
+
+    public Map<String, Shard> shards() {
+        return shards == null ? Map.of() : shards;
+    }
+
+    // Shards new RMs are placed on; all configured shards unless narrowed. A shard is added to
+    // `shards` first (reachable, schema created) and to `ring` once every node knows it.
+    public List<String> ring() {
+        return ring == null || ring.isEmpty() ? List.copyOf(shards().keySet()) : ring;
+    }
+}
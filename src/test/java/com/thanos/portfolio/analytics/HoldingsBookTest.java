@@ -0,0 +1,58 @@
+package com.thanos.portfolio.analytics;
+
+import com.thanos.portfolio.dto.HoldingAggregate;
+import com.thanos.portfolio.dto.TickerExposure;
+import com.thanos.portfolio.model.Category;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HoldingsBookTest {
+
+    private static PositionRow row(Category c, String ticker, long qty, String avg, String total) {
+        return new PositionRow(c, ticker, qty, new BigDecimal(avg), new BigDecimal(total));
+    }
+
+    @Test
+    void aggregatesAcrossPortfoliosAndFollowsUpdates() {
+        HoldingsBook book = new HoldingsBook();
+        HoldingsView.Loader loader = book.newLoader();
+        loader.add(1, "rm-a", List.of(
+                row(Category.LARGE_CAP, "spy", 10, "400", "4500.00"),
+                row(Category.BONDS, "AGG", 5, "100", "490.50")));
+        loader.add(2, "rm-b", List.of(row(Category.LARGE_CAP, "SPY", 2, "410.25", "900")));
+        loader.add(3, "rm-a", List.of());
+        loader.finish();
+
+        TickerExposure spy = book.exposure("Spy").orElseThrow();
+        assertEquals(2, spy.positions());
+        assertEquals(12, spy.quantity());
+        assertEquals(new BigDecimal("4820.5000"), spy.costBasis());
+        assertEquals(new BigDecimal("5400.0000"), spy.marketValue());
+        assertEquals(new BigDecimal("5400.0000"), spy.marketValueByCategory().get(Category.LARGE_CAP));
+
+        assertEquals(new BigDecimal("5890.5000"), book.aum(null).total());
+        assertEquals(new BigDecimal("4990.5000"), book.aum("rm-a").total());
+        assertEquals(new BigDecimal("490.5000"), book.aum("rm-a").byCategory().get(Category.BONDS));
+        assertEquals(0, book.aum("nobody").positions());
+
+        List<HoldingAggregate> top = book.topHoldings("rm-a", 1);
+        assertEquals(1, top.size());
+        assertEquals("SPY", top.get(0).ticker());
+
+        // portfolio 1 sells its SPY; the slot left behind is refilled by portfolio 2's
+        book.update(1, "rm-a", List.of(row(Category.BONDS, "AGG", 5, "100", "490.50")));
+        spy = book.exposure("SPY").orElseThrow();
+        assertEquals(1, spy.positions());
+        assertEquals(new BigDecimal("900.0000"), spy.marketValue());
+        assertEquals("AGG", book.topHoldings("rm-a", 5).get(0).ticker());
+
+        book.update(2, null, List.of());
+        assertTrue(book.exposure("SPY").isEmpty());
+        assertEquals(1, book.stats().portfolios());
+        assertEquals(1, book.stats().positions());
+    }
+}
@@ -0,0 +1,56 @@
+package com.thanos.portfolio.analytics;
+
+import com.thanos.portfolio.dto.HoldersPage;
+import com.thanos.portfolio.model.Category;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TickerIndexTest {
+
+    private static PositionRow row(Category c, String ticker) {
+        return new PositionRow(c, ticker, 1, BigDecimal.ONE, BigDecimal.ONE);
+    }
+
+    @Test
+    void unionAndIntersectionPageInIdOrder() {
+        TickerIndex index = new TickerIndex();
+        for (long id = 1; id <= 100; id++) {
+            List<PositionRow> rows = new ArrayList<>();
+            if (id % 2 == 0) rows.add(row(Category.LARGE_CAP, "SPY"));
+            if (id % 3 == 0) rows.add(row(Category.MID_CAP, "qqq"));
+            index.update(id, "rm", rows);
+        }
+
+        HoldersPage both = index.holders(List.of("SPY", "QQQ"), null, TickerIndex.Match.ALL, null, 5);
+        assertEquals(List.of(6L, 12L, 18L, 24L, 30L), both.portfolioIds());
+        assertEquals(30L, both.nextAfter());
+        both = index.holders(List.of("SPY", "QQQ"), null, TickerIndex.Match.ALL, 90L, 5);
+        assertEquals(List.of(96L), both.portfolioIds());
+        assertNull(both.nextAfter());
+
+        HoldersPage either = index.holders(List.of("spy", "QQQ"), null, TickerIndex.Match.ANY, 10L, 4);
+        assertEquals(List.of(12L, 14L, 15L, 16L), either.portfolioIds());
+
+        assertTrue(index.holders(List.of("QQQ"), Category.LARGE_CAP, TickerIndex.Match.ANY, null, 10).portfolioIds().isEmpty());
+        assertEquals(33, index.holders(List.of("QQQ"), Category.MID_CAP, TickerIndex.Match.ANY, null, 100).portfolioIds().size());
+    }
+
+    @Test
+    void updatesReplaceWhatAPortfolioHolds() {
+        TickerIndex index = new TickerIndex();
+        index.update(7, "rm", List.of(row(Category.LARGE_CAP, "SPY"), row(Category.MID_CAP, "SPY")));
+        index.update(7, "rm", List.of(row(Category.MID_CAP, "SPY")));
+
+        assertEquals(List.of(7L), index.holders(List.of("SPY"), null, TickerIndex.Match.ANY, null, 10).portfolioIds());
+        assertTrue(index.holders(List.of("SPY"), Category.LARGE_CAP, TickerIndex.Match.ANY, null, 10).portfolioIds().isEmpty());
+
+        index.update(7, null, List.of());
+        assertTrue(index.holders(List.of("SPY"), null, TickerIndex.Match.ANY, null, 10).portfolioIds().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.holders(List.of(), null, TickerIndex.Match.ANY, null, 10));
+    }
+}
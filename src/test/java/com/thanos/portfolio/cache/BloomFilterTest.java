@@ -0,0 +1,35 @@
+package com.thanos.portfolio.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void neverForgetsAKeyAndStaysNearItsFalsePositiveRate() {
+        BloomFilter filter = BloomFilter.create(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.put(i % 997, "rb-" + i);
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(filter.mightContain(i % 997, "rb-" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 100_000; i < 200_000; i++) {
+            if (filter.mightContain(i % 997, "rb-" + i)) falsePositives++;
+        }
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void samePortfolioDifferentRebalanceIsADifferentKey() {
+        BloomFilter filter = BloomFilter.create(1_000, 0.001);
+        filter.put(7L, "A");
+
+        assertTrue(filter.mightContain(7L, "A"));
+        assertTrue(!filter.mightContain(7L, "B") || !filter.mightContain(8L, "A"));
+    }
+}
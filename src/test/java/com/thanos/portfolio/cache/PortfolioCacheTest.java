@@ -0,0 +1,49 @@
+package com.thanos.portfolio.cache;
+
+import com.thanos.portfolio.dto.PortfolioResponse;
+import com.thanos.portfolio.event.PortfolioChangedEvent;
+import com.thanos.portfolio.model.UserDetails;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PortfolioCacheTest {
+
+    private final PortfolioCache cache = new PortfolioCache(true, 100, Duration.ofMinutes(1));
+
+    @Test
+    void servesByIdAndUserIdUntilInvalidated() {
+        PortfolioResponse r = response(7L, "U7");
+        cache.put(r, cache.beginLoad());
+
+        assertSame(r, cache.getById(7L));
+        assertSame(r, cache.getByUserId("U7"));
+
+        cache.invalidate(new PortfolioChangedEvent(7L, "U7", "RM1"));
+
+        assertNull(cache.getById(7L));
+        assertNull(cache.getByUserId("U7"));
+        assertEquals(2, cache.stats().hitCount());
+        assertEquals(2, cache.stats().missCount());
+    }
+
+    @Test
+    void loadThatRacedAnInvalidationIsNotCached() {
+        long generation = cache.beginLoad();
+        cache.invalidate(new PortfolioChangedEvent(7L, "U7", "RM1"));
+
+        cache.put(response(7L, "U7"), generation);
+
+        assertNull(cache.getById(7L));
+    }
+
+    private static PortfolioResponse response(Long id, String userId) {
+        return new PortfolioResponse(id, new UserDetails(userId, "A", "B", "a@b.c", "1"), null,
+                Map.of(), Map.of(), null, null, null, null, null, null, null);
+    }
+}
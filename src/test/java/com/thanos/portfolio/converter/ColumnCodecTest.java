@@ -0,0 +1,71 @@
+package com.thanos.portfolio.converter;
+
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.StockPosition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnCodecTest {
+
+    private final PortfolioDetailsConverter portfolioConverter = new PortfolioDetailsConverter();
+    private final TargetStateConverter targetConverter = new TargetStateConverter();
+
+    @AfterEach
+    void resetEncoding() {
+        ColumnCodec.setWriteEncoding(ColumnEncoding.JSON);
+    }
+
+    @Test
+    void everyEncodingRoundTripsHoldings() throws Exception {
+        Map<Category, List<StockPosition>> holdings = holdings();
+        for (ColumnEncoding encoding : ColumnEncoding.values()) {
+            String stored = ColumnCodec.encode(holdings, encoding);
+
+            assertEquals(encoding, ColumnCodec.encodingOf(stored));
+            assertEquals(holdings, portfolioConverter.convertToEntityAttribute(stored));
+        }
+    }
+
+    @Test
+    void legacyHoldingsColumnIsAlwaysWrittenAsJson() {
+        ColumnCodec.setWriteEncoding(ColumnEncoding.SMILE_DEFLATE);
+
+        String stored = portfolioConverter.convertToDatabaseColumn(holdings());
+
+        assertEquals(ColumnEncoding.JSON, ColumnCodec.encodingOf(stored));
+        assertEquals(holdings(), portfolioConverter.convertToEntityAttribute(stored));
+    }
+
+    @Test
+    void textRowsStayReadableAfterSwitchingToBinary() {
+        String legacyTarget = "{\"LargeCap\":45,\"Bonds\":25.50,\"Gold\":5}";
+        ColumnCodec.setWriteEncoding(ColumnEncoding.SMILE_DEFLATE);
+
+        Map<Category, BigDecimal> target = targetConverter.convertToEntityAttribute(legacyTarget);
+
+        assertEquals(new BigDecimal("25.50"), target.get(Category.BONDS));
+        assertTrue(targetConverter.convertToDatabaseColumn(target).startsWith("~z1:"));
+    }
+
+    private static Map<Category, List<StockPosition>> holdings() {
+        Map<Category, List<StockPosition>> out = new LinkedHashMap<>();
+        out.put(Category.LARGE_CAP, List.of(
+                new StockPosition("SPY", "SPDR S&P 500 ETF TRUST", 2, new BigDecimal("681.75"),
+                        new BigDecimal("36.1596"), new BigDecimal("1372.58"), null),
+                new StockPosition("QQQ", "INVESCO QQQ TRUST SERIES 1", 1, new BigDecimal("601.92000000"),
+                        new BigDecimal("15.9591"), new BigDecimal("605.79"), null)));
+        out.put(Category.MID_CAP, List.of());
+        out.put(Category.BONDS, List.of(
+                new StockPosition("AGG", "ISHARES CORE US AGGREGATE BOND ETF", 4, new BigDecimal("100.99"),
+                        new BigDecimal("10.6283"), new BigDecimal("403.44"), null)));
+        return out;
+    }
+}
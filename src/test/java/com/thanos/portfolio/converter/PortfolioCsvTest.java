@@ -0,0 +1,67 @@
+package com.thanos.portfolio.converter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thanos.portfolio.dto.PortfolioCreateRequest;
+import com.thanos.portfolio.model.Category;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortfolioCsvTest {
+
+    @Test
+    void readsTheShippedDumpIntoCreateRequests() throws Exception {
+        var in = getClass().getResourceAsStream("/static/portfolios.csv");
+        assertNotNull(in);
+        CsvReader reader = new CsvReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        PortfolioCsv csv = new PortfolioCsv(new ObjectMapper(), reader.next());
+
+        List<PortfolioCreateRequest> requests = new ArrayList<>();
+        for (List<String> row; (row = reader.next()) != null; ) {
+            if (row.size() == 1 && row.get(0).isBlank()) continue;
+            requests.add(csv.toRequest(row));
+        }
+
+        assertFalse(requests.isEmpty());
+        PortfolioCreateRequest first = requests.get(0);
+        assertEquals("U1001", first.userDetails().userId());
+        assertEquals("RM2001", first.rmDetails().rmId());
+        assertEquals("SPY", first.portfolio().get(Category.LARGE_CAP).get(0).ticker());
+        assertEquals(2, first.portfolio().get(Category.LARGE_CAP).get(0).quantity());
+        assertEquals(new BigDecimal("148.42"), first.freeCash());
+        assertEquals("MANUAL", first.triggerMode());
+    }
+
+    @Test
+    void handlesQuotesCommasAndLineBreaksInsideFields() throws Exception {
+        CsvReader reader = new CsvReader(new StringReader("a,\"b,\"\"c\"\"\",\"x\r\ny\"\r\n,last\n"));
+        assertEquals(List.of("a", "b,\"c\"", "x\r\ny"), reader.next());
+        assertEquals(3, reader.line());
+        assertEquals(List.of("", "last"), reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void writerOutputReadsBackUnchanged() throws Exception {
+        List<List<String>> rows = List.of(
+                List.of("1", "{\"LARGE_CAP\":[{\"ticker\":\"SPY\"}]}", "plain"),
+                List.of("", "line\nbreak", "quote \" and, comma"));
+        StringWriter out = new StringWriter();
+        CsvWriter writer = new CsvWriter(out);
+        for (List<String> row : rows) writer.writeRow(row);
+        writer.flush();
+
+        CsvReader reader = new CsvReader(new StringReader(out.toString()));
+        assertEquals(rows.get(0), reader.next());
+        assertEquals(rows.get(1), reader.next());
+        assertNull(reader.next());
+    }
+}
@@ -0,0 +1,58 @@
+package com.thanos.portfolio.converter;
+
+import com.thanos.portfolio.converter.ValuationChunkCodec.Point;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValuationChunkCodecTest {
+
+    @Test
+    void roundTripsAFullChunkCompactly() {
+        Random rnd = new Random(7);
+        int chunkNo = ValuationChunkCodec.chunkOf(19_900);
+        int firstDay = chunkNo * ValuationChunkCodec.CHUNK_DAYS;
+
+        List<Point> points = new ArrayList<>();
+        long[] fields = {50_000_0000L, 1_200_000_0000L, 300_000_0000L, 0, 250_000_0000L, 10_000_0000L, 0, 0};
+        for (int d = 0; d < ValuationChunkCodec.CHUNK_DAYS; d++) {
+            long[] next = fields.clone();
+            for (int f = 0; f < next.length; f++) {
+                if (next[f] != 0) next[f] += rnd.nextInt(2_000_0000) - 1_000_0000;
+            }
+            points.add(new Point(firstDay + d, next));
+            fields = next;
+        }
+
+        byte[] data = ValuationChunkCodec.encode(chunkNo, 8, points);
+        List<Point> back = ValuationChunkCodec.decode(chunkNo, data);
+
+        assertEquals(points.size(), back.size());
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(points.get(i).epochDay(), back.get(i).epochDay());
+            assertArrayEquals(points.get(i).fields(), back.get(i).fields());
+        }
+        assertTrue(data.length < 64 * 8 * 5, "chunk size: " + data.length);
+    }
+
+    @Test
+    void upsertKeepsDayOrderAndReplacesTheSameDay() {
+        int chunkNo = 300;
+        int day = chunkNo * ValuationChunkCodec.CHUNK_DAYS;
+        List<Point> points = List.of(new Point(day + 1, new long[]{1}), new Point(day + 5, new long[]{5}));
+
+        points = ValuationChunkCodec.upsert(points, new Point(day + 3, new long[]{3}));
+        points = ValuationChunkCodec.upsert(points, new Point(day + 5, new long[]{-5}));
+        points = ValuationChunkCodec.upsert(points, new Point(day, new long[]{0}));
+
+        List<Point> back = ValuationChunkCodec.decode(chunkNo, ValuationChunkCodec.encode(chunkNo, 1, points));
+        assertEquals(List.of(day, day + 1, day + 3, day + 5), back.stream().map(Point::epochDay).toList());
+        assertEquals(-5, back.get(3).fields()[0]);
+
+        assertThrows(IllegalArgumentException.class, () -> ValuationChunkCodec.encode(chunkNo + 1, 1, List.of(new Point(day, new long[]{0}))));
+    }
+}
@@ -0,0 +1,129 @@
+package com.thanos.portfolio.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Randomised comparison against the BigDecimal chains PortfolioService used before PortfolioMath.
+// assertEquals on BigDecimal checks scale as well as value, which is what the JSON and columns see.
+class PortfolioMathTest {
+
+    private static final int RUNS = 200_000;
+    private final Random random = new Random(20240611L);
+
+    @Test
+    void multiplyMatchesBigDecimal() {
+        for (int i = 0; i < RUNS; i++) {
+            BigDecimal price = amount();
+            int qty = quantity();
+
+            assertEquals(price.multiply(BigDecimal.valueOf(qty)), PortfolioMath.multiply(price, qty),
+                    () -> price + " x " + qty);
+            assertEquals(price.multiply(BigDecimal.valueOf(qty)).setScale(2, RoundingMode.HALF_UP),
+                    PortfolioMath.multiply(price, qty, 2), () -> price + " x " + qty + " @2");
+        }
+    }
+
+    @Test
+    void sumMatchesBigDecimal() {
+        for (int i = 0; i < RUNS / 10; i++) {
+            List<BigDecimal> amounts = new ArrayList<>();
+            int n = random.nextInt(40);
+            for (int j = 0; j < n; j++) amounts.add(amount());
+
+            BigDecimal legacy = amounts.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+            assertEquals(legacy, PortfolioMath.sum(amounts), amounts::toString);
+        }
+    }
+
+    @Test
+    void percentOfMatchesBigDecimal() {
+        for (int i = 0; i < RUNS; i++) {
+            BigDecimal part = amount();
+            BigDecimal whole = amount();
+            if (whole.signum() == 0) continue;
+
+            BigDecimal legacy = part.divide(whole, 8, RoundingMode.HALF_UP)
+                    .multiply(BigDecimal.valueOf(100))
+                    .setScale(4, RoundingMode.HALF_UP);
+            assertEquals(legacy, PortfolioMath.percentOf(part, whole), () -> part + " / " + whole);
+        }
+    }
+
+    // A whole book through ScaledAmounts against the same book through the BigDecimal chains
+    @Test
+    void scaledAmountsMatchBigDecimal() {
+        for (int i = 0; i < RUNS / 10; i++) {
+            int n = random.nextInt(40);
+            ScaledAmounts amounts = new ScaledAmounts(random.nextInt(8));
+            List<BigDecimal> legacy = new ArrayList<>();
+            for (int j = 0; j < n; j++) {
+                BigDecimal a = amount();
+                int qty = quantity();
+                switch (random.nextInt(4)) {
+                    case 0 -> { amounts.add(a); legacy.add(a); }
+                    case 1 -> { amounts.addProduct(a, qty); legacy.add(a.multiply(BigDecimal.valueOf(qty))); }
+                    case 2 -> { amounts.add(null); legacy.add(null); }
+                    default -> {
+                        amounts.addProduct(a, qty, 2);
+                        legacy.add(a.multiply(BigDecimal.valueOf(qty)).setScale(2, RoundingMode.HALF_UP));
+                    }
+                }
+            }
+
+            BigDecimal total = legacy.stream().filter(a -> a != null).reduce(BigDecimal.ZERO, BigDecimal::add);
+            assertEquals(total, amounts.total(), legacy::toString);
+            assertEquals(total.signum(), amounts.signum());
+            for (int j = 0; j < n; j++) {
+                BigDecimal part = legacy.get(j);
+                assertEquals(part, amounts.amount(j), legacy::toString);
+                if (total.signum() == 0) continue;
+                BigDecimal pct = part == null ? BigDecimal.ZERO : part.divide(total, 8, RoundingMode.HALF_UP)
+                        .multiply(BigDecimal.valueOf(100))
+                        .setScale(4, RoundingMode.HALF_UP);
+                assertEquals(pct, amounts.percentOf(j), () -> part + " / " + total);
+            }
+        }
+    }
+
+    @Test
+    void roundingTiesGoAwayFromZero() {
+        assertEquals(new BigDecimal("0.13"), PortfolioMath.multiply(new BigDecimal("0.125"), 1, 2));
+        assertEquals(new BigDecimal("-0.13"), PortfolioMath.multiply(new BigDecimal("0.125"), -1, 2));
+        assertEquals(new BigDecimal("33.3333"), PortfolioMath.percentOf(BigDecimal.ONE, new BigDecimal("3")));
+        assertEquals(new BigDecimal("66.6667"), PortfolioMath.percentOf(new BigDecimal("2.00"), new BigDecimal("3")));
+    }
+
+    // Mostly money-shaped values, with enough scale > 8, negative scale and 19+ digit values to
+    // exercise every fallback
+    private BigDecimal amount() {
+        int kind = random.nextInt(20);
+        if (kind == 0) {
+            return new BigDecimal(new BigInteger(80, random), random.nextInt(12));
+        }
+        if (kind == 1) {
+            return BigDecimal.valueOf(random.nextLong(), random.nextInt(10));
+        }
+        if (kind == 2) {
+            return BigDecimal.valueOf(random.nextInt(1000), -random.nextInt(3));
+        }
+        long unscaled = (long) (random.nextDouble() * Math.pow(10, random.nextInt(13)));
+        if (random.nextInt(10) == 0) unscaled = -unscaled;
+        return BigDecimal.valueOf(unscaled, random.nextInt(9));
+    }
+
+    private int quantity() {
+        return switch (random.nextInt(10)) {
+            case 0 -> random.nextInt();
+            case 1 -> -random.nextInt(1000);
+            default -> random.nextInt(100_000);
+        };
+    }
+}
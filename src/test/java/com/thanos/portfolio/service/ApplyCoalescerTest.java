@@ -0,0 +1,90 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.dto.ApplyRebalanceBatchRequest;
+import com.thanos.portfolio.dto.ApplyRebalanceRequest;
+import com.thanos.portfolio.dto.ApplyRebalanceResult;
+import com.thanos.portfolio.dto.ApplyStatus;
+import com.thanos.portfolio.shard.ShardRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ApplyCoalescerTest {
+
+    private final PortfolioService service = mock(PortfolioService.class);
+    private final ApplyCoalescer coalescer = new ApplyCoalescer(service, mock(PriceSnapshotStore.class), ShardRouter.unsharded(), new SimpleMeterRegistry(), true, 4, 200);
+
+    @AfterEach
+    void stop() {
+        coalescer.stop();
+    }
+
+    @Test
+    void requestsQueuedBehindARunningWriteCommitTogether() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+        when(service.applyRebalanceBatch(any())).thenAnswer(inv -> {
+            ApplyRebalanceBatchRequest batch = inv.getArgument(0);
+            batchSizes.add(batch.requests().size());
+            firstStarted.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return batch.requests().stream().map(r -> ApplyRebalanceResult.of(r, ApplyStatus.APPLIED)).toList();
+        });
+        coalescer.start();
+
+        CompletableFuture<ApplyRebalanceResult> first = coalescer.submit(request("R0"));
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<ApplyRebalanceResult>> queued = List.of(
+                coalescer.submit(request("R1")), coalescer.submit(request("R2")), coalescer.submit(request("R3")));
+        release.countDown();
+
+        assertEquals("R0", first.get(5, TimeUnit.SECONDS).rebalanceId());
+        for (int i = 0; i < queued.size(); i++) {
+            assertEquals("R" + (i + 1), queued.get(i).get(5, TimeUnit.SECONDS).rebalanceId());
+        }
+        assertEquals(List.of(1, 3), batchSizes);
+    }
+
+    @Test
+    void aFailingBatchIsRetriedItemByItem() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(service.applyRebalanceBatch(any())).thenAnswer(inv -> {
+            ApplyRebalanceBatchRequest batch = inv.getArgument(0);
+            firstStarted.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            if (batch.requests().stream().anyMatch(r -> r.rebalanceId().equals("BAD"))) {
+                throw new IllegalStateException("boom");
+            }
+            return batch.requests().stream().map(r -> ApplyRebalanceResult.of(r, ApplyStatus.APPLIED)).toList();
+        });
+        coalescer.start();
+
+        CompletableFuture<ApplyRebalanceResult> blocker = coalescer.submit(request("R0"));
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<ApplyRebalanceResult> bad = coalescer.submit(request("BAD"));
+        CompletableFuture<ApplyRebalanceResult> good = coalescer.submit(request("GOOD"));
+        release.countDown();
+
+        assertEquals(ApplyStatus.APPLIED, blocker.get(5, TimeUnit.SECONDS).status());
+        assertEquals(ApplyStatus.APPLIED, good.get(5, TimeUnit.SECONDS).status());
+        assertThrows(Exception.class, () -> bad.get(5, TimeUnit.SECONDS));
+    }
+
+    private static ApplyRebalanceRequest request(String rebalanceId) {
+        return new ApplyRebalanceRequest(rebalanceId, 42L, List.of(), null, null);
+    }
+}
@@ -0,0 +1,136 @@
+package com.thanos.portfolio.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thanos.portfolio.dto.ApplyJobStatus;
+import com.thanos.portfolio.dto.ApplyRebalanceBatchRequest;
+import com.thanos.portfolio.dto.ApplyRebalanceRequest;
+import com.thanos.portfolio.dto.ApplyRebalanceResult;
+import com.thanos.portfolio.dto.ApplyStatus;
+import com.thanos.portfolio.model.PriceRow;
+import com.thanos.portfolio.repository.ApplyJobBatchRepo;
+import com.thanos.portfolio.repository.ApplyJobRepo;
+import com.thanos.portfolio.shard.ShardRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ApplyJobQueueTest {
+
+    private final ApplyJobRepo jobs = mock(ApplyJobRepo.class);
+    private final PortfolioService service = mock(PortfolioService.class);
+    private final PriceSnapshotStore snapshots = new PriceSnapshotStore(null, 4, false);
+    private final AtomicLong ids = new AtomicLong();
+    private final ApplyJobQueue queue = new ApplyJobQueue(jobs, service, snapshots, ShardRouter.unsharded(),
+            new ObjectMapper(), mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), true, 2, 1,
+            Duration.ofDays(7));
+
+    @AfterEach
+    void stop() {
+        queue.stop();
+    }
+
+    @Test
+    void fullQueueRejectsUntilAJobFinishes() throws Exception {
+        when(jobs.submit(anyLong(), anyString(), anyString()))
+                .thenAnswer(inv -> new ApplyJobBatchRepo.Submitted(pending(ids.incrementAndGet(), inv.getArgument(1)), true));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        when(service.applyRebalanceBatch(any())).thenAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            ApplyRebalanceBatchRequest batch = inv.getArgument(0);
+            return List.of(ApplyRebalanceResult.of(batch.requests().get(0), ApplyStatus.APPLIED));
+        });
+        when(jobs.complete(anyLong(), any(), any())).thenAnswer(inv -> {
+            done.countDown();
+            return true;
+        });
+        queue.start();
+
+        queue.submit(request("R1"));
+        queue.submit(request("R2"));
+        assertThrows(RejectedExecutionException.class, () -> queue.submit(request("R3")));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        verify(jobs).complete(1L, ApplyStatus.APPLIED, null);
+        verify(jobs).complete(2L, ApplyStatus.APPLIED, null);
+        // permits come back just after the status is written
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            try {
+                assertEquals(3L, queue.submit(request("R3")).jobId());
+                break;
+            } catch (RejectedExecutionException e) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test
+    void resubmittingAnExistingJobDoesNotRunItAgain() {
+        when(jobs.submit(anyLong(), anyString(), anyString()))
+                .thenReturn(new ApplyJobBatchRepo.Submitted(pending(7, "R1"), false));
+        queue.start();
+
+        assertEquals(7L, queue.submit(request("R1")).jobId());
+        assertEquals(7L, queue.submit(request("R1")).jobId());
+        assertEquals(7L, queue.submit(request("R1")).jobId());   // would be rejected if permits leaked
+        verifyNoInteractions(service);
+    }
+
+    @Test
+    void requestsWithoutKeysAreRefusedBeforeStoring() {
+        queue.start();
+        assertThrows(IllegalArgumentException.class,
+                () -> queue.submit(new ApplyRebalanceRequest(null, 42L, List.of(), null, null)));
+        verify(jobs, never()).submit(any(), any(), any());
+    }
+
+    @Test
+    void snapshotIdsAreStoredAsTheFrameTheyPointTo() throws Exception {
+        long snapshotId = snapshots.publish(List.of(new PriceRow("Gold", "GLD", "Gold", BigDecimal.TEN)), "push").id();
+        when(jobs.submit(anyLong(), anyString(), anyString()))
+                .thenReturn(new ApplyJobBatchRepo.Submitted(pending(1, "R1"), false));
+        queue.start();
+
+        queue.submit(new ApplyRebalanceRequest("R1", 42L, List.of(), null, snapshotId));
+
+        // a restart or another node's recovery can run the stored job without this node's snapshots
+        ArgumentCaptor<String> json = ArgumentCaptor.forClass(String.class);
+        verify(jobs).submit(eq(42L), eq("R1"), json.capture());
+        ApplyRebalanceRequest stored = new ObjectMapper().readValue(json.getValue(), ApplyRebalanceRequest.class);
+        assertEquals("GLD", stored.priceFrame().get(0).symbol());
+    }
+
+    @Test
+    void unknownSnapshotIdsAreRefusedBeforeStoring() {
+        queue.start();
+        assertThrows(UnknownPriceSnapshotException.class,
+                () -> queue.submit(new ApplyRebalanceRequest("R1", 42L, List.of(), null, 12345L)));
+        verify(jobs, never()).submit(any(), any(), any());
+    }
+
+    private static ApplyJobStatus pending(long id, String rebalanceId) {
+        return new ApplyJobStatus(id, rebalanceId, 42L, ApplyStatus.PENDING, null, Instant.now(), null);
+    }
+
+    private static ApplyRebalanceRequest request(String rebalanceId) {
+        return new ApplyRebalanceRequest(rebalanceId, 42L, List.of(), null, null);
+    }
+}
@@ -0,0 +1,113 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.dto.DriftBreach;
+import com.thanos.portfolio.dto.DriftCandidate;
+import com.thanos.portfolio.dto.DriftScanRequest;
+import com.thanos.portfolio.dto.DriftScanResult;
+import com.thanos.portfolio.entities.CategoryWeights;
+import com.thanos.portfolio.entities.TriggerMode;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.StockPosition;
+import com.thanos.portfolio.repository.PortfolioPositionRepo;
+import com.thanos.portfolio.repository.PortfolioPositionRepo.PositionValue;
+import com.thanos.portfolio.repository.PortfolioRebalanceAppliedRepo;
+import com.thanos.portfolio.repository.PortfolioRepo;
+import com.thanos.portfolio.shard.ShardRouter;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DriftScannerTest {
+
+    private final DriftCandidate candidate = new DriftCandidate(1L, "U1", "RM1", TriggerMode.AUTO,
+            new BigDecimal("0.05"), 3,
+            Map.of(Category.LARGE_CAP, new BigDecimal("60"), Category.BONDS, new BigDecimal("40")));
+
+    @Test
+    void withinThresholdIsNotABreach() {
+        List<PositionValue> positions = List.of(
+                position(Category.LARGE_CAP, "AAA", 10, "620.00"),
+                position(Category.BONDS, "BBB", 10, "380.00"));
+
+        assertNull(DriftScanner.evaluate(candidate, positions, Map.of()));
+    }
+
+    @Test
+    void priceFrameRevaluesBeforeComparing() {
+        List<PositionValue> positions = List.of(
+                position(Category.LARGE_CAP, "AAA", 10, "600.00"),
+                position(Category.BONDS, "BBB", 10, "400.00"));
+
+        // AAA doubles: 1200 / 1600 = 75% vs 60% target
+        DriftBreach breach = DriftScanner.evaluate(candidate, positions, Map.of("AAA", new BigDecimal("120")));
+
+        assertNotNull(breach);
+        assertEquals(new BigDecimal("0.150000"), breach.maxDrift());
+        assertEquals(new BigDecimal("-0.150000"), breach.driftByCategory().get(Category.BONDS));
+    }
+
+    @Test
+    void unmigratedPortfoliosAreScannedFromTheirJsonHoldings() {
+        PortfolioRepo repo = mock(PortfolioRepo.class);
+        PortfolioPositionRepo positionRepo = mock(PortfolioPositionRepo.class);
+        when(repo.findDriftCandidates(eq(0L), any())).thenReturn(List.of(candidate));
+        when(positionRepo.findValuesByPortfolioIdIn(any())).thenReturn(List.of());
+        when(repo.findLegacyHoldings(List.of(1L))).thenReturn(List.of(new PortfolioRepo.LegacyHoldings() {
+            public Long getPortfolioId() { return 1L; }
+            public Map<Category, List<StockPosition>> getHoldings() {
+                return Map.of(Category.LARGE_CAP, List.of(new StockPosition("AAA", "A", 10, null, null, new BigDecimal("620.00"), null)),
+                              Category.BONDS, List.of(new StockPosition("BBB", "B", 10, null, null, new BigDecimal("380.00"), null)));
+            }
+        }));
+        DriftScanner scanner = new DriftScanner(repo, positionRepo, mock(PortfolioRebalanceAppliedRepo.class),
+                ShardRouter.unsharded(), 2000);
+
+        DriftScanResult r = scanner.scan(new DriftScanRequest(null, null, null));
+
+        // no position rows: without the JSON fallback this reads as 0% invested and breaches
+        assertEquals(1, r.scanned());
+        assertTrue(r.breaches().isEmpty());
+    }
+
+    @Test
+    void rowsWithoutTargetColumnsUseTheirJsonTargets() {
+        PortfolioRepo repo = mock(PortfolioRepo.class);
+        PortfolioPositionRepo positionRepo = mock(PortfolioPositionRepo.class);
+        DriftCandidate notBackfilled = new DriftCandidate(1L, "U1", "RM1", TriggerMode.AUTO,
+                new BigDecimal("0.05"), 3, (CategoryWeights) null);
+        when(repo.findDriftCandidates(eq(0L), any())).thenReturn(List.of(notBackfilled));
+        when(positionRepo.findValuesByPortfolioIdIn(any())).thenReturn(List.of(
+                position(Category.LARGE_CAP, "AAA", 10, "620.00"),
+                position(Category.BONDS, "BBB", 10, "380.00")));
+        when(repo.findTargetStates(List.of(1L))).thenReturn(List.of(new PortfolioRepo.TargetStateOnly() {
+            public Long getPortfolioId() { return 1L; }
+            public Map<Category, BigDecimal> getTargetState() { return candidate.targetState(); }
+        }));
+        DriftScanner scanner = new DriftScanner(repo, positionRepo, mock(PortfolioRebalanceAppliedRepo.class),
+                ShardRouter.unsharded(), 2000);
+
+        DriftScanResult r = scanner.scan(new DriftScanRequest(null, null, null));
+
+        // compared with zero targets this would be a 62% drift
+        assertEquals(1, r.scanned());
+        assertTrue(r.breaches().isEmpty());
+    }
+
+    private static PositionValue position(Category category, String ticker, int qty, String total) {
+        return new PositionValue() {
+            public Long getPortfolioId() { return 1L; }
+            public Category getCategory() { return category; }
+            public String getTicker() { return ticker; }
+            public Integer getQuantity() { return qty; }
+            public BigDecimal getTotalAmount() { return new BigDecimal(total); }
+        };
+    }
+}
@@ -0,0 +1,88 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.dto.LedgerHoldings;
+import com.thanos.portfolio.entities.LedgerEventKind;
+import com.thanos.portfolio.entities.PositionLedgerEvent;
+import com.thanos.portfolio.entities.Side;
+import com.thanos.portfolio.model.*;
+import com.thanos.portfolio.shard.ShardRouter;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PositionLedgerTest {
+
+    private final PositionLedger ledger = new PositionLedger(null, mock(PlatformTransactionManager.class),
+            ShardRouter.unsharded(), true, 200, 500);
+
+    private static StockPosition sp(String ticker, int qty, String avg, String total) {
+        return new StockPosition(ticker, ticker, qty, new BigDecimal(avg), null, new BigDecimal(total), null);
+    }
+
+    private static void replay(PositionLedger.Replay r, List<PositionLedgerEvent> events, long firstId) {
+        long id = firstId;
+        for (PositionLedgerEvent e : events) {
+            e.setId(id++);
+            e.setRecordedAt(Instant.ofEpochSecond(id));
+            r.apply(e);
+        }
+    }
+
+    @Test
+    void replayFollowsResetsTradesAndClosedPositions() {
+        PositionLedger.Replay r = new PositionLedger.Replay();
+        replay(r, ledger.replaced(1L, Map.of(
+                Category.LARGE_CAP, List.of(sp("spy", 10, "400", "4000")),
+                Category.BONDS, List.of(sp("AGG", 5, "100", "500"))), new BigDecimal("1000")), 1);
+
+        List<PositionLedgerEvent> apply = ledger.applied(1L, "rb-1",
+                List.of(new ExecutedTrade("agg", Side.SELL, 5, "x"), new ExecutedTrade("QQQ", Side.BUY, 2, "x")),
+                Map.of("AGG", new PriceRow("Bonds", "AGG", "AGG", new BigDecimal("101")),
+                       "QQQ", new PriceRow("LargeCap", "QQQ", "QQQ", new BigDecimal("300"))),
+                Map.of(Category.LARGE_CAP, List.of(sp("SPY", 10, "400", "4000"), sp("QQQ", 2, "300", "600"))),
+                Set.of(PositionKey.of(Category.BONDS, "AGG"), PositionKey.of(Category.LARGE_CAP, "QQQ")),
+                new BigDecimal("905"), false);
+        assertEquals(2, apply.stream().filter(e -> e.getKind() == LedgerEventKind.TRADE).count());
+        replay(r, apply, 100);
+
+        LedgerHoldings h = r.toHoldings(1L, Instant.now());
+        assertEquals(new BigDecimal("905"), h.freeCash());
+        assertEquals(new BigDecimal("4600"), h.portfolioValue());
+        assertFalse(h.holdings().containsKey(Category.BONDS));
+        assertEquals(List.of("SPY", "QQQ"), h.holdings().get(Category.LARGE_CAP).stream().map(StockPosition::ticker).toList());
+
+        // a later createOrUpdate wipes everything the trades left behind
+        replay(r, ledger.replaced(1L, Map.of(Category.GOLD, List.of(sp("GLD", 1, "180", "180"))), BigDecimal.ZERO), 200);
+        h = r.toHoldings(1L, Instant.now());
+        assertEquals(Set.of(Category.GOLD), h.holdings().keySet());
+        assertEquals(new BigDecimal("100.0000"), h.holdings().get(Category.GOLD).get(0).percentageOfPortfolio());
+    }
+
+    @Test
+    void aSeedingApplyRecordsTheWholeBook() {
+        // a portfolio from before the ledger: nothing to replay but this apply
+        PositionLedger.Replay r = new PositionLedger.Replay();
+        List<PositionLedgerEvent> apply = ledger.applied(1L, "rb-1",
+                List.of(new ExecutedTrade("QQQ", Side.BUY, 2, "x")),
+                Map.of("QQQ", new PriceRow("LargeCap", "QQQ", "QQQ", new BigDecimal("300"))),
+                Map.of(Category.LARGE_CAP, List.of(sp("SPY", 10, "400", "4000"), sp("QQQ", 2, "300", "600")),
+                       Category.BONDS, List.of(sp("AGG", 5, "100", "500"))),
+                Set.of(PositionKey.of(Category.LARGE_CAP, "QQQ")),
+                new BigDecimal("400"), true);
+        assertEquals(LedgerEventKind.RESET, apply.get(1).getKind());
+        replay(r, apply, 1);
+
+        LedgerHoldings h = r.toHoldings(1L, Instant.now());
+        assertEquals(new BigDecimal("5100"), h.portfolioValue());
+        assertEquals(Set.of(Category.LARGE_CAP, Category.BONDS), h.holdings().keySet());
+        assertTrue(apply.stream().allMatch(e -> "rb-1".equals(e.getRebalanceId())));
+    }
+}
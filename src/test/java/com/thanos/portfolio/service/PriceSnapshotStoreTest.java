@@ -0,0 +1,74 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.client.MarketDataClient;
+import com.thanos.portfolio.model.PriceRow;
+import com.thanos.portfolio.model.PriceSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceSnapshotStoreTest {
+
+    // Local stand-in for the market-data service: every call returns a frame with a higher price
+    private final AtomicInteger calls = new AtomicInteger();
+    private final MarketDataClient stub = () -> List.of(
+            new PriceRow("LargeCap", "aaa", "Aaa", BigDecimal.valueOf(100 + calls.incrementAndGet())));
+
+    private final PriceSnapshotStore store = new PriceSnapshotStore(stub, 2, false);
+
+    @Test
+    void refreshLoadsFromMarketDataAndIndexesBySymbol() {
+        PriceSnapshot s = store.refresh();
+
+        assertEquals("market-data", s.source());
+        assertEquals(new BigDecimal("101"), s.bySymbol().get("AAA").price());
+        assertSame(s, store.latest().orElseThrow());
+        assertSame(s, store.require(s.id()));
+    }
+
+    @Test
+    void keepsOnlyTheNewestSnapshots() {
+        PriceSnapshot first = store.refresh();
+        PriceSnapshot second = store.refresh();
+        PriceSnapshot third = store.publish(
+                List.of(new PriceRow("Bonds", "BBB", "Bbb", BigDecimal.TEN)), "push");
+
+        assertTrue(store.find(first.id()).isEmpty());
+        assertSame(second, store.require(second.id()));
+        assertSame(third, store.latest().orElseThrow());
+        assertEquals(List.of(third, second), store.retained());
+        assertThrows(UnknownPriceSnapshotException.class, () -> store.require(first.id()));
+    }
+
+    @Test
+    void idsFromAnotherProcessAreUnknown() {
+        PriceSnapshotStore restarted = new PriceSnapshotStore(stub, 2, false);
+        PriceSnapshot before = store.refresh();
+        PriceSnapshot after = restarted.refresh();
+
+        assertNotEquals(before.id(), after.id());
+        assertThrows(UnknownPriceSnapshotException.class, () -> restarted.require(before.id()));
+    }
+
+    @Test
+    void snapshotsDoNotSeeLaterChangesToTheSourceList() {
+        List<PriceRow> rows = new ArrayList<>(List.of(new PriceRow("Gold", "GLD", "Gold", BigDecimal.ONE)));
+        PriceSnapshot s = store.publish(rows, "push");
+        rows.clear();
+
+        assertEquals(1, s.rows().size());
+        assertThrows(UnsupportedOperationException.class, () -> s.rows().clear());
+    }
+
+    @Test
+    void rejectsRowsWithoutAPrice() {
+        assertThrows(IllegalArgumentException.class,
+                () -> store.publish(List.of(new PriceRow("Gold", "GLD", "Gold", null)), "push"));
+        assertTrue(store.latest().isEmpty());
+    }
+}
@@ -0,0 +1,80 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.dto.RebalancePlan;
+import com.thanos.portfolio.entities.Side;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.ExecutedTrade;
+import com.thanos.portfolio.model.PriceRow;
+import com.thanos.portfolio.model.StockPosition;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RebalancePlanKernelTest {
+
+    private static final Map<String, PriceRow> PRICES = Map.of(
+            "AAA", new PriceRow("LargeCap", "AAA", "Aaa", new BigDecimal("101.37")),
+            "BBB", new PriceRow("Bonds", "BBB", "Bbb", new BigDecimal("9.99")));
+    private static final Map<Category, List<PriceRow>> FRAME = Map.of(
+            Category.LARGE_CAP, List.of(PRICES.get("AAA")),
+            Category.BONDS, List.of(PRICES.get("BBB")));
+
+    @Test
+    void sellsOverweightAndBuysUnderweightWithinCash() {
+        RebalancePlanKernel.Input in = new RebalancePlanKernel.Input(1L,
+                Map.of(Category.LARGE_CAP, List.of(position("AAA", 90)),
+                        Category.BONDS, List.of(position("BBB", 100))),
+                new BigDecimal("12.50"),
+                Map.of(Category.LARGE_CAP, new BigDecimal("60"), Category.BONDS, new BigDecimal("40")),
+                new BigDecimal("0.05"));
+
+        RebalancePlan plan = RebalancePlanKernel.plan(in, PRICES, FRAME);
+
+        ExecutedTrade sell = plan.trades().get(0);
+        assertEquals(Side.SELL, sell.side());
+        assertEquals("AAA", sell.ticker());
+        assertTrue(sell.qty() <= 90);
+        assertEquals(Side.BUY, plan.trades().get(1).side());
+        assertTrue(plan.freeCashAfter().signum() >= 0);
+        assertTrue(plan.maxDriftAfter().compareTo(plan.driftThresholdAbs()) <= 0);
+    }
+
+    @Test
+    void noTradesInsideTheBand() {
+        RebalancePlanKernel.Input in = new RebalancePlanKernel.Input(1L,
+                Map.of(Category.LARGE_CAP, List.of(position("AAA", 6)),
+                        Category.BONDS, List.of(position("BBB", 40))),
+                BigDecimal.ZERO,
+                Map.of(Category.LARGE_CAP, new BigDecimal("60"), Category.BONDS, new BigDecimal("40")),
+                new BigDecimal("0.05"));
+
+        RebalancePlan plan = RebalancePlanKernel.plan(in, PRICES, FRAME);
+
+        assertTrue(plan.trades().isEmpty());
+        assertEquals(0, plan.freeCashAfter().signum());
+    }
+
+    @Test
+    void neverSpendsCashItDoesNotHave() {
+        RebalancePlanKernel.Input in = new RebalancePlanKernel.Input(1L,
+                Map.of(Category.LARGE_CAP, List.of(position("AAA", 1))),
+                new BigDecimal("-50.00"),
+                Map.of(Category.BONDS, new BigDecimal("100")),
+                new BigDecimal("0.05"));
+
+        RebalancePlan plan = RebalancePlanKernel.plan(in, PRICES, FRAME);
+
+        assertEquals(List.of(new ExecutedTrade("AAA", Side.SELL, 1, "rebalance LargeCap"),
+                        new ExecutedTrade("BBB", Side.BUY, 5, "rebalance Bonds")),
+                plan.trades());
+        assertTrue(plan.freeCashAfter().signum() >= 0);
+    }
+
+    private static StockPosition position(String ticker, int qty) {
+        return new StockPosition(ticker, ticker, qty, BigDecimal.ONE, BigDecimal.ZERO, BigDecimal.ZERO, null);
+    }
+}
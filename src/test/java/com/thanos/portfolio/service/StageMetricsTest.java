@@ -0,0 +1,118 @@
+package com.thanos.portfolio.service;
+
+import com.thanos.portfolio.dto.ApplyRebalanceRequest;
+import com.thanos.portfolio.entities.Portfolio;
+import com.thanos.portfolio.entities.Side;
+import com.thanos.portfolio.model.Category;
+import com.thanos.portfolio.model.ExecutedTrade;
+import com.thanos.portfolio.model.PriceRow;
+import com.thanos.portfolio.model.StockPosition;
+import com.thanos.portfolio.repository.PortfolioPositionRepo;
+import com.thanos.portfolio.repository.PortfolioRebalanceAppliedRepo;
+import com.thanos.portfolio.repository.PortfolioRepo;
+import com.thanos.portfolio.service.StageMetrics.Duplicate;
+import com.thanos.portfolio.service.StageMetrics.Op;
+import com.thanos.portfolio.service.StageMetrics.Stage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StageMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final StageMetrics stages = new StageMetrics(registry);
+
+    @Test
+    void lapRecordsElapsedTimeAndChainsOffTheReturnedClock() {
+        long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5);
+        long next = stages.lap(Op.APPLY, Stage.LOCK, start);
+        stages.lap(Op.APPLY, Stage.MATH, next);
+
+        var lock = registry.get("portfolio.stage").tag("op", "apply").tag("stage", "lock").timer();
+        var math = registry.get("portfolio.stage").tag("op", "apply").tag("stage", "math").timer();
+        assertEquals(1, lock.count());
+        assertTrue(lock.totalTime(TimeUnit.MILLISECONDS) >= 5);
+        assertEquals(1, math.count());
+        assertTrue(math.totalTime(TimeUnit.MILLISECONDS) < 5);
+    }
+
+    @Test
+    void everyStageIsRegisteredBeforeFirstUse() {
+        assertEquals(0, registry.get("portfolio.stage").tag("op", "read_by_rm").tag("stage", "map").timer().count());
+        assertEquals(0, registry.get("portfolio.apply.duplicates").tag("check", "in_batch").counter().count());
+        assertEquals(2, registry.get("portfolio.apply.sell.rejected").counters().size());
+    }
+
+    @Test
+    void countersAndSummariesAreTaggedByCause() {
+        stages.duplicate(Duplicate.FAST_PATH);
+        stages.duplicate(Duplicate.FAST_PATH);
+        stages.sellInsufficient();
+        stages.positions(12);
+
+        assertEquals(2, registry.get("portfolio.apply.duplicates").tag("check", "fast_path").counter().count());
+        assertEquals(0, registry.get("portfolio.apply.duplicates").tag("check", "in_lock").counter().count());
+        assertEquals(1, registry.get("portfolio.apply.sell.rejected").tag("reason", "insufficient_qty").counter().count());
+        assertEquals(12, registry.get("portfolio.positions").summary().totalAmount());
+    }
+
+    @Test
+    void lapsSumRepeatedStagesIntoOneSample() {
+        StageMetrics.Laps laps = stages.laps(Op.APPLY);
+        long t = laps.lap(Stage.LOAD, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(3));
+        laps.lap(Stage.LOAD, t - TimeUnit.MILLISECONDS.toNanos(3));
+        laps.record();
+
+        var load = registry.get("portfolio.stage").tag("op", "apply").tag("stage", "load").timer();
+        assertEquals(1, load.count());
+        assertTrue(load.totalTime(TimeUnit.MILLISECONDS) >= 6);
+    }
+
+    @Test
+    void oneOptimisticApplyRecordsEveryStageOnceAcrossRetries() throws Exception {
+        PortfolioRepo repo = mock(PortfolioRepo.class);
+        // the first attempt reads version 1, then loses the compare-and-set to version 2
+        when(repo.findById(7L)).thenReturn(Optional.of(portfolio(1L)), Optional.of(portfolio(2L)),
+                Optional.of(portfolio(2L)), Optional.of(portfolio(2L)));
+        PortfolioService service = new PortfolioService(mock(PortfolioRebalanceAppliedRepo.class), repo,
+                mock(PortfolioPositionRepo.class), mock(EntityManager.class), null,
+                mock(ApplicationEventPublisher.class), mock(PlatformTransactionManager.class), null,
+                new ApplyMetrics(registry), stages, mock(IdempotencyGuard.class), mock(PositionLedger.class),
+                ApplyMode.OPTIMISTIC, 5, Duration.ZERO, Duration.ZERO);
+
+        service.applyRebalance(new ApplyRebalanceRequest("rb-1", 7L,
+                List.of(new ExecutedTrade("AAA", Side.BUY, 1, "x")),
+                List.of(new PriceRow("LargeCap", "AAA", "AAA", new BigDecimal("10"))), null));
+
+        assertEquals(2, registry.get("portfolio.apply.attempts").tag("mode", "optimistic").summary().totalAmount());
+        for (Stage stage : List.of(Stage.PRICES, Stage.IDEMPOTENCY_FILTER, Stage.IDEMPOTENCY, Stage.LOAD,
+                Stage.MATH, Stage.SUMMARY, Stage.FLUSH, Stage.POSITIONS, Stage.LEDGER, Stage.RECORD)) {
+            assertEquals(1, registry.get("portfolio.stage").tag("op", "apply").tag("stage", stage.name().toLowerCase())
+                    .timer().count(), stage::name);
+        }
+    }
+
+    private static Portfolio portfolio(Long version) {
+        Portfolio p = new Portfolio();
+        p.setId(7L);
+        p.setVersion(version);
+        p.setFreeCash(new BigDecimal("100"));
+        p.setTargetState(Map.of(Category.LARGE_CAP, new BigDecimal("100")));
+        p.setPortfolio(Map.of(Category.LARGE_CAP, List.of(
+                new StockPosition("AAA", "A", 1, new BigDecimal("10"), null, new BigDecimal("10.00"), null))));
+        return p;
+    }
+}
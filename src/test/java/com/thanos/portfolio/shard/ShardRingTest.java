@@ -0,0 +1,56 @@
+package com.thanos.portfolio.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardRingTest {
+
+    private static final int KEYS = 20_000;
+
+    @Test
+    void placementDoesNotDependOnConfigurationOrder() {
+        ShardRing a = new ShardRing(List.of("s0", "s1", "s2"), 128);
+        ShardRing b = new ShardRing(List.of("s2", "s0", "s1"), 128);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(a.shardFor("rm-" + i), b.shardFor("rm-" + i));
+        }
+        assertEquals(a.shardFor(null), a.shardFor(""));
+    }
+
+    @Test
+    void spreadsKeysRoughlyEvenly() {
+        ShardRing ring = new ShardRing(List.of("s0", "s1", "s2", "s3"), 128);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.shardFor("rm-" + i), 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        counts.values().forEach(n -> assertTrue(Math.abs(n - KEYS / 4) < KEYS / 4 * 0.2, counts.toString()));
+    }
+
+    @Test
+    void addingAShardOnlyMovesKeysOntoIt() {
+        ShardRing before = new ShardRing(List.of("s0", "s1", "s2"), 128);
+        ShardRing after = new ShardRing(List.of("s0", "s1", "s2", "s3"), 128);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String was = before.shardFor("rm-" + i);
+            String now = after.shardFor("rm-" + i);
+            if (was.equals(now)) continue;
+            assertEquals("s3", now);
+            moved++;
+        }
+        // about a quarter of the keys, nowhere near a full reshuffle
+        assertTrue(moved > KEYS * 0.15 && moved < KEYS * 0.35, "moved " + moved);
+    }
+
+    @Test
+    void rejectsAnEmptyRing() {
+        assertThrows(IllegalArgumentException.class, () -> new ShardRing(List.of(), 128));
+    }
+}